@@ -0,0 +1,78 @@
+package ai.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import resources.BenchmarkGames;
+import resources.Map;
+import resources.Resources;
+
+/**
+ * Benchmarks finding paths between random safe tiles on each of the real maps,
+ * with the plain A* search and with the AIs' hierarchical path planner. The
+ * same pairs of tiles are searched on every run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFindingBenchmark
+{
+	private static final int PAIRS = 64;
+
+	@Param({ "asteroid", "ballin", "hardcore", "infinity", "jacketpotato", "map0", "map1", "newpotato", "pit", "plus",
+			"potato", "potato2", "trendy", "twolands", "walls" })
+	public String map;
+
+	private AStarSearch aStar;
+	private PathPlanner planner;
+	private Point[] starts = new Point[PAIRS];
+	private Point[] goals = new Point[PAIRS];
+	private int next = 0;
+
+	@Setup
+	public void setUp()
+	{
+		Resources resources = BenchmarkGames.load(map);
+		aStar = new AStarSearch(resources);
+		planner = new PathPlanner(resources);
+
+		Random random = new Random(42);
+		Map m = resources.getMap();
+		for (int i = 0; i < PAIRS; i++)
+		{
+			starts[i] = BenchmarkGames.randomTile(m, random);
+			goals[i] = BenchmarkGames.randomTile(m, random);
+		}
+	}
+
+	@Benchmark
+	public LinkedList<Point> aStarSearch()
+	{
+		int i = next++ % PAIRS;
+		return aStar.search(starts[i], goals[i]);
+	}
+
+	@Benchmark
+	public LinkedList<Point> pathPlanner()
+	{
+		int i = next++ % PAIRS;
+		return planner.search(starts[i], goals[i]);
+	}
+}
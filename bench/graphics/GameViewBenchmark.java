@@ -0,0 +1,76 @@
+package graphics;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gamemodes.Deathmatch;
+import resources.BenchmarkGames;
+import resources.Resources;
+
+/**
+ * Benchmarks drawing a frame of a game into an offscreen image, the same size
+ * as the window.
+ * 
+ * The game view and the UI look at the screen when they are made, so this
+ * needs a display (e.g. xvfb-run on a server) rather than
+ * -Djava.awt.headless=true.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameViewBenchmark {
+
+	@Param({ "8", "32" })
+	public int players;
+
+	@Param({ "false", "true" })
+	public boolean lowGraphics;
+
+	private GameView view;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	@Setup
+	public void setUp() {
+		Resources resources = BenchmarkGames.load("ballin");
+
+		// the game mode must be made before the players are added, or it
+		// moves them somewhere random
+		new Deathmatch(resources);
+		BenchmarkGames.populate(resources, players, 42);
+		resources.setLowGraphics(lowGraphics);
+
+		view = new GameView(resources, false);
+		view.setSize(1200, 650);
+		image = new BufferedImage(1200, 650, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		view.paintComponent(graphics);
+		return image;
+	}
+}
@@ -0,0 +1,195 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+import physics.Physics;
+import resources.BenchmarkGames;
+import resources.Character;
+import resources.Powerup;
+import resources.Resources;
+import resources.WorldState;
+
+/**
+ * Benchmarks encoding and decoding the game data sent during a game, with Kryo
+ * set up the same way as on the server:
+ * <ul>
+ * <li>snapshots, as a delta against the one before or with everything in
+ * (as sent every tick), from capturing the game on the server to decoding the
+ * snapshot on the client</li>
+ * <li>the list of every character's state (as sent at the end of a game), and
+ * a round trip of it with the compact serializers against Kryo's field
+ * serializer</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({ "8", "32" })
+	public int players;
+
+	private final Kryo kryo = new Kryo();
+	private final Output output = new Output(4096, -1);
+	private final Output snapshotOutput = new Output(4096, -1);
+	private final Input input = new Input();
+	private final Broadcast broadcast = new Broadcast();
+
+	private List<Character> characters;
+	private List<Powerup> powerups;
+	private final Snapshot previous = new Snapshot();
+	private final Snapshot current = new Snapshot();
+	private final Snapshot decoded = new Snapshot();
+	private byte[] deltaBytes;
+	private byte[] fullBytes;
+	private GameData state;
+	private byte[] stateBytes;
+
+	@Setup
+	public void setUp() {
+		NetworkingServer.registerClasses(kryo);
+
+		// two snapshots of a game, a few ticks apart
+		Resources game = BenchmarkGames.load("ballin");
+		BenchmarkGames.populate(game, players, 42);
+		WorldState copy = new WorldState();
+		copy.copyFrom(game);
+		Physics physics = Physics.headless(copy.getResources());
+		characters = copy.getResources().getPlayerList();
+		powerups = copy.getResources().getPowerupList();
+		previous.capture(1, characters, powerups, 30, 1);
+		physics.simulate(4);
+		current.capture(2, characters, powerups, 30, 5);
+
+		deltaBytes = writeSnapshot(true).toBytes();
+		fullBytes = writeSnapshot(false).toBytes();
+
+		List<CharacterInfo> info = new ArrayList<CharacterInfo>();
+		for(Character c : characters) {
+			info.add(new CharacterInfo(null, c.getX(), c.getY(), c.getPlayerNumber(), c.isFalling(), c.isDead(), c.isDashing(), c.isBlocking(), c.getStamina(), c.hasPowerup(), c.getLastPowerup(), c.getKills(), c.getDeaths(), c.getSuicides(), c.getLives(), c.getScore(), c.hasBomb(), c.getDyingStep(), c.isVisible(), c.isExploding(), c.getTimeOfDeath()));
+		}
+		state = new GameData(info);
+		state.setPowerUps(ClientUpdater.serializePowerUps(copy.getResources().getPowerupList()));
+		stateBytes = writeState().toBytes();
+	}
+
+	/**
+	 * Whether snapshots are sent as a delta against the one before, or with everything in.
+	 */
+	@State(Scope.Thread)
+	public static class Baseline {
+
+		@Param({ "true", "false" })
+		public boolean delta;
+	}
+
+	/**
+	 * What the server does each tick: capture the game, encode the delta and write it
+	 * as a broadcast.
+	 */
+	@Benchmark
+	public Output writeSnapshot(Baseline baseline) {
+		return writeSnapshot(baseline.delta);
+	}
+
+	/**
+	 * What the client does with each snapshot: read the message and decode the delta.
+	 */
+	@Benchmark
+	public Snapshot readSnapshot(Baseline baseline) {
+		return readSnapshot(baseline.delta);
+	}
+
+	private Output writeSnapshot(boolean delta) {
+		current.capture(2, characters, powerups, 30, 5);
+		snapshotOutput.clear();
+		SnapshotCodec.encode(delta ? previous : null, current, snapshotOutput);
+		broadcast.update(2, delta ? 1 : -1, snapshotOutput.getBuffer(), snapshotOutput.position());
+		output.clear();
+		kryo.writeClassAndObject(output, broadcast);
+		return output;
+	}
+
+	private Snapshot readSnapshot(boolean delta) {
+		input.setBuffer(delta ? deltaBytes : fullBytes);
+		Message message = (Message) kryo.readClassAndObject(input);
+		GameData data = (GameData) message.getObject();
+		input.setBuffer(data.getDelta());
+		SnapshotCodec.decode(delta ? previous : null, input, data.getSequence(), decoded);
+		return decoded;
+	}
+
+	/**
+	 * What the server does at the end of a game: write every character's state.
+	 */
+	@Benchmark
+	public Output writeState() {
+		output.clear();
+		kryo.writeClassAndObject(output, new Message(Command.GAME, Note.UPDATE, "", "", "", "", state));
+		return output;
+	}
+
+	/**
+	 * What the client does at the end of a game: read every character's state.
+	 */
+	@Benchmark
+	public Object readState() {
+		input.setBuffer(stateBytes);
+		return kryo.readClassAndObject(input);
+	}
+
+	/**
+	 * Kryo with the compact serializers for the game data, or with Kryo's field
+	 * serializer in their place.
+	 */
+	@State(Scope.Thread)
+	public static class Serializers {
+
+		@Param({ "true", "false" })
+		public boolean compact;
+
+		private final Kryo kryo = new Kryo();
+
+		@Setup
+		public void setUp() {
+			NetworkingServer.registerClasses(kryo);
+			if (!compact) {
+				kryo.register(CharacterInfo.class, new FieldSerializer<CharacterInfo>(kryo, CharacterInfo.class));
+				kryo.register(GameData.class, new FieldSerializer<GameData>(kryo, GameData.class));
+			}
+		}
+	}
+
+	/**
+	 * Writing and reading back every character's state.
+	 */
+	@Benchmark
+	public Object roundTripState(Serializers serializers) {
+		output.clear();
+		serializers.kryo.writeClassAndObject(output, state);
+		input.setBuffer(output.getBuffer(), 0, output.position());
+		return serializers.kryo.readClassAndObject(input);
+	}
+}
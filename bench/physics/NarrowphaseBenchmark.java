@@ -0,0 +1,70 @@
+package physics;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import resources.Character;
+import resources.Character.Class;
+import resources.Character.Heading;
+import resources.Map;
+import resources.Resources;
+
+/**
+ * Benchmarks the collision narrowphase over every pair of characters in a
+ * crowded area. Run with -prof gc to check that it allocates nothing:
+ * gc.alloc.rate.norm should be (close to) 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NarrowphaseBenchmark {
+
+	@Param({ "8", "32" })
+	public int bodies;
+
+	private Physics physics;
+	private Character[] characters;
+
+	@Setup
+	public void setUp() {
+		Resources.silent = true;
+		Resources resources = new Resources();
+		resources.setMap(new Map(new Point2D.Double(0, 0), 1000, 1000, 0.0, "TestMap"));
+		physics = new Physics(resources, false);
+		characters = new Character[bodies];
+		for (int i = 0; i < bodies; i++) {
+			// packed closely enough that about half of the pairs overlap
+			characters[i] = new Character(1, 400 + (i % 8) * 30, 400 + (i / 8) * 30, 25, Heading.STILL,
+					Class.WARRIOR, 0, "Player " + i);
+		}
+	}
+
+	@Benchmark
+	public void allPairs(Blackhole bh) {
+		for (int i = 0; i < characters.length; i++) {
+			for (int j = 0; j < characters.length; j++) {
+				if (i != j) {
+					Physics.CND cnd = physics.detectCollision(characters[i], characters[j]);
+					bh.consume(cnd.collided);
+					bh.consume(cnd.collisionNormal.x);
+				}
+			}
+		}
+	}
+}
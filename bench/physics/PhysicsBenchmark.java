@@ -0,0 +1,72 @@
+package physics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import resources.BenchmarkGames;
+import resources.Resources;
+import resources.WorldState;
+
+/**
+ * Benchmarks physics ticks on each of the real maps. Every character holds
+ * down a random set of keys, so they crash into each other and fall off the
+ * edges much like in a game.
+ *
+ * Each invocation starts from the same copy of the game and runs
+ * {@link #TICKS} ticks of a headless engine (so no AIs think and nobody
+ * respawns), and the score is the time per tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsBenchmark {
+
+	private static final int TICKS = 100;
+
+	@Param({ "8", "32", "128" })
+	public int bodies;
+
+	@Param({ "asteroid", "ballin", "hardcore", "infinity", "jacketpotato", "map0", "map1", "newpotato", "pit", "plus",
+			"potato", "potato2", "trendy", "twolands", "walls" })
+	public String map;
+
+	private Resources game;
+	private WorldState copy;
+	private Physics physics;
+
+	@Setup
+	public void setUp() {
+		game = BenchmarkGames.load(map);
+		BenchmarkGames.populate(game, bodies, 42);
+		copy = new WorldState();
+		physics = Physics.headless(copy.getResources());
+	}
+
+	@Setup(Level.Invocation)
+	public void reset() {
+		copy.copyFrom(game);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TICKS)
+	public int tick() {
+		physics.simulate(TICKS);
+		return copy.getResources().getGlobalTimer();
+	}
+}
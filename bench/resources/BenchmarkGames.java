@@ -0,0 +1,105 @@
+package resources;
+
+import java.awt.Point;
+import java.util.Random;
+
+import resources.Character.Class;
+import resources.Character.Heading;
+import resources.Map.World;
+
+/**
+ * Games set up the same way every time for the benchmarks, on the real maps,
+ * with everything random coming from a seed so that before and after numbers
+ * can be compared.
+ */
+public class BenchmarkGames {
+
+	private BenchmarkGames() {
+
+	}
+
+	/**
+	 * Create a resources object with a map from resources/maps and its costs
+	 * worked out.
+	 *
+	 * @param map
+	 *            The name of the map, without ".csv".
+	 * @return The resources object.
+	 */
+	public static Resources load(String map) {
+		Resources.silent = true;
+		Resources resources = new Resources();
+		resources.setMap(new Map(1200, 650, World.CAVE, map));
+		new MapCosts(resources);
+		return resources;
+	}
+
+	/**
+	 * Add characters to a game, each somewhere safe on the map and holding down
+	 * a random set of movement keys.
+	 *
+	 * @param resources
+	 *            The game.
+	 * @param players
+	 *            The number of characters to add.
+	 * @param seed
+	 *            The seed for where they go and which keys they hold.
+	 */
+	public static void populate(Resources resources, int players, long seed) {
+		Random random = new Random(seed);
+		Map map = resources.getMap();
+		Class[] classes = Class.values();
+		for (int i = 0; i < players; i++) {
+			Point p = randomPoint(map, random);
+			Character c = new Character(1, p.x, p.y, 25, Heading.STILL, classes[i % classes.length], i,
+					"Player " + i);
+			c.setUp(random.nextBoolean());
+			c.setDown(random.nextBoolean());
+			c.setLeft(random.nextBoolean());
+			c.setRight(random.nextBoolean());
+			resources.addPlayerToList(c);
+		}
+	}
+
+	/**
+	 * Pick a point at least 2 tiles from any edge, like
+	 * {@link Map#randPointOnMap()} but from a seeded random.
+	 *
+	 * @param map
+	 *            The map, with its costs worked out.
+	 * @param random
+	 *            Where the randomness comes from.
+	 * @return The point, in map coordinates.
+	 */
+	public static Point randomPoint(Map map, Random random) {
+		int[][] prox = map.getProxMask();
+		while (true) {
+			double x = random.nextDouble() * map.getWidth();
+			double y = random.nextDouble() * map.getHeight();
+			Point tile = map.tileCoords(x, y);
+			if (tile != null && prox[tile.x][tile.y] >= 2) {
+				return new Point((int) x, (int) y);
+			}
+		}
+	}
+
+	/**
+	 * Pick a tile at least 2 tiles from any edge.
+	 *
+	 * @param map
+	 *            The map, with its costs worked out.
+	 * @param random
+	 *            Where the randomness comes from.
+	 * @return The tile, indexed the same way as the cost mask.
+	 */
+	public static Point randomTile(Map map, Random random) {
+		int[][] prox = map.getProxMask();
+		while (true) {
+			int x = random.nextInt(prox.length);
+			int y = random.nextInt(prox[0].length);
+			if (prox[x][y] >= 2) {
+				return new Point(x, y);
+			}
+		}
+	}
+}
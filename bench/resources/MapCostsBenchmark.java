@@ -0,0 +1,61 @@
+package resources;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import resources.Map.World;
+
+/**
+ * Benchmarks setting up the proximity and cost masks for each of the real
+ * maps, both worked out from scratch and taken from the cache (as they are for
+ * every game after the first on a map).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapCostsBenchmark
+{
+	@Param({ "asteroid", "ballin", "hardcore", "infinity", "jacketpotato", "map0", "map1", "newpotato", "pit", "plus",
+			"potato", "potato2", "trendy", "twolands", "walls" })
+	public String map;
+
+	private Resources resources;
+
+	@Setup
+	public void setUp()
+	{
+		Resources.silent = true;
+		MapCosts.saveToDisk = false;
+		resources = new Resources();
+		resources.setMap(new Map(1200, 650, World.CAVE, map));
+	}
+
+	@Benchmark
+	public double[][] uncached()
+	{
+		MapCosts.clearCache();
+		new MapCosts(resources);
+		return resources.getMap().getCostMask();
+	}
+
+	@Benchmark
+	public double[][] cached()
+	{
+		new MapCosts(resources);
+		return resources.getMap().getCostMask();
+	}
+}
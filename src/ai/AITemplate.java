@@ -4,21 +4,29 @@ import java.awt.Point;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
-import ai.pathfinding.AStarSearch;
 import ai.pathfinding.Line;
+import ai.pathfinding.PathPlanner;
 import ai.pathfinding.StaticHeuristics;
 import ai.pathfinding.Vector;
+import metrics.Metrics;
+import physics.Physics;
 import resources.Character;
 import resources.Map.Tile;
 import resources.Resources;
+import resources.TileGrid;
 
 /**
  * Abstract AI template
  * 
+ * The AI is driven by the physics: {@link #tick(boolean)} is called once
+ * every simulation tick, and every few ticks the AI thinks about what to do.
+ * Nothing ever waits - anything that has to happen over time, like tapping
+ * the keys to brake, is queued up and carried out over the following ticks.
+ * 
  * @author Oliver Gratton
  *
  */
-public abstract class AITemplate extends Thread
+public abstract class AITemplate
 {
 	protected Character character;
 	protected Resources resources;
@@ -40,14 +48,30 @@ public abstract class AITemplate extends Thread
 	protected static final double BRAKING_CONSTANT = 35; // how many ms to brake for. 40-50 seems good
 	protected static final double FUZZINESS = 20;
 	// private final long reaction_time = 5; // can be increased once ray-casting is implemented
-	protected static final long TICK = 40; // loop every <tick>ms
+	protected static final long TICK = 40; // think every <tick>ms
 	protected static long PRESCIENCE = TICK * 1; // how many ms ahead we look for our predicted point
 
+	protected static final int THINK_TICKS = (int) (TICK / Physics.DELAY); // think every <think_ticks> simulation ticks
+	private static final int WAKE_UP_TICKS = 300 / Physics.DELAY; // how long a newborn AI ponders life for
+
+	protected static final double LOOKAHEAD_RANGE = 150; // how close someone has to be before we try out dashing or blocking
+
+	/**
+	 * The most AIs in a game that may think in the same tick. Any more wait
+	 * for the next tick.
+	 */
+	public static final int THINKS_PER_TICK = 8;
+
+	// keys, for the presses queue
+	private static final int UP = 1, DOWN = 2, LEFT = 4, RIGHT = 8;
+	private static final int MAX_PRESSES = 16;
+
 	protected ArrayList<Tile> bad_tiles;
 
 	protected String id;
 
-	protected AStarSearch aStar;
+	protected PathPlanner planner; // shared with the other AIs in the game
+	protected Lookahead lookahead; // shared with the other AIs in the game
 
 	protected LinkedList<Point> waypoints;
 
@@ -56,8 +80,6 @@ public abstract class AITemplate extends Thread
 
 	protected boolean success = true; // we start off a winner (because we need to be motivated to look for new goals)
 
-	protected ArrayList<Tile> non_edge; // all tiles that are not WALKABLE edge tiles (not EDGE_ABYSS)
-
 	protected Character currentTarget; // for aggressive mode
 	protected Point currentGoal; // for aggressive mode
 
@@ -67,6 +89,18 @@ public abstract class AITemplate extends Thread
 	protected int destI = 0; // destination index
 	protected boolean debug;
 
+	// key presses still to be carried out, and for how many ticks each
+	private final int[] pressKeys = new int[MAX_PRESSES];
+	private final int[] pressTicks = new int[MAX_PRESSES];
+	private int pressHead = 0;
+	private int pressCount = 0;
+	private boolean pressing = false; // whether to let go of the keys once the presses are done
+
+	private int thinkIn; // ticks until we next think
+	private boolean dead = false;
+
+	protected PathPlanner.Request pendingPath; // the path we're waiting to be planned
+
 	public AITemplate(Resources resources, Character character)
 	{
 		this.character = character;
@@ -75,105 +109,171 @@ public abstract class AITemplate extends Thread
 		// the tiles we don't want to step on
 		bad_tiles = resources.getBadTiles();
 
-		non_edge = new ArrayList<Tile>();
-		non_edge.addAll(bad_tiles);
-		non_edge.add(Tile.FLAT);
-
 		waypoints = new LinkedList<Point>();
 
 		id = character.getId();
 
-		aStar = new AStarSearch(resources);
+		planner = resources.getPathPlanner();
+		lookahead = resources.getLookahead();
 
 		lastWaypoint = getCurrentTileCoords();
 
 		// XXX debug
 		debug = character.getPlayerNumber() == 0 ? true : false;
+
+		// the newborn AI stops to ponder life (and give me time to bring up
+		// the window and pay attention). Each AI thinks on a different tick
+		// to the ones before and after it, so they don't all think at once
+		int index = resources.getPlayerList().indexOf(character);
+		thinkIn = WAKE_UP_TICKS + (index < 0 ? resources.getPlayerList().size() : index) % THINK_TICKS;
 	}
 
 	/**
-	 * The main execution loop of the AI Performs common behaviour and current
-	 * behaviour once every 'tick'
+	 * Move the AI on by one simulation tick. Carries on with any key presses
+	 * still to do, and once every {@link #THINK_TICKS} ticks performs common
+	 * behaviour and current behaviour
+	 * 
+	 * @param mayThink false if enough AIs have thought this tick already, in
+	 *            which case we wait until the next tick to think
+	 * @return true if we thought this tick
 	 */
-	public void run()
+	public boolean tick(boolean mayThink)
 	{
+		if (character.isDead())
+		{
+			if (!dead)
+			{
+				dead = true;
+				funeral();
+			}
+			return false;
+		}
+		if (dead)
+		{
+			// we've respawned, so start again
+			dead = false;
+			reborn();
+		}
 
-		try
+		// pick up the path we asked for last time, if it's been planned
+		if (pendingPath != null && pendingPath.isDone())
 		{
-			// The newborn AI stops to ponder life, and give me time to bring up
-			// the window and pay attention
-			Thread.sleep(300);
+			waypoints = convertWaypoints(pendingPath.getPath());
+			pendingPath = null;
 
-			while (!character.isDead())
-			{
+			// XXX debug
+			if (debug)
+				resources.setDestList(waypoints);
+		}
 
-				// common behaviour goes first
-				commonBehaviour();
+		if (pressCount > 0)
+		{
+			continuePressing();
+			return false;
+		}
+		if (pressing)
+		{
+			// finished pressing keys, so let go of them
+			pressing = false;
+			setAllMovementFalse();
+		}
 
-				// XXX debug
-				if (debug)
-					resources.setProjectedPos(projectedPosition());
+		if (thinkIn > 1)
+		{
+			thinkIn--;
+			return false;
+		}
+		if (!mayThink)
+		{
+			// try again next tick
+			return false;
+		}
+		thinkIn = THINK_TICKS;
+		long start = System.nanoTime();
+		think();
+		Metrics.AI_THINK_TIME.record(System.nanoTime() - start);
 
-				if (behaviour == Behaviour.POIROT)
-				{
-					poirotBehaviour();
-				}
-				else if (behaviour == Behaviour.STUBBORN)
-				{
-					stubbornBehaviour();
-				}
-				else if (behaviour == Behaviour.ROVING)
-				{
-					rovingBehaviour();
-				}
-				else if (behaviour == Behaviour.COWARD)
-				{
-					cowardBehaviour();
-				}
-				else if (behaviour == Behaviour.AGGRESSIVE)
-				{
-					aggressiveBehaviour();
-				}
-				else if (behaviour == Behaviour.POTATO)
-				{
-					// literally nothing
-				}
-				else
-				{
-					System.out.println("Behaviour not yet implemented");
-				}
-				Thread.sleep(TICK);
+		// start on any key presses we decided on straight away
+		if (pressCount > 0)
+		{
+			continuePressing();
+		}
+		return true;
+	}
 
-			}
+	/**
+	 * Performs common behaviour, then current behaviour
+	 */
+	private void think()
+	{
+		// common behaviour goes first
+		commonBehaviour();
 
-			funeral();
+		// XXX debug
+		if (debug)
+			resources.setProjectedPos(projectedPosition());
 
+		if (behaviour == Behaviour.POIROT)
+		{
+			poirotBehaviour();
+		}
+		else if (behaviour == Behaviour.STUBBORN)
+		{
+			stubbornBehaviour();
+		}
+		else if (behaviour == Behaviour.ROVING)
+		{
+			rovingBehaviour();
 		}
-		catch (InterruptedException e)
+		else if (behaviour == Behaviour.COWARD)
 		{
-			e.printStackTrace();
+			cowardBehaviour();
 		}
+		else if (behaviour == Behaviour.AGGRESSIVE)
+		{
+			aggressiveBehaviour();
+		}
+		else if (behaviour == Behaviour.POTATO)
+		{
+			// literally nothing
+		}
+		else
+		{
+			System.out.println("Behaviour not yet implemented");
+		}
+	}
 
+	/**
+	 * Start again after respawning, as if newborn
+	 */
+	protected void reborn()
+	{
+		behaviour = Behaviour.ROVING;
+		waypoints.clear();
+		pendingPath = null;
+		normalToNextWaypoint = null;
+		currentTarget = null;
+		currentGoal = null;
+		success = true;
+		pressCount = 0;
+		lastWaypoint = getCurrentTileCoords();
+		thinkIn = WAKE_UP_TICKS;
 	}
 
 	/**
 	 * Performs 1 tick's worth of common behaviour (move away from edge, move to
 	 * next waypoint, etc)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected abstract void commonBehaviour() throws InterruptedException;
+	protected abstract void commonBehaviour();
 
 	/**
 	 * XXX Debug only Perform 1 tick's worth of Poirot (follow set points by A*,
 	 * so hopefully isn't a lemming)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected void poirotBehaviour() throws InterruptedException
+	protected void poirotBehaviour()
 	{
 
-		if (waypoints.isEmpty())
+		if (waypoints.isEmpty() && pendingPath == null)
 		{
 			if (debug)
 			{
@@ -189,12 +289,11 @@ public abstract class AITemplate extends Thread
 
 			Point charPos = getCurrentTileCoords();
 			// if (debug) System.out.println(charPos);
-			waypoints = convertWaypoints(aStar.search(charPos, destinations[destI]));
+			requestPath(charPos, destinations[destI]);
 
 			// XXX debug
 			if (debug)
 			{
-				resources.setDestList(waypoints);
 				resources.setAINextDest(resources.getMap().tileCoordsToMapCoords(destinations[destI].x, destinations[destI].y));
 
 				System.out.println("pathfinding to point " + destinations[destI]);
@@ -205,41 +304,36 @@ public abstract class AITemplate extends Thread
 
 	/**
 	 * XXX Debug only Performs 1 tick's worth of Stubborn behaviour (brakes)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected void stubbornBehaviour() throws InterruptedException
+	protected void stubbornBehaviour()
 	{
 		brakeChar();
 	}
 
 	/**
 	 * Performs 1 tick's worth of Roving behaviour (moves randomly)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected abstract void rovingBehaviour() throws InterruptedException;
+	protected abstract void rovingBehaviour();
 
 	/**
 	 * Performs 1 tick's worth of Coward behaviour (runs away from all players)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected abstract void cowardBehaviour() throws InterruptedException;
+	protected abstract void cowardBehaviour();
 
 	/**
 	 * Performs 1 tick's worth of Aggressive behaviour (runs towards all
 	 * players)
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected abstract void aggressiveBehaviour() throws InterruptedException;
+	protected abstract void aggressiveBehaviour();
 
 	/**
 	 * Cleans up the AI after it dies
 	 */
 	protected void funeral()
 	{
+		pressCount = 0;
+		pressing = false;
+		pendingPath = null;
 		setAllMovementFalse();
 		waypoints.clear();
 		lastWaypoint = resources.getMap().randPointOnMap(); // safer than null
@@ -255,14 +349,17 @@ public abstract class AITemplate extends Thread
 	/**
 	 * Seek out the nearest player and dash once we are near them If they have
 	 * moved since we planned our route, recalculate
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected void defaultAggressiveBehaviour() throws InterruptedException
+	protected void defaultAggressiveBehaviour()
 	{
 		// if we don't have a target to hunt
 		if (waypoints.isEmpty())
 		{
+			if (pendingPath != null)
+			{
+				// still waiting for the path to our last target
+				return;
+			}
 			Character nearestPlayer;
 			try
 			{
@@ -284,8 +381,7 @@ public abstract class AITemplate extends Thread
 			Point newDestTile = getTileCoords(newDest);
 			if (newDestTile != null && charPos != null)
 			{
-				waypoints = convertWaypoints(aStar.search(charPos, newDestTile));
-				resources.setDestList(waypoints);
+				requestPath(charPos, newDestTile);
 				resources.setAINextDest(newDest);
 			}
 			else
@@ -300,10 +396,15 @@ public abstract class AITemplate extends Thread
 		{
 			try
 			{
-				// dash when we are close to the target
-				if (StaticHeuristics.euclidean(getOurLocation(), getTargetLocation(currentTarget)) < 60) // XXX 60 is experimental threshold
+				double distToTarget = StaticHeuristics.euclidean(getOurLocation(), getTargetLocation(currentTarget));
+				if (distToTarget < LOOKAHEAD_RANGE)
 				{
-					character.requestDashing();
+					// close to the target, so try out dashing at them (or
+					// blocking them), or just dash if we can't try it out
+					if (!dashOrBlock(currentTarget) && distToTarget < 60) // XXX 60 is experimental threshold
+					{
+						character.requestDashing();
+					}
 				}
 				// if the player has moved considerably since we targeted them
 				// (or has died)
@@ -322,6 +423,37 @@ public abstract class AITemplate extends Thread
 		}
 	}
 
+	/**
+	 * Decide whether to dash, block or do neither by trying each out on a
+	 * copy of the game
+	 * 
+	 * @param target who we're after, or null if no one
+	 * @return true if we decided, false if the AIs have used up their
+	 *         rollouts for now
+	 */
+	protected boolean dashOrBlock(Character target)
+	{
+		if (character.isDashing() || character.isBlocking())
+		{
+			// already committed
+			return true;
+		}
+		Lookahead.Choice choice = lookahead.choose(character, target);
+		if (choice == null)
+		{
+			return false;
+		}
+		if (choice == Lookahead.Choice.DASH)
+		{
+			character.requestDashing();
+		}
+		else if (choice == Lookahead.Choice.BLOCK)
+		{
+			character.setBlocking(true);
+		}
+		return true;
+	}
+
 	/**
 	 * @return The type of tile the AI is standing on
 	 */
@@ -334,11 +466,20 @@ public abstract class AITemplate extends Thread
 	 * Is a tile a (walkable) edge tile?
 	 * 
 	 * @param tile
-	 * @return true or false
+	 * @return true or false (true if off the map)
 	 */
 	protected boolean isEdge(Tile tile)
 	{
-		return !non_edge.contains(tile);
+		return (TileGrid.flagsOf(tile) & (TileGrid.EDGE | TileGrid.OFF)) != 0;
+	}
+
+	/**
+	 * @return true if the AI is standing on a (walkable) edge tile, or off the
+	 *         map
+	 */
+	protected boolean onEdge()
+	{
+		return (resources.getMap().getTileGrid().flagsAt(character.getX(), character.getY()) & (TileGrid.EDGE | TileGrid.OFF)) != 0;
 	}
 
 	/**
@@ -397,10 +538,8 @@ public abstract class AITemplate extends Thread
 
 	/**
 	 * Move to the next waypoint in our list
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected void moveToWaypoint() throws InterruptedException
+	protected void moveToWaypoint()
 	{
 		success = moveTo(waypoints.peek());
 		if (success)
@@ -536,7 +675,16 @@ public abstract class AITemplate extends Thread
 	 */
 	protected boolean isWalkable(Tile tile)
 	{
-		return bad_tiles.contains(tile);
+		return isBad(TileGrid.flagsOf(tile));
+	}
+
+	/**
+	 * @return true for the flags of a tile on the map we can't walk on (one of
+	 *         the bad tiles)
+	 */
+	private static boolean isBad(int flags)
+	{
+		return (flags & (TileGrid.WALKABLE | TileGrid.OFF)) == 0;
 	}
 
 	/**
@@ -571,7 +719,7 @@ public abstract class AITemplate extends Thread
 	 * the index of the current tile
 	 */
 
-	protected void moveAwayFromEdge() throws InterruptedException
+	protected void moveAwayFromEdge()
 	{
 		Point currentTileIndex = getCurrentTileCoords();
 		// setAllMovementFalse();
@@ -587,28 +735,30 @@ public abstract class AITemplate extends Thread
 			// But either way, this works:
 			int tilesAway = 1;
 
-			Tile tile_down = resources.getMap().tileAt(column - tilesAway, row);
-			Tile tile_up = resources.getMap().tileAt(column + tilesAway, row);
-			Tile tile_right = resources.getMap().tileAt(column, row - tilesAway);
-			Tile tile_left = resources.getMap().tileAt(column, row + tilesAway);
-			if (!isWalkable(tile_left))
+			TileGrid grid = resources.getMap().getTileGrid();
+			int tile_down = grid.flagsAt(column - tilesAway, row);
+			int tile_up = grid.flagsAt(column + tilesAway, row);
+			int tile_right = grid.flagsAt(column, row - tilesAway);
+			int tile_left = grid.flagsAt(column, row + tilesAway);
+			int away = 0;
+			if (!isBad(tile_left))
 			{
-				character.setRight(true);
+				away |= RIGHT;
 			}
-			if (!isWalkable(tile_right))
+			if (!isBad(tile_right))
 			{
-				character.setLeft(true);
+				away |= LEFT;
 			}
-			if (!isWalkable(tile_up))
+			if (!isBad(tile_up))
 			{
-				character.setDown(true);
+				away |= DOWN;
 			}
-			if (!isWalkable(tile_down))
+			if (!isBad(tile_down))
 			{
-				character.setUp(true);
+				away |= UP;
 			}
-			Thread.sleep(10);
-			setAllMovementFalse();
+			// a quick nudge, on top of whatever we're pressing already
+			press(heldKeys() | away, 10);
 		}
 	}
 
@@ -654,9 +804,8 @@ public abstract class AITemplate extends Thread
 	 * @param y
 	 * coord
 	 * @return are we nearly there yet?
-	 * @throws InterruptedException
 	 */
-	protected boolean moveTo(Point p) throws InterruptedException
+	protected boolean moveTo(Point p)
 	{
 		if (detectOvershoot())
 			return false;
@@ -710,6 +859,74 @@ public abstract class AITemplate extends Thread
 		return (Math.abs(coord1 - coord2) <= FUZZINESS);
 	}
 
+	/**
+	 * Ask for a path between two tiles. It is planned at the end of the tick,
+	 * along with any other AI's paths, and becomes our waypoints the next
+	 * time we think
+	 * 
+	 * @param from the tile to start from
+	 * @param to the tile to get to
+	 */
+	protected void requestPath(Point from, Point to)
+	{
+		if (pendingPath == null)
+		{
+			pendingPath = planner.request(from, to);
+		}
+	}
+
+	/**
+	 * Queue up pressing some keys for a while, after any presses already
+	 * queued. We don't think again until they're all done.
+	 * 
+	 * @param keys the keys to hold down
+	 * @param millis how long to hold them down for
+	 */
+	private void press(int keys, long millis)
+	{
+		int ticks = (int) Math.round(millis / (double) Physics.DELAY);
+		if (ticks <= 0 || pressCount == MAX_PRESSES)
+		{
+			return;
+		}
+		int i = (pressHead + pressCount) % MAX_PRESSES;
+		pressKeys[i] = keys;
+		pressTicks[i] = ticks;
+		pressCount++;
+	}
+
+	/**
+	 * Hold down the keys for the current press for another tick
+	 */
+	private void continuePressing()
+	{
+		int keys = pressKeys[pressHead];
+		character.setUp((keys & UP) != 0);
+		character.setDown((keys & DOWN) != 0);
+		character.setLeft((keys & LEFT) != 0);
+		character.setRight((keys & RIGHT) != 0);
+		pressing = true;
+
+		if (--pressTicks[pressHead] == 0)
+		{
+			pressHead = (pressHead + 1) % MAX_PRESSES;
+			pressCount--;
+		}
+	}
+
+	/**
+	 * @return the keys the character is holding down at the moment
+	 */
+	private int heldKeys()
+	{
+		int keys = 0;
+		keys |= character.isUp() ? UP : 0;
+		keys |= character.isDown() ? DOWN : 0;
+		keys |= character.isLeft() ? LEFT : 0;
+		keys |= character.isRight() ? RIGHT : 0;
+		return keys;
+	}
+
 	/**
 	 * 'Detach' all keys
 	 */
@@ -738,10 +955,8 @@ public abstract class AITemplate extends Thread
 
 	/**
 	 * Try and slow the character down
-	 * 
-	 * @throws InterruptedException
 	 */
-	protected void brakeChar() throws InterruptedException
+	protected void brakeChar()
 	{
 		// 'release' all keys
 		setAllMovementFalse();
@@ -772,38 +987,28 @@ public abstract class AITemplate extends Thread
 		}
 
 		// tap in the opposite direction for a proportional amount of time in
-		// each direction
+		// each direction, over the next few ticks
 		if (Math.signum(dX) == -1)
 		{
 			if (Math.signum(dY) == -1)
 			{
 				// UP-LEFT
 				long delayX = (long) (ratioDx * time);
-				character.setRight(true);
-				Thread.sleep(delayX);
-				character.setRight(false);
-				character.setDown(true);
-				Thread.sleep(time - delayX);
-				character.setDown(false);
+				press(RIGHT, delayX);
+				press(DOWN, time - delayX);
 
 			}
 			else if (Math.signum(dY) == 1)
 			{
 				// DOWN-LEFT
 				long delayX = (long) (ratioDx * time);
-				character.setRight(true);
-				Thread.sleep(delayX);
-				character.setRight(false);
-				character.setUp(true);
-				Thread.sleep(time - delayX);
-				character.setUp(false);
+				press(RIGHT, delayX);
+				press(UP, time - delayX);
 			}
 			else
 			{
 				// LEFT
-				character.setRight(true);
-				Thread.sleep(time);
-				character.setRight(false);
+				press(RIGHT, time);
 				// don't need to do up/down
 			}
 		}
@@ -813,30 +1018,20 @@ public abstract class AITemplate extends Thread
 			{
 				// UP-RIGHT
 				long delayX = (long) (ratioDx * time);
-				character.setLeft(true);
-				Thread.sleep(delayX);
-				character.setLeft(false);
-				character.setDown(true);
-				Thread.sleep(time - delayX);
-				character.setDown(false);
+				press(LEFT, delayX);
+				press(DOWN, time - delayX);
 			}
 			else if (Math.signum(dY) == 1)
 			{
 				// DOWN-RIGHT
 				long delayX = (long) (ratioDx * time);
-				character.setLeft(true);
-				Thread.sleep(delayX);
-				character.setLeft(false);
-				character.setUp(true);
-				Thread.sleep(time - delayX);
-				character.setUp(false);
+				press(LEFT, delayX);
+				press(UP, time - delayX);
 			}
 			else
 			{
 				// RIGHT
-				character.setLeft(true);
-				Thread.sleep(time);
-				character.setLeft(false);
+				press(LEFT, time);
 				// don't need to do up/down
 			}
 		}
@@ -846,17 +1041,13 @@ public abstract class AITemplate extends Thread
 			{
 				// UP
 				// don't need to do left/right
-				character.setDown(true);
-				Thread.sleep(time);
-				character.setDown(false);
+				press(DOWN, time);
 			}
 			else if (Math.signum(dY) == 1)
 			{
 				// DOWN
 				// don't need to do left/right
-				character.setUp(true);
-				Thread.sleep(time);
-				character.setUp(false);
+				press(UP, time);
 			}
 			else
 			{
@@ -908,6 +1099,7 @@ public abstract class AITemplate extends Thread
 	{
 		this.behaviour = behaviour;
 		waypoints.clear();
+		pendingPath = null;
 	}
 
 	/**
@@ -9,6 +9,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import gamemodes.DebugMode;
+import physics.Physics;
 import resources.Character;
 import resources.Map;
 import resources.Map.Tile;
@@ -113,4 +114,108 @@ public class AITests
 		assertEquals(ai.scanForNearestPlayer(), controlled);
 
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Tests the AI is moved on by the physics ticks, without a thread of its own
+	 */
+	@Test
+	public void tickedAITest()
+	{
+		FightingAI ai = new FightingAI(resources, cpu);
+		cpu.setAI(ai);
+		Physics physics = new Physics(resources, false);
+		
+		double x = cpu.getX();
+		double y = cpu.getY();
+		for (int i = 0; i < 300; i++)
+		{
+			physics.tick();
+		}
+		
+		// it's found the other player and gone after them
+		assertEquals(controlled, ai.currentTarget);
+		assertTrue(cpu.getX() != x || cpu.getY() != y);
+	}
+	
+	/**
+	 * Tests only so many AIs think in the same tick, and that they all get a go
+	 */
+	@Test
+	public void thinkBudgetTest()
+	{
+		int ais = 40;
+		int[] thoughts = new int[1];
+		int[] thinkers = new int[ais];
+		for (int i = 0; i < ais; i++)
+		{
+			Character c = new Character(Character.Class.WIZARD, i + 2);
+			Point p = resources.getMap().randPointOnMap();
+			c.setX(p.x);
+			c.setY(p.y);
+			resources.addPlayerToList(c);
+			final int n = i;
+			c.setAI(new FightingAI(resources, c) {
+				@Override
+				protected void commonBehaviour()
+				{
+					thoughts[0]++;
+					thinkers[n]++;
+					super.commonBehaviour();
+				}
+			});
+		}
+		Physics physics = new Physics(resources, false);
+		
+		for (int i = 0; i < 100; i++)
+		{
+			thoughts[0] = 0;
+			physics.tick();
+			assertTrue(thoughts[0] <= AITemplate.THINKS_PER_TICK);
+		}
+		for (int i = 0; i < ais; i++)
+		{
+			assertTrue(thinkers[i] > 0);
+		}
+	}
+
+	/**
+	 * Tests the lookahead doesn't walk us off the edge, and keeps to its
+	 * budget of rollouts
+	 */
+	@Test
+	public void lookaheadTest()
+	{
+		resources.mode = Resources.Mode.Deathmatch;
+		Lookahead lookahead = new Lookahead(resources, 100);
+
+		// heading straight for the edge, dashing would take us over it
+		Point edge = null;
+		for (int x = (int) cpu.getX(); x > 0 && edge == null; x -= 5)
+		{
+			if (Map.tileCheck(resources.getMap().tileAt(x, cpu.getY())))
+			{
+				edge = new Point(x, (int) cpu.getY());
+			}
+		}
+		assertTrue(edge != null);
+		cpu.setX(edge.x + 150);
+		cpu.setY(edge.y);
+		cpu.setLeft(true);
+		assertTrue(lookahead.rollout(cpu, null, Lookahead.Choice.DASH, Lookahead.LOOKAHEAD_TICKS) < lookahead.rollout(cpu, null, Lookahead.Choice.BLOCK, Lookahead.LOOKAHEAD_TICKS));
+		assertEquals(150, cpu.getX() - edge.x, 0);
+
+		// a tenth of a second's worth of rollouts, three at a time
+		int chosen = 0;
+		while (lookahead.choose(cpu, controlled) != null)
+		{
+			chosen++;
+		}
+		assertEquals(100 / 10 / 3, chosen);
+		for (int i = 0; i < 10; i++)
+		{
+			resources.incrementGlobalTimer();
+		}
+		assertTrue(lookahead.choose(cpu, controlled) != null);
+		assertTrue(lookahead.getRolloutsPerSecond() > 0);
+	}
+}
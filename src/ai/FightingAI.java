@@ -22,10 +22,10 @@ public class FightingAI extends AITemplate
 
 	// (Javadoc in superclass)
 	@Override
-	protected void commonBehaviour() throws InterruptedException
+	protected void commonBehaviour()
 	{
 		//if (projectedTile() != Tile.FLAT)
-		if (isEdge(getCurrentTile()))
+		if (onEdge())
 		{
 			//Thread.sleep(reaction_time);
 			moveAwayFromEdge();
@@ -43,11 +43,11 @@ public class FightingAI extends AITemplate
 
 	// (Javadoc in superclass)
 	@Override
-	protected void rovingBehaviour() throws InterruptedException
+	protected void rovingBehaviour()
 	{
 		// keep trying to get a new dest until we get a valid path
 		// if AStar returns null we'll try again next tick anyway
-		if (waypoints.isEmpty())
+		if (waypoints.isEmpty() && pendingPath == null)
 		{
 
 			// TODO make behaviour change switches here for efficiency
@@ -72,12 +72,11 @@ public class FightingAI extends AITemplate
 			
 			if (charPos != null && newDestTile != null)
 			{
-				waypoints = convertWaypoints(aStar.search(charPos, newDestTile));
+				requestPath(charPos, newDestTile);
 			}
 
 			if (debug)
 			{
-				resources.setDestList(waypoints);
 				resources.setAINextDest(currentGoal);
 			}
 		}
@@ -88,7 +87,7 @@ public class FightingAI extends AITemplate
 	 * Just go back to roving
 	 */
 	@Override
-	protected void cowardBehaviour() throws InterruptedException
+	protected void cowardBehaviour()
 	{
 		setBehaviour(Behaviour.ROVING);
 	}
@@ -97,7 +96,7 @@ public class FightingAI extends AITemplate
 	 * Just use default method
 	 */
 	@Override
-	protected void aggressiveBehaviour() throws InterruptedException
+	protected void aggressiveBehaviour()
 	{
 		defaultAggressiveBehaviour();
 	}
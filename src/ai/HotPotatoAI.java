@@ -2,15 +2,16 @@ package ai;
 
 import java.awt.Point;
 
+import ai.pathfinding.FlowFields;
 import ai.pathfinding.StaticHeuristics;
 import resources.Character;
 import resources.Resources;
 
 /**
- * TODO
  * An AI to compete in the Hot Potato gamemode
- * They should run away from the player who has the potato
- * Or, if they have it, do standard aggressive mode from Fighting
+ * They run away from the player who has the potato
+ * Or, if they have it, chase the nearest player
+ * Which way to go comes from the {@link FlowFields} shared by every AI in the game
  * 
  * @author Oliver Gratton
  *
@@ -18,16 +19,20 @@ import resources.Resources;
 public class HotPotatoAI extends AITemplate
 {
 
-	private Character bombHolder;
-	private double distToBomb;
+	// how many tiles of the flow field to follow at a time
+	private static final int ROUTE_LENGTH = 8;
+
+	private FlowFields flowFields; // shared with the other AIs in the game
+	private int routeUpdate = -1; // the flow fields our waypoints came from
 	
 	public HotPotatoAI(Resources resources, Character character)
 	{
 		super(resources, character);
+		flowFields = resources.getFlowFields();
 	}
 
 	@Override
-	protected void commonBehaviour() throws InterruptedException
+	protected void commonBehaviour()
 	{
 		// XXX don't need moveAwayFromEdge as there are always walls in HotPotato, right...?
 
@@ -46,7 +51,7 @@ public class HotPotatoAI extends AITemplate
 	 * we get here by accident
 	 */
 	@Override
-	protected void rovingBehaviour() throws InterruptedException
+	protected void rovingBehaviour()
 	{
 		// TODO Auto-generated method stub
 		// fairly similar to Fighting except for the behaviour changes
@@ -67,77 +72,25 @@ public class HotPotatoAI extends AITemplate
 	}
 
 	@Override
-	protected void cowardBehaviour() throws InterruptedException
+	protected void cowardBehaviour()
 	{
 		
 		if (!character.hasBomb())
 		{
-			if (waypoints.isEmpty())
+			// if the bomb holder is close, see if dashing or blocking keeps
+			// the bomb away from us
+			if (flowFields.hasHolder() && distToBombPlayer() < LOOKAHEAD_RANGE)
 			{
-				try
-				{
-					// try and find the player who has the bomb
-					bombHolder = scanForBombPlayer();
-				}
-				catch (NullPointerException e)
-				{
-					// if no-one else has it, assume we do
-					// should never happen
-					setBehaviour(Behaviour.AGGRESSIVE);
-//					System.out.println(">" + character.getName() + " has become aggressive through NPE");
-				}
-
-				// work out our distance to them
-				Point charPos = getOurLocation();
-				Point charTile = getCurrentTileCoords();
-				distToBomb = StaticHeuristics.euclidean(charPos, getTargetLocation(bombHolder));
-				
-				// get randPointOnMap
-				Point bestPoint = resources.getMap().randPointOnMap();
-				double bestDist = StaticHeuristics.euclidean(getTargetLocation(bombHolder), bestPoint);
-				
-				// while that is closer to the bomb than we are, try again (but only finite times)
-				// XXX arbitrary choice alert: numberOfTries
-				int numberOfTries = 500;
-				for (int i = 0; i < numberOfTries && (bestDist < distToBomb); i++)
-				{
-					Point samplePoint = resources.getMap().randPointOnMap();
-					double sampleDist = StaticHeuristics.euclidean(getTargetLocation(bombHolder), samplePoint);
-					if (sampleDist > distToBomb)
-					{
-						bestPoint = samplePoint;
-						bestDist = sampleDist;
-					}
-				}
-
-				// TODO check if we actually got a better point that current
-				if (bestDist > distToBomb)
-				{
-//					System.out.println("found a better spot");
-					// aStar.search to it
-					Point newDestTile = getTileCoords(bestPoint);
-					if (debug) resources.setAINextDest(bestPoint);
-					// check each of the waypoints is farther
-					if (charTile != null && newDestTile != null)
-					{
-						waypoints = convertWaypoints(aStar.search(charTile, newDestTile));
-						if (debug) resources.setDestList(waypoints);
-					}
-					
-					// now that we have a path to a far away point, we should check that this point doesn't
-					// take us closer to the bomb en route
-					
-				}
-				// else we're safer not moving
-
+				dashOrBlock(null);
 			}
-			else
+
+			// follow the flow away from the bomb holder, and take a new
+			// route whenever someone has moved
+			if (waypoints.isEmpty() || routeUpdate != flowFields.getUpdates())
 			{
-				// what to check when we have a list of waypoints to follow
-				// in order to escape the bombHolder
-				// TODO
+				followField(true);
+				// if there's nowhere better to go, we're safer not moving
 			}
-
 		}
 		else
 		{
@@ -149,17 +102,27 @@ public class HotPotatoAI extends AITemplate
 	}
 
 	/**
-	 * essentially the same as default except we want to stop being
-	 * aggressive if we no longer have the bomb
+	 * Chase the nearest player down the flow field while we have the bomb,
+	 * and stop being aggressive if we no longer have it
 	 */
 	@Override
-	protected void aggressiveBehaviour() throws InterruptedException
+	protected void aggressiveBehaviour()
 	{
 		if (character.hasBomb())
 		{
 			// TODO I think the problem is that when a player explodes their position remains, like a ghost
 			
-			defaultAggressiveBehaviour();
+			// when we are close to someone, try out dashing at them to pass
+			// it on, or just dash if we can't try it out
+			double distToNearestPlayer = distToNearestPlayer();
+			if (distToNearestPlayer < LOOKAHEAD_RANGE && !dashOrBlock(scanForNearestPlayer()) && distToNearestPlayer < 60) // XXX 60 is experimental threshold
+			{
+				character.requestDashing();
+			}
+			if (waypoints.isEmpty() || routeUpdate != flowFields.getUpdates())
+			{
+				followField(false);
+			}
 		}
 		else
 		{
@@ -168,6 +131,50 @@ public class HotPotatoAI extends AITemplate
 		}
 	}
 
+	/**
+	 * Take our next few waypoints from the flow fields
+	 * 
+	 * @param away true to run from the bomb holder, false to chase the
+	 *            nearest player
+	 */
+	private void followField(boolean away)
+	{
+		Point charTile = getCurrentTileCoords();
+		if (charTile == null)
+		{
+			return;
+		}
+		waypoints = convertWaypoints(flowFields.follow(charTile, away, ROUTE_LENGTH));
+		routeUpdate = flowFields.getUpdates();
+		normalToNextWaypoint = null;
+
+		// XXX debug
+		if (debug)
+		{
+			resources.setDestList(waypoints);
+			if (!waypoints.isEmpty())
+			{
+				resources.setAINextDest(waypoints.getLast());
+			}
+		}
+	}
+
+	/**
+	 * @return the distance to the player who has the bomb, or
+	 *         Double.MAX_VALUE if no one else has it
+	 */
+	private double distToBombPlayer()
+	{
+		try
+		{
+			return StaticHeuristics.euclidean(getOurLocation(), getTargetLocation(scanForBombPlayer()));
+		}
+		catch (NullPointerException e)
+		{
+			return Double.MAX_VALUE;
+		}
+	}
+
 	/**
 	 * Find the player who has the bomb
 	 * 
@@ -0,0 +1,250 @@
+package ai;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import physics.Physics;
+import resources.Character;
+import resources.Resources;
+import resources.Resources.Mode;
+import resources.WorldState;
+
+/**
+ * Decides whether to dash or block by trying each out: the game is copied
+ * (see {@link WorldState}) and run on ahead for a little while with each
+ * choice, and whichever turns out best is taken.
+ *
+ * Every other player is assumed to keep holding the keys they are holding
+ * now, which is good enough for the half a second or so we look ahead.
+ *
+ * Rollouts aren't free, so one of these is shared by all the AIs in a game,
+ * and only so many rollouts are allowed each second of game time. When
+ * they've all been used up, AIs go back to deciding for themselves.
+ */
+public class Lookahead
+{
+	public enum Choice
+	{
+		NOTHING, DASH, BLOCK
+	};
+
+	private static final Choice[] CHOICES = Choice.values();
+
+	/**
+	 * How many rollouts all the AIs in a game may do between them each second
+	 */
+	public static final int ROLLOUTS_PER_SECOND = 300;
+
+	/**
+	 * How many ticks each rollout runs for. A dash or a block lasts 25.
+	 */
+	public static final int LOOKAHEAD_TICKS = 40;
+
+	// how much each outcome is worth
+	private static final double DEATH = -1000;
+	private static final double KILL = 200;
+	private static final double BOMB = 300;
+	private static final double EDGE = -1; // per unit of map cost where we end up
+	private static final double CLOSING_IN = -0.5; // per pixel between us and our target
+	private static final double STAMINA = 0.2; // per unit of stamina left
+
+	private final Resources resources;
+	private final WorldState state = new WorldState();
+	private final Physics physics;
+	private final int budget;
+
+	private double allowance; // rollouts we may still do
+	private int lastTime;
+
+	private long rollouts = 0;
+	private long rolloutNanos = 0;
+
+	/**
+	 * @param resources the game's resources
+	 * @param rolloutsPerSecond how many rollouts may be done each second of
+	 *            game time
+	 */
+	public Lookahead(Resources resources, int rolloutsPerSecond)
+	{
+		this.resources = resources;
+		this.budget = rolloutsPerSecond;
+		physics = Physics.headless(state.getResources());
+		lastTime = resources.getGlobalTimer();
+		allowance = maxAllowance();
+	}
+
+	/**
+	 * Try out doing nothing, dashing and blocking, if there are enough
+	 * rollouts left
+	 *
+	 * @param character the character choosing
+	 * @param target who they're after, or null if no one
+	 * @return the best choice, or null if there weren't enough rollouts left
+	 *         to decide
+	 */
+	public Choice choose(Character character, Character target)
+	{
+		if (!afford(CHOICES.length))
+		{
+			return null;
+		}
+
+		Choice best = Choice.NOTHING;
+		double bestScore = -Double.MAX_VALUE;
+		for (Choice choice : CHOICES)
+		{
+			// no point trying what we can't afford
+			if ((choice == Choice.DASH && character.getStamina() < character.getDashStamina())
+					|| (choice == Choice.BLOCK && character.getStamina() < character.getBlockStamina()))
+			{
+				continue;
+			}
+			double score = rollout(character, target, choice, LOOKAHEAD_TICKS);
+			// ties go to whatever came first, so doing nothing wins them
+			if (score > bestScore)
+			{
+				best = choice;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Run a copy of the game on ahead with the character making a choice now,
+	 * and see how well it turns out
+	 *
+	 * @param character the character choosing
+	 * @param target who they're after, or null if no one
+	 * @param choice what they do now
+	 * @param ticks how many ticks to run on for
+	 * @return how good the outcome is for the character (higher is better)
+	 */
+	public double rollout(Character character, Character target, Choice choice, int ticks)
+	{
+		long start = System.nanoTime();
+
+		state.copyFrom(resources);
+		Character us = state.copyOf(character);
+		if (us == null)
+		{
+			return DEATH;
+		}
+		if (choice == Choice.DASH)
+		{
+			us.requestDashing();
+		}
+		else if (choice == Choice.BLOCK)
+		{
+			us.setBlocking(true);
+		}
+
+		physics.simulate(ticks);
+		double score = score(character, us, state.copyOf(target));
+
+		rollouts++;
+		rolloutNanos += System.nanoTime() - start;
+		return score;
+	}
+
+	/**
+	 * @return how many rollouts have been done
+	 */
+	public long getRollouts()
+	{
+		return rollouts;
+	}
+
+	/**
+	 * @return how many rollouts could be done in a second at the rate they've
+	 *         been going so far, or 0 if none have been done
+	 */
+	public double getRolloutsPerSecond()
+	{
+		return rolloutNanos == 0 ? 0 : rollouts * 1e9 / rolloutNanos;
+	}
+
+	/**
+	 * @return how many rollouts may be done each second of game time
+	 */
+	public int getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Use up some rollouts, if there are enough left. More are allowed as
+	 * the game's timer goes on.
+	 */
+	private boolean afford(int wanted)
+	{
+		int now = resources.getGlobalTimer();
+		if (now != lastTime)
+		{
+			allowance = Math.min(maxAllowance(), allowance + (now - lastTime) * (double) budget / Physics.TICKS_PER_SECOND);
+			lastTime = now;
+		}
+		if (allowance < wanted)
+		{
+			return false;
+		}
+		allowance -= wanted;
+		return true;
+	}
+
+	/**
+	 * Unused rollouts are kept for a tenth of a second at most, so that they
+	 * can't all be saved up for one tick
+	 */
+	private double maxAllowance()
+	{
+		return Math.max(CHOICES.length, budget / 10.0);
+	}
+
+	private double score(Character character, Character us, Character target)
+	{
+		if (us.isDead() || us.isFalling())
+		{
+			return DEATH;
+		}
+
+		double score = 0;
+
+		// anyone we knock off
+		ArrayList<Character> players = resources.getPlayerList();
+		for (int i = 0; i < players.size(); i++)
+		{
+			Character real = players.get(i);
+			Character copy = state.copyOf(real);
+			if (copy != null && copy != us && !real.isFalling() && copy.isFalling() && copy.getLastCollidedWith() == us)
+			{
+				score += KILL;
+			}
+		}
+
+		// getting rid of the bomb, or being given it
+		if (resources.mode == Mode.HotPotato && character.hasBomb() != us.hasBomb())
+		{
+			score += us.hasBomb() ? -BOMB : BOMB;
+		}
+
+		// staying away from the edge
+		Point tile = resources.getMap().tileCoords(us.getX(), us.getY());
+		double[][] costMask = resources.getMap().getCostMask();
+		if (costMask != null && tile != null && tile.x >= 0 && tile.x < costMask.length && tile.y >= 0 && tile.y < costMask[0].length)
+		{
+			score += EDGE * costMask[tile.x][tile.y];
+		}
+
+		// getting closer to who we're after
+		if (target != null && !target.isDead())
+		{
+			double dx = target.getX() - us.getX();
+			double dy = target.getY() - us.getY();
+			score += CLOSING_IN * Math.sqrt(dx * dx + dy * dy);
+		}
+
+		score += STAMINA * us.getStamina();
+		return score;
+	}
+}
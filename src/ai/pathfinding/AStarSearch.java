@@ -1,37 +1,47 @@
 package ai.pathfinding;
 
 import java.awt.Point;
-import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
-import java.util.TreeSet;
 
-import resources.Map.Tile;
+import metrics.FlightEvents;
 import resources.Resources;
+import resources.TileGrid;
 
 /**
  * Perform A* search on a 2D array of tiles
+ * The searching itself is done by {@link GridAStar}, on flat copies of the
+ * map's walkable tiles and costs made when this is created.
+ * Each search is recorded as a ballin.PathSearch event (see
+ * {@link FlightEvents}) when the flight recorder is on.
  * @author Oliver Gratton
  *
  */
 public class AStarSearch
 {
-	private PriorityQueue<SearchNode> frontier;
-	private TreeSet<Point> visited;
-	private Point goal;
-	private SearchNode current;
-	private double costSoFar;
-	
 	private final int width, height;
-
-	private Resources resources;
+	private final boolean[] walkable;
+	private final double[] cost;
+	private final Resources resources;
 
 	public AStarSearch(Resources resources)
 	{
 		this.resources = resources;
-		
-		width = resources.getMap().getCostMask().length;
-		height = resources.getMap().getCostMask()[0].length;
+		double[][] costMask = resources.getMap().getCostMask();
+		width = costMask.length;
+		height = costMask[0].length;
+
+		// look the bad tiles up once, rather than on every search
+		walkable = new boolean[width * height];
+		cost = new double[width * height];
+		TileGrid grid = resources.getMap().getTileGrid();
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				walkable[x * height + y] = grid.isWalkable(x, y);
+				cost[x * height + y] = costMask[x][y];
+			}
+		}
 	}
 
 	/**
@@ -42,46 +52,26 @@ public class AStarSearch
 	 */
 	public LinkedList<Point> search(Point start, Point goal)
 	{
-		// reset all the fields
-		this.frontier = new PriorityQueue<SearchNode>(SearchNode.priorityComparator()); // sorts by cost + heuristic.
-		this.visited = new TreeSet<Point>(new PointComparator());
-		this.goal = goal;
-		this.costSoFar = 0;
-		this.current = new SearchNode(start, new SearchNode(), costSoFar, goal);
-
 		// first check if we're already there somehow
 		if (start.equals(goal))
 		{
 			return new LinkedList<Point>();
 		}
-
-		// generate frontier by getting 8 surrounding tiles
-		addNeighbours();
-		//System.out.println(frontier);
-		LinkedList<Point> ll = new LinkedList<Point>();
-
-		boolean success = false;
-		// explore best looking (first) option in frontier until there are no more unexplored reachable states
-		while (!frontier.isEmpty() && !success)
+		if (!inside(start) || !inside(goal))
 		{
-			// 	set current to the head of the frontier
-			this.current = frontier.poll();
+			return new LinkedList<Point>();
+		}
 
-			if (!visited.contains(current.getLocation()))
-			{
-				if (current.getLocation().equals(goal))
-				{
-					//System.out.println("Found the goal!");
-					ll = reconstructPath();
-					success = true;
-					break;
-				}
-				//System.out.println("Searching " + current.getLocation().getX() + ", " + current.getLocation().getY());
-				//System.out.println(frontier);
-				visited.add(current.getLocation());
-				addNeighbours();
-			}
+		Object event = FlightEvents.beginPathSearch();
+
+		GridAStar aStar = GridAStar.forThread();
+		int length = aStar.search(width, height, walkable, cost, start.x * height + start.y, goal.x * height + goal.y);
 
+		LinkedList<Point> ll = new LinkedList<Point>();
+		int[] path = aStar.getPath();
+		for (int i = 0; i < length; i++)
+		{
+			ll.addLast(new Point(path[i] / height, path[i] % height));
 		}
 
 		// just before returning the final list,
@@ -89,78 +79,23 @@ public class AStarSearch
 		// elements are corners.
 		// this may be awkward with linked lists
 		ll = smoothPath(ll);
-		return ll;
-	}
 
-	/**
-	 * Add neighbours of tile to frontier (don't include 'bad' tiles e.g. abyss,
-	 * wall, etc.)
-	 * 
-	 * @param tile tile whose (up to) 8 neighbours we are to add to the frontier
-	 * @return
-	 */
-	private void addNeighbours()
-	{
-		ArrayList<SearchNode> neighbours = new ArrayList<SearchNode>();
-		Point curLoc = current.getLocation();
-		for (int i = -1; i < 2; i++)
+		if (event != null)
 		{
-			if ((curLoc.x + i) < width && (curLoc.x + i) >= 0)
-			{
-				for (int j = -1; j < 2; j++)
-				{
-					if ((curLoc.y + j) < height && (curLoc.y + j) >= 0)
-					{
-						// don't want to add the current node in again
-						if (!(i == 0 && j == 0))
-						{
-							int neiX = curLoc.x + i;
-							int neiY = curLoc.y + j;
-							Point neiLoc = new Point(neiX, neiY);
-							Tile neiTile = resources.getMap().tileAt(neiX, neiY); //getTileType(neiLoc);
-
-							// we only care if we've not seen it yet and we can walk on it
-							if (!visited.contains(neiLoc))
-							{
-								if (!resources.getBadTiles().contains(neiTile))
-								{
-									// cost of the move
-									//int cost = Math.abs(dirI) + Math.abs(dirJ);
-//									Point tileLoc = resources.getMap().tileCoords(neiX, neiY);
-									
-//									System.out.println(neiX + " " + neiY);
-									
-									double cost = resources.getMap().getCostMask()[neiX][neiY];
-									neighbours.add(new SearchNode(neiLoc, current, costSoFar + cost, goal));
-								}
-							}
-						}
-					}
-				}
-			}
+			FlightEvents.endPathSearch(event, resources.getSessionId(), "AStarSearch",
+					Math.max(Math.abs(goal.x - start.x), Math.abs(goal.y - start.y)), aStar.getExpanded(), length,
+					ll.size());
 		}
-
-		frontier.addAll(neighbours);
+		return ll;
 	}
 
 	/**
-	 * When we have found the goal as a search node, follow the parents back to
-	 * the source
-	 * Builds the list from the front so we don't need to reverse it
-	 * 
-	 * @return a list of points that lead from the start to the goal
+	 * @param p a tile
+	 * @return true if the tile is on the map
 	 */
-	private LinkedList<Point> reconstructPath()
+	private boolean inside(Point p)
 	{
-		SearchNode node = current;
-		LinkedList<Point> ll = new LinkedList<Point>();
-		while (!node.isEmpty())
-		{
-			ll.addFirst(node.getLocation());
-			node = node.getParent();
-		}
-
-		return ll;
+		return p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
 	}
 
 	/**
@@ -169,7 +104,7 @@ public class AStarSearch
 	 * @param dense the dense linked list to be pruned
 	 * @return a less dense list of waypoints for the AI to follow
 	 */
-	private LinkedList<Point> sparsifyPath(LinkedList<Point> dense, int gap)
+	private static LinkedList<Point> sparsifyPath(LinkedList<Point> dense, int gap)
 	{
 		if (dense.isEmpty())
 		{
@@ -201,7 +136,7 @@ public class AStarSearch
 	 * @param jagged path raw from A*
 	 * @return a smoothed version of jagged
 	 */
-	private LinkedList<Point> smoothPath(LinkedList<Point> jagged)
+	static LinkedList<Point> smoothPath(LinkedList<Point> jagged)
 	{
 		LinkedList<Point> sparse = sparsifyPath(jagged, 3); // only keep every third waypoint
 	
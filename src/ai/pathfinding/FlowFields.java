@@ -0,0 +1,445 @@
+package ai.pathfinding;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import resources.Character;
+import resources.Map;
+import resources.Resources;
+import resources.TickListener;
+import resources.TileGrid;
+
+/**
+ * Distance maps for Hot Potato, shared by all the AIs in a game.
+ *
+ * At the end of every tick where someone has moved to a new tile, two fields
+ * are worked out over the whole map: how far every tile is from the nearest
+ * player without the bomb (for the bomb holder to chase), and how far it is
+ * from the bomb holder (for everyone else to run from). Distances use the
+ * same costs as A*, so the fields steer clear of edges too.
+ *
+ * Running away isn't just going uphill from the bomb holder, which ends up in
+ * corners: the distances are turned negative and scaled up, and then
+ * smoothed out again, so that tiles with more room to run to around them are
+ * preferred.
+ *
+ * An AI then reads which way to go from its tile, without searching at all.
+ */
+public class FlowFields implements TickListener
+{
+	// how much more running away counts for than the distance to get there
+	private static final double FLEE_COEFFICIENT = -1.2;
+
+	private static final double ROOT_TWO = Math.sqrt(2);
+	private static final double UNREACHABLE = Double.MAX_VALUE;
+
+	private final Resources resources;
+	private final Map map;
+	private final TileGrid grid;
+	private final double[][] costMask;
+
+	private final int width, height;
+	private final boolean[] walkable;
+	private final double[] cost;
+
+	// the fields, and the best tile to go to next from each tile
+	private final double[] toTargets;
+	private final double[] fromHolder;
+	private final double[] flee;
+	private final int[] chaseNext;
+	private final int[] fleeNext;
+
+	// a heap of tiles to visit, allowing the same tile in more than once
+	private int[] heapTile;
+	private double[] heapKey;
+	private int heapSize;
+
+	private long positions = -1; // where everyone was when the fields were last worked out
+	private boolean hasHolder = false;
+	private int updates = 0;
+
+	/**
+	 * Make the fields for the current map. The map costs must have been
+	 * worked out already.
+	 *
+	 * @param resources the game's resources
+	 */
+	public FlowFields(Resources resources)
+	{
+		this.resources = resources;
+		map = resources.getMap();
+		costMask = map.getCostMask();
+		width = costMask.length;
+		height = costMask[0].length;
+
+		int tiles = width * height;
+		walkable = new boolean[tiles];
+		cost = new double[tiles];
+		grid = map.getTileGrid();
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				walkable[x * height + y] = grid.isWalkable(x, y);
+				cost[x * height + y] = costMask[x][y];
+			}
+		}
+
+		toTargets = new double[tiles];
+		fromHolder = new double[tiles];
+		flee = new double[tiles];
+		chaseNext = new int[tiles];
+		fleeNext = new int[tiles];
+		heapTile = new int[tiles];
+		heapKey = new double[tiles];
+	}
+
+	/**
+	 * @param map a map
+	 * @return true if these fields were made for the map as it is now
+	 */
+	public boolean isFor(Map map)
+	{
+		return this.map == map && costMask == map.getCostMask();
+	}
+
+	/**
+	 * Work the fields out again if anyone has moved to a different tile
+	 */
+	@Override
+	public void tickEnded(Resources resources)
+	{
+		update();
+	}
+
+	/**
+	 * Work the fields out again if anyone has moved to a different tile since
+	 * they were last worked out
+	 */
+	public void update()
+	{
+		ArrayList<Character> players = resources.getPlayerList();
+		Character holder = null;
+		long now = 17;
+		for (int i = 0; i < players.size(); i++)
+		{
+			Character c = players.get(i);
+			int tile = tileOf(c);
+			if (c.hasBomb() && tile >= 0)
+			{
+				holder = c;
+				now = now * 31 + tile + 1;
+			}
+			else
+			{
+				now = now * 31 - tile - 2;
+			}
+		}
+		if (now == positions)
+		{
+			return;
+		}
+		positions = now;
+		updates++;
+
+		hasHolder = holder != null;
+		if (!hasHolder)
+		{
+			return;
+		}
+
+		// the bomb holder chases whoever is nearest
+		int sources = 0;
+		for (int i = 0; i < players.size(); i++)
+		{
+			Character c = players.get(i);
+			int tile = tileOf(c);
+			if (c != holder && tile >= 0)
+			{
+				heapTile[sources++] = tile;
+			}
+		}
+		Arrays.fill(toTargets, UNREACHABLE);
+		for (int i = 0; i < sources; i++)
+		{
+			toTargets[heapTile[i]] = 0;
+		}
+		spread(toTargets);
+
+		// everyone else gets away from the bomb holder
+		Arrays.fill(fromHolder, UNREACHABLE);
+		fromHolder[tileOf(holder)] = 0;
+		spread(fromHolder);
+		for (int i = 0; i < flee.length; i++)
+		{
+			flee[i] = fromHolder[i] == UNREACHABLE ? UNREACHABLE : fromHolder[i] * FLEE_COEFFICIENT;
+		}
+		spread(flee);
+
+		for (int tile = 0; tile < chaseNext.length; tile++)
+		{
+			chaseNext[tile] = downhill(toTargets, tile);
+			fleeNext[tile] = downhill(flee, tile);
+		}
+	}
+
+	/**
+	 * @param tile a tile
+	 * @return the next tile for the bomb holder to go to from there to get to
+	 *         the nearest other player, or null if there's nowhere better
+	 */
+	public Point chase(Point tile)
+	{
+		return next(chaseNext, tile);
+	}
+
+	/**
+	 * @param tile a tile
+	 * @return the next tile to go to from there to get away from the bomb
+	 *         holder, or null if there's nowhere better
+	 */
+	public Point flee(Point tile)
+	{
+		return next(fleeNext, tile);
+	}
+
+	/**
+	 * Follow a field for a few tiles
+	 *
+	 * @param tile the tile to start from
+	 * @param away true to run away from the bomb holder, false to chase the
+	 *            nearest other player
+	 * @param steps the most tiles to go
+	 * @return waypoints along the way (not including the start), or an empty
+	 *         list if there's nowhere better to go
+	 */
+	public LinkedList<Point> follow(Point tile, boolean away, int steps)
+	{
+		LinkedList<Point> tiles = new LinkedList<Point>();
+		if (!hasHolder || !inside(tile))
+		{
+			return tiles;
+		}
+		int[] next = away ? fleeNext : chaseNext;
+		int current = tile.x * height + tile.y;
+		tiles.add(new Point(tile));
+		for (int i = 0; i < steps && next[current] >= 0; i++)
+		{
+			current = next[current];
+			tiles.add(new Point(current / height, current % height));
+		}
+		if (tiles.size() == 1)
+		{
+			return new LinkedList<Point>();
+		}
+		LinkedList<Point> waypoints = AStarSearch.smoothPath(tiles);
+		waypoints.removeFirst();
+		return waypoints;
+	}
+
+	/**
+	 * @return true if someone has the bomb, so the fields lead somewhere
+	 */
+	public boolean hasHolder()
+	{
+		return hasHolder;
+	}
+
+	/**
+	 * @return how many times the fields have been worked out. AIs can use
+	 *         this to tell if their route is out of date.
+	 */
+	public int getUpdates()
+	{
+		return updates;
+	}
+
+	/**
+	 * @param tile a tile
+	 * @return the distance from the tile to the bomb holder, or
+	 *         Double.MAX_VALUE if the holder can't be reached
+	 */
+	public double distanceFromHolder(Point tile)
+	{
+		return hasHolder && inside(tile) ? fromHolder[tile.x * height + tile.y] : UNREACHABLE;
+	}
+
+	/**
+	 * @param tile a tile
+	 * @return the distance from the tile to the nearest player without the
+	 *         bomb, or Double.MAX_VALUE if none can be reached
+	 */
+	public double distanceToTargets(Point tile)
+	{
+		return hasHolder && inside(tile) ? toTargets[tile.x * height + tile.y] : UNREACHABLE;
+	}
+
+	/**
+	 * Dijkstra's algorithm, starting from every tile with a value already
+	 */
+	private void spread(double[] field)
+	{
+		heapSize = 0;
+		for (int tile = 0; tile < field.length; tile++)
+		{
+			if (field[tile] != UNREACHABLE)
+			{
+				push(tile, field[tile]);
+			}
+		}
+
+		while (heapSize > 0)
+		{
+			double key = heapKey[0];
+			int current = pop();
+			if (key > field[current])
+			{
+				// already found a better way here
+				continue;
+			}
+			int cx = current / height;
+			int cy = current % height;
+			for (int i = -1; i < 2; i++)
+			{
+				for (int j = -1; j < 2; j++)
+				{
+					int nx = cx + i;
+					int ny = cy + j;
+					if ((i == 0 && j == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height)
+					{
+						continue;
+					}
+					int next = nx * height + ny;
+					if (!walkable[next])
+					{
+						continue;
+					}
+					double value = field[current] + ((i != 0 && j != 0) ? ROOT_TWO : 1) + cost[next];
+					if (value < field[next])
+					{
+						field[next] = value;
+						push(next, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the neighbour of a tile with the lowest value, or -1 if none
+	 *         are lower than the tile itself
+	 */
+	private int downhill(double[] field, int tile)
+	{
+		int best = -1;
+		double bestValue = field[tile];
+		int x = tile / height;
+		int y = tile % height;
+		for (int i = -1; i < 2; i++)
+		{
+			for (int j = -1; j < 2; j++)
+			{
+				int nx = x + i;
+				int ny = y + j;
+				if ((i == 0 && j == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height)
+				{
+					continue;
+				}
+				int next = nx * height + ny;
+				if (walkable[next] && field[next] < bestValue)
+				{
+					best = next;
+					bestValue = field[next];
+				}
+			}
+		}
+		return best;
+	}
+
+	private Point next(int[] next, Point tile)
+	{
+		if (!hasHolder || !inside(tile) || next[tile.x * height + tile.y] < 0)
+		{
+			return null;
+		}
+		int to = next[tile.x * height + tile.y];
+		return new Point(to / height, to % height);
+	}
+
+	/**
+	 * @return the tile a character is on, or -1 if they're dead or off the
+	 *         map
+	 */
+	private int tileOf(Character c)
+	{
+		if (c.isDead())
+		{
+			return -1;
+		}
+		return grid.indexAt(c.getX(), c.getY());
+	}
+
+	private boolean inside(Point p)
+	{
+		return p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
+	}
+
+	private void push(int tile, double key)
+	{
+		if (heapSize == heapTile.length)
+		{
+			heapTile = Arrays.copyOf(heapTile, heapSize * 2);
+			heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0)
+		{
+			int up = (i - 1) >> 1;
+			if (heapKey[up] <= key)
+			{
+				break;
+			}
+			heapTile[i] = heapTile[up];
+			heapKey[i] = heapKey[up];
+			i = up;
+		}
+		heapTile[i] = tile;
+		heapKey[i] = key;
+	}
+
+	private int pop()
+	{
+		int top = heapTile[0];
+		heapSize--;
+		if (heapSize > 0)
+		{
+			int tile = heapTile[heapSize];
+			double key = heapKey[heapSize];
+			int i = 0;
+			while (true)
+			{
+				int child = (i << 1) + 1;
+				if (child >= heapSize)
+				{
+					break;
+				}
+				if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child])
+				{
+					child++;
+				}
+				if (heapKey[child] >= key)
+				{
+					break;
+				}
+				heapTile[i] = heapTile[child];
+				heapKey[i] = heapKey[child];
+				i = child;
+			}
+			heapTile[i] = tile;
+			heapKey[i] = key;
+		}
+		return top;
+	}
+}
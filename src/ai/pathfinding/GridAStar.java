@@ -0,0 +1,315 @@
+package ai.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A* over a grid of tiles, where every tile is just an index (x * height + y)
+ * into flat arrays. The open set is a binary heap of tile indices which knows
+ * where each tile is in it, so a tile's cost can be lowered in place instead
+ * of adding it again.
+ *
+ * Searching allocates nothing: each thread gets its own buffers from
+ * {@link #forThread()}, which only grow when a bigger map comes along. Tiles
+ * are stamped with the number of the search that last touched them, so the
+ * buffers never need clearing either.
+ */
+public class GridAStar
+{
+	private static final ThreadLocal<GridAStar> BUFFERS = ThreadLocal.withInitial(GridAStar::new);
+
+	private static final double ROOT_TWO = Math.sqrt(2);
+
+	// per tile
+	private double[] g = new double[0];
+	private double[] f = new double[0];
+	private int[] parent = new int[0];
+	private int[] heapIndex = new int[0];
+	private int[] seen = new int[0];
+	private int[] closed = new int[0];
+
+	// the open set, as a heap of tile indices
+	private int[] heap = new int[0];
+	private int heapSize;
+
+	// the last path found, from the start to the goal
+	private int[] path = new int[0];
+	private int pathLength;
+	private double pathCost;
+
+	private int searchId = 0;
+	private int expanded;
+
+	/**
+	 * @return The search buffers for the current thread.
+	 */
+	public static GridAStar forThread()
+	{
+		return BUFFERS.get();
+	}
+
+	/**
+	 * Find the cheapest path between two tiles. Moving to a tile costs the
+	 * distance moved (1, or root 2 diagonally) plus that tile's cost, so the
+	 * straight line distance never overestimates.
+	 *
+	 * @param width number of tiles along the first index
+	 * @param height number of tiles along the second index
+	 * @param walkable whether each tile (x * height + y) can be walked on
+	 * @param cost the extra cost of moving on to each tile
+	 * @param start the index of the start tile
+	 * @param goal the index of the goal tile
+	 * @return the number of tiles in the path (including the start and the
+	 *         goal), or 0 if the goal can't be reached
+	 */
+	public int search(int width, int height, boolean[] walkable, double[] cost, int start, int goal)
+	{
+		return search(width, height, walkable, cost, start, goal, 0, 0, width - 1, height - 1);
+	}
+
+	/**
+	 * Find the cheapest path between two tiles without leaving a rectangle of
+	 * the grid
+	 *
+	 * @param width number of tiles along the first index
+	 * @param height number of tiles along the second index
+	 * @param walkable whether each tile (x * height + y) can be walked on
+	 * @param cost the extra cost of moving on to each tile
+	 * @param start the index of the start tile
+	 * @param goal the index of the goal tile
+	 * @param minX the lowest x the path may use
+	 * @param minY the lowest y the path may use
+	 * @param maxX the highest x the path may use
+	 * @param maxY the highest y the path may use
+	 * @return the number of tiles in the path (including the start and the
+	 *         goal), or 0 if the goal can't be reached inside the rectangle
+	 */
+	public int search(int width, int height, boolean[] walkable, double[] cost, int start, int goal, int minX,
+			int minY, int maxX, int maxY)
+	{
+		int tiles = width * height;
+		ensureCapacity(tiles);
+		nextSearch();
+		heapSize = 0;
+		pathLength = 0;
+		pathCost = 0;
+		expanded = 0;
+
+		int goalX = goal / height;
+		int goalY = goal % height;
+
+		open(start, 0, heuristic(start, height, goalX, goalY), -1);
+
+		while (heapSize > 0)
+		{
+			int current = pop();
+			if (current == goal)
+			{
+				reconstruct(goal);
+				return pathLength;
+			}
+			closed[current] = searchId;
+			expanded++;
+
+			int cx = current / height;
+			int cy = current % height;
+			for (int i = -1; i < 2; i++)
+			{
+				int nx = cx + i;
+				if (nx < minX || nx > maxX)
+				{
+					continue;
+				}
+				for (int j = -1; j < 2; j++)
+				{
+					int ny = cy + j;
+					if ((i == 0 && j == 0) || ny < minY || ny > maxY)
+					{
+						continue;
+					}
+					int next = nx * height + ny;
+					if (!walkable[next] || closed[next] == searchId)
+					{
+						continue;
+					}
+
+					double step = (i != 0 && j != 0) ? ROOT_TWO : 1;
+					double newG = g[current] + step + cost[next];
+					if (seen[next] != searchId)
+					{
+						open(next, newG, newG + heuristic(next, height, goalX, goalY), current);
+					}
+					else if (newG < g[next])
+					{
+						// found a cheaper way to a tile already in the open set
+						f[next] = newG + (f[next] - g[next]);
+						g[next] = newG;
+						parent[next] = current;
+						siftUp(heapIndex[next]);
+					}
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return the tiles in the last path found, from the start to the goal.
+	 *         Only the first {@link #getPathLength()} are used, and they are
+	 *         overwritten by the next search on this thread.
+	 */
+	public int[] getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * @return the number of tiles in the last path found
+	 */
+	public int getPathLength()
+	{
+		return pathLength;
+	}
+
+	/**
+	 * @return the total cost of the last path found
+	 */
+	public double getPathCost()
+	{
+		return pathCost;
+	}
+
+	/**
+	 * @return the number of tiles expanded by the last search
+	 */
+	public int getExpanded()
+	{
+		return expanded;
+	}
+
+	private static double heuristic(int tile, int height, int goalX, int goalY)
+	{
+		double dx = tile / height - goalX;
+		double dy = tile % height - goalY;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private void open(int tile, double tileG, double tileF, int from)
+	{
+		seen[tile] = searchId;
+		g[tile] = tileG;
+		f[tile] = tileF;
+		parent[tile] = from;
+		heap[heapSize] = tile;
+		heapIndex[tile] = heapSize;
+		heapSize++;
+		siftUp(heapSize - 1);
+	}
+
+	private int pop()
+	{
+		int top = heap[0];
+		heapSize--;
+		if (heapSize > 0)
+		{
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i)
+	{
+		int tile = heap[i];
+		double key = f[tile];
+		while (i > 0)
+		{
+			int up = (i - 1) >> 1;
+			int above = heap[up];
+			if (f[above] <= key)
+			{
+				break;
+			}
+			heap[i] = above;
+			heapIndex[above] = i;
+			i = up;
+		}
+		heap[i] = tile;
+		heapIndex[tile] = i;
+	}
+
+	private void siftDown(int i)
+	{
+		int tile = heap[i];
+		double key = f[tile];
+		while (true)
+		{
+			int child = (i << 1) + 1;
+			if (child >= heapSize)
+			{
+				break;
+			}
+			if (child + 1 < heapSize && f[heap[child + 1]] < f[heap[child]])
+			{
+				child++;
+			}
+			int below = heap[child];
+			if (f[below] >= key)
+			{
+				break;
+			}
+			heap[i] = below;
+			heapIndex[below] = i;
+			i = child;
+		}
+		heap[i] = tile;
+		heapIndex[tile] = i;
+	}
+
+	private void reconstruct(int goal)
+	{
+		pathCost = g[goal];
+		int length = 0;
+		for (int tile = goal; tile != -1; tile = parent[tile])
+		{
+			path[length++] = tile;
+		}
+		// it was built from the goal back, so turn it round
+		for (int i = 0, j = length - 1; i < j; i++, j--)
+		{
+			int temp = path[i];
+			path[i] = path[j];
+			path[j] = temp;
+		}
+		pathLength = length;
+	}
+
+	private void nextSearch()
+	{
+		searchId++;
+		if (searchId == Integer.MAX_VALUE)
+		{
+			// start the stamps again rather than let them wrap round
+			Arrays.fill(seen, 0);
+			Arrays.fill(closed, 0);
+			searchId = 1;
+		}
+	}
+
+	private void ensureCapacity(int tiles)
+	{
+		if (g.length >= tiles)
+		{
+			return;
+		}
+		g = new double[tiles];
+		f = new double[tiles];
+		parent = new int[tiles];
+		heapIndex = new int[tiles];
+		seen = new int[tiles];
+		closed = new int[tiles];
+		heap = new int[tiles];
+		path = new int[tiles];
+	}
+}
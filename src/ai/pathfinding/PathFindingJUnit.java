@@ -4,11 +4,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
 import java.util.TreeSet;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import resources.Character;
+import resources.Map;
+import resources.MapCosts;
 import resources.Resources;
 
 public class PathFindingJUnit
@@ -165,4 +171,312 @@ public class PathFindingJUnit
 		assertTrue(emptySearchNode.isEmpty());
 		assertTrue(!testSearchNode.isEmpty());
 	}
+
+	/**
+	 * Tests GridAStar finds paths as cheap as a plain Dijkstra search would,
+	 * around walls and costly tiles, and gives up on unreachable goals
+	 */
+	@Test
+	public void gridAStarTest()
+	{
+		int width = 20;
+		int height = 15;
+		Random random = new Random(42);
+		boolean[] walkable = new boolean[width * height];
+		double[] cost = new double[width * height];
+		for (int i = 0; i < walkable.length; i++)
+		{
+			walkable[i] = random.nextInt(4) != 0;
+			cost[i] = random.nextInt(3) == 0 ? random.nextDouble() * 10 : 0;
+		}
+
+		GridAStar aStar = GridAStar.forThread();
+		for (int trial = 0; trial < 50; trial++)
+		{
+			int start = random.nextInt(walkable.length);
+			int goal = random.nextInt(walkable.length);
+			walkable[start] = true;
+			walkable[goal] = true;
+
+			double expected = dijkstra(width, height, walkable, cost, start, goal);
+			int length = aStar.search(width, height, walkable, cost, start, goal);
+			if (expected == Double.MAX_VALUE)
+			{
+				assertEquals(0, length);
+				continue;
+			}
+			assertTrue(length > 0);
+			assertEquals(expected, aStar.getPathCost(), 1e-9);
+
+			// the path goes from the start to the goal, one walkable step at a time
+			int[] path = aStar.getPath();
+			assertEquals(start, path[0]);
+			assertEquals(goal, path[length - 1]);
+			for (int i = 1; i < length; i++)
+			{
+				assertTrue(walkable[path[i]]);
+				assertTrue(Math.abs(path[i] / height - path[i - 1] / height) <= 1);
+				assertTrue(Math.abs(path[i] % height - path[i - 1] % height) <= 1);
+			}
+		}
+	}
+
+	/**
+	 * Tests AStarSearch on a real map only gives waypoints on walkable tiles
+	 */
+	@Test
+	public void aStarSearchTest()
+	{
+		Resources.silent = true;
+		resources.setMap(new Map(1200, 650, Map.World.SPACE, "asteroid"));
+		new MapCosts(resources);
+		AStarSearch aStar = new AStarSearch(resources);
+
+		Point start = resources.getMap().tileCoords(600, 325);
+		Point goal = resources.getMap().tileCoords(450, 250);
+		LinkedList<Point> path = aStar.search(start, goal);
+		assertTrue(!path.isEmpty());
+		assertEquals(start, path.getFirst());
+		assertEquals(goal, path.getLast());
+		for (Point p : path)
+		{
+			assertTrue(!resources.getBadTiles().contains(resources.getMap().tileAt(p.x, p.y)));
+		}
+
+		// can't walk into the abyss
+		assertTrue(aStar.search(start, new Point(0, 0)).isEmpty());
+	}
+
+	/**
+	 * Tests the hierarchical planner finds a path whenever there is one, that
+	 * its paths are made of walkable steps, and that they cost close to the
+	 * cheapest path
+	 */
+	@Test
+	public void pathPlannerTest()
+	{
+		Resources.silent = true;
+		String[] maps = { "asteroid", "map1", "ballin", "pit" };
+		for (String name : maps)
+		{
+			resources.setMap(new Map(1200, 650, Map.World.SPACE, name));
+			new MapCosts(resources);
+			PathPlanner planner = resources.getPathPlanner();
+			assertTrue(planner.getEntranceCount() > 0);
+
+			double[][] costMask = resources.getMap().getCostMask();
+			int width = costMask.length;
+			int height = costMask[0].length;
+			boolean[] walkable = new boolean[width * height];
+			double[] cost = new double[width * height];
+			for (int x = 0; x < width; x++)
+			{
+				for (int y = 0; y < height; y++)
+				{
+					walkable[x * height + y] = !resources.getBadTiles().contains(resources.getMap().tileAt(x, y));
+					cost[x * height + y] = costMask[x][y];
+				}
+			}
+
+			Random random = new Random(7);
+			double planned = 0;
+			double cheapest = 0;
+			for (int trial = 0; trial < 200; trial++)
+			{
+				Point start = new Point(random.nextInt(width), random.nextInt(height));
+				Point goal = new Point(random.nextInt(width), random.nextInt(height));
+				int length = GridAStar.forThread().search(width, height, walkable, cost, start.x * height + start.y,
+						goal.x * height + goal.y);
+				double optimal = GridAStar.forThread().getPathCost();
+				LinkedList<Point> tiles = planner.searchTiles(start, goal);
+				if (length == 0 || start.equals(goal))
+				{
+					assertTrue(tiles == null);
+					continue;
+				}
+				assertTrue(tiles != null);
+				assertEquals(start, tiles.getFirst());
+				assertEquals(goal, tiles.getLast());
+
+				double pathCost = 0;
+				Point last = null;
+				for (Point p : tiles)
+				{
+					if (last != null)
+					{
+						assertTrue(Math.abs(p.x - last.x) <= 1 && Math.abs(p.y - last.y) <= 1 && !p.equals(last));
+						assertTrue(walkable[p.x * height + p.y]);
+						pathCost += (p.x != last.x && p.y != last.y ? Math.sqrt(2) : 1) + cost[p.x * height + p.y];
+					}
+					last = p;
+				}
+				assertTrue(pathCost >= optimal - 1e-9);
+				planned += pathCost;
+				cheapest += optimal;
+			}
+			// the entrances don't give the very cheapest paths, but they should be close
+			assertTrue(name + " " + planned / cheapest, planned < cheapest * 1.15);
+		}
+	}
+
+	/**
+	 * Tests requests made during a tick are planned at the end of it, with
+	 * AIs after the same path sharing a search
+	 */
+	@Test
+	public void pathPlannerBatchTest()
+	{
+		Resources.silent = true;
+		resources.setMap(new Map(1200, 650, Map.World.SPACE, "asteroid"));
+		new MapCosts(resources);
+		PathPlanner planner = resources.getPathPlanner();
+		assertTrue(planner == resources.getPathPlanner());
+
+		Point start = resources.getMap().tileCoords(600, 325);
+		Point goal = resources.getMap().tileCoords(450, 250);
+		Point otherGoal = resources.getMap().tileCoords(700, 400);
+		PathPlanner.Request[] requests = new PathPlanner.Request[6];
+		for (int i = 0; i < 5; i++)
+		{
+			requests[i] = planner.request(start, goal);
+		}
+		requests[5] = planner.request(start, otherGoal);
+		for (PathPlanner.Request request : requests)
+		{
+			assertTrue(!request.isDone());
+		}
+
+		int searches = planner.getSearches();
+		resources.publishChanges();
+		assertEquals(searches + 2, planner.getSearches());
+		for (PathPlanner.Request request : requests)
+		{
+			assertTrue(request.isDone());
+			assertTrue(!request.getPath().isEmpty());
+		}
+		assertEquals(requests[0].getPath(), requests[4].getPath());
+		assertEquals(planner.search(start, goal), requests[0].getPath());
+		assertEquals(otherGoal, requests[5].getPath().getLast());
+
+		// a new map needs a new planner
+		resources.setMap(new Map(1200, 650, Map.World.SPACE, "map1"));
+		new MapCosts(resources);
+		assertTrue(planner != resources.getPathPlanner());
+	}
+
+	/**
+	 * Tests the flow fields lead the bomb holder to the other players and
+	 * everyone else away from the bomb holder, and are only worked out again
+	 * when someone moves
+	 */
+	@Test
+	public void flowFieldsTest()
+	{
+		Resources.silent = true;
+		resources.setMap(new Map(1200, 650, Map.World.SPACE, "asteroid"));
+		new MapCosts(resources);
+		Map map = resources.getMap();
+
+		Character holder = new Character(Character.Class.WIZARD, 0);
+		holder.setX(600);
+		holder.setY(325);
+		resources.addPlayerToList(holder);
+		Character runner = new Character(Character.Class.HORSE, 1);
+		runner.setX(650);
+		runner.setY(325);
+		resources.addPlayerToList(runner);
+		Character other = new Character(Character.Class.HORSE, 2);
+		other.setX(450);
+		other.setY(250);
+		resources.addPlayerToList(other);
+
+		FlowFields fields = resources.getFlowFields();
+		assertTrue(fields == resources.getFlowFields());
+
+		// nobody has the bomb, so there's nowhere to go
+		fields.update();
+		assertTrue(!fields.hasHolder());
+		assertTrue(fields.follow(map.tileCoords(650, 325), true, 8).isEmpty());
+
+		holder.hasBomb(true);
+		fields.update();
+		int updates = fields.getUpdates();
+		assertTrue(fields.hasHolder());
+
+		// running away only ever gets farther from the holder in the end
+		Point start = map.tileCoords(runner.getX(), runner.getY());
+		Point tile = start;
+		for (int i = 0; i < 20 && fields.flee(tile) != null; i++)
+		{
+			Point next = fields.flee(tile);
+			assertTrue(Math.abs(next.x - tile.x) <= 1 && Math.abs(next.y - tile.y) <= 1);
+			tile = next;
+		}
+		assertTrue(fields.distanceFromHolder(tile) > fields.distanceFromHolder(start));
+		assertEquals(tile, fields.follow(start, true, 20).getLast());
+
+		// chasing gets closer to someone every step, until we're there
+		tile = map.tileCoords(holder.getX(), holder.getY());
+		int steps = 0;
+		while (fields.chase(tile) != null)
+		{
+			Point next = fields.chase(tile);
+			assertTrue(fields.distanceToTargets(next) < fields.distanceToTargets(tile));
+			tile = next;
+			steps++;
+		}
+		assertTrue(steps > 0);
+		assertEquals(0, fields.distanceToTargets(tile), 0);
+
+		// nobody has moved, so nothing needs working out again
+		resources.publishChanges();
+		assertEquals(updates, fields.getUpdates());
+		runner.setX(700);
+		resources.publishChanges();
+		assertEquals(updates + 1, fields.getUpdates());
+	}
+
+	/**
+	 * The cost of the cheapest path, found the slow way
+	 */
+	private double dijkstra(int width, int height, boolean[] walkable, double[] cost, int start, int goal)
+	{
+		double[] dist = new double[width * height];
+		boolean[] done = new boolean[width * height];
+		Arrays.fill(dist, Double.MAX_VALUE);
+		dist[start] = 0;
+		while (true)
+		{
+			int best = -1;
+			for (int i = 0; i < dist.length; i++)
+			{
+				if (!done[i] && dist[i] != Double.MAX_VALUE && (best < 0 || dist[i] < dist[best]))
+				{
+					best = i;
+				}
+			}
+			if (best < 0 || best == goal)
+			{
+				return dist[goal];
+			}
+			done[best] = true;
+			for (int i = -1; i < 2; i++)
+			{
+				for (int j = -1; j < 2; j++)
+				{
+					int x = best / height + i;
+					int y = best % height + j;
+					if ((i == 0 && j == 0) || x < 0 || x >= width || y < 0 || y >= height || !walkable[x * height + y])
+					{
+						continue;
+					}
+					double d = dist[best] + (i != 0 && j != 0 ? Math.sqrt(2) : 1) + cost[x * height + y];
+					if (d < dist[x * height + y])
+					{
+						dist[x * height + y] = d;
+					}
+				}
+			}
+		}
+	}
 }
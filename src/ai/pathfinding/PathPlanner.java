@@ -0,0 +1,626 @@
+package ai.pathfinding;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import metrics.FlightEvents;
+import resources.Map;
+import resources.Resources;
+import resources.TickListener;
+import resources.TileGrid;
+
+/**
+ * Plans paths for all the AIs in a game.
+ *
+ * The map is split into square clusters of tiles. Wherever two clusters
+ * touch along a run of walkable tiles there is an entrance, and the cheapest
+ * path between every pair of entrances in a cluster is worked out when the
+ * planner is made. Planning a path is then a search over the entrances, which
+ * is only then turned back into tiles one cluster at a time (HPA*). If the
+ * entrances can't find a way, the whole grid is searched instead, so a path
+ * is found whenever there is one.
+ *
+ * AIs ask for paths with {@link #request(Point, Point)}. Requests are queued
+ * and all the requests made during a tick are planned together at the end of
+ * it, so AIs asking for the same path only cause one search. Each search is
+ * recorded as a ballin.PathSearch event (see {@link FlightEvents}) when the
+ * flight recorder is on.
+ */
+public class PathPlanner implements TickListener
+{
+	/**
+	 * How many tiles across each cluster is
+	 */
+	public static final int CLUSTER_SIZE = 8;
+
+	/**
+	 * The most tiles along a border between two entrances
+	 */
+	public static final int ENTRANCE_SPACING = 3;
+
+	private final Resources resources;
+	private final Map map;
+	private final double[][] costMask;
+
+	private final int width, height;
+	private final boolean[] walkable;
+	private final double[] cost;
+	private final int clustersX, clustersY;
+
+	// the entrances: which tile each is, the entrances in each cluster, and
+	// the cost of going from each entrance to the ones it is connected to
+	private final int[] nodeTile;
+	private final int[][] clusterNodes;
+	private final int[][] edgeTo;
+	private final double[][] edgeCost;
+
+	private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<Request>();
+	private final AtomicInteger searches = new AtomicInteger();
+
+	/**
+	 * Make a planner for the current map. The map costs must have been
+	 * worked out already.
+	 *
+	 * @param resources the game's resources
+	 */
+	public PathPlanner(Resources resources)
+	{
+		this.resources = resources;
+		map = resources.getMap();
+		costMask = map.getCostMask();
+		width = costMask.length;
+		height = costMask[0].length;
+
+		walkable = new boolean[width * height];
+		cost = new double[width * height];
+		TileGrid grid = map.getTileGrid();
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				walkable[x * height + y] = grid.isWalkable(x, y);
+				cost[x * height + y] = costMask[x][y];
+			}
+		}
+
+		clustersX = (width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		clustersY = (height + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+
+		// find the entrances between neighbouring clusters
+		Graph graph = new Graph();
+		for (int cx = 0; cx < clustersX; cx++)
+		{
+			for (int cy = 0; cy < clustersY; cy++)
+			{
+				int x = (cx + 1) * CLUSTER_SIZE - 1;
+				int y = (cy + 1) * CLUSTER_SIZE - 1;
+				if (x + 1 < width)
+				{
+					findEntrances(graph, x, cy * CLUSTER_SIZE, true);
+				}
+				if (y + 1 < height)
+				{
+					findEntrances(graph, cx * CLUSTER_SIZE, y, false);
+				}
+			}
+		}
+
+		// connect the entrances inside each cluster
+		GridAStar aStar = GridAStar.forThread();
+		for (int c = 0; c < graph.clusters.size(); c++)
+		{
+			ArrayList<Integer> nodes = graph.clusters.get(c);
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				for (int j = i + 1; j < nodes.size(); j++)
+				{
+					int a = nodes.get(i);
+					int b = nodes.get(j);
+					int tileA = graph.tiles.get(a);
+					int tileB = graph.tiles.get(b);
+					if (searchCluster(aStar, tileA, tileB, c) > 0)
+					{
+						// the same path backwards costs the same, apart from the tiles at each end
+						double there = aStar.getPathCost();
+						graph.connect(a, b, there);
+						graph.connect(b, a, there - cost[tileB] + cost[tileA]);
+					}
+				}
+			}
+		}
+
+		int nodes = graph.tiles.size();
+		nodeTile = new int[nodes];
+		edgeTo = new int[nodes][];
+		edgeCost = new double[nodes][];
+		for (int n = 0; n < nodes; n++)
+		{
+			nodeTile[n] = graph.tiles.get(n);
+			ArrayList<Integer> to = graph.edgeTo.get(n);
+			ArrayList<Double> costs = graph.edgeCost.get(n);
+			edgeTo[n] = new int[to.size()];
+			edgeCost[n] = new double[to.size()];
+			for (int e = 0; e < to.size(); e++)
+			{
+				edgeTo[n][e] = to.get(e);
+				edgeCost[n][e] = costs.get(e);
+			}
+		}
+		clusterNodes = new int[clustersX * clustersY][];
+		for (int c = 0; c < clusterNodes.length; c++)
+		{
+			ArrayList<Integer> inCluster = graph.clusters.get(c);
+			clusterNodes[c] = new int[inCluster.size()];
+			for (int i = 0; i < inCluster.size(); i++)
+			{
+				clusterNodes[c][i] = inCluster.get(i);
+			}
+		}
+	}
+
+	/**
+	 * @param map a map
+	 * @return true if this planner was made for the map as it is now
+	 */
+	public boolean isFor(Map map)
+	{
+		return this.map == map && costMask == map.getCostMask();
+	}
+
+	/**
+	 * Find a path straight away, on this thread
+	 *
+	 * @param start the tile to start from
+	 * @param goal the tile to get to
+	 * @return a list of waypoints between the start and goal tiles, or an
+	 *         empty list if there is no way there
+	 */
+	public LinkedList<Point> search(Point start, Point goal)
+	{
+		Object event = FlightEvents.beginPathSearch();
+
+		LinkedList<Point> tiles = searchTiles(start, goal);
+		// smoothing uses up the list of tiles
+		int length = tiles == null ? 0 : tiles.size();
+		LinkedList<Point> path = tiles == null ? new LinkedList<Point>() : AStarSearch.smoothPath(tiles);
+
+		if (event != null)
+		{
+			FlightEvents.endPathSearch(event, resources.getSessionId(), "PathPlanner",
+					Math.max(Math.abs(goal.x - start.x), Math.abs(goal.y - start.y)), 0, length, path.size());
+		}
+		return path;
+	}
+
+	/**
+	 * Ask for a path to be planned at the end of the current tick
+	 *
+	 * @param start the tile to start from
+	 * @param goal the tile to get to
+	 * @return the request, which will be given the path when it is planned
+	 */
+	public Request request(Point start, Point goal)
+	{
+		Request request = new Request(start, goal);
+		queue.add(request);
+		return request;
+	}
+
+	/**
+	 * Plan all the paths asked for during the tick
+	 */
+	@Override
+	public void tickEnded(Resources resources)
+	{
+		HashMap<Long, LinkedList<Point>> planned = null;
+		Request request;
+		while ((request = queue.poll()) != null)
+		{
+			if (planned == null)
+			{
+				planned = new HashMap<Long, LinkedList<Point>>();
+			}
+			// AIs after the same path share one search
+			long key = ((long) request.start.x << 48) ^ ((long) request.start.y << 32) ^ ((long) request.goal.x << 16)
+					^ request.goal.y;
+			LinkedList<Point> path = planned.get(key);
+			if (path == null)
+			{
+				path = search(request.start, request.goal);
+				planned.put(key, path);
+			}
+			request.complete(new LinkedList<Point>(path));
+		}
+	}
+
+	/**
+	 * @return the number of paths actually searched for so far
+	 */
+	public int getSearches()
+	{
+		return searches.get();
+	}
+
+	/**
+	 * @return the number of entrances between clusters
+	 */
+	public int getEntranceCount()
+	{
+		return nodeTile.length;
+	}
+
+	/**
+	 * Find the tiles on a path between two tiles
+	 *
+	 * @param start the tile to start from
+	 * @param goal the tile to get to
+	 * @return every tile on the path, or null if there is no way there (or
+	 *         we're already there)
+	 */
+	LinkedList<Point> searchTiles(Point start, Point goal)
+	{
+		if (start.equals(goal) || !inside(start) || !inside(goal))
+		{
+			return null;
+		}
+		searches.incrementAndGet();
+
+		int startTile = start.x * height + start.y;
+		int goalTile = goal.x * height + goal.y;
+		if (!walkable[goalTile])
+		{
+			return null;
+		}
+
+		GridAStar aStar = GridAStar.forThread();
+		LinkedList<Point> tiles = new LinkedList<Point>();
+
+		// if they're in the same cluster, try staying inside it
+		int startCluster = clusterOf(startTile);
+		int goalCluster = clusterOf(goalTile);
+		if (startCluster == goalCluster && searchCluster(aStar, startTile, goalTile, startCluster) > 0)
+		{
+			addPath(tiles, aStar, true);
+			return tiles;
+		}
+
+		int[] route = searchEntrances(aStar, startTile, goalTile, startCluster, goalCluster);
+		if (route == null)
+		{
+			// the entrances don't cover every way between clusters, so search everything
+			if (aStar.search(width, height, walkable, cost, startTile, goalTile) == 0)
+			{
+				return null;
+			}
+			addPath(tiles, aStar, true);
+			return tiles;
+		}
+
+		// turn the route through the entrances back into tiles
+		int from = startTile;
+		for (int i = 0; i <= route.length; i++)
+		{
+			int to = i < route.length ? nodeTile[route[i]] : goalTile;
+			if (from == to)
+			{
+				continue;
+			}
+			if (clusterOf(from) != clusterOf(to))
+			{
+				// crossing from one cluster into the next
+				tiles.addLast(new Point(to / height, to % height));
+			}
+			else
+			{
+				searchCluster(aStar, from, to, clusterOf(from));
+				addPath(tiles, aStar, tiles.isEmpty());
+			}
+			from = to;
+		}
+		if (tiles.getFirst().x != start.x || tiles.getFirst().y != start.y)
+		{
+			tiles.addFirst(new Point(start));
+		}
+		return tiles;
+	}
+
+	/**
+	 * Find the cheapest route from the start tile, through the entrances, to
+	 * the goal tile
+	 *
+	 * @return the entrances on the route, in order, or null if there isn't one
+	 */
+	private int[] searchEntrances(GridAStar aStar, int startTile, int goalTile, int startCluster, int goalCluster)
+	{
+		int nodes = nodeTile.length;
+		int startNode = nodes;
+		int goalNode = nodes + 1;
+
+		// how much it costs to get from the start to the entrances of its
+		// cluster, and from the entrances of the goal's cluster to the goal
+		int[] startEdges = clusterNodes[startCluster];
+		double[] startCosts = new double[startEdges.length];
+		for (int i = 0; i < startEdges.length; i++)
+		{
+			boolean found = searchCluster(aStar, startTile, nodeTile[startEdges[i]], startCluster) > 0;
+			startCosts[i] = found ? aStar.getPathCost() : Double.MAX_VALUE;
+		}
+		double[] toGoal = new double[nodes];
+		Arrays.fill(toGoal, Double.MAX_VALUE);
+		for (int n : clusterNodes[goalCluster])
+		{
+			if (searchCluster(aStar, nodeTile[n], goalTile, goalCluster) > 0)
+			{
+				toGoal[n] = aStar.getPathCost();
+			}
+		}
+
+		// A* over the entrances; there are few enough of them to just look
+		// through them all for the next one to expand
+		double[] g = new double[nodes + 2];
+		double[] f = new double[nodes + 2];
+		int[] parent = new int[nodes + 2];
+		boolean[] open = new boolean[nodes + 2];
+		boolean[] closed = new boolean[nodes + 2];
+		Arrays.fill(g, Double.MAX_VALUE);
+		g[startNode] = 0;
+		f[startNode] = 0;
+		parent[startNode] = -1;
+		open[startNode] = true;
+
+		int goalX = goalTile / height;
+		int goalY = goalTile % height;
+		while (true)
+		{
+			int current = -1;
+			for (int n = 0; n < nodes + 2; n++)
+			{
+				if (open[n] && (current < 0 || f[n] < f[current]))
+				{
+					current = n;
+				}
+			}
+			if (current < 0)
+			{
+				return null;
+			}
+			if (current == goalNode)
+			{
+				break;
+			}
+			open[current] = false;
+			closed[current] = true;
+
+			if (current == startNode)
+			{
+				for (int i = 0; i < startEdges.length; i++)
+				{
+					relax(current, startEdges[i], startCosts[i], g, f, parent, open, closed, goalX, goalY);
+				}
+			}
+			else
+			{
+				for (int e = 0; e < edgeTo[current].length; e++)
+				{
+					relax(current, edgeTo[current][e], edgeCost[current][e], g, f, parent, open, closed, goalX, goalY);
+				}
+				if (toGoal[current] != Double.MAX_VALUE)
+				{
+					relax(current, goalNode, toGoal[current], g, f, parent, open, closed, goalX, goalY);
+				}
+			}
+		}
+
+		int length = 0;
+		for (int n = parent[goalNode]; n != startNode; n = parent[n])
+		{
+			length++;
+		}
+		int[] route = new int[length];
+		for (int n = parent[goalNode]; n != startNode; n = parent[n])
+		{
+			route[--length] = n;
+		}
+		return route;
+	}
+
+	private void relax(int from, int to, double step, double[] g, double[] f, int[] parent, boolean[] open,
+			boolean[] closed, int goalX, int goalY)
+	{
+		if (step == Double.MAX_VALUE || closed[to])
+		{
+			return;
+		}
+		double newG = g[from] + step;
+		if (newG < g[to])
+		{
+			g[to] = newG;
+			if (to < nodeTile.length)
+			{
+				double dx = nodeTile[to] / height - goalX;
+				double dy = nodeTile[to] % height - goalY;
+				f[to] = newG + Math.sqrt(dx * dx + dy * dy);
+			}
+			else
+			{
+				f[to] = newG;
+			}
+			parent[to] = from;
+			open[to] = true;
+		}
+	}
+
+	/**
+	 * Add entrances wherever a run of walkable tiles crosses the border
+	 * between two clusters
+	 *
+	 * @param graph the graph being built
+	 * @param x the x of the first tile on the near side of the border
+	 * @param y the y of the first tile on the near side of the border
+	 * @param vertical true if the border is between clusters side by side in
+	 *            x, false if they are side by side in y
+	 */
+	private void findEntrances(Graph graph, int x, int y, boolean vertical)
+	{
+		int length = vertical ? Math.min(CLUSTER_SIZE, height - y) : Math.min(CLUSTER_SIZE, width - x);
+		int runStart = -1;
+		for (int i = 0; i <= length; i++)
+		{
+			boolean open = false;
+			if (i < length)
+			{
+				int near = vertical ? x * height + y + i : (x + i) * height + y;
+				int far = vertical ? near + height : near + 1;
+				open = walkable[near] && walkable[far];
+			}
+			if (open && runStart < 0)
+			{
+				runStart = i;
+			}
+			else if (!open && runStart >= 0)
+			{
+				// spread the entrances out evenly along the run, so paths
+				// don't have to go out of their way to reach one
+				int run = i - runStart;
+				int entrances = (run + ENTRANCE_SPACING - 1) / ENTRANCE_SPACING;
+				for (int e = 0; e < entrances; e++)
+				{
+					int along = runStart + run * (2 * e + 1) / (2 * entrances);
+					int near = vertical ? x * height + y + along : (x + along) * height + y;
+					int far = vertical ? near + height : near + 1;
+					int a = graph.node(near, clusterOf(near));
+					int b = graph.node(far, clusterOf(far));
+					graph.connect(a, b, 1 + cost[far]);
+					graph.connect(b, a, 1 + cost[near]);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	/**
+	 * Search between two tiles without leaving a cluster
+	 *
+	 * @return the length of the path found, or 0 if there isn't one
+	 */
+	private int searchCluster(GridAStar aStar, int from, int to, int cluster)
+	{
+		int minX = (cluster / clustersY) * CLUSTER_SIZE;
+		int minY = (cluster % clustersY) * CLUSTER_SIZE;
+		int maxX = Math.min(minX + CLUSTER_SIZE, width) - 1;
+		int maxY = Math.min(minY + CLUSTER_SIZE, height) - 1;
+		return aStar.search(width, height, walkable, cost, from, to, minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Add the tiles of the last path found to a list
+	 *
+	 * @param tiles the list
+	 * @param aStar the search that found the path
+	 * @param includeStart whether to add the first tile, or if it's already
+	 *            the last one in the list
+	 */
+	private void addPath(LinkedList<Point> tiles, GridAStar aStar, boolean includeStart)
+	{
+		int[] path = aStar.getPath();
+		for (int i = includeStart ? 0 : 1; i < aStar.getPathLength(); i++)
+		{
+			tiles.addLast(new Point(path[i] / height, path[i] % height));
+		}
+	}
+
+	private int clusterOf(int tile)
+	{
+		return (tile / height / CLUSTER_SIZE) * clustersY + (tile % height) / CLUSTER_SIZE;
+	}
+
+	private boolean inside(Point p)
+	{
+		return p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
+	}
+
+	/**
+	 * A path an AI has asked for
+	 */
+	public static class Request
+	{
+		private final Point start, goal;
+		private volatile LinkedList<Point> path;
+
+		private Request(Point start, Point goal)
+		{
+			this.start = new Point(start);
+			this.goal = new Point(goal);
+		}
+
+		/**
+		 * @return true if the path has been planned
+		 */
+		public boolean isDone()
+		{
+			return path != null;
+		}
+
+		/**
+		 * @return the path, or null if it hasn't been planned yet
+		 */
+		public LinkedList<Point> getPath()
+		{
+			return path;
+		}
+
+		private void complete(LinkedList<Point> path)
+		{
+			this.path = path;
+		}
+	}
+
+	/**
+	 * The entrances while they are being found
+	 */
+	private class Graph
+	{
+		final ArrayList<Integer> tiles = new ArrayList<Integer>();
+		final ArrayList<ArrayList<Integer>> edgeTo = new ArrayList<ArrayList<Integer>>();
+		final ArrayList<ArrayList<Double>> edgeCost = new ArrayList<ArrayList<Double>>();
+		final ArrayList<ArrayList<Integer>> clusters = new ArrayList<ArrayList<Integer>>();
+		final HashMap<Integer, Integer> nodes = new HashMap<Integer, Integer>();
+
+		Graph()
+		{
+			for (int c = 0; c < clustersX * clustersY; c++)
+			{
+				clusters.add(new ArrayList<Integer>());
+			}
+		}
+
+		/**
+		 * @return the entrance on a tile, added if there isn't one yet
+		 */
+		int node(int tile, int cluster)
+		{
+			Integer node = nodes.get(tile);
+			if (node == null)
+			{
+				node = tiles.size();
+				nodes.put(tile, node);
+				tiles.add(tile);
+				edgeTo.add(new ArrayList<Integer>());
+				edgeCost.add(new ArrayList<Double>());
+				clusters.get(cluster).add(node);
+			}
+			return node;
+		}
+
+		void connect(int from, int to, double cost)
+		{
+			edgeTo.get(from).add(to);
+			edgeCost.get(from).add(cost);
+		}
+	}
+}
@@ -26,6 +26,7 @@ public class Deathmatch extends Thread implements GameModeFFA {
 	private boolean isServer = false;
 	private boolean singlePlayer = false;
 	private boolean endGame = false;
+	private int ticks = 0;
 
 	private String victoryMusic = "grandma";
 
@@ -39,6 +40,7 @@ public class Deathmatch extends Thread implements GameModeFFA {
 		this.resources = resources;
 
 		// Set up game
+		resources.setTimer(30);
 		setAllLives(-1);
 		randomRespawn();
 		resources.mode = Mode.Deathmatch;
@@ -56,6 +58,7 @@ public class Deathmatch extends Thread implements GameModeFFA {
 		this.singlePlayer = singlePlayer;
 
 		// Set up game
+		resources.setTimer(30);
 		setAllLives(-1);
 		if (!isServer) {
 			randomRespawn();
@@ -69,7 +72,6 @@ public class Deathmatch extends Thread implements GameModeFFA {
 	 * Run the logic of this game mode.
 	 */
 	public void run() {
-		resources.setTimer(30);
 		// Start game
 		Physics p = new Physics(resources, false);
 
@@ -103,7 +105,19 @@ public class Deathmatch extends Thread implements GameModeFFA {
 		}
 
 		p.start();
-		
+		startGame();
+
+		// Graphics g = new Graphics(resources, null, false);
+		// g.start();
+
+		GameModeTimer.play(this);
+		// Game has ended
+		p.halt();
+		finishGame();
+	}
+
+	@Override
+	public void startGame() {
 		World style = resources.getMap().getWorldType();
 		switch (style)
 		{
@@ -117,34 +131,31 @@ public class Deathmatch extends Thread implements GameModeFFA {
 				resources.setSong("thirty");
 				break;
 		}
+	}
 
-		// Graphics g = new Graphics(resources, null, false);
-		// g.start();
-
-		while (!isGameOver() && !endGame) {
-			try {
-				if (resources.getTimer() == 1) {
-					Thread.sleep(1000);
-					resources.incrementTimer(-1);
-					//Thread.sleep(1000);
-					break;
-				} else {
-
-					if (resources.getTimer() % 5 == 0) {
-						spawnPowerup();
-					}
-
-					Thread.sleep(1000);
-					resources.incrementTimer(-1);
-
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	@Override
+	public boolean tick() {
+		if (isGameOver() || endGame) {
+			return false;
+		}
+		// At the start of each second, spawn a powerup every 5 seconds
+		if (ticks % Physics.TICKS_PER_SECOND == 0 && resources.getTimer() != 1 && resources.getTimer() % 5 == 0) {
+			spawnPowerup();
+		}
+		ticks++;
+		// At the end of each second, count down the timer
+		if (ticks % Physics.TICKS_PER_SECOND == 0) {
+			boolean lastSecond = resources.getTimer() == 1;
+			resources.incrementTimer(-1);
+			if (lastSecond) {
+				return false;
 			}
 		}
-		// Game has ended
-		p.pause();
-		
+		return !isGameOver() && !endGame;
+	}
+
+	@Override
+	public void finishGame() {
 		resources.setSong(victoryMusic);
 		resources.setGameOver(true);
 	}
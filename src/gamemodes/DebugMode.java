@@ -95,4 +95,27 @@ public class DebugMode extends Thread implements GameModeFFA
 	public void setEndGame(boolean b) {
 		endGame = b;
 	}
+
+	/**
+	 * Nothing to set up
+	 */
+	@Override
+	public void startGame() {
+	}
+
+	/**
+	 * debug never ends
+	 * @return always true
+	 */
+	@Override
+	public boolean tick() {
+		return true;
+	}
+
+	/**
+	 * debug never ends
+	 */
+	@Override
+	public void finishGame() {
+	}
 }
@@ -36,4 +36,21 @@ public interface GameModeFFA {
 	 */
 	public void setEndGame(boolean b);
 
+	/**
+	 * Get the game going, once any countdown has finished.
+	 */
+	public void startGame();
+
+	/**
+	 * Advance the game mode's timers by one physics tick.
+	 * 
+	 * @return Is the game still going?
+	 */
+	public boolean tick();
+
+	/**
+	 * Wrap up the game once it has ended.
+	 */
+	public void finishGame();
+
 }
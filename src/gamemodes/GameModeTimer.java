@@ -0,0 +1,30 @@
+package gamemodes;
+
+import physics.FixedTimestep;
+import physics.Physics;
+
+/**
+ * Runs a game mode's timers at the same rate as the physics, for games which
+ * run a thread per game mode (i.e. everything apart from the server).
+ */
+final class GameModeTimer {
+
+	private GameModeTimer() {
+	}
+
+	/**
+	 * Tick a game mode on the current thread until it ends.
+	 * 
+	 * @param mode
+	 *            The game mode to run.
+	 */
+	static void play(GameModeFFA mode) {
+		final FixedTimestep[] loop = new FixedTimestep[1];
+		loop[0] = new FixedTimestep(() -> {
+			if (!mode.tick()) {
+				loop[0].stop();
+			}
+		}, Physics.DELAY, Physics.TICKS_PER_SECOND);
+		loop[0].run();
+	}
+}
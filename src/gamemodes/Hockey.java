@@ -47,7 +47,7 @@ public class Hockey extends Thread implements GameModeTeams {
 			}
 		}
 		// Game has ended
-		p.pause();
+		p.halt();
 		System.out.println("TIME'S UP");
 		getWinner();
 		if (draw) {
@@ -30,6 +30,7 @@ public class HotPotato extends Thread implements GameModeFFA {
 	private boolean isServer;
 	private boolean singlePlayer = false;
 	private boolean endGame = false;
+	private int ticks = 0;
 
 	/**
 	 * Create a new hot potato game mode.
@@ -41,6 +42,7 @@ public class HotPotato extends Thread implements GameModeFFA {
 		this.resources = resources;
 
 		// Set up game
+		resources.setTimer(0);
 		setAllLives(1);
 		randomRespawn();
 
@@ -59,6 +61,7 @@ public class HotPotato extends Thread implements GameModeFFA {
 		this.resources = resources;
 
 		// Set up game
+		resources.setTimer(0);
 		setAllLives(1);
 		if(!isServer) {
 			randomRespawn();
@@ -76,7 +79,6 @@ public class HotPotato extends Thread implements GameModeFFA {
 	 * Run the logic of this game mode.
 	 */
 	public void run() {
-		resources.setTimer(0);
 		// start the game
 		Physics p = new Physics(resources, false);
 		if (!isServer) {
@@ -102,7 +104,16 @@ public class HotPotato extends Thread implements GameModeFFA {
 		}
 
 		p.start();
-		
+		startGame();
+
+		GameModeTimer.play(this);
+		// Game has ended
+		p.halt();
+		finishGame();
+	}
+
+	@Override
+	public void startGame() {
 		World style = resources.getMap().getWorldType();
 		switch (style)
 		{
@@ -121,21 +132,28 @@ public class HotPotato extends Thread implements GameModeFFA {
 		}
 
 		placeBomb();
-		while (!isGameOver() && !endGame) {
-			try {
-				Thread.sleep(100);
-				resources.incrementTimer(1);
-				// Detonate bomb every 5 seconds
-				if (resources.getTimer() % 50 == 0 && playersRemaining() > 1) {
-					explodeBomb();
-					placeBomb();
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	}
+
+	@Override
+	public boolean tick() {
+		if (isGameOver() || endGame) {
+			return false;
+		}
+		ticks++;
+		// The timer counts in tenths of a second
+		if (ticks % (Physics.TICKS_PER_SECOND / 10) == 0) {
+			resources.incrementTimer(1);
+			// Detonate bomb every 5 seconds
+			if (resources.getTimer() % 50 == 0 && playersRemaining() > 1) {
+				explodeBomb();
+				placeBomb();
 			}
 		}
-		// Game has ended
-		p.pause();
+		return true;
+	}
+
+	@Override
+	public void finishGame() {
 		resources.setGameOver(true);
 		resources.setSong("grandma");
 	}
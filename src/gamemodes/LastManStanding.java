@@ -102,7 +102,16 @@ public class LastManStanding extends Thread implements GameModeFFA {
 		}
 
 		p.start();
-		
+		startGame();
+
+		GameModeTimer.play(this);
+		// Game has ended
+		p.halt();
+		finishGame();
+	}
+
+	@Override
+	public void startGame() {
 		World style = resources.getMap().getWorldType();
 		switch (style)
 		{
@@ -119,16 +128,15 @@ public class LastManStanding extends Thread implements GameModeFFA {
 				resources.setSong("swing");
 				break;
 		}
-		
-		while (!isGameOver() && !endGame) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		// Game has ended
-		p.pause();
+	}
+
+	@Override
+	public boolean tick() {
+		return !isGameOver() && !endGame;
+	}
+
+	@Override
+	public void finishGame() {
 		resources.setGameOver(true);
 		resources.setSong("grandma");
 	}
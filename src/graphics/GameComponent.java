@@ -271,6 +271,7 @@ public class GameComponent extends JFrame implements ActionListener {
 			} else if (key == downKey) {
 				characters.get(firstPlayerIndex).setDown(false);
 			}
+			characters.get(firstPlayerIndex).publish();
 		}
 
 		@Override
@@ -287,9 +288,13 @@ public class GameComponent extends JFrame implements ActionListener {
 			} else if (key == downKey) {
 				characters.get(firstPlayerIndex).setDown(true);
 			} else if (key == dashKey) {
-				characters.get(firstPlayerIndex).requestDashing();
+				// dashing and blocking write to the body, which only the
+				// game's tick does
+				Character c = characters.get(firstPlayerIndex);
+				resources.runOnTick(() -> c.requestDashing());
 			} else if (key == blockKey) {
-				characters.get(firstPlayerIndex).setBlocking(true);
+				Character c = characters.get(firstPlayerIndex);
+				resources.runOnTick(() -> c.setBlocking(true));
 			} else if (key == KeyEvent.VK_BACK_SPACE) {
 				System.exit(0);
 			} else if (key == KeyEvent.VK_Z) {
@@ -307,6 +312,7 @@ public class GameComponent extends JFrame implements ActionListener {
 				toFront();
 				requestFocus();
 			}
+			characters.get(firstPlayerIndex).publish();
 
 		}
 	}
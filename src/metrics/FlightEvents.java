@@ -0,0 +1,165 @@
+package metrics;
+
+/**
+ * Records the flight recorder events (ticks, snapshot broadcasts, path
+ * searches and map costs), if the JVM has a flight recorder.
+ *
+ * The events extend jdk.jfr.Event, which a Java 8 runtime older than 8u262
+ * doesn't have, so the game only ever calls these methods. They check for
+ * jdk.jfr.Event once, and only go on to the event classes (through
+ * {@link JfrEvents}) if it's there. Without it every begin method returns
+ * null and the end methods do nothing.
+ *
+ * Each begin method returns the started event, which is handed back to the
+ * matching end method along with the details to record.
+ */
+public final class FlightEvents {
+
+	/**
+	 * Whether the flight recorder API is there.
+	 */
+	public static final boolean AVAILABLE = available();
+
+	private FlightEvents() {
+	}
+
+	private static boolean available() {
+		try {
+			Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Start timing a physics tick.
+	 *
+	 * @return The event, or null if there's no flight recorder.
+	 */
+	public static Object beginPhysicsTick() {
+		return AVAILABLE ? JfrEvents.beginPhysicsTick() : null;
+	}
+
+	/**
+	 * Finish timing a physics tick, and record it if the recorder wants it.
+	 *
+	 * @param event
+	 *            The event from {@link #beginPhysicsTick()}.
+	 * @param sessionId
+	 *            The session the game belongs to.
+	 * @param tick
+	 *            The tick number.
+	 * @param characters
+	 *            The number of characters.
+	 * @param powerups
+	 *            The number of powerups.
+	 */
+	public static void endPhysicsTick(Object event, String sessionId, int tick, int characters, int powerups) {
+		if (event != null) {
+			JfrEvents.endPhysicsTick(event, sessionId, tick, characters, powerups);
+		}
+	}
+
+	/**
+	 * Start timing a snapshot broadcast.
+	 *
+	 * @return The event, or null if there's no flight recorder.
+	 */
+	public static Object beginSnapshotBroadcast() {
+		return AVAILABLE ? JfrEvents.beginSnapshotBroadcast() : null;
+	}
+
+	/**
+	 * Finish timing a snapshot broadcast, and record it if the recorder wants
+	 * it.
+	 *
+	 * @param event
+	 *            The event from {@link #beginSnapshotBroadcast()}.
+	 * @param sessionId
+	 *            The session the snapshot was sent to.
+	 * @param sequence
+	 *            The snapshot's sequence number.
+	 * @param clients
+	 *            The number of clients it was sent to.
+	 * @param encodes
+	 *            The number of distinct deltas encoded.
+	 * @param bytesEncoded
+	 *            The bytes encoded.
+	 * @param bytesSent
+	 *            The bytes sent.
+	 */
+	public static void endSnapshotBroadcast(Object event, String sessionId, int sequence, int clients, int encodes,
+			long bytesEncoded, long bytesSent) {
+		if (event != null) {
+			JfrEvents.endSnapshotBroadcast(event, sessionId, sequence, clients, encodes, bytesEncoded, bytesSent);
+		}
+	}
+
+	/**
+	 * Start timing a path search.
+	 *
+	 * @return The event, or null if there's no flight recorder.
+	 */
+	public static Object beginPathSearch() {
+		return AVAILABLE ? JfrEvents.beginPathSearch() : null;
+	}
+
+	/**
+	 * Finish timing a path search, and record it if the recorder wants it.
+	 *
+	 * @param event
+	 *            The event from {@link #beginPathSearch()}.
+	 * @param sessionId
+	 *            The session the search was for.
+	 * @param searcher
+	 *            AStarSearch or PathPlanner.
+	 * @param distance
+	 *            The Chebyshev distance between the start and goal tiles.
+	 * @param expanded
+	 *            How many tiles were taken off the open set.
+	 * @param pathLength
+	 *            Tiles on the path found, or 0 if there isn't one.
+	 * @param waypoints
+	 *            Waypoints left after smoothing the path.
+	 */
+	public static void endPathSearch(Object event, String sessionId, String searcher, int distance, int expanded,
+			int pathLength, int waypoints) {
+		if (event != null) {
+			JfrEvents.endPathSearch(event, sessionId, searcher, distance, expanded, pathLength, waypoints);
+		}
+	}
+
+	/**
+	 * Start timing setting up a map's costs.
+	 *
+	 * @return The event, or null if there's no flight recorder.
+	 */
+	public static Object beginMapCosts() {
+		return AVAILABLE ? JfrEvents.beginMapCosts() : null;
+	}
+
+	/**
+	 * Finish timing setting up a map's costs, and record it if the recorder
+	 * wants it.
+	 *
+	 * @param event
+	 *            The event from {@link #beginMapCosts()}.
+	 * @param sessionId
+	 *            The session the map is for.
+	 * @param map
+	 *            The map's name.
+	 * @param tiles
+	 *            The number of tiles.
+	 * @param cached
+	 *            Whether the masks were already worked out for this map.
+	 * @param loaded
+	 *            Whether the proximity mask was read from a file.
+	 */
+	public static void endMapCosts(Object event, String sessionId, String map, int tiles, boolean cached,
+			boolean loaded) {
+		if (event != null) {
+			JfrEvents.endMapCosts(event, sessionId, map, tiles, cached, loaded);
+		}
+	}
+}
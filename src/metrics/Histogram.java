@@ -0,0 +1,150 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often values fall in each of a fixed set of buckets, so that
+ * percentiles can be worked out later without keeping every value. The
+ * buckets double in width every 16 buckets (like an HDR histogram), so every
+ * value from 0 to Long.MAX_VALUE is counted to within about 6%, in under 1000
+ * buckets.
+ *
+ * Recording a value is a few bit operations and an atomic increment, and can
+ * be done from any number of threads at once. All the work of finding
+ * percentiles is done when they're read.
+ */
+public class Histogram implements HistogramMBean {
+
+	// each power of two is split into 2^SUB_BITS buckets
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Count a value.
+	 *
+	 * @param value
+	 *            The value. Negative values are counted as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @param value
+	 *            A value, at least 0.
+	 * @return The bucket the value is counted in.
+	 */
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @param bucket
+	 *            A bucket.
+	 * @return The largest value counted in the bucket.
+	 */
+	static long highest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the value which a percentage of the values are at or below.
+	 *
+	 * @param percentile
+	 *            The percentage, from 0 to 100.
+	 * @return The highest value in the bucket the percentile falls in (but no
+	 *         more than the largest value counted), or 0 if nothing has been
+	 *         counted.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= wanted) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public long get50thPercentile() {
+		return getPercentile(50);
+	}
+
+	@Override
+	public long get90thPercentile() {
+		return getPercentile(90);
+	}
+
+	@Override
+	public long get99thPercentile() {
+		return getPercentile(99);
+	}
+
+	@Override
+	public long get999thPercentile() {
+		return getPercentile(99.9);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
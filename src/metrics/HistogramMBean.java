@@ -0,0 +1,47 @@
+package metrics;
+
+/**
+ * What JMX shows of a {@link Histogram}.
+ */
+public interface HistogramMBean {
+
+	/**
+	 * @return The number of values counted.
+	 */
+	public long getCount();
+
+	/**
+	 * @return The mean of the values counted.
+	 */
+	public double getMean();
+
+	/**
+	 * @return The largest value counted.
+	 */
+	public long getMax();
+
+	/**
+	 * @return The median.
+	 */
+	public long get50thPercentile();
+
+	/**
+	 * @return The 90th percentile.
+	 */
+	public long get90thPercentile();
+
+	/**
+	 * @return The 99th percentile.
+	 */
+	public long get99thPercentile();
+
+	/**
+	 * @return The 99.9th percentile.
+	 */
+	public long get999thPercentile();
+
+	/**
+	 * Forget everything counted so far.
+	 */
+	public void reset();
+}
@@ -0,0 +1,91 @@
+package metrics;
+
+/**
+ * The half of {@link FlightEvents} that uses the event classes. Only called
+ * once FlightEvents has found jdk.jfr.Event, so nothing else needs to load
+ * them.
+ */
+final class JfrEvents {
+
+	private JfrEvents() {
+	}
+
+	static Object beginPhysicsTick() {
+		PhysicsTickEvent event = new PhysicsTickEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endPhysicsTick(Object started, String sessionId, int tick, int characters, int powerups) {
+		PhysicsTickEvent event = (PhysicsTickEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.sessionId = sessionId;
+			event.tick = tick;
+			event.characters = characters;
+			event.powerups = powerups;
+			event.commit();
+		}
+	}
+
+	static Object beginSnapshotBroadcast() {
+		SnapshotBroadcastEvent event = new SnapshotBroadcastEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endSnapshotBroadcast(Object started, String sessionId, int sequence, int clients, int encodes,
+			long bytesEncoded, long bytesSent) {
+		SnapshotBroadcastEvent event = (SnapshotBroadcastEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.sessionId = sessionId;
+			event.sequence = sequence;
+			event.clients = clients;
+			event.encodes = encodes;
+			event.bytesEncoded = bytesEncoded;
+			event.bytesSent = bytesSent;
+			event.commit();
+		}
+	}
+
+	static Object beginPathSearch() {
+		PathSearchEvent event = new PathSearchEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endPathSearch(Object started, String sessionId, String searcher, int distance, int expanded,
+			int pathLength, int waypoints) {
+		PathSearchEvent event = (PathSearchEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.sessionId = sessionId;
+			event.searcher = searcher;
+			event.distance = distance;
+			event.expanded = expanded;
+			event.pathLength = pathLength;
+			event.waypoints = waypoints;
+			event.commit();
+		}
+	}
+
+	static Object beginMapCosts() {
+		MapCostsEvent event = new MapCostsEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endMapCosts(Object started, String sessionId, String map, int tiles, boolean cached, boolean loaded) {
+		MapCostsEvent event = (MapCostsEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.sessionId = sessionId;
+			event.map = map;
+			event.tiles = tiles;
+			event.cached = cached;
+			event.loaded = loaded;
+			event.commit();
+		}
+	}
+}
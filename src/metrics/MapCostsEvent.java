@@ -0,0 +1,36 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the proximity and cost masks of a map being set
+ * up for a game.
+ */
+@Name("ballin.MapCosts")
+@Label("Map Costs")
+@Category({ "Ballin", "AI" })
+@Description("The proximity and cost masks of a map being set up for a game")
+@StackTrace(false)
+public class MapCostsEvent extends Event {
+
+	@Label("Session")
+	public String sessionId;
+
+	@Label("Map")
+	public String map;
+
+	@Label("Tiles")
+	public int tiles;
+
+	@Label("Cached")
+	@Description("Whether the masks were already worked out for this map")
+	public boolean cached;
+
+	@Label("Loaded From Disk")
+	public boolean loaded;
+}
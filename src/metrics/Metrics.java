@@ -0,0 +1,136 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The histograms the server records into while it runs, all of which can be
+ * read over JMX under the "ballin" domain (e.g. with jconsole).
+ *
+ * Recording only costs an atomic increment or two, so it is always on. Nothing
+ * is worked out unless someone reads the histograms.
+ */
+public class Metrics {
+
+	public static final String DOMAIN = "ballin";
+
+	/**
+	 * How long a tick of a game takes, over every session, in nanoseconds.
+	 */
+	public static final Histogram TICK_TIME = histogram("TickTime");
+
+	/**
+	 * How long an AI takes to think, in nanoseconds.
+	 */
+	public static final Histogram AI_THINK_TIME = histogram("AIThinkTime");
+
+	/**
+	 * How big an encoded snapshot is, in bytes.
+	 */
+	public static final Histogram SNAPSHOT_SIZE = histogram("SnapshotSize");
+
+	/**
+	 * The round trip time to each client, in milliseconds.
+	 */
+	public static final Histogram RTT = histogram("ReturnTripTime");
+
+	/**
+	 * How many bytes are waiting to be sent to each client.
+	 */
+	public static final Histogram SEND_QUEUE = histogram("SendQueueDepth");
+
+	private static final ConcurrentMap<String, Histogram> sessionTicks = new ConcurrentHashMap<String, Histogram>();
+
+	private Metrics() {
+
+	}
+
+	private static Histogram histogram(String name) {
+		Histogram histogram = new Histogram();
+		register("type=Histogram,name=" + name, histogram);
+		return histogram;
+	}
+
+	/**
+	 * Get the tick times of one session, registering them the first time.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 * @return How long each tick of the session's game takes, in nanoseconds.
+	 */
+	public static Histogram sessionTickTime(String sessionId) {
+		Histogram histogram = sessionTicks.get(sessionId);
+		if (histogram == null) {
+			Histogram created = new Histogram();
+			histogram = sessionTicks.putIfAbsent(sessionId, created);
+			if (histogram == null) {
+				histogram = created;
+				register(sessionName(sessionId), histogram);
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Forget the tick times of a session once its game has finished.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 */
+	public static void removeSession(String sessionId) {
+		if (sessionTicks.remove(sessionId) != null) {
+			unregister(sessionName(sessionId));
+		}
+	}
+
+	private static String sessionName(String sessionId) {
+		return "type=Session,name=" + ObjectName.quote(sessionId);
+	}
+
+	/**
+	 * Register an MBean under the "ballin" domain, replacing anything already
+	 * registered with the same name. JMX failing shouldn't stop the game, so any
+	 * error is just printed.
+	 *
+	 * @param name
+	 *            The name, without the domain, e.g. "type=Histogram,name=Foo".
+	 * @param bean
+	 *            The MBean.
+	 */
+	public static void register(String name, Object bean) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":" + name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(bean, objectName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Unregister an MBean registered with {@link #register(String, Object)}, if
+	 * it is still there.
+	 *
+	 * @param name
+	 *            The name, without the domain.
+	 */
+	public static void unregister(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":" + name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+}
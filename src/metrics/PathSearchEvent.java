@@ -0,0 +1,43 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one search for a path between two tiles, by
+ * either the plain A* search or the AIs' hierarchical path planner.
+ */
+@Name("ballin.PathSearch")
+@Label("Path Search")
+@Category({ "Ballin", "AI" })
+@Description("A search for a path between two tiles")
+@StackTrace(false)
+public class PathSearchEvent extends Event {
+
+	@Label("Session")
+	public String sessionId;
+
+	@Label("Searcher")
+	@Description("AStarSearch or PathPlanner")
+	public String searcher;
+
+	@Label("Distance")
+	@Description("Chebyshev distance between the start and goal tiles")
+	public int distance;
+
+	@Label("Expanded")
+	@Description("How many tiles were taken off the open set (AStarSearch only)")
+	public int expanded;
+
+	@Label("Path Length")
+	@Description("Tiles on the path found, or 0 if there isn't one")
+	public int pathLength;
+
+	@Label("Waypoints")
+	@Description("Waypoints left after smoothing the path")
+	public int waypoints;
+}
@@ -0,0 +1,31 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one step of a game's physics.
+ */
+@Name("ballin.PhysicsTick")
+@Label("Physics Tick")
+@Category({ "Ballin", "Physics" })
+@Description("One step of a game's physics, including the AIs thinking")
+@StackTrace(false)
+public class PhysicsTickEvent extends Event {
+
+	@Label("Session")
+	public String sessionId;
+
+	@Label("Tick")
+	public int tick;
+
+	@Label("Characters")
+	public int characters;
+
+	@Label("Powerups")
+	public int powerups;
+}
@@ -0,0 +1,42 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a snapshot being encoded and sent to every client
+ * in a session.
+ */
+@Name("ballin.SnapshotBroadcast")
+@Label("Snapshot Broadcast")
+@Category({ "Ballin", "Networking" })
+@Description("A snapshot of a game encoded and sent to every client in the session")
+@StackTrace(false)
+public class SnapshotBroadcastEvent extends Event {
+
+	@Label("Session")
+	public String sessionId;
+
+	@Label("Sequence")
+	public int sequence;
+
+	@Label("Clients")
+	public int clients;
+
+	@Label("Encodes")
+	@Description("How many different deltas had to be encoded")
+	public int encodes;
+
+	@Label("Bytes Encoded")
+	@DataAmount
+	public long bytesEncoded;
+
+	@Label("Bytes Sent")
+	@DataAmount
+	public long bytesSent;
+}
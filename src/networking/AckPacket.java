@@ -0,0 +1,33 @@
+package networking;
+
+/**
+ * Sent by a client to acknowledge a snapshot, so the server makes the next
+ * deltas against it.
+ */
+public class AckPacket extends GamePacket {
+	
+	private int sequence;
+	
+	public AckPacket() {
+		
+	}
+	
+	/**
+	 * Create an acknowledgement.
+	 * @param session The number of the session
+	 * @param entity The entity the client controls
+	 * @param sequence The sequence number of the snapshot
+	 */
+	public AckPacket(int session, int entity, int sequence) {
+		super(session, entity);
+		this.sequence = sequence;
+	}
+	
+	/**
+	 * Get the sequence number of the snapshot being acknowledged.
+	 * @return The sequence number
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+}
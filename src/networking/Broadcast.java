@@ -0,0 +1,76 @@
+package networking;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A snapshot update which has already been encoded, so that it can be sent to
+ * every client in a session without Kryonet serialising the message again for
+ * each connection. Its {@link Serializer} just copies the encoded bytes into
+ * the connection's buffer, and on the client it reads them back as the usual
+ * {@link Message} holding a {@link GameData}, so the client doesn't know the
+ * difference.
+ *
+ * The buffer is reused for the next update, which is fine because Kryonet has
+ * finished with it by the time send returns.
+ */
+public class Broadcast {
+
+	private final Output output = new Output(1024, -1);
+
+	/**
+	 * Encode a snapshot update, replacing whatever was encoded before. It only goes to
+	 * the clients in the session, so it doesn't say which session it's for.
+	 * @param sequence The sequence number of the snapshot
+	 * @param baseline The sequence number of the snapshot the delta was made against, or -1 if it contains everything
+	 * @param delta A buffer holding the encoded delta
+	 * @param length The number of bytes of the delta in the buffer
+	 * @return This broadcast
+	 */
+	public Broadcast update(int sequence, int baseline, byte[] delta, int length) {
+		output.clear();
+		output.writeInt(sequence, true);
+		output.writeInt(baseline + 1, true);
+		output.writeInt(length, true);
+		output.writeBytes(delta, 0, length);
+		return this;
+	}
+
+	/**
+	 * @return The size of the encoded update in bytes.
+	 */
+	public int getLength() {
+		return output.position();
+	}
+
+	/**
+	 * Read an update back as the message it stands for.
+	 * @param input The encoded update
+	 * @return The message
+	 */
+	public static Message read(Input input) {
+		int sequence = input.readInt(true);
+		int baseline = input.readInt(true) - 1;
+		byte[] delta = input.readBytes(input.readInt(true));
+		return new Message(Command.GAME, Note.UPDATE, "", "", "", "", new GameData(sequence, baseline, delta));
+	}
+
+	/**
+	 * Writes a broadcast's bytes as they are, and reads them as a {@link Message}.
+	 * Must be registered for Broadcast on both the server and the client.
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<Object> {
+
+		@Override
+		public void write(Kryo kryo, Output out, Object object) {
+			Output encoded = ((Broadcast)object).output;
+			out.writeBytes(encoded.getBuffer(), 0, encoded.position());
+		}
+
+		@Override
+		public Object read(Kryo kryo, Input input, Class<Object> type) {
+			return Broadcast.read(input);
+		}
+	}
+}
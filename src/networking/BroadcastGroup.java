@@ -0,0 +1,105 @@
+package networking;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * The clients in a session and their connections, kept in arrays so that an
+ * update can be sent to all of them every tick without building a new list.
+ * The arrays are only rebuilt when someone joins or leaves the session.
+ */
+public class BroadcastGroup {
+
+	private final Session session;
+	private final ConcurrentMap<String, Connection> connections;
+	private int membership = -1;
+	private ClientInformation[] members = new ClientInformation[0];
+	private Connection[] links = new Connection[0];
+
+	/**
+	 * Create a group for a session.
+	 * @param session The session
+	 * @param connections The Hash map of all the connections and the IDs of the clients which the connections send to.
+	 */
+	public BroadcastGroup(Session session, ConcurrentMap<String, Connection> connections) {
+		this.session = session;
+		this.connections = connections;
+	}
+
+	/**
+	 * Rebuild the group if anyone has joined or left the session since it was last built.
+	 * @return The number of clients in the group.
+	 */
+	public int refresh() {
+		int current = session.getMembership();
+		if(current != membership) {
+			List<ClientInformation> clients = session.getAllClients();
+			ClientInformation[] newMembers = new ClientInformation[clients.size()];
+			Connection[] newLinks = new Connection[clients.size()];
+			for(int i=0; i<newMembers.length; i++) {
+				newMembers[i] = clients.get(i);
+				newLinks[i] = connections.get(newMembers[i].getId());
+			}
+			members = newMembers;
+			links = newLinks;
+			membership = current;
+		}
+		return members.length;
+	}
+
+	/**
+	 * @return The session this group is for.
+	 */
+	public Session getSession() {
+		return session;
+	}
+
+	/**
+	 * @return The number of clients in the group, as of the last refresh.
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	/**
+	 * @param i The index of the client
+	 * @return The client's information
+	 */
+	public ClientInformation getMember(int i) {
+		return members[i];
+	}
+
+	/**
+	 * @param i The index of the client
+	 * @return The client's connection, or null if they weren't connected when the group was built
+	 */
+	public Connection getConnection(int i) {
+		return links[i];
+	}
+
+	/**
+	 * Send a message to everyone in the group over TCP.
+	 * @param message The message
+	 */
+	public void sendTCP(Object message) {
+		for(int i=0; i<links.length; i++) {
+			if(links[i] != null) {
+				links[i].sendTCP(message);
+			}
+		}
+	}
+
+	/**
+	 * Send a message to everyone in the group over UDP.
+	 * @param message The message
+	 */
+	public void sendUDP(Object message) {
+		for(int i=0; i<links.length; i++) {
+			if(links[i] != null) {
+				links[i].sendUDP(message);
+			}
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package networking;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
 import resources.Powerup.Power;
 
 /**
@@ -28,6 +32,7 @@ public class CharacterInfo {
 	private boolean isVisible;
 	private boolean isExploding;
 	private int timeOfDeath;
+	private int inputTick = -1;
 	
 	public CharacterInfo() {
 		
@@ -537,6 +542,145 @@ public class CharacterInfo {
 	public void setTimeOfDeath(int timeOfDeath) {
 		this.timeOfDeath = timeOfDeath;
 	}
+
 	
+	/**
+	 * Get the client's tick number when these controls were pressed.
+	 * @return The client tick, or -1 if it wasn't sent.
+	 */
+	public int getInputTick() {
+		return inputTick;
+	}
+
+	/**
+	 * Set the client's tick number when these controls were pressed.
+	 * @param inputTick The client tick
+	 */
+	public void setInputTick(int inputTick) {
+		this.inputTick = inputTick;
+	}
 	
+	/**
+	 * Writes a CharacterInfo compactly: positions rounded to the nearest pixel of the map,
+	 * every boolean packed into one bit field, numbers as variable length ints, and the ID,
+	 * name, class and last power up only when they're set. They are only needed when the
+	 * game starts, so later messages leave them out.
+	 * Must be registered for CharacterInfo on both the server and the client.
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<CharacterInfo> {
+		
+		// bits of the bit field
+		private static final int UP = 1, RIGHT = 1 << 1, LEFT = 1 << 2, DOWN = 1 << 3, FALLING = 1 << 4,
+				DEAD = 1 << 5, DASHING = 1 << 6, BLOCKING = 1 << 7, SEND_DASHING = 1 << 8, SEND_BLOCKING = 1 << 9,
+				HAS_POWERUP = 1 << 10, HAS_BOMB = 1 << 11, VISIBLE = 1 << 12, EXPLODING = 1 << 13,
+				ID = 1 << 14, NAME = 1 << 15, TYPE = 1 << 16, LAST_POWERUP = 1 << 17;
+		
+		@Override
+		public void write(Kryo kryo, Output out, CharacterInfo info) {
+			write(out, info);
+		}
+		
+		@Override
+		public CharacterInfo read(Kryo kryo, Input in, Class<CharacterInfo> type) {
+			return read(in);
+		}
+		
+		/**
+		 * Write a CharacterInfo.
+		 * @param out Where to write it
+		 * @param info The CharacterInfo
+		 */
+		public static void write(Output out, CharacterInfo info) {
+			int bits = 0;
+			if(info.up) bits |= UP;
+			if(info.right) bits |= RIGHT;
+			if(info.left) bits |= LEFT;
+			if(info.down) bits |= DOWN;
+			if(info.isFalling) bits |= FALLING;
+			if(info.isDead) bits |= DEAD;
+			if(info.isDashing) bits |= DASHING;
+			if(info.isBlocking) bits |= BLOCKING;
+			if(info.sendDashing) bits |= SEND_DASHING;
+			if(info.sendBlocking) bits |= SEND_BLOCKING;
+			if(info.hasPowerUp) bits |= HAS_POWERUP;
+			if(info.hasBomb) bits |= HAS_BOMB;
+			if(info.isVisible) bits |= VISIBLE;
+			if(info.isExploding) bits |= EXPLODING;
+			if(info.id != null) bits |= ID;
+			if(info.name != null) bits |= NAME;
+			if(info.type != null) bits |= TYPE;
+			if(info.lastPowerUp != null) bits |= LAST_POWERUP;
+			out.writeInt(bits, true);
+			
+			out.writeInt(quantise(info.x), false);
+			out.writeInt(quantise(info.y), false);
+			out.writeInt(info.playerNumber, false);
+			out.writeInt(info.stamina, false);
+			out.writeInt(info.kills, false);
+			out.writeInt(info.deaths, false);
+			out.writeInt(info.suicides, false);
+			out.writeInt(info.lives, false);
+			out.writeInt(info.score, false);
+			out.writeInt(info.dyingStep, false);
+			out.writeInt(info.timeOfDeath, false);
+			out.writeInt(info.inputTick, false);
+			
+			if(info.id != null) out.writeString(info.id);
+			if(info.name != null) out.writeString(info.name);
+			if(info.type != null) out.writeInt(info.type.ordinal(), true);
+			if(info.lastPowerUp != null) out.writeInt(info.lastPowerUp.ordinal(), true);
+		}
+		
+		/**
+		 * Read a CharacterInfo.
+		 * @param in Where to read it from
+		 * @return The CharacterInfo
+		 */
+		public static CharacterInfo read(Input in) {
+			CharacterInfo info = new CharacterInfo();
+			int bits = in.readInt(true);
+			info.up = (bits & UP) != 0;
+			info.right = (bits & RIGHT) != 0;
+			info.left = (bits & LEFT) != 0;
+			info.down = (bits & DOWN) != 0;
+			info.isFalling = (bits & FALLING) != 0;
+			info.isDead = (bits & DEAD) != 0;
+			info.isDashing = (bits & DASHING) != 0;
+			info.isBlocking = (bits & BLOCKING) != 0;
+			info.sendDashing = (bits & SEND_DASHING) != 0;
+			info.sendBlocking = (bits & SEND_BLOCKING) != 0;
+			info.hasPowerUp = (bits & HAS_POWERUP) != 0;
+			info.hasBomb = (bits & HAS_BOMB) != 0;
+			info.isVisible = (bits & VISIBLE) != 0;
+			info.isExploding = (bits & EXPLODING) != 0;
+			
+			info.x = in.readInt(false);
+			info.y = in.readInt(false);
+			info.playerNumber = in.readInt(false);
+			info.stamina = in.readInt(false);
+			info.kills = in.readInt(false);
+			info.deaths = in.readInt(false);
+			info.suicides = in.readInt(false);
+			info.lives = in.readInt(false);
+			info.score = in.readInt(false);
+			info.dyingStep = in.readInt(false);
+			info.timeOfDeath = in.readInt(false);
+			info.inputTick = in.readInt(false);
+			
+			if((bits & ID) != 0) info.id = in.readString();
+			if((bits & NAME) != 0) info.name = in.readString();
+			if((bits & TYPE) != 0) info.type = resources.Character.Class.values()[in.readInt(true)];
+			if((bits & LAST_POWERUP) != 0) info.lastPowerUp = Power.values()[in.readInt(true)];
+			return info;
+		}
+		
+		/**
+		 * Round a position to the nearest pixel of the map.
+		 * @param position The position
+		 * @return The rounded position
+		 */
+		static int quantise(double position) {
+			return (int)Math.round(position);
+		}
+	}
 }
@@ -11,10 +11,15 @@ public class ClientInformation {
 	
 	private String id;
 	private String name;
-	private String sessionId;
+	// changed on the queues of the sessions the client joins and leaves
+	private volatile String sessionId;
 	private boolean ready;
 	private resources.Character.Class characterClass;
 	private int playerNumber;
+	// the last game snapshot this client has acknowledged (server side only, so not sent)
+	private transient volatile int lastAck = -1;
+	// Kryonet's ID for the client's connection (server side only)
+	private transient int connectionId = -1;
 
 	public ClientInformation() {
 		
@@ -142,4 +147,38 @@ public class ClientInformation {
 	public void setPlayerNumber(int playerNumber) {
 		this.playerNumber = playerNumber;
 	}
+
+	/**
+	 * Get the sequence number of the last snapshot this client has acknowledged.
+	 * @return The sequence number, or -1 if it hasn't acknowledged any.
+	 */
+	public int getLastAck() {
+		return lastAck;
+	}
+
+	/**
+	 * Record that the client has received a snapshot.
+	 * @param sequence The sequence number of the snapshot
+	 */
+	public void setLastAck(int sequence) {
+		if (sequence > lastAck || sequence < 0) {
+			this.lastAck = sequence;
+		}
+	}
+	
+	/**
+	 * Get Kryonet's ID for the client's connection to the server.
+	 * @return The connection ID, or -1 if it isn't known.
+	 */
+	public int getConnectionId() {
+		return connectionId;
+	}
+	
+	/**
+	 * Set Kryonet's ID for the client's connection to the server.
+	 * @param connectionId The connection ID
+	 */
+	public void setConnectionId(int connectionId) {
+		this.connectionId = connectionId;
+	}
 }
@@ -2,8 +2,8 @@ package networking;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentMap;
 
+import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
@@ -32,6 +32,18 @@ public class ClientListener extends Listener {
 	public ConnectionDataModel cModel;
 	public Client client;
 	
+	// the snapshots received from the server, which later deltas are made against
+	private SnapshotHistory snapshots = new SnapshotHistory();
+	// how the server knows this game's session and this client's character
+	private int sessionNumber = -1;
+	private int myEntity = -1;
+	private final Snapshot applied = new Snapshot();
+	private int appliedSequence = -1;
+	
+	// moves this client's character without waiting for the server
+	private ClientPrediction prediction;
+	private Transport transport;
+	
 	/**
 	 * Initialises the listener using the model and the client.
 	 * @param cModel The model of the connection data
@@ -40,58 +52,51 @@ public class ClientListener extends Listener {
 	public ClientListener(ConnectionDataModel cModel, Client client) {
 		this.cModel = cModel;
 		this.client = client;
+		this.transport = client::sendUDP;
 	}
 	
 	/**
 	 * Fires when the Client receives a message
 	 */
-	@SuppressWarnings("unchecked")
 	public void received(Connection connection, Object object) {
 		
 		Message message;
-    	ConcurrentMap<String, Session> sessions;
-       if (object instanceof Message) {
+       if (object instanceof LobbyUpdate) {
+    	   // Fires when the list of sessions changes
+    	   if(!cModel.applyLobbyUpdate((LobbyUpdate)object)) {
+    		   // Missed an update, so ask for the whole list again
+    		   System.out.println("Lobby out of date, fetching sessions");
+    		   connection.sendTCP(new Message(Command.SESSION, Note.INDEX, cModel.getMyId(), null, cModel.getSessionId(), null));
+    	   }
+       }
+       else if (object instanceof Message) {
     	   message = (Message)object;
    		switch(message.getCommand()) {
    		// Fires when the message is something to do with the sessions.
+   		// The sessions themselves arrive as lobby updates.
    		case SESSION:
    			switch(message.getNote()) {
-   			// Fires when the refresh message is received by the client
-   			case COMPLETED:
-   				System.out.println("Received sessions from Server");
-   				System.out.println("Current Session ID: " + cModel.getSessionId());
-   				//cModel.setSessionId(message.getCurrentSessionId());
-   				sessions = (ConcurrentMap<String, Session>)message.getObject();
-   				cModel.setSessionsTable(sessions);
-   				System.out.println("Number of Sessions: " + sessions.values().size());
-   				break;
    			// Fires when the created message is received by the client
    			case CREATED:
    				System.out.println("Session created");
-   				sessions = (ConcurrentMap<String, Session>)message.getObject();
-   				cModel.setSessionsTable(sessions);
    				cModel.setSessionId(message.getCurrentSessionId());
    				break;
    			// Fires when the joined message is received by the client
    			case JOINED:
    				System.out.println("Session Joined");
    				cModel.setSessionId(message.getCurrentSessionId());
-   				sessions = (ConcurrentMap<String, Session>)message.getObject();
-   				cModel.setSessionsTable(sessions);
    				break;
    			// Fires when the left message is received by the client
    			case LEFT:
    				System.out.println("Session Left");
    				cModel.setSessionId(null);
-   				sessions = (ConcurrentMap<String, Session>)message.getObject();
-   				cModel.setSessionsTable(sessions);
    				break;
    			case RESET_READY:
-   				sessions = (ConcurrentMap<String, Session>)message.getObject();
-   				cModel.setSessionsTable(sessions);
    				cModel.setReady(false);
    				cModel.setGameInProgress(false);
    				break;
+   			default:
+   				break;
    			}
    			break;
    		// Fires at the start of the connection process to get the ID generated by the server
@@ -116,6 +121,11 @@ public class ClientListener extends Listener {
    			// Fires when the game start message is received
    			case START:
    				System.out.println("Game Started");
+   				snapshots = new SnapshotHistory();
+   				appliedSequence = -1;
+   				if(prediction != null) {
+   					prediction.stop();
+   				}
    				// Gets all the positions of the characters initialised by the Server
    				gameData = (GameData)message.getObject();
    				cModel.setGameInProgress(true);
@@ -137,6 +147,7 @@ public class ClientListener extends Listener {
    				Mode modeName = session.getGameMode();
    				Map map = new Map(1200, 650, style, mapName);
    				resources.setMap(map);
+   				resources.setSessionId(session.getId());
    				new MapCosts(resources);
    				
    				//  Set the game mode
@@ -166,7 +177,8 @@ public class ClientListener extends Listener {
    				String id;
    				CharacterInfo c;
    				List<CharacterInfo> info = gameData.getCharactersList();
-   				Updater updater = new Updater(cModel, client, resources);
+   				Updater updater = new Updater(cModel, transport, resources);
+   				int me = -1;
    				for(int i=0; i<info.size(); i++) {
    					c = info.get(i);
    					id = c.getId();
@@ -184,6 +196,7 @@ public class ClientListener extends Listener {
    					// If the character is the character controlled by
    					// this client, set the id in resources and observe the character.
    					if(id.equals(cModel.getMyId())) {
+   						me = i;
    						resources.setId(id);
    						player.setName(cModel.getClientInformation().getName());
    						player.addObserver(updater);
@@ -193,6 +206,14 @@ public class ClientListener extends Listener {
    					
 				//new MapCosts(resources);
    				cModel.setResources(resources);
+   				
+   				sessionNumber = session.getNumber();
+   				myEntity = me;
+   				
+   				// Predict this client's character locally until the server catches up
+   				prediction = new ClientPrediction(resources, me);
+   				updater.setPrediction(prediction);
+   				prediction.start();
 
    				//cModel.getResources().setCountdown(0);
    				
@@ -208,15 +229,23 @@ public class ClientListener extends Listener {
    					
    					// Update all the variables for every player sent by the server.
    					gameData = (GameData)message.getObject();
+   					if(gameData.getDelta() != null) {
+   						applySnapshot(gameData, cModel.getResources());
+   						break;
+   					}
        				List<CharacterInfo> charactersList = gameData.getCharactersList();
        				resources = cModel.getResources();
        				
        				resources.setPowerUpList(deserialize(gameData.getPowerUps()));
        				resources.setTimer(gameData.getTimer());
        				List<resources.Character> players = resources.getPlayerList();
+       				// The prediction's tick is the only thing writing to the bodies while it runs
+       				Runnable update = () -> {
        					for(int i=0; i<players.size(); i++) {
            					for(int j=0; j<charactersList.size(); j++) {
-           						if (charactersList.get(j).getId().equals(players.get(i).getId())) {
+           						// Updates without IDs are in the same order as the player list
+           						String updateId = charactersList.get(j).getId();
+           						if (updateId == null ? i == j : updateId.equals(players.get(i).getId())) {
            							
            							players.get(i).setX(charactersList.get(j).getX());
            							players.get(i).setY(charactersList.get(j).getY());
@@ -240,6 +269,13 @@ public class ClientListener extends Listener {
            						}
            					}
            				}
+       				};
+       				if(prediction != null) {
+       					resources.runOnTick(update);
+       				}
+       				else {
+       					update.run();
+       				}
    				}
    				break;
    			// Decrements the countdown every time a countdown message is received from the server.
@@ -250,6 +286,10 @@ public class ClientListener extends Listener {
    				break;
    			// Receives a finished message from the server when the game is finished. Resources is reset.
    			case FINISHED:
+   				if(prediction != null) {
+   					prediction.stop();
+   					prediction = null;
+   				}
    				cModel.setResources(new Resources());
    				cModel.setReady(false);
    				cModel.setGameInProgress(false);
@@ -277,4 +317,46 @@ public class ClientListener extends Listener {
 		}
 		return deserialized;
 	}
+	
+	/**
+	 * Apply a snapshot sent by the server as a delta, and acknowledge it so that the server
+	 * makes the next deltas against it.
+	 * @param gameData The game data containing the delta
+	 * @param resources The resources of the game being played
+	 */
+	private void applySnapshot(GameData gameData, Resources resources) {
+		int sequence = gameData.getSequence();
+		
+		// Older snapshots arrived too late to be useful
+		if(sequence <= appliedSequence) {
+			return;
+		}
+		
+		Snapshot baseline = null;
+		if(gameData.getBaseline() >= 0) {
+			baseline = snapshots.get(gameData.getBaseline());
+			// We don't have the snapshot this was made against, so wait for one we can use
+			if(baseline == null) {
+				return;
+			}
+		}
+		
+		Snapshot snapshot = snapshots.slot(sequence);
+		SnapshotCodec.decode(baseline, new Input(gameData.getDelta()), sequence, snapshot);
+		
+		if(appliedSequence < 0 || SnapshotCodec.powerUpsChanged(applied, snapshot)) {
+			resources.setPowerUpList(snapshot.getPowerups());
+		}
+		resources.setTimer(snapshot.getTimer());
+		if(prediction != null) {
+			prediction.onSnapshot(snapshot);
+		}
+		else {
+			snapshot.applyTo(resources.getPlayerList());
+		}
+		SnapshotCodec.copy(snapshot, applied);
+		appliedSequence = sequence;
+		
+		transport.sendUDP(new AckPacket(sessionNumber, myEntity, sequence));
+	}
 }
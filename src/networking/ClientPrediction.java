@@ -0,0 +1,240 @@
+package networking;
+
+import java.util.List;
+
+import physics.FixedTimestep;
+import physics.Physics;
+import resources.Character;
+import resources.Resources;
+
+/**
+ * Client-side prediction for the player's own character, and interpolation for
+ * everyone else.
+ *
+ * The player's character is moved locally as soon as a key is pressed instead
+ * of waiting for the server. The controls used on each local tick are kept, and
+ * when a snapshot arrives the character is put back where the server says it
+ * is and the ticks the server hasn't seen yet are replayed on top.
+ *
+ * Other characters are drawn a few ticks in the past, between the two
+ * snapshots either side of that time, so they move smoothly even though
+ * snapshots only arrive every couple of ticks.
+ */
+public class ClientPrediction {
+
+	/**
+	 * The number of ticks of input kept for replaying.
+	 */
+	public static final int INPUT_BUFFER = 256;
+
+	/**
+	 * How many ticks behind the latest snapshot other characters are drawn.
+	 */
+	public static final int INTERPOLATION_DELAY = 6;
+
+	private static final int SAMPLES = 16;
+	private static final int UP = 1, DOWN = 2, LEFT = 4, RIGHT = 8;
+
+	private final Resources resources;
+	private final Physics physics;
+	private final FixedTimestep loop;
+	private final int me;
+	private int tick = 0;
+	private int firstInput = -1;
+
+	// the controls pressed on each of the last few ticks
+	private final int[] controls = new int[INPUT_BUFFER];
+
+	// positions of the other characters from the snapshots, with the tick they arrived on
+	private final int[] sampleCount;
+	private final int[][] sampleTicks;
+	private final double[][] sampleX, sampleY;
+
+	/**
+	 * Create the prediction for a game on the client.
+	 * @param resources The resources of the game
+	 * @param me The position of this client's character in the player list, or -1 if there isn't one
+	 */
+	public ClientPrediction(Resources resources, int me) {
+		this.resources = resources;
+		this.me = me;
+		this.physics = new Physics(resources, true);
+		this.loop = new FixedTimestep(this::tick, Physics.DELAY, 5);
+
+		int players = resources.getPlayerList().size();
+		sampleCount = new int[players];
+		sampleTicks = new int[players][SAMPLES];
+		sampleX = new double[players][SAMPLES];
+		sampleY = new double[players][SAMPLES];
+	}
+
+	/**
+	 * Start ticking on a thread of its own.
+	 */
+	public void start() {
+		Thread thread = new Thread(loop, "Prediction");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop ticking.
+	 */
+	public void stop() {
+		loop.stop();
+	}
+
+	/**
+	 * Move the player's character on by one tick and move the other characters
+	 * along their interpolated paths.
+	 */
+	public synchronized void tick() {
+		if(resources.isFinished()) {
+			loop.stop();
+			return;
+		}
+		// Key presses hand their writes over to this thread
+		resources.runTickTasks();
+
+		List<Character> players = resources.getPlayerList();
+		if(me >= 0 && me < players.size()) {
+			Character c = players.get(me);
+			int pressed = pack(c);
+			controls[tick % INPUT_BUFFER] = pressed;
+			if(pressed != 0 && firstInput < 0) {
+				firstInput = tick;
+			}
+			predict(c, pressed);
+		}
+		tick++;
+		interpolate(players);
+	}
+
+	/**
+	 * Apply a snapshot from the server: correct the player's character and
+	 * replay its inputs since the snapshot, and add the other characters'
+	 * positions to their paths.
+	 * @param snapshot The snapshot
+	 */
+	public synchronized void onSnapshot(Snapshot snapshot) {
+		List<Character> players = resources.getPlayerList();
+		snapshot.applyTo(players, false);
+
+		int n = Math.min(Math.min(snapshot.getCharacterCount(), players.size()), sampleCount.length);
+		for(int i = 0; i<n; i++) {
+			if(i == me) {
+				reconcile(players.get(i), snapshot, i);
+			}
+			else {
+				int k = sampleCount[i]++ % SAMPLES;
+				sampleTicks[i][k] = tick;
+				sampleX[i][k] = snapshot.getX(i);
+				sampleY[i][k] = snapshot.getY(i);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of ticks predicted so far. Inputs are stamped with this
+	 * so that the server can say which of them a snapshot includes.
+	 */
+	public synchronized int getTick() {
+		return tick;
+	}
+
+	/**
+	 * Put the player's character where the server says it is, then replay
+	 * the inputs the server hadn't had yet.
+	 * @param c The player's character
+	 * @param snapshot The snapshot from the server
+	 * @param i The character's position in the snapshot
+	 */
+	private void reconcile(Character c, Snapshot snapshot, int i) {
+		c.setX(snapshot.getX(i));
+		c.setY(snapshot.getY(i));
+		c.setDx(snapshot.getDx(i));
+		c.setDy(snapshot.getDy(i));
+
+		// If the server hasn't had any input yet, all of it needs replaying
+		int acked = snapshot.getInputTick(i);
+		if(acked < 0) {
+			acked = firstInput;
+		}
+		// Nothing to replay if there hasn't been any input, or it's been forgotten
+		if(acked < 0 || acked > tick || tick - acked > INPUT_BUFFER) {
+			return;
+		}
+		for(int t = acked; t<tick; t++) {
+			predict(c, controls[t % INPUT_BUFFER]);
+		}
+	}
+
+	/**
+	 * Move the other characters to where they were a few ticks ago, between
+	 * the snapshots either side of that time.
+	 * @param players The characters in the game
+	 */
+	private void interpolate(List<Character> players) {
+		int renderTick = tick - INTERPOLATION_DELAY;
+		int n = Math.min(players.size(), sampleCount.length);
+		for(int i = 0; i<n; i++) {
+			int count = Math.min(sampleCount[i], SAMPLES);
+			if(i == me || count == 0) {
+				continue;
+			}
+
+			// Find the newest sample before the render time, and the one after it
+			int newest = sampleCount[i] - 1;
+			int before = -1;
+			int after = -1;
+			for(int j = newest; j>newest - count; j--) {
+				int k = j % SAMPLES;
+				if(sampleTicks[i][k] <= renderTick) {
+					before = k;
+					break;
+				}
+				after = k;
+			}
+
+			double x, y;
+			if(before < 0) {
+				// Everything we have is still in the future, so wait at the oldest
+				x = sampleX[i][after];
+				y = sampleY[i][after];
+			}
+			else if(after < 0) {
+				// Nothing newer has arrived, so stay at the newest
+				x = sampleX[i][before];
+				y = sampleY[i][before];
+			}
+			else {
+				double t = (renderTick - sampleTicks[i][before]) / (double)(sampleTicks[i][after] - sampleTicks[i][before]);
+				x = sampleX[i][before] + (sampleX[i][after] - sampleX[i][before]) * t;
+				y = sampleY[i][before] + (sampleY[i][after] - sampleY[i][before]) * t;
+			}
+			players.get(i).setXWithoutNotifying(x);
+			players.get(i).setYWithoutNotifying(y);
+		}
+	}
+
+	private void predict(Character c, int pressed) {
+		physics.predict(c, (pressed & UP) != 0, (pressed & DOWN) != 0, (pressed & LEFT) != 0, (pressed & RIGHT) != 0);
+	}
+
+	private static int pack(Character c) {
+		int pressed = 0;
+		if(c.isUp()) {
+			pressed |= UP;
+		}
+		if(c.isDown()) {
+			pressed |= DOWN;
+		}
+		if(c.isLeft()) {
+			pressed |= LEFT;
+		}
+		if(c.isRight()) {
+			pressed |= RIGHT;
+		}
+		return pressed;
+	}
+}
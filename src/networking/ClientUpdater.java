@@ -5,26 +5,28 @@ import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.concurrent.ConcurrentMap;
 
 import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryonet.Connection;
 
+import metrics.Metrics;
+import metrics.FlightEvents;
 import resources.Powerup;
 import resources.Resources;
+import resources.TickListener;
 
 /**
- * ClientUpdater observes a character on the server and sends messages to a client updating the position
+ * ClientUpdater listens to the ticks of a game on the server and sends messages to the clients updating the position
  * of all the player in a game as well as other data such as the power ups and the timer.
  * @author axn598
  *
  */
-public class ClientUpdater extends JPanel implements Observer {
+public class ClientUpdater extends JPanel implements TickListener {
 
 	/**
 	 * 
@@ -34,8 +36,20 @@ public class ClientUpdater extends JPanel implements Observer {
 	private ConcurrentMap<String, Resources> resourcesMap;
 	private ConcurrentMap<String, Session> sessions;
 	private ConcurrentMap<String, Connection> connections;
-	private int serverTick = 20;
-	private long lastPressProcessed = 0;
+	// send an update every this many ticks (20 milliseconds)
+	private int serverTick = 2;
+	private int ticks = 0;
+	
+	// the snapshots sent recently, for the clients to acknowledge
+	private final SnapshotHistory history = new SnapshotHistory();
+	private int sequence = -1;
+	private final Output output = new Output(1024, -1);
+	private final int[] baselines = new int[8];
+	private final Broadcast[] broadcasts = new Broadcast[8];
+	// used when the clients are on more baselines than there are broadcasts
+	private final Broadcast spare = new Broadcast();
+	private BroadcastGroup group;
+	private LobbyDirectory directory;
 	
 
 	/**
@@ -46,101 +60,186 @@ public class ClientUpdater extends JPanel implements Observer {
 	 * @param connections The Hash map of all the connections and the IDs of the clients which the connections send to.
 	 */
 	public ClientUpdater(String sessionId, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Session> sessions, ConcurrentMap<String, Connection> connections) {
+		this(sessionId, resourcesMap, sessions, connections, null);
+	}
+	
+	/**
+	 * Constructs the client updater.
+	 * @param sessionId The ID of the session which this character is in
+	 * @param resourcesMap The Hash map of the resources object for each running session
+	 * @param sessions The Hash map of all the sessions and their IDs
+	 * @param connections The Hash map of all the connections and the IDs of the clients which the connections send to.
+	 * @param directory The directory which keeps the clients' lists of sessions up to date, or null
+	 */
+	public ClientUpdater(String sessionId, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Session> sessions, ConcurrentMap<String, Connection> connections, LobbyDirectory directory) {
 		super();
+		this.directory = directory;
 		this.sessionId = sessionId;
 		this.resourcesMap = resourcesMap;
 		this.sessions = sessions;
 		this.connections = connections;
+		for(int i=0; i<broadcasts.length; i++) {
+			broadcasts[i] = new Broadcast();
+		}
 	}
 
 
 	/**
-	 * Updates when the character changes. Sends the update message to all users in the same game.
-	 * Sends the details of all characters in the game to update each client.
+	 * Updates at the end of every tick of the game. Sends the update message to all users in the same game.
+	 * During the game each client is sent a snapshot of the game encoded as a delta against the
+	 * last snapshot it acknowledged, so characters which haven't changed cost almost nothing.
 	 */
 	@Override
-	public void update(Observable o, Object arg) {
+	public void tickEnded(Resources tickResources) {
 		// Limit the update rate to once every 20 milliseconds
-		if(System.currentTimeMillis() - lastPressProcessed > serverTick) {
+		if(++ticks >= serverTick) {
 			//System.out.println("Updated");
-			// Check if resources exist for this character
-			if(resourcesMap.get(sessionId) != null && resourcesMap.get(sessionId).gamemode != null) {
+			// Check if resources exist for this game
+			Resources resources = resourcesMap.get(sessionId);
+			if(resources != null && resources.gamemode != null) {
 				
 				// Check if the game is over. If it is, end the game, if it isn't, update the client.
-				if(resourcesMap.get(sessionId).isGameOver()) {
+				if(resources.isGameOver()) {
 					System.out.println("Ending the game");
 					
 					// Send a final update to the client with all the updated positions
-					List<resources.Character> characters = resourcesMap.get(sessionId).getPlayerList();
+					List<resources.Character> characters = resources.getPlayerList();
 					List<CharacterInfo> charactersList = new ArrayList<CharacterInfo>();
 					resources.Character c;
 					for(int i=0; i<characters.size(); i++) {
 						c = characters.get(i);
 						//System.out.println("X: " + c.getX());
-						CharacterInfo info = new CharacterInfo(c.getId(), c.getX(), c.getY(), c.getPlayerNumber(), c.isFalling(), c.isDead(), c.isDashing(), c.isBlocking(), c.getStamina(), c.hasPowerup(), c.getLastPowerup(), c.getKills(), c.getDeaths(), c.getSuicides(), c.getLives(), c.getScore(), c.hasBomb(), c.getDyingStep(), c.isVisible(), c.isExploding(), c.getTimeOfDeath());
+						// The clients already have the IDs from the start of the game, and the list is in the same order
+						CharacterInfo info = new CharacterInfo(null, c.getX(), c.getY(), c.getPlayerNumber(), c.isFalling(), c.isDead(), c.isDashing(), c.isBlocking(), c.getStamina(), c.hasPowerup(), c.getLastPowerup(), c.getKills(), c.getDeaths(), c.getSuicides(), c.getLives(), c.getScore(), c.hasBomb(), c.getDyingStep(), c.isVisible(), c.isExploding(), c.getTimeOfDeath());
 						charactersList.add(info);
 					}
 					
 					GameData data = new GameData(charactersList);
-					ArrayList<Powerup> powerUps = resourcesMap.get(sessionId).getPowerupList();
+					ArrayList<Powerup> powerUps = resources.getPowerupList();
 					
 					// Set the timer to 0 so that death match ends
 					data.setPowerUps(serializePowerUps(powerUps));
 					data.setTimer(0);
 					Message message = new Message(Command.GAME, Note.UPDATE, "", "", sessionId, sessionId, data);
-					List<ClientInformation> clients = sessions.get(sessionId).getAllClients();
-					ClientInformation client;
-					for(int i = 0; i<clients.size(); i++) {
-						client = clients.get(i);
-						connections.get(client.getId()).sendTCP(message);
+					// The session has gone if everyone has left, and then there's nobody to tell
+					BroadcastGroup clients = getGroup();
+					if(clients != null) {
+						clients.refresh();
+						clients.sendTCP(message);
 					}
 					
 					// If the game mode thread has finished, send the relevant messages to
 					// the clients.
-					if(resourcesMap.get(sessionId).gamemode.isGameOver()) {
+					if(resources.gamemode.isGameOver()) {
 						Message message1 = new Message(Command.GAME, Note.FINISHED, null, null, null, null);
-						Message message2 = new Message(Command.SESSION, Note.COMPLETED, null, null, null, null, sessions);
-						
-						for(int i = 0; i<clients.size(); i++) {
-							client = clients.get(i);
-							client.setReady(false);
-							connections.get(client.getId()).sendTCP(message);
-							connections.get(client.getId()).sendTCP(message1);
-							connections.get(client.getId()).sendTCP(message2);
+						for(int i = 0; clients != null && i<clients.size(); i++) {
+							clients.getMember(i).setReady(false);
+							Connection connection = clients.getConnection(i);
+							if(connection != null) {
+								connection.sendTCP(message);
+								connection.sendTCP(message1);
+							}
 						}
 						// Remove the session ID and set the game in progress to false.
 						resourcesMap.remove(sessionId);
-						sessions.get(sessionId).setGameInProgress(false);
+						Session session = sessions.get(sessionId);
+						if(session != null) {
+							session.setGameInProgress(false);
+							// Everyone sees the session is free again and nobody in it is ready
+							if(directory != null) {
+								directory.update(session);
+							}
+						}
 					}
 				}
 				else {
-					List<resources.Character> characters = resourcesMap.get(sessionId).getPlayerList();
-					List<CharacterInfo> charactersList = new ArrayList<CharacterInfo>();
-					resources.Character c;
-					for(int i=0; i<characters.size(); i++) {
-						c = characters.get(i);
-						//System.out.println("X: " + c.getX());
-						CharacterInfo info = new CharacterInfo(c.getId(), c.getX(), c.getY(), c.getPlayerNumber(), c.isFalling(), c.isDead(), c.isDashing(), c.isBlocking(), c.getStamina(), c.hasPowerup(), c.getLastPowerup(), c.getKills(), c.getDeaths(), c.getSuicides(), c.getLives(), c.getScore(), c.hasBomb(), c.getDyingStep(), c.isVisible(), c.isExploding(), c.getTimeOfDeath());
-						charactersList.add(info);
-					}
-					
-					GameData data = new GameData(charactersList);
-					ArrayList<Powerup> powerUps = resourcesMap.get(sessionId).getPowerupList();
-					data.setPowerUps(serializePowerUps(powerUps));
-					data.setTimer(resourcesMap.get(sessionId).getTimer());
-					Message message = new Message(Command.GAME, Note.UPDATE, "", "", sessionId, sessionId, data);
-					List<ClientInformation> clients = sessions.get(sessionId).getAllClients();
-					ClientInformation client;
-					for(int i = 0; i<clients.size(); i++) {
-						client = clients.get(i);
-						connections.get(client.getId()).sendUDP(message);
-					}
+					sendSnapshot(resources);
 				}
 			}
 			
 			// Update the server tick
-			lastPressProcessed = System.currentTimeMillis();
+			ticks = 0;
+		}
+	}
+	
+	/**
+	 * Take a snapshot of the game and send it to every client in the session, as a delta
+	 * against the last snapshot each client acknowledged.
+	 * Each delta is encoded once into a reused {@link Broadcast}, and the same bytes are
+	 * written to every client on that baseline. The whole broadcast is recorded as a
+	 * ballin.SnapshotBroadcast event (see {@link FlightEvents}) when the flight recorder is on.
+	 * @param resources The resources object for the game
+	 */
+	private void sendSnapshot(Resources resources) {
+		BroadcastGroup clients = getGroup();
+		if(clients == null) {
+			return;
+		}
+		Object event = FlightEvents.beginSnapshotBroadcast();
+		int encodes = 0;
+		long bytesEncoded = 0;
+		long bytesSent = 0;
+		int sentTo = 0;
+		sequence++;
+		Snapshot current = history.slot(sequence);
+		current.capture(sequence, resources.getPlayerList(), resources.getPowerupList(), resources.getTimer(), resources.getGlobalTimer());
+		
+		// Clients which have acknowledged the same snapshot get the same delta, so only encode it once
+		int encodedBaselines = 0;
+		int size = clients.refresh();
+		for(int i = 0; i<size; i++) {
+			Connection connection = clients.getConnection(i);
+			if(connection == null) {
+				continue;
+			}
+			int ack = clients.getMember(i).getLastAck();
+			Snapshot baseline = ack < sequence ? history.get(ack) : null;
+			int baselineSequence = baseline == null ? -1 : ack;
+			
+			Broadcast broadcast = null;
+			for(int j = 0; j<encodedBaselines; j++) {
+				if(baselines[j] == baselineSequence) {
+					broadcast = broadcasts[j];
+					break;
+				}
+			}
+			if(broadcast == null) {
+				if(encodedBaselines < baselines.length) {
+					baselines[encodedBaselines] = baselineSequence;
+					broadcast = broadcasts[encodedBaselines];
+					encodedBaselines++;
+				}
+				else {
+					broadcast = spare;
+				}
+				output.clear();
+				SnapshotCodec.encode(baseline, current, output);
+				broadcast.update(sequence, baselineSequence, output.getBuffer(), output.position());
+				Metrics.SNAPSHOT_SIZE.record(output.position());
+				encodes++;
+				bytesEncoded += output.position();
+			}
+			
+			bytesSent += connection.sendUDP(broadcast);
+			sentTo++;
+		}
+		
+		FlightEvents.endSnapshotBroadcast(event, sessionId, sequence, sentTo, encodes, bytesEncoded, bytesSent);
+	}
+	
+	/**
+	 * Get the clients in the session, making the group again if the session has been replaced.
+	 * @return The group, or null if the session has gone.
+	 */
+	private BroadcastGroup getGroup() {
+		Session session = sessions.get(sessionId);
+		if(session == null) {
+			return null;
+		}
+		if(group == null || group.getSession() != session) {
+			group = new BroadcastGroup(session, connections);
 		}
+		return group;
 	}
 	
 	/**
@@ -29,6 +29,8 @@ public class ConnectionData {
 	private Resources resources;
 	private boolean ready;
 	private Connection connection;
+	// the version of the list of sessions, or -1 while waiting for the whole list
+	private int lobbyVersion = -1;
 	
 	/**
 	 * Gets the Kryonet connection object to the server
@@ -302,4 +304,20 @@ public class ConnectionData {
 	public void setReady(boolean b) {
 		ready = b;
 	}
+	
+	/**
+	 * Get the version of the list of sessions, as given by the server's lobby directory.
+	 * @return The version, or -1 if the client is waiting for the whole list.
+	 */
+	public int getLobbyVersion() {
+		return lobbyVersion;
+	}
+	
+	/**
+	 * Set the version of the list of sessions.
+	 * @param version The version, or -1 if the client is waiting for the whole list.
+	 */
+	public void setLobbyVersion(int version) {
+		lobbyVersion = version;
+	}
 }
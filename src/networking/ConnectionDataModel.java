@@ -6,6 +6,7 @@ import resources.Resources;
 
 import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import com.esotericsoftware.kryonet.Connection;
@@ -18,6 +19,8 @@ import com.esotericsoftware.kryonet.Connection;
 public class ConnectionDataModel extends Observable {
 
 	private ConnectionData data;
+	// the sessions from the pages of a resync which hasn't finished yet
+	private ConcurrentMap<String, Session> resync;
 	
 	/**
 	 * Constructor for this class.
@@ -305,4 +308,63 @@ public class ConnectionDataModel extends Observable {
 	public synchronized void setConnection(Connection connection) {
 		data.setConnection(connection);
 	}
+	
+	/**
+	 * Apply a change to the list of sessions from the server. A delta is only applied
+	 * on top of the version it was made from, and the pages of a resync replace the
+	 * whole list once the last one arrives. The observers are given the update.
+	 * @param update The update
+	 * @return false if the update was a delta which couldn't be applied, so the client
+	 * needs a resync, true otherwise.
+	 */
+	public synchronized boolean applyLobbyUpdate(LobbyUpdate update) {
+		if(update.isFull()) {
+			if(update.getPage() == 0) {
+				resync = new ConcurrentHashMap<String, Session>();
+			}
+			else if(resync == null) {
+				// Missed the start of the resync
+				return true;
+			}
+			for(Session s : update.getSessions()) {
+				resync.put(s.getId(), s);
+			}
+			if(update.isLastPage()) {
+				data.setSessionsTable(resync);
+				data.setLobbyVersion(update.getVersion());
+				resync = null;
+				setChanged();
+				notifyObservers(update);
+			}
+			return true;
+		}
+		
+		if(data.getLobbyVersion() < 0) {
+			// Already waiting for a resync, which will include this
+			return true;
+		}
+		if(update.getBase() != data.getLobbyVersion()) {
+			data.setLobbyVersion(-1);
+			return false;
+		}
+		ConcurrentMap<String, Session> sessions = data.getSessionsTable();
+		for(Session s : update.getSessions()) {
+			sessions.put(s.getId(), s);
+		}
+		for(String id : update.getRemoved()) {
+			sessions.remove(id);
+		}
+		data.setLobbyVersion(update.getVersion());
+		setChanged();
+		notifyObservers(update);
+		return true;
+	}
+	
+	/**
+	 * Get the version of the list of sessions.
+	 * @return The version, or -1 if the client is waiting for the whole list.
+	 */
+	public int getLobbyVersion() {
+		return data.getLobbyVersion();
+	}
 }
@@ -0,0 +1,69 @@
+package networking;
+
+import java.util.Arrays;
+
+/**
+ * Which client controls each entity in a session's game, and which entity
+ * each connection controls. Entities are numbered by their character's index
+ * in the player list and connections by Kryonet's connection IDs, so both
+ * lookups are one array read. Filled in when the game starts.
+ */
+public class EntityRegistry {
+	
+	private volatile ClientInformation[] controllers = new ClientInformation[8];
+	private volatile int[] entities = new int[0];
+	
+	/**
+	 * Record that a client controls an entity.
+	 * @param entity The entity, which is the character's index in the player list
+	 * @param client The client controlling it
+	 */
+	public synchronized void bind(int entity, ClientInformation client) {
+		ClientInformation[] newControllers = controllers;
+		if(entity >= newControllers.length) {
+			newControllers = Arrays.copyOf(newControllers, Math.max(entity + 1, newControllers.length * 2));
+		}
+		newControllers[entity] = client;
+		controllers = newControllers;
+		
+		int connection = client.getConnectionId();
+		if(connection >= 0) {
+			int[] newEntities = entities;
+			if(connection >= newEntities.length) {
+				int oldLength = newEntities.length;
+				newEntities = Arrays.copyOf(newEntities, Math.max(connection + 1, oldLength * 2));
+				Arrays.fill(newEntities, oldLength, newEntities.length, -1);
+			}
+			newEntities[connection] = entity;
+			entities = newEntities;
+		}
+	}
+	
+	/**
+	 * Forget every entity, e.g. before a new game starts.
+	 */
+	public synchronized void clear() {
+		controllers = new ClientInformation[controllers.length];
+		entities = new int[0];
+	}
+	
+	/**
+	 * Get the client controlling an entity.
+	 * @param entity The entity
+	 * @return The client, or null if it isn't controlled by a client (e.g. it's an AI).
+	 */
+	public ClientInformation getController(int entity) {
+		ClientInformation[] current = controllers;
+		return entity >= 0 && entity < current.length ? current[entity] : null;
+	}
+	
+	/**
+	 * Get the entity a connection controls.
+	 * @param connection Kryonet's ID for the connection
+	 * @return The entity, or -1 if it doesn't control one.
+	 */
+	public int getEntity(int connection) {
+		int[] current = entities;
+		return connection >= 0 && connection < current.length ? current[connection] : -1;
+	}
+}
@@ -3,7 +3,12 @@ package networking;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
 import resources.Powerup;
+import resources.Powerup.Power;
 
 /**
  * Packages a list of characters and other data into an object so that it can be sent across the network.
@@ -27,6 +32,9 @@ public class GameData {
 	private CharacterInfo info;
 	private ArrayList<SerializablePowerUp> powerUps;
 	private int timer;
+	private int sequence;
+	private int baseline = -1;
+	private byte[] delta;
 	
 	public GameData() {
 		
@@ -41,6 +49,19 @@ public class GameData {
 		this.characters = characters;
 	}
 	
+	/**
+	 * Constructor for when you send a snapshot as a delta against an older
+	 * snapshot which the client has already got.
+	 * @param sequence The sequence number of the snapshot
+	 * @param baseline The sequence number of the snapshot the delta was made against, or -1 if it contains everything
+	 * @param delta The encoded delta
+	 */
+	public GameData(int sequence, int baseline, byte[] delta) {
+		this.sequence = sequence;
+		this.baseline = baseline;
+		this.delta = delta;
+	}
+	
 	/**
 	 * Constructor for when you only want to send one character position update.
 	 * @param info A single CharacterInfo object.
@@ -105,4 +126,120 @@ public class GameData {
 		this.timer = timer;
 	}
 	
+	/**
+	 * Get the sequence number of the snapshot in this Game Data object.
+	 * @return The sequence number
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the sequence number of the snapshot the delta was made against.
+	 * @return The baseline sequence number, or -1 if the delta contains everything.
+	 */
+	public int getBaseline() {
+		return baseline;
+	}
+
+	/**
+	 * Get the encoded snapshot delta.
+	 * @return The delta, or null if this isn't a snapshot.
+	 */
+	public byte[] getDelta() {
+		return delta;
+	}
+	
+	/**
+	 * Writes a GameData compactly: a bit field saying which parts are there, then just those
+	 * parts, with the characters written by {@link CharacterInfo.Serializer} and power up
+	 * positions rounded to the nearest pixel.
+	 * Must be registered for GameData on both the server and the client.
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<GameData> {
+		
+		// which parts are there
+		private static final int TAG = 1, CHARACTERS = 1 << 1, INFO = 1 << 2, POWERUPS = 1 << 3, DELTA = 1 << 4;
+		
+		@Override
+		public void write(Kryo kryo, Output out, GameData data) {
+			int parts = 0;
+			if(data.tag != null) parts |= TAG;
+			if(data.characters != null) parts |= CHARACTERS;
+			if(data.info != null) parts |= INFO;
+			if(data.powerUps != null) parts |= POWERUPS;
+			if(data.delta != null) parts |= DELTA;
+			out.writeInt(parts, true);
+			
+			out.writeInt(data.timer, false);
+			out.writeInt(data.sequence, true);
+			out.writeInt(data.baseline + 1, true);
+			
+			if(data.tag != null) {
+				out.writeInt(data.tag.ordinal(), true);
+			}
+			if(data.characters != null) {
+				out.writeInt(data.characters.size(), true);
+				for(int i=0; i<data.characters.size(); i++) {
+					CharacterInfo.Serializer.write(out, data.characters.get(i));
+				}
+			}
+			if(data.info != null) {
+				CharacterInfo.Serializer.write(out, data.info);
+			}
+			if(data.powerUps != null) {
+				out.writeInt(data.powerUps.size(), true);
+				for(int i=0; i<data.powerUps.size(); i++) {
+					SerializablePowerUp p = data.powerUps.get(i);
+					// the power and whether it's active share a varint
+					out.writeInt((p.getP() == null ? 0 : p.getP().ordinal() + 1) << 1 | (p.isActive() ? 1 : 0), true);
+					out.writeInt(CharacterInfo.Serializer.quantise(p.getX()), false);
+					out.writeInt(CharacterInfo.Serializer.quantise(p.getY()), false);
+				}
+			}
+			if(data.delta != null) {
+				out.writeInt(data.delta.length, true);
+				out.writeBytes(data.delta);
+			}
+		}
+		
+		@Override
+		public GameData read(Kryo kryo, Input in, Class<GameData> type) {
+			GameData data = new GameData();
+			int parts = in.readInt(true);
+			
+			data.timer = in.readInt(false);
+			data.sequence = in.readInt(true);
+			data.baseline = in.readInt(true) - 1;
+			
+			if((parts & TAG) != 0) {
+				data.tag = Tag.values()[in.readInt(true)];
+			}
+			if((parts & CHARACTERS) != 0) {
+				int count = in.readInt(true);
+				data.characters = new ArrayList<CharacterInfo>(count);
+				for(int i=0; i<count; i++) {
+					data.characters.add(CharacterInfo.Serializer.read(in));
+				}
+			}
+			if((parts & INFO) != 0) {
+				data.info = CharacterInfo.Serializer.read(in);
+			}
+			if((parts & POWERUPS) != 0) {
+				int count = in.readInt(true);
+				data.powerUps = new ArrayList<SerializablePowerUp>(count);
+				for(int i=0; i<count; i++) {
+					int powerAndActive = in.readInt(true);
+					int power = (powerAndActive >>> 1) - 1;
+					double x = in.readInt(false);
+					double y = in.readInt(false);
+					data.powerUps.add(new SerializablePowerUp(power < 0 ? null : Power.values()[power], x, y, (powerAndActive & 1) != 0));
+				}
+			}
+			if((parts & DELTA) != 0) {
+				data.delta = in.readBytes(in.readInt(true));
+			}
+			return data;
+		}
+	}
 }
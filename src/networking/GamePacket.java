@@ -0,0 +1,42 @@
+package networking;
+
+/**
+ * A message sent during a game, addressed by the session's number and the
+ * entity (character) it is about instead of their String IDs, so it is only a
+ * few bytes and the server can find both straight away.
+ */
+public class GamePacket {
+	
+	private int session = -1;
+	private int entity = -1;
+	
+	public GamePacket() {
+		
+	}
+	
+	/**
+	 * Create a packet.
+	 * @param session The number of the session, given by the server's {@link SessionRegistry}
+	 * @param entity The entity the packet is about, which is the character's index in the player list
+	 */
+	public GamePacket(int session, int entity) {
+		this.session = session;
+		this.entity = entity;
+	}
+	
+	/**
+	 * Get the number of the session.
+	 * @return The session number
+	 */
+	public int getSession() {
+		return session;
+	}
+	
+	/**
+	 * Get the entity the packet is about.
+	 * @return The entity ID
+	 */
+	public int getEntity() {
+		return entity;
+	}
+}
@@ -0,0 +1,67 @@
+package networking;
+
+/**
+ * The controls a client is pressing, sent to the server whenever they change.
+ */
+public class InputPacket extends GamePacket {
+	
+	// bits of the controls
+	public static final int UP = 1, DOWN = 2, LEFT = 4, RIGHT = 8, DASHING = 16, BLOCKING = 32;
+	
+	private byte controls;
+	private int inputTick = -1;
+	
+	public InputPacket() {
+		
+	}
+	
+	/**
+	 * Create an input packet.
+	 * @param session The number of the session
+	 * @param entity The entity the client controls
+	 * @param character The client's character, to read the controls from
+	 * @param inputTick The client's tick number when the controls were pressed, or -1 if it isn't predicting
+	 */
+	public InputPacket(int session, int entity, resources.Character character, int inputTick) {
+		super(session, entity);
+		int bits = 0;
+		if(character.isUp()) bits |= UP;
+		if(character.isDown()) bits |= DOWN;
+		if(character.isLeft()) bits |= LEFT;
+		if(character.isRight()) bits |= RIGHT;
+		if(character.isDashing()) bits |= DASHING;
+		if(character.isBlocking()) bits |= BLOCKING;
+		this.controls = (byte)bits;
+		this.inputTick = inputTick;
+	}
+	
+	/**
+	 * Create an input packet from controls which have already been put together.
+	 * @param session The number of the session
+	 * @param entity The entity the client controls
+	 * @param controls The bits of the controls which are pressed
+	 * @param inputTick The client's tick number when the controls were pressed, or -1 if it isn't predicting
+	 */
+	public InputPacket(int session, int entity, int controls, int inputTick) {
+		super(session, entity);
+		this.controls = (byte)controls;
+		this.inputTick = inputTick;
+	}
+	
+	/**
+	 * Is a control pressed?
+	 * @param control UP, DOWN, LEFT, RIGHT, DASHING or BLOCKING
+	 * @return true if it is pressed, false otherwise.
+	 */
+	public boolean isPressed(int control) {
+		return (controls & control) != 0;
+	}
+	
+	/**
+	 * Get the client's tick number when the controls were pressed.
+	 * @return The tick number, or -1 if the client isn't predicting.
+	 */
+	public int getInputTick() {
+		return inputTick;
+	}
+}
@@ -0,0 +1,534 @@
+package networking;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+
+import physics.FixedTimestep;
+import resources.MapMetaData;
+import resources.Resources;
+import resources.Map.World;
+import resources.Resources.Mode;
+
+/**
+ * Finds out how much the server can take. Starts a server and lots of bot
+ * clients in the same process, talking over loopback with the same messages as
+ * the real game: each bot connects, the first bot in each group creates a
+ * session and the rest join it, they all get ready, and once the game starts
+ * they send controls at a set rate and check every snapshot they're sent.
+ *
+ * At the end it prints how long the server's ticks took, how long it took for
+ * a bot's controls to show up in a snapshot, how much the server sent and
+ * received, and how long was spent collecting garbage.
+ *
+ * Usage: java networking.LoadTest [sessions] [players per session] [inputs per second] [seconds] [port]
+ */
+public class LoadTest {
+
+	// the input ticks the bots send go up in steps this big, so that a snapshot
+	// can only echo one once the server has really received it
+	static final int INPUT_STRIDE = 1 << 16;
+	// how many sent inputs each bot remembers the time of
+	private static final int INPUT_HISTORY = 1024;
+	// how long to wait for the server to answer each stage, in milliseconds
+	private static final long TIMEOUT = 20000;
+
+	private final int sessions;
+	private final int players;
+	private final int rate;
+	private final int seconds;
+	private int port;
+
+	private Server server;
+	private SessionScheduler scheduler;
+	private SessionDispatcher dispatcher;
+	private CountingSerialization serialization;
+	private final List<Bot> bots = new ArrayList<Bot>();
+	private ScheduledExecutorService inputs;
+
+	private final AtomicLong snapshots = new AtomicLong();
+	private final AtomicLong badSnapshots = new AtomicLong();
+	private final AtomicLong lateSnapshots = new AtomicLong();
+	private final AtomicLong inputsSent = new AtomicLong();
+	private long[] latencies = new long[1024];
+	private int latencyCount = 0;
+
+	// what was measured, once the games had started
+	private long elapsed, gcCollections, gcMillis, overruns, dropped;
+
+	/**
+	 * Set up a load test.
+	 * @param sessions The number of sessions to play at once
+	 * @param players The number of bots in each session, up to 8 (the rest are AI)
+	 * @param rate How many times a second each bot sends its controls
+	 * @param seconds How long to measure for once the games have started
+	 * @param port The port for the server's TCP and UDP, or 0 to find a free one
+	 */
+	public LoadTest(int sessions, int players, int rate, int seconds, int port) {
+		this.sessions = sessions;
+		this.players = Math.max(1, Math.min(8, players));
+		this.rate = Math.max(1, rate);
+		this.seconds = seconds;
+		this.port = port;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int players = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int rate = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+		int port = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+		LoadTest test = new LoadTest(sessions, players, rate, seconds, port);
+		try {
+			test.run();
+		}
+		finally {
+			test.stop();
+		}
+		test.report();
+	}
+
+	/**
+	 * Start the server and the bots, play the games and measure them.
+	 * @throws IOException If the server or a bot can't connect
+	 * @throws InterruptedException If interrupted while waiting for the server
+	 */
+	public void run() throws IOException, InterruptedException {
+		Resources.silent = true;
+		if(port == 0) {
+			try(ServerSocket socket = new ServerSocket(0)) {
+				port = socket.getLocalPort();
+			}
+		}
+
+		serialization = new CountingSerialization();
+		server = new Server(16384, 2048, serialization);
+		scheduler = new SessionScheduler();
+		dispatcher = new SessionDispatcher();
+		NetworkingServer.start(server, port, port, scheduler, dispatcher);
+		System.out.println("Load test server on port " + port + ": " + sessions + " sessions of " + players + " bots, " + rate + " inputs a second");
+
+		// Connect every bot
+		String map = MapMetaData.getTable().get(Mode.Deathmatch).iterator().next();
+		for(int i=0; i<sessions * players; i++) {
+			Bot bot = new Bot("Bot " + i);
+			bots.add(bot);
+			bot.connect();
+		}
+		for(Bot bot : bots) {
+			await(bot.connected, bot.name + " wasn't given an ID");
+		}
+
+		// The first bot in each group makes a session, and the others join it
+		for(int s=0; s<sessions; s++) {
+			Bot host = bots.get(s * players);
+			Session session = new Session(host.name + "'s lobby", new ClientInformation(host.getId(), host.name), map, World.SPACE, Mode.Deathmatch, host.name, 0);
+			host.client.sendTCP(new Message(Command.SESSION, Note.CREATE, host.getId(), "", "", "", session));
+		}
+		for(int s=0; s<sessions; s++) {
+			Bot host = bots.get(s * players);
+			await(host.joined, host.name + " couldn't create a session");
+			for(int p=1; p<players; p++) {
+				Bot bot = bots.get(s * players + p);
+				bot.client.sendTCP(new Message(Command.SESSION, Note.JOIN, bot.getId(), "", host.sessionId, host.sessionId));
+			}
+		}
+		for(Bot bot : bots) {
+			await(bot.joined, bot.name + " couldn't join a session");
+		}
+
+		// Everyone gets ready, and the games start
+		for(int i=0; i<bots.size(); i++) {
+			Bot bot = bots.get(i);
+			ClientInformation me = new ClientInformation(bot.getId(), bot.name);
+			me.setCharacterClass(resources.Character.Class.getRandomClass());
+			me.setPlayerNumber(i % players + 1);
+			bot.client.sendTCP(new Message(Command.GAME, Note.START, bot.getId(), null, bot.sessionId, null, me));
+		}
+		for(Bot bot : bots) {
+			await(bot.started, bot.name + "'s game didn't start");
+		}
+
+		// Stream the controls, and measure once the countdown is over
+		inputs = Executors.newScheduledThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+		long period = 1000000000L / rate;
+		for(Bot bot : bots) {
+			inputs.scheduleAtFixedRate(bot::sendInput, 0, period, TimeUnit.NANOSECONDS);
+		}
+		Thread.sleep(ServerListener.COUNTDOWN_STEP * ServerListener.COUNTDOWN_STEPS + 500);
+
+		reset();
+		long gcCount = gcCount(), gcTime = gcTime();
+		long overrunCount = overruns(), droppedCount = dropped();
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		elapsed = System.nanoTime() - start;
+		gcCollections = gcCount() - gcCount;
+		gcMillis = gcTime() - gcTime;
+		overruns = overruns() - overrunCount;
+		dropped = dropped() - droppedCount;
+	}
+
+	/**
+	 * Forget everything measured during the countdown.
+	 */
+	private void reset() {
+		snapshots.set(0);
+		badSnapshots.set(0);
+		lateSnapshots.set(0);
+		inputsSent.set(0);
+		serialization.reset();
+		synchronized(this) {
+			latencyCount = 0;
+		}
+	}
+
+	private long overruns() {
+		long count = 0;
+		for(int i=0; i<scheduler.getWorkerCount(); i++) {
+			count += scheduler.getWorkerLoop(i).getOverruns();
+		}
+		return count;
+	}
+
+	private long dropped() {
+		long count = 0;
+		for(int i=0; i<scheduler.getWorkerCount(); i++) {
+			count += scheduler.getWorkerLoop(i).getDroppedSteps();
+		}
+		return count;
+	}
+
+	/**
+	 * Disconnect the bots and stop the server.
+	 */
+	public void stop() {
+		if(inputs != null) {
+			inputs.shutdownNow();
+		}
+		for(Bot bot : bots) {
+			bot.client.stop();
+		}
+		if(server != null) {
+			server.stop();
+		}
+		if(scheduler != null) {
+			scheduler.shutdown();
+		}
+		if(dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Print what was measured.
+	 */
+	public void report() {
+		double secs = elapsed / 1e9;
+		System.out.println("---- Load test: " + bots.size() + " bots in " + sessions + " sessions, over " + String.format("%.1f", secs) + "s");
+
+		// The slowest step includes the start of the games, which can't be helped
+		long stepNanos = 0, maxStep = 0;
+		for(int i=0; i<scheduler.getWorkerCount(); i++) {
+			FixedTimestep loop = scheduler.getWorkerLoop(i);
+			stepNanos = Math.max(stepNanos, loop.getAverageStepNanos());
+			maxStep = Math.max(maxStep, loop.getMaxStepNanos());
+		}
+		System.out.println(String.format("Server tick: %d workers, busiest %.3fms average, %.3fms slowest (budget %.1fms), %d overruns, %d dropped",
+				scheduler.getWorkerCount(), stepNanos / 1e6, maxStep / 1e6, scheduler.getWorkerLoop(0).getStepNanos() / 1e6, overruns, dropped));
+
+		System.out.println(String.format("Snapshots: %d received (%.1f a second per bot), %d out of order, %d unusable",
+				snapshots.get(), snapshots.get() / secs / Math.max(1, bots.size()), lateSnapshots.get(), badSnapshots.get()));
+		System.out.println(String.format("Input to snapshot latency: p50 %.1fms, p90 %.1fms, p99 %.1fms, max %.1fms (%d of %d inputs seen)",
+				getLatencyPercentile(50) / 1e6, getLatencyPercentile(90) / 1e6, getLatencyPercentile(99) / 1e6, getLatencyPercentile(100) / 1e6, getLatencyCount(), inputsSent.get()));
+
+		System.out.println(String.format("Bandwidth: server sent %.1f KB/s (%.2f KB/s per bot, %d messages), received %.1f KB/s",
+				serialization.written.get() / 1024.0 / secs, serialization.written.get() / 1024.0 / secs / Math.max(1, bots.size()),
+				serialization.messages.get(), serialization.read.get() / 1024.0 / secs));
+		System.out.println(String.format("GC: %d collections, %dms in total", gcCollections, gcMillis));
+	}
+
+	/**
+	 * @return The number of snapshots the bots could use while measuring.
+	 */
+	public long getSnapshotCount() {
+		return snapshots.get();
+	}
+
+	/**
+	 * @return The number of snapshots which couldn't be decoded or didn't match the game.
+	 */
+	public long getBadSnapshotCount() {
+		return badSnapshots.get();
+	}
+
+	/**
+	 * @return The number of inputs which were seen in a snapshot.
+	 */
+	public synchronized int getLatencyCount() {
+		return latencyCount;
+	}
+
+	/**
+	 * Get a percentile of the time between a bot sending its controls and getting a
+	 * snapshot which includes them.
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The latency in nanoseconds, or 0 if no inputs were seen
+	 */
+	public synchronized long getLatencyPercentile(double percentile) {
+		if(latencyCount == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(latencies, latencyCount);
+		Arrays.sort(sorted);
+		int i = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+
+	private synchronized void addLatency(long nanos) {
+		if(latencyCount == latencies.length) {
+			latencies = Arrays.copyOf(latencies, latencies.length * 2);
+		}
+		latencies[latencyCount++] = nanos;
+	}
+
+	private void await(CountDownLatch latch, String failure) throws InterruptedException {
+		if(!latch.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+			throw new IllegalStateException(failure);
+		}
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * A headless client which plays by itself.
+	 */
+	private class Bot extends Listener {
+
+		private final String name;
+		private final Client client = new Client();
+		private final ConnectionDataModel lobby = new ConnectionDataModel(new ConnectionData());
+		private final CountDownLatch connected = new CountDownLatch(1);
+		private final CountDownLatch joined = new CountDownLatch(1);
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final Random random = new Random();
+
+		private volatile String sessionId;
+		private volatile int sessionNumber = -1;
+		private volatile int entity = -1;
+		private int characters;
+
+		private SnapshotHistory history = new SnapshotHistory();
+		private int appliedSequence = -1;
+
+		// when each input was sent, by its index
+		private final long[] sentAt = new long[INPUT_HISTORY];
+		private volatile int lastSent = 0;
+		private int lastSeen = 0;
+		private int controls = 0;
+
+		public Bot(String name) {
+			this.name = name;
+		}
+
+		public void connect() throws IOException {
+			NetworkingClient.registerClasses(client);
+			client.addListener(this);
+			client.start();
+			client.connect(5000, "localhost", port, port);
+			Message m = new Message();
+			m.setCommand(Command.MESSAGE);
+			m.setMessage(name);
+			client.sendTCP(m);
+		}
+
+		public String getId() {
+			return lobby.getMyId();
+		}
+
+		/**
+		 * Press some controls and send them, like the Updater does.
+		 */
+		public void sendInput() {
+			if(entity < 0 || sessionNumber < 0) {
+				return;
+			}
+			// Change direction every so often, and dash now and then
+			if(random.nextInt(10) == 0) {
+				controls = random.nextInt(16);
+			}
+			int pressed = controls | (random.nextInt(50) == 0 ? InputPacket.DASHING : 0);
+			int index = lastSent + 1;
+			sentAt[index % INPUT_HISTORY] = System.nanoTime();
+			lastSent = index;
+			client.sendUDP(new InputPacket(sessionNumber, entity, pressed, index * INPUT_STRIDE));
+			inputsSent.incrementAndGet();
+		}
+
+		@Override
+		public void received(Connection connection, Object object) {
+			if(object instanceof LobbyUpdate) {
+				if(!lobby.applyLobbyUpdate((LobbyUpdate)object)) {
+					client.sendTCP(new Message(Command.SESSION, Note.INDEX, getId(), null, sessionId, null));
+				}
+				return;
+			}
+			if(!(object instanceof Message)) {
+				return;
+			}
+			Message message = (Message)object;
+			switch(message.getCommand()) {
+			case SEND_ID:
+				lobby.setClientInformation(new ClientInformation(message.getSenderId(), message.getMessage()));
+				connected.countDown();
+				break;
+			case SESSION:
+				if(message.getNote() == Note.CREATED || message.getNote() == Note.JOINED) {
+					sessionId = message.getCurrentSessionId();
+					joined.countDown();
+				}
+				break;
+			case GAME:
+				switch(message.getNote()) {
+				case START:
+					List<CharacterInfo> info = ((GameData)message.getObject()).getCharactersList();
+					characters = info.size();
+					for(int i=0; i<info.size(); i++) {
+						if(getId().equals(info.get(i).getId())) {
+							entity = i;
+						}
+					}
+					history = new SnapshotHistory();
+					appliedSequence = -1;
+					Session session = lobby.getSession(sessionId);
+					if(session != null) {
+						sessionNumber = session.getNumber();
+					}
+					started.countDown();
+					break;
+				case UPDATE:
+					GameData data = (GameData)message.getObject();
+					if(data.getDelta() != null) {
+						onSnapshot(data);
+					}
+					break;
+				default:
+					break;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Decode a snapshot, check it makes sense, acknowledge it, and see which of
+		 * the bot's inputs it includes.
+		 */
+		private void onSnapshot(GameData data) {
+			int sequence = data.getSequence();
+			if(sequence <= appliedSequence) {
+				lateSnapshots.incrementAndGet();
+				return;
+			}
+			Snapshot baseline = null;
+			if(data.getBaseline() >= 0) {
+				baseline = history.get(data.getBaseline());
+				if(baseline == null) {
+					badSnapshots.incrementAndGet();
+					return;
+				}
+			}
+			Snapshot snapshot = history.slot(sequence);
+			try {
+				SnapshotCodec.decode(baseline, new Input(data.getDelta()), sequence, snapshot);
+			} catch (RuntimeException e) {
+				badSnapshots.incrementAndGet();
+				return;
+			}
+			if(snapshot.getCharacterCount() != characters) {
+				badSnapshots.incrementAndGet();
+				return;
+			}
+			appliedSequence = sequence;
+			snapshots.incrementAndGet();
+			client.sendUDP(new AckPacket(sessionNumber, entity, sequence));
+
+			// The server counts on from the last input it got, so the input it has
+			// reached is the echoed tick divided by the stride
+			int echoed = entity >= 0 ? snapshot.getInputTick(entity) : -1;
+			if(echoed >= 0) {
+				int index = echoed / INPUT_STRIDE;
+				if(index > lastSeen && index <= lastSent && lastSent - index < INPUT_HISTORY) {
+					addLatency(System.nanoTime() - sentAt[index % INPUT_HISTORY]);
+					lastSeen = index;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The server's serialization, counting the bytes it writes and reads (not
+	 * counting Kryonet's length headers or the UDP and TCP headers).
+	 */
+	private static class CountingSerialization extends KryoSerialization {
+
+		private final AtomicLong written = new AtomicLong();
+		private final AtomicLong read = new AtomicLong();
+		private final AtomicLong messages = new AtomicLong();
+
+		@Override
+		public synchronized void write(Connection connection, ByteBuffer buffer, Object object) {
+			int start = buffer.position();
+			super.write(connection, buffer, object);
+			written.addAndGet(buffer.position() - start);
+			messages.incrementAndGet();
+		}
+
+		@Override
+		public synchronized Object read(Connection connection, ByteBuffer buffer) {
+			int start = buffer.position();
+			Object object = super.read(connection, buffer);
+			read.addAndGet(buffer.position() - start);
+			return object;
+		}
+
+		public void reset() {
+			written.set(0);
+			read.set(0);
+			messages.set(0);
+		}
+	}
+}
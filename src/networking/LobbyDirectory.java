@@ -0,0 +1,112 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Keeps the clients' lists of sessions up to date. Whenever a session is
+ * created, changed or removed, only that session is sent to the clients, as a
+ * {@link LobbyUpdate} with the next version number, rather than every session
+ * on the server.
+ *
+ * A client which has just connected, or which has missed an update, is sent
+ * the whole list instead, split into pages and optionally deflated.
+ *
+ * Updates are sent while holding the directory's lock, so every client gets
+ * them in version order.
+ */
+public class LobbyDirectory {
+
+	/**
+	 * How much goes in one page of a resync, counting one for each session and
+	 * one for each client in it, so that a page always fits in Kryonet's
+	 * buffer, even without being deflated.
+	 */
+	public static final int PAGE_SIZE = 24;
+
+	private final ConcurrentMap<String, Session> sessions;
+	private final ConcurrentMap<String, Connection> subscribers;
+	private final boolean compress;
+	private int version = 0;
+
+	/**
+	 * Create the directory.
+	 * @param sessions The HashMap of sessions
+	 * @param subscribers The HashMap of connections, which are all sent the updates
+	 * @param compress Whether to deflate the sessions in a resync
+	 */
+	public LobbyDirectory(ConcurrentMap<String, Session> sessions, ConcurrentMap<String, Connection> subscribers, boolean compress) {
+		this.sessions = sessions;
+		this.subscribers = subscribers;
+		this.compress = compress;
+	}
+
+	/**
+	 * Tell every client that a session has been created or changed, or that it has
+	 * been removed if it is no longer in the HashMap of sessions.
+	 * @param session The session
+	 * @return The update which was sent
+	 */
+	public synchronized LobbyUpdate update(Session session) {
+		LobbyUpdate update;
+		if(sessions.get(session.getId()) == session) {
+			update = new LobbyUpdate(++version, Collections.singletonList(session), Collections.<String>emptyList());
+		}
+		else {
+			update = new LobbyUpdate(++version, Collections.<Session>emptyList(), Collections.singletonList(session.getId()));
+		}
+		for(Connection c : subscribers.values()) {
+			c.sendTCP(update);
+		}
+		return update;
+	}
+
+	/**
+	 * Send one client every session, replacing whatever list it had.
+	 * @param connection The client's connection
+	 */
+	public synchronized void resync(Connection connection) {
+		List<LobbyUpdate> pages = getPages();
+		for(int i=0; i<pages.size(); i++) {
+			connection.sendTCP(pages.get(i));
+		}
+	}
+
+	/**
+	 * Split every session into the pages of a resync.
+	 * @return The pages, of which there is always at least one
+	 */
+	public synchronized List<LobbyUpdate> getPages() {
+		List<List<Session>> split = new ArrayList<List<Session>>();
+		List<Session> page = new ArrayList<Session>();
+		int used = 0;
+		for(Session s : sessions.values()) {
+			int size = 1 + s.getAllClients().size();
+			if(used + size > PAGE_SIZE && !page.isEmpty()) {
+				split.add(page);
+				page = new ArrayList<Session>();
+				used = 0;
+			}
+			page.add(s);
+			used += size;
+		}
+		split.add(page);
+		
+		List<LobbyUpdate> pages = new ArrayList<LobbyUpdate>(split.size());
+		for(int i=0; i<split.size(); i++) {
+			pages.add(new LobbyUpdate(version, i, split.size(), split.get(i), compress));
+		}
+		return pages;
+	}
+
+	/**
+	 * @return The version of the list of sessions, which goes up with every update.
+	 */
+	public synchronized int getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,235 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A change to the list of sessions, sent by the server's {@link LobbyDirectory}.
+ * Either a delta, which holds the sessions which have been created or changed
+ * and the IDs of the sessions which have gone, or one page of a full resync,
+ * which holds every session.
+ *
+ * Every change to the list has a version number. A delta can only be applied on
+ * top of the version it was made from, so a client which has missed one (or is
+ * still waiting for its first resync) knows to ask for a resync instead.
+ */
+public class LobbyUpdate {
+
+	private int version;
+	private int base;
+	private int page;
+	private int pages;
+	private boolean full;
+	private boolean compressed;
+	private List<Session> sessions;
+	private List<String> removed;
+
+	public LobbyUpdate() {
+
+	}
+
+	/**
+	 * Create a delta.
+	 * @param version The version of the list after the change
+	 * @param sessions The sessions which have been created or changed
+	 * @param removed The IDs of the sessions which have been removed
+	 */
+	public LobbyUpdate(int version, List<Session> sessions, List<String> removed) {
+		this.version = version;
+		this.base = version - 1;
+		this.sessions = sessions;
+		this.removed = removed;
+		this.pages = 1;
+	}
+
+	/**
+	 * Create one page of a full resync.
+	 * @param version The version of the list the resync is of
+	 * @param page The index of this page
+	 * @param pages The number of pages in the resync
+	 * @param sessions The sessions on this page
+	 * @param compressed Whether to deflate the sessions when they are sent
+	 */
+	public LobbyUpdate(int version, int page, int pages, List<Session> sessions, boolean compressed) {
+		this.version = version;
+		this.base = -1;
+		this.page = page;
+		this.pages = pages;
+		this.full = true;
+		this.compressed = compressed;
+		this.sessions = sessions;
+		this.removed = new ArrayList<String>(0);
+	}
+
+	/**
+	 * @return The version of the list once this update has been applied.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The version this delta was made from, or -1 for a resync.
+	 */
+	public int getBase() {
+		return base;
+	}
+
+	/**
+	 * @return The index of this page of a resync.
+	 */
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * @return The number of pages in the resync this belongs to.
+	 */
+	public int getPages() {
+		return pages;
+	}
+
+	/**
+	 * @return True if this is part of a full resync rather than a delta.
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * @return True if this is the last page of a resync (or a delta).
+	 */
+	public boolean isLastPage() {
+		return page == pages - 1;
+	}
+
+	/**
+	 * @return The sessions which have been created or changed, or which are on this page.
+	 */
+	public List<Session> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * @return The IDs of the sessions which have been removed.
+	 */
+	public List<String> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Writes an update with its sessions one after the other, deflating them for a
+	 * compressed resync. The sessions themselves are written by the Kryo it is
+	 * registered with, so Session, ClientInformation and the rest must be
+	 * registered there as well.
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<LobbyUpdate> {
+
+		private static final int FULL = 1;
+		private static final int COMPRESSED = 2;
+
+		@Override
+		public void write(Kryo kryo, Output output, LobbyUpdate update) {
+			output.writeInt(update.version, true);
+			output.writeInt(update.base + 1, true);
+			output.writeByte((update.full ? FULL : 0) | (update.compressed ? COMPRESSED : 0));
+			output.writeInt(update.page, true);
+			output.writeInt(update.pages, true);
+
+			output.writeInt(update.removed.size(), true);
+			for(int i=0; i<update.removed.size(); i++) {
+				output.writeString(update.removed.get(i));
+			}
+
+			if(update.compressed) {
+				Output sessions = new Output(1024, -1);
+				writeSessions(kryo, sessions, update.sessions);
+				Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				try {
+					deflater.setInput(sessions.getBuffer(), 0, sessions.position());
+					deflater.finish();
+					byte[] chunk = new byte[1024];
+					Output deflated = new Output(1024, -1);
+					while(!deflater.finished()) {
+						deflated.writeBytes(chunk, 0, deflater.deflate(chunk));
+					}
+					output.writeInt(sessions.position(), true);
+					output.writeInt(deflated.position(), true);
+					output.writeBytes(deflated.getBuffer(), 0, deflated.position());
+				}
+				finally {
+					deflater.end();
+				}
+			}
+			else {
+				writeSessions(kryo, output, update.sessions);
+			}
+		}
+
+		@Override
+		public LobbyUpdate read(Kryo kryo, Input input, Class<LobbyUpdate> type) {
+			LobbyUpdate update = new LobbyUpdate();
+			// must be done before the sessions are read, in case Kryo is keeping references
+			kryo.reference(update);
+			update.version = input.readInt(true);
+			update.base = input.readInt(true) - 1;
+			int flags = input.readByte();
+			update.full = (flags & FULL) != 0;
+			update.compressed = (flags & COMPRESSED) != 0;
+			update.page = input.readInt(true);
+			update.pages = input.readInt(true);
+
+			int count = input.readInt(true);
+			update.removed = new ArrayList<String>(count);
+			for(int i=0; i<count; i++) {
+				update.removed.add(input.readString());
+			}
+
+			if(update.compressed) {
+				byte[] sessions = new byte[input.readInt(true)];
+				byte[] deflated = input.readBytes(input.readInt(true));
+				Inflater inflater = new Inflater();
+				try {
+					inflater.setInput(deflated);
+					if(inflater.inflate(sessions) != sessions.length) {
+						throw new KryoException("Lobby update was cut short");
+					}
+				} catch (DataFormatException e) {
+					throw new KryoException(e);
+				}
+				finally {
+					inflater.end();
+				}
+				update.sessions = readSessions(kryo, new Input(sessions));
+			}
+			else {
+				update.sessions = readSessions(kryo, input);
+			}
+			return update;
+		}
+
+		private static void writeSessions(Kryo kryo, Output output, List<Session> sessions) {
+			output.writeInt(sessions.size(), true);
+			for(int i=0; i<sessions.size(); i++) {
+				kryo.writeObject(output, sessions.get(i));
+			}
+		}
+
+		private static List<Session> readSessions(Kryo kryo, Input input) {
+			int count = input.readInt(true);
+			List<Session> sessions = new ArrayList<Session>(count);
+			for(int i=0; i<count; i++) {
+				sessions.add(kryo.readObject(input, Session.class));
+			}
+			return sessions;
+		}
+	}
+}
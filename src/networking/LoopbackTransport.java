@@ -0,0 +1,57 @@
+package networking;
+
+import java.util.ArrayDeque;
+
+import com.esotericsoftware.kryonet.Listener;
+
+/**
+ * A transport which hands messages straight to a listener in the same
+ * process, after a fixed number of ticks. Lets the client and server halves
+ * of the game talk to each other without any sockets, e.g. to test prediction
+ * with a given amount of latency.
+ */
+public class LoopbackTransport implements Transport {
+	
+	private final int latency;
+	private final Listener receiver;
+	private final ArrayDeque<Object> messages = new ArrayDeque<Object>();
+	private final ArrayDeque<Integer> arrivals = new ArrayDeque<Integer>();
+	private int now = 0;
+	
+	/**
+	 * Create a loopback transport.
+	 * @param latency The number of ticks each message takes to arrive
+	 * @param receiver The listener at the other end
+	 */
+	public LoopbackTransport(int latency, Listener receiver) {
+		this.latency = latency;
+		this.receiver = receiver;
+	}
+	
+	/**
+	 * Queue a message to arrive after the latency has passed.
+	 */
+	@Override
+	public void sendUDP(Object message) {
+		messages.add(message);
+		arrivals.add(now + latency);
+	}
+	
+	/**
+	 * Move time on by one tick, delivering any messages which have arrived.
+	 */
+	public void tick() {
+		now++;
+		while(!arrivals.isEmpty() && arrivals.peek() <= now) {
+			arrivals.poll();
+			receiver.received(null, messages.poll());
+		}
+	}
+	
+	/**
+	 * @return The number of messages still on their way.
+	 */
+	public int getInFlight() {
+		return messages.size();
+	}
+}
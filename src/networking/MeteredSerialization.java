@@ -0,0 +1,126 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+/**
+ * The server's serialization, counting how many of each kind of message it
+ * sends and receives, and how many bytes (not counting Kryonet's length
+ * headers or the UDP and TCP headers).
+ *
+ * A {@link Message} is counted by its command and note, e.g. "SESSION/JOIN",
+ * and anything else by its class, e.g. "Broadcast".
+ */
+public class MeteredSerialization extends KryoSerialization {
+
+	private final ConcurrentMap<String, LongAdder> sent = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentMap<String, LongAdder> received = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder messagesWritten = new LongAdder();
+
+	@Override
+	public synchronized void write(Connection connection, ByteBuffer buffer, Object object) {
+		int start = buffer.position();
+		super.write(connection, buffer, object);
+		bytesWritten.add(buffer.position() - start);
+		messagesWritten.increment();
+		count(sent, object);
+	}
+
+	@Override
+	public synchronized Object read(Connection connection, ByteBuffer buffer) {
+		int start = buffer.position();
+		Object object = super.read(connection, buffer);
+		bytesRead.add(buffer.position() - start);
+		count(received, object);
+		return object;
+	}
+
+	private static void count(ConcurrentMap<String, LongAdder> counts, Object object) {
+		String key = key(object);
+		LongAdder count = counts.get(key);
+		if(count == null) {
+			LongAdder created = new LongAdder();
+			count = counts.putIfAbsent(key, created);
+			if(count == null) {
+				count = created;
+			}
+		}
+		count.increment();
+	}
+
+	/**
+	 * Get what a message is counted as.
+	 * @param object The message
+	 * @return "COMMAND/NOTE" for a Message, or the class name for anything else
+	 */
+	static String key(Object object) {
+		if(object instanceof Message) {
+			Message message = (Message) object;
+			return message.getCommand() + "/" + message.getNote();
+		}
+		return object == null ? "null" : object.getClass().getSimpleName();
+	}
+
+	/**
+	 * @return How many of each kind of message have been sent, sorted by kind.
+	 */
+	public Map<String, Long> getSent() {
+		return snapshot(sent);
+	}
+
+	/**
+	 * @return How many of each kind of message have been received, sorted by kind.
+	 */
+	public Map<String, Long> getReceived() {
+		return snapshot(received);
+	}
+
+	private static Map<String, Long> snapshot(ConcurrentMap<String, LongAdder> counts) {
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().sum());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return The number of bytes written.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * @return The number of bytes read.
+	 */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/**
+	 * @return The number of messages written, of any kind.
+	 */
+	public long getMessagesWritten() {
+		return messagesWritten.sum();
+	}
+
+	/**
+	 * Start counting again from zero.
+	 */
+	public void reset() {
+		sent.clear();
+		received.clear();
+		bytesWritten.reset();
+		bytesRead.reset();
+		messagesWritten.reset();
+	}
+}
@@ -86,18 +86,18 @@ public class NetworkingClient extends Thread {
 	 * 
 	 * @param client The Kryonet Client object
 	 */
-	private static void registerClasses(Client client) {
+	static void registerClasses(Client client) {
 		  Kryo kryo = client.getKryo();
 		  kryo.register(Message.class);
 		  kryo.register(Command.class);
 		  kryo.register(Note.class);
-		  kryo.register(CharacterInfo.class);
+		  kryo.register(CharacterInfo.class, new CharacterInfo.Serializer());
 		  kryo.register(Session.class);
 		  kryo.register(Empty.class);
 		  kryo.register(ClientInformation.class);
 		  kryo.register(LinkedBlockingQueue.class);
 		  kryo.register(java.util.concurrent.ConcurrentHashMap.class);
-		  kryo.register(GameData.class);
+		  kryo.register(GameData.class, new GameData.Serializer());
 		  kryo.register(ArrayList.class);
 		  kryo.register(Tag.class);
 		  kryo.register(resources.Map.World.class);
@@ -105,5 +105,10 @@ public class NetworkingClient extends Thread {
 		  kryo.register(resources.Character.Class.class);
 		  kryo.register(Power.class);
 	      kryo.register(SerializablePowerUp.class);
+		  kryo.register(byte[].class);
+		  kryo.register(Broadcast.class, new Broadcast.Serializer());
+		  kryo.register(InputPacket.class);
+		  kryo.register(AckPacket.class);
+		  kryo.register(LobbyUpdate.class, new LobbyUpdate.Serializer());
 	}
 }
@@ -37,6 +37,19 @@ public class NetworkingDemo {
 	 * @param connections The Hash Map of connections which the server has to clients.
 	 */
 	public static void startServerGame(Session session, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Session> sessions, ConcurrentMap<String, Connection> connections) {
+		startServerGame(session, resourcesMap, sessions, connections, null);
+	}
+	
+	/**
+	 * Starts the game on the server, telling everyone about the session again once the game is over.
+	 * 
+	 * @param session The session which the game needs to start on.
+	 * @param resourcesMap The Hash Map of resources which the new resources for the session needs to be stored in.
+	 * @param sessions The Hash Map of all the sessions on the server.
+	 * @param connections The Hash Map of connections which the server has to clients.
+	 * @param directory The directory which keeps the clients' lists of sessions up to date, or null
+	 */
+	public static void startServerGame(Session session, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Session> sessions, ConcurrentMap<String, Connection> connections, LobbyDirectory directory) {
 		
 		// Fetches the variables needed to generate the map from the session object.
 		String mapName = session.getMapName();
@@ -53,14 +66,23 @@ public class NetworkingDemo {
 		Character newPlayer;
 		Resources resources = new Resources();
 		resources.setMap(map);
+		resources.setSessionId(session.getId());
 		new MapCosts(resources);
 		Resources.silent = true;
 		
 		// Add the resources object to the resources HashMap.
 		resourcesMap.put(session.getId(), resources);
 		
+		// One updater sends the state of the whole game to every client in the session,
+		// at the end of the game's ticks.
+		ClientUpdater updater = new ClientUpdater(session.getId(), resourcesMap, sessions, connections, directory);
+		resources.addTickListener(updater);
+		
 		List<ClientInformation> clients = session.getAllClients();
 		for(int i=0; i<clients.size(); i++) {
+			// Snapshots from any previous game don't count any more
+			clients.get(i).setLastAck(-1);
+			
 			Point coords = resources.getMap().randPointOnMap();
 			Point tile = resources.getMap().tileCoords(coords.x, coords.y);
 			coords = resources.getMap().tileCoordsToMapCoords(tile.x, tile.y);
@@ -70,7 +92,6 @@ public class NetworkingDemo {
 			newPlayer.setX(coords.x);
 			newPlayer.setY(coords.y);
 			newPlayer.setId(id);
-			newPlayer.addObserver(new ClientUpdater(session.getId(), resourcesMap, sessions, connections));
 			resources.addPlayerToList(newPlayer);
 		}
 		
@@ -1,6 +1,7 @@
 package networking;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 
 // Usage:
 //        java Server
@@ -41,6 +42,36 @@ public class NetworkingServer {
 		
 		Log.DEBUG();
 		
+		// Counts the messages and bytes going in and out, for the metrics.
+		MeteredSerialization serialization = new MeteredSerialization();
+		server = new Server(16384, 2048, serialization);
+		
+		// Every game on the server is stepped by a fixed pool of threads.
+		SessionScheduler scheduler = new SessionScheduler();
+		
+		// Messages are handled on a queue per session, off Kryonet's update thread.
+		SessionDispatcher dispatcher = new SessionDispatcher();
+		
+		ServerListener listener = start(server, TCPport, UDPport, scheduler, dispatcher);
+		
+		// Available over JMX, and printed every minute (or -Dballin.metrics.interval seconds).
+		new ServerMetrics(server, serialization, listener.getSessions(), scheduler).start();
+		
+		System.out.println("Server is operational.");
+	}
+	
+	/**
+	 * Set up a server with empty sessions and start it listening.
+	 * @param server The Kryonet Server object
+	 * @param tcpPort The port to receive TCP packets through
+	 * @param udpPort The port to receive UDP packets through
+	 * @param scheduler The scheduler which runs all the games on the server
+	 * @param dispatcher Runs each session's messages in order, off the network thread
+	 * @return The listener handling the server's messages
+	 * @throws IOException If the server can't bind to the ports
+	 */
+	static ServerListener start(Server server, int tcpPort, int udpPort, SessionScheduler scheduler, SessionDispatcher dispatcher) throws IOException {
+		
 		// Initialise all the different Hash Maps which store the information about each different session and game.
 		// Key is the Client ID.
 		ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
@@ -50,18 +81,16 @@ public class NetworkingServer {
 	    ConcurrentMap<String, ClientInformation> clients = new ConcurrentHashMap<String, ClientInformation>();
 	    ConcurrentMap<String, Connection> connections = new ConcurrentHashMap<String, Connection>();
 		
-		server = new Server();
-		
 		registerClasses(server);
 		
 		// Bind the Server to the ports which it will send and receive packets through.
-		server.bind(UDPport, TCPport);
+		server.bind(tcpPort, udpPort);
 		
-		server.addListener(new ServerListener(sessions, clients, resourcesMap, connections));
+		ServerListener listener = new ServerListener(sessions, clients, resourcesMap, connections, scheduler, dispatcher);
+		server.addListener(listener);
 		
 		server.start();
-		
-		System.out.println("Server is operational.");
+		return listener;
 	}
 	
 	/**
@@ -71,17 +100,26 @@ public class NetworkingServer {
 	 * @param server The Kryonet Server object
 	 */
 	private static void registerClasses(Server server) {
-		Kryo kryo = server.getKryo();
+		registerClasses(server.getKryo());
+	}
+	
+	/**
+	 * Registers the classes sent across the network with a Kryo object, the same way
+	 * as for the server.
+	 * 
+	 * @param kryo The Kryo object
+	 */
+	static void registerClasses(Kryo kryo) {
 		kryo.register(Message.class);
 		kryo.register(Command.class);
 		kryo.register(Note.class);
-		kryo.register(CharacterInfo.class);
+		kryo.register(CharacterInfo.class, new CharacterInfo.Serializer());
 		kryo.register(Session.class);
 		kryo.register(Empty.class);
 		kryo.register(ClientInformation.class);
 		kryo.register(LinkedBlockingQueue.class);
 		kryo.register(java.util.concurrent.ConcurrentHashMap.class);
-		kryo.register(GameData.class);
+		kryo.register(GameData.class, new GameData.Serializer());
 		kryo.register(ArrayList.class);
 		kryo.register(Tag.class);
 		kryo.register(resources.Map.World.class);
@@ -89,6 +127,11 @@ public class NetworkingServer {
 		kryo.register(resources.Character.Class.class);
 		kryo.register(Power.class);
 		kryo.register(SerializablePowerUp.class);
+		kryo.register(byte[].class);
+		kryo.register(Broadcast.class, new Broadcast.Serializer());
+		kryo.register(InputPacket.class);
+		kryo.register(AckPacket.class);
+		kryo.register(LobbyUpdate.class, new LobbyUpdate.Serializer());
 		
 	}
 }
@@ -5,26 +5,37 @@ import static org.junit.Assert.*;
 import java.awt.event.ActionEvent;
 import java.awt.geom.Point2D;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
 
 import gamemodes.Deathmatch;
 import gamemodes.GameModeFFA;
 import gamemodes.HotPotato;
 import gamemodes.LastManStanding;
+import metrics.Histogram;
 import resources.Map;
+import resources.MapCosts;
 import resources.Powerup;
 import resources.Powerup.Power;
 import resources.Resources;
@@ -235,6 +246,359 @@ public class NetworkingTests {
 		}
 	}
 	
+	@Test
+	public void testBroadcast() {
+		// Pretend to be the server and the client, with the classes registered the same way
+		Kryo kryo = new Kryo();
+		kryo.register(Message.class);
+		kryo.register(Broadcast.class, new Broadcast.Serializer());
+		
+		byte[] delta = {1, 2, 3, 4, 5};
+		Broadcast broadcast = new Broadcast();
+		broadcast.update(7, 5, delta, 3);
+		
+		// The same bytes are written for every connection, and read back as the usual message
+		Output out = new Output(256, -1);
+		for(int i=0; i<2; i++) {
+			out.clear();
+			kryo.writeClassAndObject(out, broadcast);
+			Object read = kryo.readClassAndObject(new Input(out.toBytes()));
+			assertTrue("Not read as a message!", read instanceof Message);
+			Message message = (Message)read;
+			assertEquals(Command.GAME, message.getCommand());
+			assertEquals(Note.UPDATE, message.getNote());
+			GameData data = (GameData)message.getObject();
+			assertEquals(7, data.getSequence());
+			assertEquals(5, data.getBaseline());
+			assertArrayEquals(new byte[] {1, 2, 3}, data.getDelta());
+		}
+		
+		// A full snapshot has no baseline
+		broadcast.update(8, -1, delta, 5);
+		out.clear();
+		kryo.writeClassAndObject(out, broadcast);
+		GameData data = (GameData)((Message)kryo.readClassAndObject(new Input(out.toBytes()))).getObject();
+		assertEquals(-1, data.getBaseline());
+		assertArrayEquals(delta, data.getDelta());
+	}
+	
+	@Test
+	public void testCompactSerializers() {
+		// The START message for eight characters, and the final update
+		List<CharacterInfo> start = new ArrayList<CharacterInfo>();
+		List<CharacterInfo> end = new ArrayList<CharacterInfo>();
+		for(int i=0; i<8; i++) {
+			start.add(new CharacterInfo(UUID.randomUUID().toString(), 112.5 + 50 * i, 312.5, i, resources.Character.Class.values()[i % 6], "Player " + i));
+			end.add(new CharacterInfo(null, 100.4 + i, 200.6 - i, i, i % 2 == 0, i == 3, false, true, 100 - i, true, Power.values()[i % 3], i, 2 * i, 0, 5 - i % 5, 10 * i - 20, i == 1, i, true, false, 1000 + i));
+		}
+		GameData startData = new GameData(start);
+		GameData endData = new GameData(end);
+		ArrayList<SerializablePowerUp> powerUpList = ClientUpdater.serializePowerUps(powerUps);
+		endData.setPowerUps(powerUpList);
+		endData.setTimer(-1);
+		GameData input = new GameData(new CharacterInfo("me", true, false, true, false, true, false));
+		
+		Kryo compact = new Kryo();
+		compact.register(CharacterInfo.class, new CharacterInfo.Serializer());
+		compact.register(GameData.class, new GameData.Serializer());
+		Kryo fields = new Kryo();
+		fields.register(CharacterInfo.class);
+		fields.register(GameData.class);
+		for(Kryo kryo : new Kryo[] {compact, fields}) {
+			kryo.register(ArrayList.class);
+			kryo.register(SerializablePowerUp.class);
+			kryo.register(Power.class);
+			kryo.register(resources.Character.Class.class);
+			kryo.register(GameData.Tag.class);
+		}
+		
+		// Everything survives the trip, with positions to the nearest pixel
+		GameData readStart = roundTrip(compact, startData);
+		for(int i=0; i<8; i++) {
+			CharacterInfo sent = start.get(i), read = readStart.getCharactersList().get(i);
+			assertEquals(sent.getId(), read.getId());
+			assertEquals(sent.getName(), read.getName());
+			assertEquals(sent.getType(), read.getType());
+			assertEquals(sent.getPlayerNumber(), read.getPlayerNumber());
+			assertEquals(sent.getX(), read.getX(), 0.5);
+			assertEquals(sent.getY(), read.getY(), 0.5);
+		}
+		GameData readEnd = roundTrip(compact, endData);
+		assertEquals(-1, readEnd.getTimer());
+		for(int i=0; i<8; i++) {
+			CharacterInfo sent = end.get(i), read = readEnd.getCharactersList().get(i);
+			assertTrue("Static fields sent!", read.getId() == null && read.getName() == null && read.getType() == null);
+			assertEquals(Math.round(sent.getX()), read.getX(), 0);
+			assertEquals(Math.round(sent.getY()), read.getY(), 0);
+			assertEquals(sent.isFalling(), read.isFalling());
+			assertEquals(sent.isDead(), read.isDead());
+			assertEquals(sent.isBlocking(), read.isBlocking());
+			assertEquals(sent.isHasBomb(), read.isHasBomb());
+			assertEquals(sent.getLastPowerUp(), read.getLastPowerUp());
+			assertEquals(sent.getStamina(), read.getStamina());
+			assertEquals(sent.getScore(), read.getScore());
+			assertEquals(sent.getLives(), read.getLives());
+			assertEquals(sent.getTimeOfDeath(), read.getTimeOfDeath());
+		}
+		for(int i=0; i<powerUpList.size(); i++) {
+			assertEquals(powerUpList.get(i).getP(), readEnd.getPowerUps().get(i).getP());
+			assertEquals(powerUpList.get(i).isActive(), readEnd.getPowerUps().get(i).isActive());
+		}
+		CharacterInfo readInput = roundTrip(compact, input).getInfo();
+		assertTrue(readInput.isUp() && readInput.isLeft() && readInput.isDashing() && !readInput.isRight());
+		assertEquals(-1, readInput.getInputTick());
+		
+		// And takes much less room than Kryo's field serializer
+		for(GameData data : new GameData[] {startData, endData, input}) {
+			int compactSize = size(compact, data), fieldSize = size(fields, data);
+			assertTrue("Not smaller! " + compactSize + " vs " + fieldSize, compactSize < fieldSize);
+		}
+		assertTrue("Final update not half the size!", 2 * size(compact, endData) < size(fields, endData));
+	}
+	
+	private static GameData roundTrip(Kryo kryo, GameData data) {
+		Output out = new Output(256, -1);
+		kryo.writeClassAndObject(out, data);
+		return (GameData)kryo.readClassAndObject(new Input(out.toBytes()));
+	}
+	
+	@Test
+	public void testGameEndsAfterSessionHasGone() {
+		Resources.silent = true;
+		Resources res = new Resources();
+		new Deathmatch(res);
+		res.setTimer(0);
+		res.setGameOver(true);
+		ConcurrentMap<String, Resources> games = new ConcurrentHashMap<String, Resources>();
+		games.put("gone", res);
+		
+		// Everyone left, so there's nobody to tell, but the game is still tidied up
+		ClientUpdater updater = new ClientUpdater("gone", games, new ConcurrentHashMap<String, Session>(), connections);
+		updater.tickEnded(res);
+		updater.tickEnded(res);
+		assertTrue("Finished game not removed!", games.isEmpty());
+	}
+	
+	@Test
+	public void testBroadcastGroup() {
+		clients = new ConcurrentHashMap<String, ClientInformation>();
+		session = new Session(clients);
+		ClientInformation bob = new ClientInformation("Bob");
+		session.addClient(bob.getId(), bob);
+		
+		BroadcastGroup group = new BroadcastGroup(session, connections);
+		assertEquals(1, group.refresh());
+		assertTrue(group.getMember(0) == bob);
+		assertTrue("Connection found for unconnected client!", group.getConnection(0) == null);
+		
+		// Not rebuilt unless someone joins or leaves
+		ClientInformation member = group.getMember(0);
+		assertEquals(1, group.refresh());
+		assertTrue(group.getMember(0) == member);
+		
+		ClientInformation alice = new ClientInformation("Alice");
+		session.addClient(alice.getId(), alice);
+		assertEquals(2, group.refresh());
+		session.removeClient(bob.getId());
+		assertEquals(1, group.refresh());
+		assertTrue(group.getMember(0) == alice);
+	}
+	
+	@Test
+	public void testLobbyDirectory() {
+		// Pretend to be the server and the client, with the classes registered the same way
+		Kryo kryo = new Kryo();
+		kryo.register(Session.class);
+		kryo.register(ClientInformation.class);
+		kryo.register(ConcurrentHashMap.class);
+		kryo.register(World.class);
+		kryo.register(Mode.class);
+		kryo.register(resources.Character.Class.class);
+		kryo.register(LobbyUpdate.class, new LobbyUpdate.Serializer());
+		
+		ConcurrentMap<String, Session> lobby = new ConcurrentHashMap<String, Session>();
+		for(int i=0; i<70; i++) {
+			Session s = new Session("Lobby " + i, new ClientInformation(names[i % names.length]), "asteroid", World.SPACE, Mode.Deathmatch, names[i % names.length], 0);
+			lobby.put(s.getId(), s);
+		}
+		List<Object> sent = new ArrayList<Object>();
+		connections.put("me", recorder(sent));
+		
+		// A new client gets every session, a page at a time
+		LobbyDirectory directory = new LobbyDirectory(lobby, connections, true);
+		directory.resync(connections.get("me"));
+		// Each session and its one client take two places on a page
+		assertEquals((70 * 2 + LobbyDirectory.PAGE_SIZE - 1) / LobbyDirectory.PAGE_SIZE, sent.size());
+		ConnectionDataModel model = new ConnectionDataModel(new ConnectionData());
+		int resyncSize = 0;
+		for(int i=0; i<sent.size(); i++) {
+			resyncSize += size(kryo, sent.get(i));
+			assertTrue(model.applyLobbyUpdate(roundTrip(kryo, (LobbyUpdate)sent.get(i))));
+			assertEquals("Sessions shown before the resync finished!", i == sent.size() - 1 ? 70 : 0, model.getAllSessions().size());
+		}
+		assertEquals(0, model.getLobbyVersion());
+		for(Session s : lobby.values()) {
+			Session copy = model.getSession(s.getId());
+			assertEquals(s.getSessionName(), copy.getSessionName());
+			assertEquals(s.getAllClients().get(0).getId(), copy.getAllClients().get(0).getId());
+		}
+		
+		// Deflating the resync makes it smaller
+		int uncompressed = size(kryo, new LobbyDirectory(lobby, connections, false).getPages().get(0));
+		assertTrue("Resync not compressed!", size(kryo, directory.getPages().get(0)) < uncompressed);
+		
+		// Someone joins a session, and only that session is sent to everyone
+		Session changed = lobby.values().iterator().next();
+		ClientInformation joiner = new ClientInformation("Joiner");
+		changed.addClient(joiner.getId(), joiner);
+		sent.clear();
+		directory.update(changed);
+		assertEquals(1, sent.size());
+		LobbyUpdate delta = roundTrip(kryo, (LobbyUpdate)sent.get(0));
+		assertTrue("Delta not smaller than the resync!", size(kryo, sent.get(0)) * 20 < resyncSize);
+		assertTrue(model.applyLobbyUpdate(delta));
+		assertEquals(1, model.getLobbyVersion());
+		assertEquals(2, model.getSession(changed.getId()).getAllClients().size());
+		
+		// It empties and is removed
+		lobby.remove(changed.getId());
+		sent.clear();
+		directory.update(changed);
+		assertTrue(model.applyLobbyUpdate(roundTrip(kryo, (LobbyUpdate)sent.get(0))));
+		assertEquals(69, model.getAllSessions().size());
+		assertTrue(model.getSession(changed.getId()) == null);
+		
+		// A client which misses an update needs a resync, and ignores deltas until it gets one
+		Session other = lobby.values().iterator().next();
+		directory.update(other);
+		sent.clear();
+		directory.update(other);
+		directory.update(other);
+		assertFalse("Delta applied to the wrong version!", model.applyLobbyUpdate(roundTrip(kryo, (LobbyUpdate)sent.get(0))));
+		assertTrue(model.applyLobbyUpdate(roundTrip(kryo, (LobbyUpdate)sent.get(1))));
+		assertEquals(-1, model.getLobbyVersion());
+		sent.clear();
+		directory.resync(connections.get("me"));
+		for(Object page : sent) {
+			model.applyLobbyUpdate(roundTrip(kryo, (LobbyUpdate)page));
+		}
+		assertEquals(directory.getVersion(), model.getLobbyVersion());
+		assertEquals(69, model.getAllSessions().size());
+	}
+	
+	private static LobbyUpdate roundTrip(Kryo kryo, LobbyUpdate update) {
+		Output out = new Output(256, -1);
+		kryo.writeClassAndObject(out, update);
+		return (LobbyUpdate)kryo.readClassAndObject(new Input(out.toBytes()));
+	}
+	
+	private static int size(Kryo kryo, Object object) {
+		Output out = new Output(256, -1);
+		kryo.writeClassAndObject(out, object);
+		return out.position();
+	}
+	
+	@Test
+	public void testLoadTest() throws Exception {
+		// Two bots play a real game against a server over loopback
+		LoadTest test = new LoadTest(1, 2, 20, 1, 0);
+		try {
+			test.run();
+		}
+		finally {
+			test.stop();
+		}
+		assertTrue("No snapshots received!", test.getSnapshotCount() > 0);
+		assertEquals("Snapshots couldn't be used!", 0, test.getBadSnapshotCount());
+		assertTrue("Controls never reached the server!", test.getLatencyCount() > 0);
+		assertTrue(test.getLatencyPercentile(50) > 0 && test.getLatencyPercentile(50) <= test.getLatencyPercentile(99));
+	}
+	
+	@Test
+	public void testEntityRegistry() {
+		Resources.silent = true;
+		
+		// Session numbers are small and reused
+		SessionRegistry registry = new SessionRegistry();
+		Session first = new Session(new ConcurrentHashMap<String, ClientInformation>());
+		Session second = new Session(new ConcurrentHashMap<String, ClientInformation>());
+		assertEquals(0, registry.register(first));
+		assertEquals(1, registry.register(second));
+		registry.unregister(first);
+		assertTrue(registry.getSession(0) == null);
+		assertTrue(registry.getSession(1) == second);
+		Session third = new Session(new ConcurrentHashMap<String, ClientInformation>());
+		assertEquals(0, registry.register(third));
+		assertEquals(0, third.getNumber());
+		
+		// A game with one client, who controls the second character
+		ClientInformation me = new ClientInformation("Me");
+		me.setConnectionId(3);
+		Session testSession = new Session("Test", me, "asteroid", World.SPACE, Mode.Deathmatch, "Me", 0);
+		testSession.setGameInProgress(true);
+		sessions.put(testSession.getId(), testSession);
+		Resources serverRes = new Resources();
+		resources.Character ai = new resources.Character(resources.Character.Class.WIZARD, 1, "CPU");
+		resources.Character mine = new resources.Character(resources.Character.Class.WIZARD, 2, "Me");
+		mine.setId(me.getId());
+		serverRes.addPlayerToList(ai);
+		serverRes.addPlayerToList(mine);
+		resourcesMap.put(testSession.getId(), serverRes);
+		testSession.getEntities().bind(1, me);
+		assertTrue(testSession.getEntities().getController(1) == me);
+		assertTrue(testSession.getEntities().getController(0) == null);
+		assertEquals(1, testSession.getEntities().getEntity(3));
+		assertEquals(-1, testSession.getEntities().getEntity(4));
+		
+		ServerListener server = new ServerListener(sessions, clients, resourcesMap, connections, null);
+		int number = server.getSessionRegistry().register(testSession);
+		
+		// Controls go straight to the character
+		mine.setRight(true);
+		mine.setUp(true);
+		InputPacket input = new InputPacket(number, 1, mine, 5);
+		mine.setRight(false);
+		mine.setUp(false);
+		server.received(connection(3), input);
+		assertTrue("Controls not applied!", mine.isRight() && mine.isUp() && !mine.isLeft());
+		assertEquals(5, mine.getLastInputTick());
+		
+		// Nobody can control someone else's character
+		ai.setRight(true);
+		server.received(connection(3), new InputPacket(number, 0, mine, 6));
+		server.received(connection(4), new InputPacket(number, 1, ai, 6));
+		assertTrue("Another character controlled!", ai.isRight() && !ai.isUp());
+		assertTrue("Controlled from another connection!", mine.isUp());
+		
+		server.received(connection(3), new AckPacket(number, 1, 42));
+		assertEquals(42, me.getLastAck());
+	}
+	
+	/**
+	 * A connection which keeps everything sent over TCP.
+	 */
+	private static Connection recorder(final List<Object> sent) {
+		return new Connection() {
+			@Override
+			public int sendTCP(Object object) {
+				sent.add(object);
+				return 0;
+			}
+		};
+	}
+	
+	/**
+	 * A connection which only has an ID.
+	 */
+	private static Connection connection(final int id) {
+		return new Connection() {
+			@Override
+			public int getID() {
+				return id;
+			}
+		};
+	}
+	
 	@Test
 	public void testAllClientsReady() {
 		clients = new ConcurrentHashMap<String, ClientInformation>();
@@ -259,4 +623,319 @@ public class NetworkingTests {
 		assertTrue("Method not working", !session1.allClientsReady());
 	}
 	
+	@Test
+	public void testSessionDispatcher() throws InterruptedException {
+		SessionDispatcher dispatcher = new SessionDispatcher(2);
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch slowStarted = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch fastDone = new CountDownLatch(1);
+		dispatcher.open("slow");
+		dispatcher.open("fast");
+		
+		// A session stuck on a slow message...
+		dispatcher.execute("slow", () -> {
+			slowStarted.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		});
+		assertTrue("Slow task never started!", slowStarted.await(1, TimeUnit.SECONDS));
+		
+		// ...doesn't hold up another session, whose messages stay in order
+		for(int i=0; i<200; i++) {
+			final int n = i;
+			dispatcher.execute("fast", () -> order.add(n));
+		}
+		dispatcher.execute("fast", () -> fastDone.countDown());
+		assertTrue("Session held up by another!", fastDone.await(1, TimeUnit.SECONDS));
+		for(int i=0; i<order.size(); i++) {
+			assertEquals("Messages out of order!", i, (int)order.get(i));
+		}
+		assertEquals(200, order.size());
+		
+		// Scheduled tasks join the back of the session's queue when they're due
+		final CountDownLatch scheduled = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		final long[] ran = new long[1];
+		dispatcher.schedule("slow", () -> {
+			ran[0] = System.nanoTime();
+			scheduled.countDown();
+		}, 50);
+		Thread.sleep(100);
+		assertEquals("Scheduled task overtook the session's queue!", 1, scheduled.getCount());
+		release.countDown();
+		assertTrue("Scheduled task never ran!", scheduled.await(1, TimeUnit.SECONDS));
+		assertTrue("Scheduled task ran early!", ran[0] - start >= 50000000L);
+		
+		// Nothing is run for a session after it has gone, including what was scheduled for it
+		final AtomicInteger late = new AtomicInteger(0);
+		dispatcher.schedule("fast", () -> late.incrementAndGet(), 20);
+		dispatcher.remove("fast");
+		dispatcher.execute("fast", () -> late.incrementAndGet());
+		dispatcher.execute("never opened", () -> late.incrementAndGet());
+		Thread.sleep(100);
+		assertEquals("Task run for a removed session!", 0, late.get());
+		// Only the lobby and the slow session are left
+		assertEquals(2, dispatcher.getQueueCount());
+		dispatcher.shutdown();
+	}
+	
+	@Test
+	public void testSessionScheduler() throws InterruptedException {
+		Resources.silent = true;
+		SessionScheduler scheduler = new SessionScheduler(2);
+		List<SimulatedGame> games = new ArrayList<SimulatedGame>();
+		for(int i=0; i<4; i++) {
+			Resources r = new Resources();
+			r.setMap(new Map(1200, 650, World.SPACE, "asteroid"));
+			new MapCosts(r);
+			for(int j=0; j<4; j++) {
+				resources.Character c = new resources.Character(resources.Character.Class.WIZARD, j, "Player " + j);
+				r.getMap().spawn(c);
+				r.addPlayerToList(c);
+			}
+			new LastManStanding(r, 5, true, false);
+			games.add(scheduler.schedule("session" + i, r));
+		}
+		
+		Thread.sleep(500);
+		for(SimulatedGame game : games) {
+			assertTrue("Game not ticking!", game.getTicks() > 10);
+			assertTrue("Tick time not measured!", game.getAverageTickNanos() > 0);
+			assertTrue("Physics not running!", game.getResources().getGlobalTimer() > 10);
+		}
+		
+		// Stopping a game lets it finish off and then removes it
+		scheduler.cancel("session0");
+		Thread.sleep(1000);
+		assertTrue("Game not finished!", games.get(0).isFinished());
+		assertTrue("Game not removed!", scheduler.getGame("session0") == null);
+		assertTrue("Game over not set!", games.get(0).getResources().isGameOver());
+		assertTrue("Other games stopped!", scheduler.getGame("session1") != null);
+		scheduler.shutdown();
+	}
+	
+	@Test
+	public void testSnapshotDeltas() {
+		Resources.silent = true;
+		List<resources.Character> players = new ArrayList<resources.Character>();
+		for(int i=0; i<8; i++) {
+			resources.Character c = new resources.Character(resources.Character.Class.WIZARD, i, "P" + i);
+			c.setXWithoutNotifying(100 + i * 50);
+			c.setYWithoutNotifying(200);
+			players.add(c);
+		}
+		
+		Snapshot first = new Snapshot();
+		first.capture(0, players, powerUps, 30, 0);
+		Output out = new Output(1024, -1);
+		SnapshotCodec.encode(null, first, out);
+		byte[] full = out.toBytes();
+		
+		Snapshot decodedFirst = new Snapshot();
+		SnapshotCodec.decode(null, new Input(full), 0, decodedFirst);
+		assertEquals("Wrong character count!", 8, decodedFirst.getCharacterCount());
+		assertEquals("Wrong timer!", 30, decodedFirst.getTimer());
+		for(int i=0; i<8; i++) {
+			assertEquals("Wrong x!", players.get(i).getX(), decodedFirst.getX(i), 0);
+			assertEquals("Wrong y!", players.get(i).getY(), decodedFirst.getY(i), 0);
+		}
+		assertEquals("Wrong powerups!", powerUps.size(), decodedFirst.getPowerups().size());
+		
+		// Nothing changed, so each character only costs its field mask
+		Snapshot idle = new Snapshot();
+		idle.capture(1, players, powerUps, 30, 2);
+		out.clear();
+		SnapshotCodec.encode(first, idle, out);
+		assertEquals("Idle delta too big!", 1 + players.size(), out.position());
+		
+		// Move one character and kill another
+		players.get(2).setXWithoutNotifying(321.5);
+		players.get(5).setDead(true);
+		Snapshot second = new Snapshot();
+		second.capture(2, players, powerUps, 29, 4);
+		out.clear();
+		SnapshotCodec.encode(first, second, out);
+		byte[] delta = out.toBytes();
+		assertTrue("Delta not smaller than a full snapshot!", delta.length * 4 < full.length);
+		
+		Snapshot decodedSecond = new Snapshot();
+		SnapshotCodec.decode(decodedFirst, new Input(delta), 2, decodedSecond);
+		assertEquals("Wrong sequence!", 2, decodedSecond.getSequence());
+		assertEquals("Wrong timer!", 29, decodedSecond.getTimer());
+		assertEquals("Moved character wrong!", 321.5, decodedSecond.getX(2), 0);
+		assertEquals("Unchanged character wrong!", players.get(3).getX(), decodedSecond.getX(3), 0);
+		assertFalse("Powerups changed!", SnapshotCodec.powerUpsChanged(decodedFirst, decodedSecond));
+		
+		List<resources.Character> copies = new ArrayList<resources.Character>();
+		for(int i=0; i<8; i++) {
+			copies.add(new resources.Character(resources.Character.Class.WIZARD, i, "C" + i));
+		}
+		decodedSecond.applyTo(copies);
+		assertTrue("Death not applied!", copies.get(5).isDead());
+		assertFalse("Wrong character dead!", copies.get(4).isDead());
+		assertEquals("Position not applied!", 321.5, copies.get(2).getX(), 0);
+	}
+	
+	@Test
+	public void testSnapshotHistory() {
+		SnapshotHistory history = new SnapshotHistory();
+		history.slot(3).capture(3, new ArrayList<resources.Character>(), powerUps, 0, 0);
+		assertTrue("Snapshot missing!", history.get(3) != null);
+		assertTrue("Unknown snapshot found!", history.get(4) == null);
+		assertTrue("Negative sequence found!", history.get(-1) == null);
+		
+		// Once the ring wraps around, the old snapshot is gone
+		history.slot(3 + SnapshotHistory.SIZE).capture(3 + SnapshotHistory.SIZE, new ArrayList<resources.Character>(), powerUps, 0, 0);
+		assertTrue("Evicted snapshot found!", history.get(3) == null);
+	}
+	
+	@Test
+	public void testPredictionWithLatency() {
+		Resources.silent = true;
+		final int latency = 5;
+		
+		// The server's side of the game
+		ClientInformation me = new ClientInformation("Me");
+		Session testSession = new Session("Test", me, "asteroid", World.SPACE, Mode.Deathmatch, "Me", 0);
+		testSession.setGameInProgress(true);
+		sessions.put(testSession.getId(), testSession);
+		Resources serverRes = new Resources();
+		serverRes.setMap(new Map(new Point2D.Double(0, 0), 1000, 1000, 0.02, "TestMap"));
+		resources.Character serverMe = new resources.Character(10, 200, 200, 25, resources.Character.Heading.E, resources.Character.Class.WIZARD, 1, "Me");
+		serverMe.setId(me.getId());
+		resources.Character serverOther = new resources.Character(10, 200, 700, 25, resources.Character.Heading.E, resources.Character.Class.WIZARD, 2, "Other");
+		serverRes.addPlayerToList(serverMe);
+		serverRes.addPlayerToList(serverOther);
+		resourcesMap.put(testSession.getId(), serverRes);
+		physics.Physics serverPhysics = new physics.Physics(serverRes, false);
+		ServerListener server = new ServerListener(sessions, clients, resourcesMap, connections, null);
+		server.getSessionRegistry().register(testSession);
+		testSession.getEntities().bind(0, me);
+		
+		// The client's side of the game
+		cModel.setClientInformation(me);
+		cModel.setSessionId(testSession.getId());
+		Resources clientRes = new Resources();
+		clientRes.setMap(new Map(new Point2D.Double(0, 0), 1000, 1000, 0.02, "TestMap"));
+		final resources.Character clientMe = new resources.Character(10, 200, 200, 25, resources.Character.Heading.E, resources.Character.Class.WIZARD, 1, "Me");
+		clientMe.setId(me.getId());
+		resources.Character clientOther = new resources.Character(10, 200, 700, 25, resources.Character.Heading.E, resources.Character.Class.WIZARD, 2, "Other");
+		clientRes.addPlayerToList(clientMe);
+		clientRes.addPlayerToList(clientOther);
+		final ClientPrediction prediction = new ClientPrediction(clientRes, 0);
+		
+		LoopbackTransport toServer = new LoopbackTransport(latency, server);
+		Updater updater = new Updater(cModel, toServer, clientRes);
+		updater.setPrediction(prediction);
+		clientMe.addObserver(updater);
+		
+		final SnapshotHistory received = new SnapshotHistory();
+		LoopbackTransport toClient = new LoopbackTransport(latency, new Listener() {
+			@Override
+			public void received(Connection connection, Object object) {
+				GameData snapshotData = (GameData)((Message)object).getObject();
+				Snapshot snapshot = received.slot(snapshotData.getSequence());
+				SnapshotCodec.decode(null, new Input(snapshotData.getDelta()), snapshotData.getSequence(), snapshot);
+				prediction.onSnapshot(snapshot);
+			}
+		});
+		Snapshot sent = new Snapshot();
+		Output out = new Output(1024, -1);
+		
+		serverOther.setRight(true);
+		double lastOtherX = clientOther.getX();
+		double biggestStep = 0;
+		for(int t = 0; t<400; t++) {
+			if(t == 10) {
+				clientMe.setRight(true);
+				clientMe.publish();
+			}
+			if(t == 40) {
+				clientMe.setRight(false);
+				clientMe.publish();
+			}
+			if(t == 100) {
+				serverOther.setRight(false);
+			}
+			
+			prediction.tick();
+			if(t == 12) {
+				assertTrue("Client didn't move straight away!", clientMe.getX() > 200);
+				assertEquals("Server moved before the input arrived!", 200, serverMe.getX(), 0);
+			}
+			if(t == 30) {
+				assertTrue("Client not ahead of the server!", clientMe.getX() > serverMe.getX());
+			}
+			if(t > 20) {
+				biggestStep = Math.max(biggestStep, Math.abs(clientOther.getX() - lastOtherX));
+			}
+			lastOtherX = clientOther.getX();
+			
+			serverPhysics.tick();
+			if(t % 2 == 0) {
+				sent.capture(t / 2, serverRes.getPlayerList(), serverRes.getPowerupList(), 0, serverRes.getGlobalTimer());
+				out.clear();
+				SnapshotCodec.encode(null, sent, out);
+				toClient.sendUDP(new Message(Command.GAME, Note.UPDATE, "", "", testSession.getId(), testSession.getId(), new GameData(t / 2, -1, out.toBytes())));
+			}
+			toServer.tick();
+			toClient.tick();
+		}
+		
+		assertTrue("Server never moved!", serverMe.getX() > 205);
+		assertEquals("Prediction doesn't match the server!", serverMe.getX(), clientMe.getX(), 0.5);
+		assertEquals("Prediction doesn't match the server!", serverMe.getY(), clientMe.getY(), 0.5);
+		assertEquals("Other character not interpolated to the server!", serverOther.getX(), clientOther.getX(), 0.5);
+		// Snapshots arrive every other tick, so without interpolation the other character would jump two ticks at a time
+		assertTrue("Other character jumped " + biggestStep, biggestStep < serverOther.getMaxDx() + serverOther.getAcc() + 0.01);
+	}
+	
+	@Test
+	public void testMetrics() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.get99thPercentile());
+		for(int i=1; i<=1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getMean(), 0.001);
+		assertEquals(1000000, histogram.getMax());
+		// every value is counted to within 1/16 of itself
+		assertEquals(500000, histogram.get50thPercentile(), 500000 / 16);
+		assertEquals(990000, histogram.get99thPercentile(), 990000 / 16);
+		assertEquals(1000000, histogram.getPercentile(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		
+		// Count the messages going through the serialization
+		MeteredSerialization serialization = new MeteredSerialization();
+		Kryo kryo = serialization.getKryo();
+		kryo.register(Message.class);
+		kryo.register(Command.class);
+		kryo.register(Note.class);
+		kryo.register(Empty.class);
+		kryo.register(AckPacket.class);
+		ByteBuffer buffer = ByteBuffer.allocate(2048);
+		serialization.write(null, buffer, new Message(Command.SESSION, Note.JOIN, "a", "", "", "s"));
+		serialization.write(null, buffer, new Message(Command.SESSION, Note.JOIN, "b", "", "", "s"));
+		serialization.write(null, buffer, new AckPacket());
+		assertEquals(buffer.position(), serialization.getBytesWritten());
+		assertEquals(3, serialization.getMessagesWritten());
+		assertEquals(Long.valueOf(2), serialization.getSent().get("SESSION/JOIN"));
+		assertEquals(Long.valueOf(1), serialization.getSent().get("AckPacket"));
+		
+		buffer.flip();
+		Message read = (Message) serialization.read(null, buffer);
+		assertEquals("a", read.getSenderId());
+		assertEquals(Long.valueOf(1), serialization.getReceived().get("SESSION/JOIN"));
+		serialization.reset();
+		assertTrue(serialization.getSent().isEmpty());
+		assertEquals(0, serialization.getBytesWritten());
+	}
+	
 }
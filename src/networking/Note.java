@@ -6,5 +6,5 @@ package networking;
  *
  */
 public enum Note {
-	JOIN, LEAVE, CREATE, DELETE, GET, INDEX, EMPTY, JOINED, CREATED, LEFT, DELETED, COMPLETED, MESSAGE, START, UPDATE, STOP, COUNTDOWN, FINISHED, REMOVE_PLAYER, RESET_READY, REFRESH
+	JOIN, LEAVE, CREATE, DELETE, GET, INDEX, EMPTY, JOINED, CREATED, LEFT, DELETED, COMPLETED, MESSAGE, START, UPDATE, STOP, COUNTDOWN, FINISHED, REMOVE_PLAYER, RESET_READY, REFRESH, ACK
 }
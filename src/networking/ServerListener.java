@@ -9,7 +9,6 @@ import java.util.concurrent.ConcurrentMap;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 
-import gamemodes.GameModeFFA;
 import resources.Resources;
 
 /**
@@ -23,6 +22,29 @@ public class ServerListener extends Listener {
 	private ConcurrentMap<String, ClientInformation> clients;
 	private ConcurrentMap<String, Resources> resourcesMap;
 	private ConcurrentMap<String, Connection> connections;
+	private SessionScheduler scheduler;
+	private SessionDispatcher dispatcher;
+	private final SessionRegistry registry = new SessionRegistry();
+	private final LobbyDirectory directory;
+	// the countdown each session is going through, which is only changed on the session's queue
+	private final ConcurrentMap<String, Object> countdowns = new ConcurrentHashMap<String, Object>();
+	
+	// how long each step of the countdown before a game takes, in milliseconds
+	static final int COUNTDOWN_STEP = 1000;
+	static final int COUNTDOWN_STEPS = 3;
+	
+	/**
+	 * Constructs the listener, which handles every message straight away on the thread
+	 * it arrives on.
+	 * @param sessions The HashMap of sessions
+	 * @param clients The HashMap of clients
+	 * @param resourcesMap The HashMap of Resources objects
+	 * @param connections The HashMap of connections
+	 * @param scheduler The scheduler which runs all the games on the server
+	 */
+	public ServerListener(ConcurrentMap<String, Session> sessions, ConcurrentMap<String, ClientInformation> clients, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Connection> connections, SessionScheduler scheduler) {
+		this(sessions, clients, resourcesMap, connections, scheduler, new SessionDispatcher(0));
+	}
 	
 	/**
 	 * Constructs the listener
@@ -30,12 +52,17 @@ public class ServerListener extends Listener {
 	 * @param clients The HashMap of clients
 	 * @param resourcesMap The HashMap of Resources objects
 	 * @param connections The HashMap of connections
+	 * @param scheduler The scheduler which runs all the games on the server
+	 * @param dispatcher Runs each session's messages in order, off the network thread
 	 */
-	public ServerListener(ConcurrentMap<String, Session> sessions, ConcurrentMap<String, ClientInformation> clients, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Connection> connections) {
+	public ServerListener(ConcurrentMap<String, Session> sessions, ConcurrentMap<String, ClientInformation> clients, ConcurrentMap<String, Resources> resourcesMap, ConcurrentMap<String, Connection> connections, SessionScheduler scheduler, SessionDispatcher dispatcher) {
 		this.sessions = sessions;
 		this.clients = clients;
 		this.resourcesMap = resourcesMap;
 		this.connections = connections;
+		this.scheduler = scheduler;
+		this.dispatcher = dispatcher;
+		this.directory = new LobbyDirectory(sessions, connections, true);
 	}
 	
 	/**
@@ -46,9 +73,54 @@ public class ServerListener extends Listener {
 	}
 	
 	/**
-	 * Fires when the server receives a message.
+	 * Fires when the server receives a message. Messages about a session are queued for
+	 * that session and everything else is queued for the lobby, so Kryonet's thread never
+	 * waits for any of them to be handled.
 	 */
 	public void received(Connection connection, Object object) {
+		if(object instanceof GamePacket) {
+			// Game packets say which session they're for by number
+			GamePacket packet = (GamePacket)object;
+			Session session = registry.getSession(packet.getSession());
+			if(session != null) {
+				dispatcher.execute(session.getId(), () -> handle(connection, session, packet));
+			}
+		}
+		else if(object instanceof Message) {
+			Message message = (Message)object;
+			String key = queueFor(message);
+			if(key != null) {
+				dispatcher.execute(key, () -> handle(connection, message));
+			}
+		}
+	}
+	
+	/**
+	 * Works out which queue a message is handled on. Anything which changes a session that
+	 * already exists goes on that session's queue, so a session is only ever changed by one
+	 * thread. The lobby's queue only has new clients, new sessions and the session list.
+	 * @param message The message
+	 * @return The ID of the session, the lobby, or null if the message has no session
+	 */
+	private static String queueFor(Message message) {
+		if(message.getCommand() == Command.GAME) {
+			return message.getCurrentSessionId();
+		}
+		if(message.getCommand() == Command.SESSION) {
+			if(message.getNote() == Note.JOIN) {
+				return message.getTargetSessionId();
+			}
+			if(message.getNote() == Note.LEAVE) {
+				return message.getCurrentSessionId();
+			}
+		}
+		return SessionDispatcher.LOBBY;
+	}
+	
+	/**
+	 * Handles a message from a client, on its session's queue.
+	 */
+	private void handle(Connection connection, Object object) {
 		
 		Message response;
   	  	String sessionId;
@@ -73,6 +145,9 @@ public class ServerListener extends Listener {
                 client = new ClientInformation(message.getMessage());
                 clients.put(client.getId(), client);
                 connections.put(client.getId(), connection);
+                if(connection != null) {
+                	client.setConnectionId(connection.getID());
+                }
                 
                 // Send back the ID as a message.
                 Message idMessage = new Message();
@@ -82,78 +157,82 @@ public class ServerListener extends Listener {
                 connection.sendTCP(idMessage);
                 
                 // Send the Client all the sessions.
-                response = new Message(Command.SESSION, Note.COMPLETED, client.getId(), null, null, null, sessions);
-                connection.sendTCP(response);
+                directory.resync(connection);
                 break;
             // Fires when the message is something to do with a session
     		case SESSION:
     			switch(message.getNote()) {
-    				// Fires when refresh is pressed by a client
+    				// Fires when refresh is pressed by a client, or it has missed an update
     				case INDEX:
-    					// Sends back all the sessions to all the clients
-					  	senderClient = clients.get(message.getSenderId());
-					  	response = new Message(Command.SESSION, Note.COMPLETED, senderClient.getId(), null, null, null, sessions);
-					  	
-					  	// Sends the response to everyone connected to the server.
-					  	for(Connection c : connections.values()) {
-				  			c.sendTCP(response);
-				  		}
+    					// Sends back all the sessions to the client
+					  	directory.resync(connection);
 					  	break;
 					// Fires when a session is created
 				  	case CREATE:
 				  		System.out.println("Creating Session.");
 				  		senderClient = clients.get(message.getSenderId());
-				  		if(senderClient.getSessionId() != null && (!senderClient.getSessionId().equals(""))) {
-				  			sessions.get(senderClient.getSessionId()).removeClient(senderClient.getId());
-				  		}
+				  		leaveCurrentSession(senderClient);
 				  		session = (Session)message.getObject();
-				  		sessions.put(session.getId(), session);
+				  		// Use the server's information about the creator, rather than the copy sent with the session
+				  		session.addClient(senderClient.getId(), senderClient);
+				  		registry.register(session);
 				  		resourcesMap.put(session.getId(), new Resources());
 				  		senderClient.setSessionId(session.getId());
-				  		response = new Message(Command.SESSION, Note.CREATED, senderClient.getId(), null, session.getId(), null, sessions);
 				  		
-				  		System.out.println("Client ID: " + senderClient.getId());
-				  		
-				  		// Sends the response to everyone connected to the server.
-				  		for(Connection c : connections.values()) {
-				  			c.sendTCP(response);
-				  		}
-			  		
-				  		System.out.println("Session created.");
+				  		// The rest is done on the new session's own queue, so nobody can join it
+				  		// until it has been set up.
+				  		dispatcher.open(session.getId());
+				  		Session created = session;
+				  		ClientInformation creator = senderClient;
+				  		dispatcher.execute(session.getId(), () -> {
+				  			sessions.put(created.getId(), created);
+				  			// Tells everyone about the new session, then puts the creator in it.
+				  			directory.update(created);
+				  			Message createdMessage = new Message(Command.SESSION, Note.CREATED, creator.getId(), null, created.getId(), null);
+				  			connections.get(creator.getId()).sendTCP(createdMessage);
+				  			
+				  			System.out.println("Client ID: " + creator.getId());
+				  			
+				  			System.out.println("Session created.");
+				  		});
 				  		break;
 				  	// Fires when a client joins a session
 				  	case JOIN:
 				  		senderClient = clients.get(message.getSenderId());
 				  		sessionId = message.getTargetSessionId();
+				  		session = sessions.get(sessionId);
+				  		if(senderClient == null || session == null) {
+				  			break;
+				  		}
 					  
-				  		if(senderClient.getSessionId() != null && (!senderClient.getSessionId().equals(""))) {
-				  			sessions.get(senderClient.getSessionId()).removeClient(senderClient.getId());
+				  		if(!sessionId.equals(senderClient.getSessionId())) {
+				  			leaveCurrentSession(senderClient);
 				  		}
-				  		session = sessions.get(sessionId);
 				  		session.addClient(senderClient.getId(), senderClient);
 				  		senderClient.setSessionId(session.getId());
-				  		response = new Message(Command.SESSION, Note.JOINED, senderClient.getId(), null, session.getId(), null, sessions);
-				  		connections.get(senderClient.getId()).sendTCP(response);
 				  		
-				  		Message reset_ready = new Message(Command.SESSION, Note.RESET_READY, senderClient.getId(), null, null, null, sessions);
 				  		for(int i=0; i<session.getAllClients().size(); i++) {
-				  			connections.get(session.getAllClients().get(i).getId()).sendTCP(reset_ready);
 				  			session.getAllClients().get(i).setReady(false);
 				  			clients.get(session.getAllClients().get(i).getId()).setReady(false);
 				  		}
+				  		directory.update(session);
 				  		
-				  		Message refresh = new Message(Command.SESSION, Note.COMPLETED, senderClient.getId(), null, null, null, sessions);
-				  		for(Connection c : connections.values()) {
-				  			c.sendTCP(refresh);
-				  		}
+				  		response = new Message(Command.SESSION, Note.JOINED, senderClient.getId(), null, session.getId(), null);
+				  		connections.get(senderClient.getId()).sendTCP(response);
+				  		
+				  		Message reset_ready = new Message(Command.SESSION, Note.RESET_READY, senderClient.getId(), null, null, null);
+				  		sendToAll(session.getAllClients(), reset_ready);
 			  		
 				  		break;
 				  	// Fires when a client leaves a session.
 				  	case LEAVE:
 				  		senderClient = clients.get(message.getSenderId());
-				  		senderClient.setReady(false);
 				  		sessionId = message.getCurrentSessionId();
 				  		session = sessions.get(sessionId);
+				  		if(senderClient == null || session == null) {
+				  			break;
+				  		}
+				  		senderClient.setReady(false);
 				  		System.out.println("Session ID: " + sessionId);
 				  		System.out.println("Number of clients in the sessions: " + session.getAllClients().size());
 				  		System.out.println("Sender Client ID: " + senderClient.getId());
@@ -165,7 +244,10 @@ public class ServerListener extends Listener {
 				  			clients.get(session.getAllClients().get(i).getId()).setReady(false);
 				  		}
 				  		
-				  		senderClient.setSessionId("");
+				  		// The client may have joined another session already
+				  		if(sessionId.equals(senderClient.getSessionId())) {
+				  			senderClient.setSessionId("");
+				  		}
 				  		
 				  		// If the host leaves, set a new host for the session.
 				  		if(session.getHostName().equals(senderClient.getName()) && session.getAllClients().size() >= 1) {
@@ -175,28 +257,21 @@ public class ServerListener extends Listener {
 				  		
 				  		System.out.println("Number of clients in the sessions: " + session.getAllClients().size());
 				  		// If there are no clients in the session, delete the session.
-				  		if(session.getAllClients().size() <= 0) {
-				  			sessions.remove(session.getId());
-				  		}
+				  		removeIfEmpty(session);
+				  		
+				  		session.setGameInProgress(false);
+				  		// Stops any countdown to a game
+				  		countdowns.remove(sessionId);
+				  		// Tells everyone the session has changed (or gone)
+				  		directory.update(session);
 				  		
-				  		response = new Message(Command.SESSION, Note.LEFT, senderClient.getId(), null, null, null, sessions);
-				  		//Message response2 = new Message(Command.SESSION, Note.COMPLETED, senderClient.getId(), null, null, null, sessions);
+				  		response = new Message(Command.SESSION, Note.LEFT, senderClient.getId(), null, null, null);
 				  		System.out.println("Number of Clients: " + session.getAllClients().size());
 				  		Connection conn = connections.get(senderClient.getId());
 				  		conn.sendTCP(response);
 				  		
-				  		session.setGameInProgress(false);
-				  		// Sends the response to everyone connected to the server.
-				  		
-				  		Message response1 = new Message(Command.SESSION, Note.RESET_READY, senderClient.getId(), null, null, null, sessions);
-				  		for(int i=0; i<session.getAllClients().size(); i++) {
-				  			connections.get(session.getAllClients().get(i).getId()).sendTCP(response1);
-				  		}
-				  		
-				  		Message response2 = new Message(Command.SESSION, Note.COMPLETED, senderClient.getId(), null, null, null, sessions);
-				  		for(Connection c : connections.values()) {
-				  			c.sendTCP(response2);
-				  		}
+				  		Message response1 = new Message(Command.SESSION, Note.RESET_READY, senderClient.getId(), null, null, null);
+				  		sendToAll(session.getAllClients(), response1);
 				  		
 				  		break;
 				  	default:
@@ -211,19 +286,16 @@ public class ServerListener extends Listener {
 			  		// Fires when the client presses "Not Ready"
 			  		case STOP:
 			  			client = clients.get(message.getSenderId());
-			  			client.setReady(false);
 			  			session = sessions.get(message.getCurrentSessionId());
+			  			if(client == null || session == null || session.getClient(message.getSenderId()) == null) {
+			  				break;
+			  			}
+			  			client.setReady(false);
 			  			client = session.getClient(message.getSenderId());
 			  			client.setReady(false);
 			  			
-			  			Message response1 = new Message(Command.SESSION, Note.COMPLETED, message.getSenderId(), null, null, null, sessions);
-			  			tempClients = session.getAllClients();
-		  				// Sends the response to everyone in the session.
-		  				// This update who is ready for each client in the session
-		  				for(int i=0; i<tempClients.size(); i++) {
-		  					c = connections.get(tempClients.get(i).getId());
-		  					c.sendTCP(response1);
-		  				}
+			  			// This updates who is ready for each client
+			  			directory.update(session);
 			  			
 			  			break;
 			  		// Fires when the client presses "Ready"
@@ -233,6 +305,9 @@ public class ServerListener extends Listener {
 			  			ClientInformation sentClient = (ClientInformation)message.getObject();
 			  			
 			  			client = clients.get(message.getSenderId());
+			  			if(client == null || session == null || session.getClient(message.getSenderId()) == null) {
+			  				break;
+			  			}
 			  			client.setReady(true);
 			  			
 			  			client = session.getClient(message.getSenderId());
@@ -240,32 +315,35 @@ public class ServerListener extends Listener {
 			  			client.setCharacterClass(sentClient.getCharacterClass());
 			  			client.setPlayerNumber(sentClient.getPlayerNumber());
 			  			
-			  			Message response2 = new Message(Command.SESSION, Note.COMPLETED, message.getSenderId(), null, null, null, sessions);
-			  			tempClients = session.getAllClients();
-		  				// Sends the response to everyone in the session.
-		  				// This update who is ready for each client in the session
-		  				for(int i=0; i<tempClients.size(); i++) {
-		  					c = connections.get(tempClients.get(i).getId());
-		  					c.sendTCP(response2);
-		  				}
+			  			// This updates who is ready for each client
+			  			directory.update(session);
 			  			
 			  			//System.out.println("Current Session ID: " + message.getCurrentSessionId());
 			  			//System.out.println("Current Session: " + session);
 			  			// If all the clients are ready, then start the game.
-			  			if(session.allClientsReady()) {
+			  			if(session.allClientsReady() && !session.isGameInProgress()) {
 			  				session.setGameInProgress(true);
 
-			  				NetworkingDemo.startServerGame(session, resourcesMap, sessions, connections);
+			  				NetworkingDemo.startServerGame(session, resourcesMap, sessions, connections, directory);
 			  				
 			  				List<resources.Character> characters = resourcesMap.get(session.getId()).getPlayerList();
 			  				
 				  			
 			  				session.setGameInProgress(true);
+			  				directory.update(session);
 			  				//List<resources.Character> characters = resourcesMap.get(session.getId()).getPlayerList();
 			  				List<CharacterInfo> characterInfo = new ArrayList<CharacterInfo>();
+			  				// Each character's entity ID is its index in the list, which the clients
+			  				// get in the same order
+			  				EntityRegistry entities = session.getEntities();
+			  				entities.clear();
 			  				for(int i=0; i<characters.size(); i++) {
 			  					resources.Character character = characters.get(i);
 			  					characterInfo.add(new CharacterInfo(character.getId(), character.getX(), character.getY(), character.getPlayerNumber(), character.getClassType(), character.getName()));
+			  					ClientInformation owner = session.getClient(character.getId());
+			  					if(owner != null) {
+			  						entities.bind(i, owner);
+			  					}
 			  				}
 						  
 			  				data = new GameData(characterInfo);
@@ -279,74 +357,37 @@ public class ServerListener extends Listener {
 			  					c.sendTCP(startGame);
 			  				}
 			  				
-			  				//System.out.println("X: " + resourcesMap.get(session.getId()).getPlayerList().get(0).getX());
 			  				//// Countdown
-			  				try {
-								Thread.sleep(1000);
-								Message countdown = new Message(Command.GAME, Note.COUNTDOWN, message.getSenderId(), message.getReceiverId(), message.getCurrentSessionId(), message.getTargetSessionId());
-								for(int i=0; i<tempClients.size(); i++) {
-				  					c = connections.get(tempClients.get(i).getId());
-				  					c.sendTCP(countdown);
-				  				}
-			  					Thread.sleep(1000);
-								for(int i=0; i<tempClients.size(); i++) {
-				  					c = connections.get(tempClients.get(i).getId());
-				  					c.sendTCP(countdown);
-				  					
-				  				}
-								Thread.sleep(1000);
-								for(int i=0; i<tempClients.size(); i++) {
-				  					c = connections.get(tempClients.get(i).getId());
-				  					c.sendTCP(countdown);
-				  				}
-								
-							} catch (InterruptedException e) {
-								// TODO Auto-generated catch block
-								e.printStackTrace();
-							}
-			  				
-			  				Resources res = resourcesMap.get(session.getId());
-			  				GameModeFFA mode = res.gamemode;
-			  				
-			  				((Thread) mode).start();
+			  				// Each step is sent on the session's queue when it's due, rather than
+			  				// sleeping, and the game starts with the last one.
+			  				Message countdown = new Message(Command.GAME, Note.COUNTDOWN, message.getSenderId(), message.getReceiverId(), message.getCurrentSessionId(), message.getTargetSessionId());
+			  				String startingId = session.getId();
+			  				Session starting = session;
+			  				List<ClientInformation> countdownClients = tempClients;
+			  				Object thisCountdown = new Object();
+			  				countdowns.put(startingId, thisCountdown);
+			  				for(int step=1; step<=COUNTDOWN_STEPS; step++) {
+			  					boolean last = step == COUNTDOWN_STEPS;
+			  					dispatcher.schedule(startingId, () -> {
+			  						// Stop if the session has gone, emptied, or started or stopped another way
+			  						if(countdowns.get(startingId) != thisCountdown || sessions.get(startingId) != starting
+			  								|| starting.getAllClients().isEmpty() || !starting.isGameInProgress()) {
+			  							return;
+			  						}
+			  						sendToAll(countdownClients, countdown);
+			  						if(last) {
+			  							countdowns.remove(startingId);
+			  							// Run the game on the shared simulation workers
+			  							Resources res = resourcesMap.get(startingId);
+			  							if(res != null) {
+			  								scheduler.schedule(startingId, res);
+			  							}
+			  						}
+			  					}, step * COUNTDOWN_STEP);
+			  				}
 			  				
 			  			}
 					  
-			  			break;
-			  		// This fires when the game state is updated by any of the clients
-			  		case UPDATE:
-			  			session = sessions.get(message.getCurrentSessionId());
-			  			//System.out.println("X: " + resourcesMap.get(session.getId()).getPlayerList().get(0).getX());
-					  
-			  			if(session.isGameInProgress()) {
-			  			// Reads the updated data.
-				  			data = (GameData)message.getObject();
-				  			Resources res = resourcesMap.get(session.getId());
-				  			CharacterInfo info = data.getInfo();
-				  			for(int i=0; i<res.getPlayerList().size(); i++) {
-				  				resources.Character ch = res.getPlayerList().get(i);
-				  				
-				  				// Only update the player that was changed.
-				  				if(info.getId().equals(ch.getId())) {
-				  					//c.setControls(info.isUp(), info.isDown(), info.isLeft(), info.isRight(), info.isDashing(), info.isBlocking());
-				  					ch.setUp(info.isUp());
-				  					ch.setDown(info.isDown());
-				  					ch.setRight(info.isRight());
-				  					ch.setLeft(info.isLeft());
-				  					if(info.isDashing()) {
-				  						ch.setDashing(info.isDashing());
-				  					}
-//				  					if(info.sendDashing) {
-//				  						c.setDashing(info.isDashing());
-//				  					}
-//				  					if(info.sendBlocking) {
-//				  						c.setBlocking(info.isBlocking());
-//				  					}
-				  				}
-				  			}
-			  			}
-			  			
-					  
 			  			break;
 			  		default:
 			  			break;
@@ -358,9 +399,127 @@ public class ServerListener extends Listener {
 	}
 	
 	/**
-	 * Fires when a client disconnects.
+	 * Handles a game packet from a client, on its session's queue. The character it's about
+	 * is found by its index in the player list.
+	 */
+	private void handle(Connection connection, Session session, GamePacket packet) {
+		int entity = packet.getEntity();
+		EntityRegistry entities = session.getEntities();
+		// Clients may only send packets about their own character
+		if(connection != null && entities.getEntity(connection.getID()) != entity) {
+			return;
+		}
+		
+		if(packet instanceof InputPacket) {
+			Resources res = resourcesMap.get(session.getId());
+			if(!session.isGameInProgress() || res == null || entity < 0 || entity >= res.getPlayerList().size()) {
+				return;
+			}
+			InputPacket input = (InputPacket)packet;
+			resources.Character ch = res.getPlayerList().get(entity);
+			
+			// Ignore controls which arrive after newer ones.
+			if(input.getInputTick() < 0 || input.getInputTick() >= ch.getLastInputTick()) {
+				if(input.getInputTick() >= 0) {
+					ch.setLastInput(input.getInputTick(), res.getGlobalTimer());
+				}
+				ch.setUp(input.isPressed(InputPacket.UP));
+				ch.setDown(input.isPressed(InputPacket.DOWN));
+				ch.setRight(input.isPressed(InputPacket.RIGHT));
+				ch.setLeft(input.isPressed(InputPacket.LEFT));
+				if(input.isPressed(InputPacket.DASHING)) {
+					// Only the game's tick writes to the body
+					res.runOnTick(() -> ch.setDashing(true));
+				}
+			}
+		}
+		else if(packet instanceof AckPacket) {
+			ClientInformation acked = entities.getController(entity);
+			if(acked != null) {
+				acked.setLastAck(((AckPacket)packet).getSequence());
+			}
+		}
+	}
+	
+	/**
+	 * Takes a client out of the session it's in, if it's in one. This is queued for the
+	 * session the client is leaving.
+	 */
+	private void leaveCurrentSession(ClientInformation senderClient) {
+		String oldId = senderClient.getSessionId();
+		if(oldId != null && (!oldId.equals(""))) {
+			String clientId = senderClient.getId();
+			dispatcher.execute(oldId, () -> {
+				Session old = sessions.get(oldId);
+				if(old != null) {
+					old.removeClient(clientId);
+					removeIfEmpty(old);
+					directory.update(old);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Deletes a session if there's nobody left in it. This must be run on the session's queue.
+	 */
+	private void removeIfEmpty(Session session) {
+		if(session.getAllClients().size() <= 0) {
+			sessions.remove(session.getId());
+			registry.unregister(session);
+			countdowns.remove(session.getId());
+			dispatcher.remove(session.getId());
+		}
+	}
+	
+	/**
+	 * Get every session on the server.
+	 * @return The HashMap of sessions
+	 */
+	public ConcurrentMap<String, Session> getSessions() {
+		return sessions;
+	}
+	
+	/**
+	 * Get the directory which keeps the clients' lists of sessions up to date.
+	 * @return The lobby directory
+	 */
+	public LobbyDirectory getLobbyDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Get the registry which numbers the sessions on the server.
+	 * @return The session registry
+	 */
+	public SessionRegistry getSessionRegistry() {
+		return registry;
+	}
+	
+	/**
+	 * Sends a message to every client in a list who is still connected.
+	 */
+	private void sendToAll(List<ClientInformation> clientList, Object message) {
+		for(int i=0; i<clientList.size(); i++) {
+			Connection c = connections.get(clientList.get(i).getId());
+			if(c != null) {
+				c.sendTCP(message);
+			}
+		}
+	}
+	
+	/**
+	 * Fires when a client disconnects. Forgetting the client is queued for the lobby, and
+	 * taking it out of its session is then queued for the session.
 	 */
 	public void disconnected(Connection connection) {
+		dispatcher.execute(SessionDispatcher.LOBBY, () -> removeConnection(connection));
+	}
+	
+	/**
+	 * Removes a disconnected client from the server, then queues taking it out of its session.
+	 */
+	private void removeConnection(Connection connection) {
 		System.out.println("Disconnection");
 		
 		// Removing client from the server.
@@ -374,55 +533,50 @@ public class ServerListener extends Listener {
 		    	clients.remove(key);
 		    	connections.remove(key);
 		    	
-		    	// Remove the player from the resources for that session
 		    	String sessionId = client.getSessionId();
-		    	if(sessionId != null && sessions.get(sessionId) != null) {
-		    		Session session = sessions.get(sessionId);
-		    		session.removeClient(key);
-			    	
-		    		if(sessions.get(sessionId).isGameInProgress()) {
-		    			Resources resources = resourcesMap.get(sessionId);
-				    	ArrayList<resources.Character> characters = resources.getPlayerList();
-				    	for(int i=0; i<characters.size(); i++) {
-				    		if(characters.get(i).getId().equals(key)) {
-				    			characters.get(i).setLives(0);
-				    			characters.get(i).setDead(true);
-				    			characters.get(i).setVisible(false);
-				    			//characters.remove(i);
-				    			Message removePlayer = new Message(Command.GAME, Note.REMOVE_PLAYER, null, key, sessionId, sessionId);
-				    			
-				    			List<ClientInformation> temp1Clients = session.getAllClients();
-				    			Connection c;
-				  				// Sends the response to everyone in the session.
-				  				// This will start the game for everyone
-				  				for(int j=0; j<temp1Clients.size(); j++) {
-				  					c = connections.get(temp1Clients.get(j).getId());
-				  					c.sendTCP(removePlayer);
-				  				}
-				  				break;
-				    		}
-				    	}
-		    		}
-		    		break;
+		    	if(sessionId != null && (!sessionId.equals(""))) {
+		    		dispatcher.execute(sessionId, () -> removeFromSession(key, sessionId));
 		    	}
+		    	break;
 		    }
 		}
+	}
+	
+	/**
+	 * Removes a disconnected client from its session, on the session's queue. If the game
+	 * is running, the client's character dies, and if the session is empty it's deleted.
+	 */
+	private void removeFromSession(String key, String sessionId) {
+		Session session = sessions.get(sessionId);
+		if(session == null) {
+			return;
+		}
+		session.removeClient(key);
 		
-		// Remove a session if it's empty
-		for (Map.Entry<String, Session> entry : sessions.entrySet()) {
-		    String key = entry.getKey();
-		    Session value = entry.getValue();
-		    
-		    if(value.getAllClients().size() <= 0) {
-		    	sessions.remove(key);
-		    }
+		// Remove the player from the resources for that session
+		Resources resources = resourcesMap.get(sessionId);
+		if(session.isGameInProgress() && resources != null) {
+	    	ArrayList<resources.Character> characters = resources.getPlayerList();
+	    	for(int i=0; i<characters.size(); i++) {
+	    		if(characters.get(i).getId().equals(key)) {
+	    			resources.Character gone = characters.get(i);
+	    			resources.runOnTick(() -> {
+	    				gone.setLives(0);
+	    				gone.setDead(true);
+	    				gone.setVisible(false);
+	    			});
+	    			//characters.remove(i);
+	    			Message removePlayer = new Message(Command.GAME, Note.REMOVE_PLAYER, null, key, sessionId, sessionId);
+	    			
+	  				// Sends the response to everyone in the session.
+	    			sendToAll(session.getAllClients(), removePlayer);
+	  				break;
+	    		}
+	    	}
 		}
-
-		// Refresh all the clients
-    	Message refresh = new Message(Command.SESSION, Note.COMPLETED, null, null, null, null, sessions);
-    	for(Connection c: connections.values()) {
-    		c.sendTCP(refresh);
-    	}
+		
+		// Remove the session if it's empty
+		removeIfEmpty(session);
+		directory.update(session);
 	}
 }
-
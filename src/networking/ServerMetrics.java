@@ -0,0 +1,175 @@
+package networking;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Server;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+/**
+ * Shows how the server is doing over JMX, as "ballin:type=Server", next to the
+ * histograms in {@link Metrics}. Counts are only worked out when they are
+ * read, so this costs nothing while nobody is looking.
+ *
+ * Once started, every so often it also measures the round trip time and send
+ * queue of every connection, and prints a one line summary.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+	/**
+	 * The system property giving how many seconds apart the summaries are
+	 * printed. Zero or less stops them being printed.
+	 */
+	public static final String INTERVAL_PROPERTY = "ballin.metrics.interval";
+
+	private final Server server;
+	private final MeteredSerialization serialization;
+	private final Map<String, Session> sessions;
+	private final SessionScheduler scheduler;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * Create the metrics for a server and register them with JMX.
+	 * @param server The Kryonet Server object
+	 * @param serialization The serialization the server was made with
+	 * @param sessions The HashMap of sessions
+	 * @param scheduler The scheduler which runs all the games on the server
+	 */
+	public ServerMetrics(Server server, MeteredSerialization serialization, Map<String, Session> sessions, SessionScheduler scheduler) {
+		this.server = server;
+		this.serialization = serialization;
+		this.sessions = sessions;
+		this.scheduler = scheduler;
+		Metrics.register("type=Server", this);
+	}
+
+	/**
+	 * Start sampling the connections and printing summaries, as often as the
+	 * {@value #INTERVAL_PROPERTY} system property says (every minute by default).
+	 */
+	public void start() {
+		start(Integer.getInteger(INTERVAL_PROPERTY, 60));
+	}
+
+	/**
+	 * Start sampling the connections and printing summaries.
+	 * @param seconds How many seconds apart to do it, or zero or less not to
+	 */
+	public synchronized void start(int seconds) {
+		if(seconds <= 0 || timer != null) {
+			return;
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Server metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.scheduleAtFixedRate(() -> {
+			sample();
+			System.out.println(getSummary());
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stop sampling and printing summaries.
+	 */
+	public synchronized void stop() {
+		if(timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/**
+	 * Record every connection's round trip time and send queue, and ask for
+	 * the round trip time to be measured again for next time.
+	 */
+	public void sample() {
+		for(Connection c : server.getConnections()) {
+			if(!c.isConnected()) {
+				continue;
+			}
+			Metrics.RTT.record(c.getReturnTripTime());
+			Metrics.SEND_QUEUE.record(c.getTcpWriteBufferSize());
+			c.updateReturnTripTime();
+		}
+	}
+
+	@Override
+	public int getSessions() {
+		return sessions.size();
+	}
+
+	@Override
+	public int getRunningGames() {
+		return scheduler.getGames().size();
+	}
+
+	@Override
+	public int getPlayers() {
+		int players = 0;
+		for(Session s : sessions.values()) {
+			players += s.getAllClients().size();
+		}
+		return players;
+	}
+
+	@Override
+	public int getConnections() {
+		return server.getConnections().length;
+	}
+
+	@Override
+	public Map<String, Long> getMessagesSent() {
+		return serialization.getSent();
+	}
+
+	@Override
+	public Map<String, Long> getMessagesReceived() {
+		return serialization.getReceived();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return serialization.getBytesWritten();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return serialization.getBytesRead();
+	}
+
+	@Override
+	public String getSummary() {
+		StringBuilder line = new StringBuilder();
+		line.append("sessions=").append(getSessions());
+		line.append(" games=").append(getRunningGames());
+		line.append(" players=").append(getPlayers());
+		line.append(" connections=").append(getConnections());
+		append(line, " tick", Metrics.TICK_TIME, 1e-6, "ms");
+		append(line, " ai", Metrics.AI_THINK_TIME, 1e-6, "ms");
+		append(line, " snapshot", Metrics.SNAPSHOT_SIZE, 1, "B");
+		append(line, " rtt", Metrics.RTT, 1, "ms");
+		append(line, " sendq", Metrics.SEND_QUEUE, 1, "B");
+		line.append(String.format(" out=%dKB in=%dKB", getBytesSent() / 1024, getBytesReceived() / 1024));
+		return line.toString();
+	}
+
+	/**
+	 * Add a histogram to the summary as "name=p50/p99/max".
+	 */
+	private static void append(StringBuilder line, String name, Histogram histogram, double scale, String unit) {
+		line.append(name).append('=');
+		if(histogram.getCount() == 0) {
+			line.append('-');
+			return;
+		}
+		line.append(String.format("%.1f/%.1f/%.1f%s", histogram.get50thPercentile() * scale,
+				histogram.get99thPercentile() * scale, histogram.getMax() * scale, unit));
+	}
+}
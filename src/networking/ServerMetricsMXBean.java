@@ -0,0 +1,54 @@
+package networking;
+
+import java.util.Map;
+
+/**
+ * What JMX shows of the server through {@link ServerMetrics}.
+ */
+public interface ServerMetricsMXBean {
+
+	/**
+	 * @return The number of sessions, in the lobby or playing.
+	 */
+	public int getSessions();
+
+	/**
+	 * @return The number of sessions which have a game running.
+	 */
+	public int getRunningGames();
+
+	/**
+	 * @return The number of clients in sessions.
+	 */
+	public int getPlayers();
+
+	/**
+	 * @return The number of clients connected.
+	 */
+	public int getConnections();
+
+	/**
+	 * @return How many of each kind of message have been sent.
+	 */
+	public Map<String, Long> getMessagesSent();
+
+	/**
+	 * @return How many of each kind of message have been received.
+	 */
+	public Map<String, Long> getMessagesReceived();
+
+	/**
+	 * @return The number of bytes sent.
+	 */
+	public long getBytesSent();
+
+	/**
+	 * @return The number of bytes received.
+	 */
+	public long getBytesReceived();
+
+	/**
+	 * @return Everything above, and the histograms, on one line.
+	 */
+	public String getSummary();
+}
@@ -26,6 +26,12 @@ public class Session {
 	private Mode gameMode;
 	private String hostName;
 	private int numberOfAI;
+	// given by the server's SessionRegistry, for messages during the game
+	private int number = -1;
+	// goes up whenever a client joins or leaves (not sent to clients)
+	private transient volatile int membership = 0;
+	// who controls each character in the game (server side only)
+	private transient EntityRegistry entities = new EntityRegistry();
 
 	public Session() {
 		
@@ -123,6 +129,7 @@ public class Session {
 	 */
 	public void addClient(String id, ClientInformation client) {
 		clients.put(id, client);
+		membership++;
 	}
 	
 	/**
@@ -131,6 +138,41 @@ public class Session {
 	 */
 	public void removeClient(String id) {
 		clients.remove(id);
+		membership++;
+	}
+	
+	/**
+	 * Get a number which changes whenever a client joins or leaves the session, so that
+	 * anything built from the list of clients knows when to rebuild it.
+	 * @return The membership number.
+	 */
+	public int getMembership() {
+		return membership;
+	}
+	
+	/**
+	 * Get the number the server has given the session. Messages during the game use
+	 * it instead of the session's ID.
+	 * @return The session number, or -1 if it hasn't been given one.
+	 */
+	public int getNumber() {
+		return number;
+	}
+	
+	/**
+	 * Set the number the server has given the session.
+	 * @param number The session number
+	 */
+	public void setNumber(int number) {
+		this.number = number;
+	}
+	
+	/**
+	 * Get the record of which client controls each character in the game.
+	 * @return The entity registry
+	 */
+	public EntityRegistry getEntities() {
+		return entities;
 	}
 	
 	/**
@@ -0,0 +1,287 @@
+package networking;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the server's message handling off Kryonet's update thread. Every
+ * session has its own queue of tasks, which are run one at a time and in the
+ * order they were given, so a session never has two messages handled at once.
+ * Different sessions' queues are run side by side on a shared pool of
+ * threads, so a session that is busy (or counting down to a game) doesn't
+ * hold up anyone else.
+ *
+ * Timed events, like the countdown before a game, are put on a scheduler and
+ * then queued for their session when they're due, rather than sleeping.
+ *
+ * A session's queue is opened when the session is made and closed when it's
+ * removed. Tasks for a session without an open queue are dropped, so nothing
+ * is ever run for a session after it has gone.
+ */
+public class SessionDispatcher {
+
+	/**
+	 * The key for everything that isn't about one session, like the session
+	 * list and clients connecting and disconnecting.
+	 */
+	public static final String LOBBY = "";
+
+	// how many tasks a queue may run before it lets the other queues have a go
+	private static final int BATCH = 64;
+
+	private final ExecutorService pool;
+	private final ScheduledExecutorService timer;
+	private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+
+	/**
+	 * Create a dispatcher with one thread per core.
+	 */
+	public SessionDispatcher() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a dispatcher with a set number of threads.
+	 *
+	 * @param threads
+	 *            The number of threads to run the queues on, or 0 to run
+	 *            every task straight away on the thread that gives it (for
+	 *            tests).
+	 */
+	public SessionDispatcher(int threads) {
+		pool = threads <= 0 ? null : Executors.newFixedThreadPool(threads, new Named("Session dispatcher"));
+		timer = Executors.newSingleThreadScheduledExecutor(new Named("Session timer"));
+		open(LOBBY);
+	}
+
+	/**
+	 * Open a queue for a new session. Tasks for the session are dropped until
+	 * this is called.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 */
+	public void open(String sessionId) {
+		mailboxes.putIfAbsent(sessionId, new Mailbox());
+	}
+
+	/**
+	 * Queue a task for a session. It will be run after everything already
+	 * queued for the session, or dropped if the session's queue isn't open.
+	 *
+	 * @param sessionId
+	 *            The ID of the session, or {@link #LOBBY}.
+	 * @param task
+	 *            The task to run.
+	 */
+	public void execute(String sessionId, Runnable task) {
+		if (sessionId == null) {
+			sessionId = LOBBY;
+		}
+		if (pool == null) {
+			run(task);
+			return;
+		}
+		Mailbox mailbox = mailboxes.get(sessionId);
+		if (mailbox != null) {
+			mailbox.add(task);
+		}
+	}
+
+	/**
+	 * Queue a task for a session after a delay. The task is cancelled if the
+	 * session is removed before it's due.
+	 *
+	 * @param sessionId
+	 *            The ID of the session, or {@link #LOBBY}.
+	 * @param task
+	 *            The task to run.
+	 * @param delay
+	 *            How long to wait, in milliseconds.
+	 */
+	public void schedule(final String sessionId, final Runnable task, long delay) {
+		if (pool == null) {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					execute(sessionId, task);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+			return;
+		}
+		Mailbox mailbox = mailboxes.get(sessionId);
+		if (mailbox == null) {
+			return;
+		}
+		Timed timed = new Timed(mailbox, task);
+		mailbox.timers.add(timed);
+		timed.future = timer.schedule(timed, delay, TimeUnit.MILLISECONDS);
+		if (mailbox.closed) {
+			// the session was removed while this was being scheduled
+			timed.future.cancel(false);
+		}
+	}
+
+	/**
+	 * Close a session's queue once the session has gone. Anything still
+	 * queued or scheduled for it is dropped, as is anything given for it
+	 * later.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 */
+	public void remove(String sessionId) {
+		Mailbox mailbox = mailboxes.remove(sessionId);
+		if (mailbox != null) {
+			mailbox.close();
+		}
+	}
+
+	/**
+	 * @return The number of open queues, including the lobby's.
+	 */
+	public int getQueueCount() {
+		return mailboxes.size();
+	}
+
+	/**
+	 * Stop every thread. Tasks still queued are abandoned.
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void run(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			// don't let one bad message stop the session's queue
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * One session's queue. At most one thread drains it at a time.
+	 */
+	private class Mailbox implements Runnable {
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final AtomicBoolean draining = new AtomicBoolean(false);
+		private final Set<Timed> timers = ConcurrentHashMap.newKeySet();
+		private volatile boolean closed = false;
+
+		/**
+		 * Queue a task, unless the queue has been closed.
+		 */
+		public void add(Runnable task) {
+			if (!closed) {
+				tasks.add(task);
+				wake();
+			}
+		}
+
+		/**
+		 * Drop everything queued or scheduled, and anything added later.
+		 */
+		public void close() {
+			closed = true;
+			for (Timed timed : timers) {
+				if (timed.future != null) {
+					timed.future.cancel(false);
+				}
+			}
+			timers.clear();
+			tasks.clear();
+		}
+
+		/**
+		 * Start draining the queue on the pool, unless it's already being
+		 * drained.
+		 */
+		public void wake() {
+			if (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+				try {
+					pool.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the dispatcher has been shut down, so the tasks are abandoned
+					draining.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < BATCH && !closed; i++) {
+				Runnable task = tasks.poll();
+				if (task == null) {
+					break;
+				}
+				SessionDispatcher.run(task);
+			}
+			if (closed) {
+				// anything added while the queue was being closed
+				tasks.clear();
+			}
+			draining.set(false);
+			// anything added while we were finishing up (or left over from
+			// a full batch) goes to the back of the pool's queue
+			wake();
+		}
+	}
+
+	/**
+	 * A scheduled task, which is queued for its session when it's due.
+	 */
+	private static class Timed implements Runnable {
+
+		private final Mailbox mailbox;
+		private final Runnable task;
+		private volatile ScheduledFuture<?> future;
+
+		public Timed(Mailbox mailbox, Runnable task) {
+			this.mailbox = mailbox;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			mailbox.timers.remove(this);
+			mailbox.add(task);
+		}
+	}
+
+	/**
+	 * Makes daemon threads with numbered names.
+	 */
+	private static class Named implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		public Named(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name + " " + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package networking;
+
+import java.util.Arrays;
+
+/**
+ * Gives every session on the server a small number, so that messages during a
+ * game can say which session they are for without sending its String ID, and
+ * the server can look the session up with one array read. Numbers are handed
+ * out again once their session has gone.
+ */
+public class SessionRegistry {
+	
+	private volatile Session[] sessions = new Session[16];
+	
+	/**
+	 * Give a session a number, and set it on the session.
+	 * @param session The session
+	 * @return The session's number
+	 */
+	public synchronized int register(Session session) {
+		Session[] current = sessions;
+		int number = 0;
+		while(number < current.length && current[number] != null) {
+			number++;
+		}
+		if(number == current.length) {
+			current = Arrays.copyOf(current, current.length * 2);
+		}
+		current[number] = session;
+		session.setNumber(number);
+		sessions = current;
+		return number;
+	}
+	
+	/**
+	 * Forget a session, so its number can be used again.
+	 * @param session The session
+	 */
+	public synchronized void unregister(Session session) {
+		int number = session.getNumber();
+		if(number >= 0 && number < sessions.length && sessions[number] == session) {
+			sessions[number] = null;
+		}
+	}
+	
+	/**
+	 * Get a session by its number.
+	 * @param number The session's number
+	 * @return The session, or null if there isn't one with that number.
+	 */
+	public Session getSession(int number) {
+		Session[] current = sessions;
+		return number >= 0 && number < current.length ? current[number] : null;
+	}
+}
@@ -0,0 +1,183 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import metrics.Metrics;
+import physics.FixedTimestep;
+import physics.Physics;
+import resources.Resources;
+
+/**
+ * Runs every game on the server on a fixed pool of worker threads, rather
+ * than a physics thread, a game mode thread and an AI thread per game. Each
+ * worker steps its share of the games once per physics tick, and new games
+ * are given to whichever worker has the least to do.
+ */
+public class SessionScheduler {
+
+	private final Worker[] workers;
+	private final ConcurrentMap<String, SimulatedGame> games = new ConcurrentHashMap<String, SimulatedGame>();
+
+	/**
+	 * Create a scheduler with one worker per core.
+	 */
+	public SessionScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a scheduler with a set number of workers.
+	 *
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public SessionScheduler(int threads) {
+		workers = new Worker[Math.max(1, threads)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Start running the game for a session. The game mode must already be set
+	 * on the resources object.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 * @param resources
+	 *            The resources object for the game.
+	 * @return The scheduled game.
+	 */
+	public SimulatedGame schedule(String sessionId, Resources resources) {
+		SimulatedGame game = new SimulatedGame(sessionId, resources);
+		SimulatedGame old = games.put(sessionId, game);
+		if (old != null) {
+			old.stop();
+		}
+		leastLoaded().add(game);
+		return game;
+	}
+
+	/**
+	 * Stop the game for a session, if there is one.
+	 *
+	 * @param sessionId
+	 *            The ID of the session.
+	 */
+	public void cancel(String sessionId) {
+		SimulatedGame game = games.get(sessionId);
+		if (game != null) {
+			game.stop();
+		}
+	}
+
+	/**
+	 * @param sessionId
+	 *            The ID of the session.
+	 * @return The game running for a session, or null if there isn't one.
+	 */
+	public SimulatedGame getGame(String sessionId) {
+		return games.get(sessionId);
+	}
+
+	/**
+	 * @return All the games currently running.
+	 */
+	public List<SimulatedGame> getGames() {
+		return new ArrayList<SimulatedGame>(games.values());
+	}
+
+	/**
+	 * @return The number of worker threads.
+	 */
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * @param worker
+	 *            The index of the worker.
+	 * @return The fixed timestep loop for a worker, for its tick
+	 *         measurements.
+	 */
+	public FixedTimestep getWorkerLoop(int worker) {
+		return workers[worker].loop;
+	}
+
+	/**
+	 * Stop every worker. Games still running are abandoned.
+	 */
+	public void shutdown() {
+		for (Worker w : workers) {
+			w.loop.stop();
+		}
+	}
+
+	/**
+	 * @return The worker with the fewest games, breaking ties on the time
+	 *         spent ticking them.
+	 */
+	private Worker leastLoaded() {
+		Worker best = workers[0];
+		for (int i = 1; i < workers.length; i++) {
+			Worker w = workers[i];
+			if (w.games.size() < best.games.size()
+					|| (w.games.size() == best.games.size() && w.loop.getAverageStepNanos() < best.loop.getAverageStepNanos())) {
+				best = w;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * A thread which ticks a share of the games.
+	 */
+	private class Worker extends Thread {
+
+		private final List<SimulatedGame> games = new CopyOnWriteArrayList<SimulatedGame>();
+		private final FixedTimestep loop;
+
+		public Worker(int index) {
+			super("Session worker " + index);
+			setDaemon(true);
+			loop = new FixedTimestep(this::tick, Physics.DELAY, 5);
+		}
+
+		@Override
+		public void run() {
+			loop.run();
+		}
+
+		public void add(SimulatedGame game) {
+			games.add(game);
+		}
+
+		private void tick() {
+			for (SimulatedGame game : games) {
+				boolean running;
+				try {
+					running = game.tick();
+					long taken = game.getLastTickNanos();
+					Metrics.sessionTickTime(game.getSessionId()).record(taken);
+					Metrics.TICK_TIME.record(taken);
+				} catch (RuntimeException e) {
+					// don't let one broken game take down everyone else's
+					e.printStackTrace();
+					running = false;
+				}
+				if (!running) {
+					games.remove(game);
+					// a new game for the session may have replaced this one already
+					if (SessionScheduler.this.games.remove(game.getSessionId(), game)) {
+						Metrics.removeSession(game.getSessionId());
+					}
+				}
+			}
+		}
+	}
+}
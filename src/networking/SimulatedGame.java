@@ -0,0 +1,149 @@
+package networking;
+
+import gamemodes.GameModeFFA;
+import physics.Physics;
+import resources.Resources;
+
+/**
+ * One game running on the server, stepped by the {@link SessionScheduler}.
+ * Each tick advances the physics and then the game mode's timers, and the time
+ * taken is recorded so that slow sessions can be spotted.
+ */
+public class SimulatedGame {
+
+	// how long to keep nudging the client updaters after the game ends
+	private static final int FINISHING_TICKS = 50;
+
+	private final String sessionId;
+	private final Resources resources;
+	private final Physics physics;
+	private final GameModeFFA mode;
+
+	private volatile boolean started = false;
+	private volatile boolean finished = false;
+	private int finishingTicks = 0;
+
+	private volatile long ticks = 0;
+	private volatile long lastTickNanos = 0;
+	private volatile long averageTickNanos = 0;
+	private volatile long maxTickNanos = 0;
+
+	/**
+	 * Create a new simulated game for a session.
+	 *
+	 * @param sessionId
+	 *            The ID of the session the game belongs to.
+	 * @param resources
+	 *            The resources object for the game.
+	 */
+	public SimulatedGame(String sessionId, Resources resources) {
+		this.sessionId = sessionId;
+		this.resources = resources;
+		resources.setSessionId(sessionId);
+		this.physics = new Physics(resources, false);
+		this.mode = resources.gamemode;
+	}
+
+	/**
+	 * Run one tick of the game.
+	 *
+	 * @return False once the game has finished and can be removed.
+	 */
+	public boolean tick() {
+		long start = System.nanoTime();
+		if (!started) {
+			start();
+		}
+
+		boolean running = true;
+		if (finishingTicks == 0) {
+			physics.step();
+			if (!mode.tick()) {
+				mode.finishGame();
+				finishingTicks = FINISHING_TICKS;
+			}
+			resources.publishChanges();
+		} else {
+			// Keep finishing ticks so that the client updaters send the
+			// final update and tidy up the session
+			resources.publishChanges();
+			if (--finishingTicks == 0) {
+				finished = true;
+				running = false;
+			}
+		}
+
+		long taken = System.nanoTime() - start;
+		lastTickNanos = taken;
+		averageTickNanos = averageTickNanos == 0 ? taken : averageTickNanos + (taken - averageTickNanos) / 100;
+		if (taken > maxTickNanos) {
+			maxTickNanos = taken;
+		}
+		ticks++;
+		return running;
+	}
+
+	/**
+	 * Start the game mode. The AI players are moved on by the physics.
+	 */
+	private void start() {
+		started = true;
+		mode.startGame();
+	}
+
+	/**
+	 * Stop the game straight away.
+	 */
+	public void stop() {
+		mode.setEndGame(true);
+	}
+
+	/**
+	 * @return The ID of the session this game belongs to.
+	 */
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @return The resources object for this game.
+	 */
+	public Resources getResources() {
+		return resources;
+	}
+
+	/**
+	 * @return Has this game finished?
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return The number of ticks run so far.
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * @return How long the last tick took, in nanoseconds.
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * @return The moving average of how long a tick takes, in nanoseconds.
+	 */
+	public long getAverageTickNanos() {
+		return averageTickNanos;
+	}
+
+	/**
+	 * @return The longest tick so far, in nanoseconds.
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+}
@@ -0,0 +1,292 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import resources.Character;
+import resources.Powerup;
+import resources.Powerup.Power;
+
+/**
+ * The state of a game at one server tick, as sent to the clients. Characters
+ * are identified by their position in the player list, which is the same on
+ * the server and on every client.
+ *
+ * Snapshots are sent as deltas against an older snapshot which the client has
+ * acknowledged (its baseline), using {@link SnapshotCodec}.
+ */
+public class Snapshot {
+
+	// flag bits
+	static final int FALLING = 1, DEAD = 2, DASHING = 4, BLOCKING = 8, HAS_POWERUP = 16, HAS_BOMB = 32,
+			VISIBLE = 64, EXPLODING = 128;
+
+	int sequence;
+	int timer;
+
+	int characters;
+	double[] x, y, dx, dy;
+	int[] inputTick, flags, stamina, lastPowerUp, kills, deaths, suicides, lives, score, dyingStep, timeOfDeath;
+
+	int powerUps;
+	int[] power;
+	double[] powerX, powerY;
+	boolean[] powerActive;
+
+	/**
+	 * Create an empty snapshot.
+	 */
+	public Snapshot() {
+		resize(0, 0);
+	}
+
+	/**
+	 * Make sure there is room for a number of characters and powerups.
+	 *
+	 * @param characters
+	 *            The number of characters.
+	 * @param powerUps
+	 *            The number of powerups.
+	 */
+	void resize(int characters, int powerUps) {
+		if (x == null) {
+			x = new double[characters];
+			y = new double[characters];
+			dx = new double[characters];
+			dy = new double[characters];
+			inputTick = new int[characters];
+			flags = new int[characters];
+			stamina = new int[characters];
+			lastPowerUp = new int[characters];
+			kills = new int[characters];
+			deaths = new int[characters];
+			suicides = new int[characters];
+			lives = new int[characters];
+			score = new int[characters];
+			dyingStep = new int[characters];
+			timeOfDeath = new int[characters];
+		} else if (x.length < characters) {
+			// keep what's already there, a delta may only fill in the new ones
+			x = Arrays.copyOf(x, characters);
+			y = Arrays.copyOf(y, characters);
+			dx = Arrays.copyOf(dx, characters);
+			dy = Arrays.copyOf(dy, characters);
+			inputTick = Arrays.copyOf(inputTick, characters);
+			flags = Arrays.copyOf(flags, characters);
+			stamina = Arrays.copyOf(stamina, characters);
+			lastPowerUp = Arrays.copyOf(lastPowerUp, characters);
+			kills = Arrays.copyOf(kills, characters);
+			deaths = Arrays.copyOf(deaths, characters);
+			suicides = Arrays.copyOf(suicides, characters);
+			lives = Arrays.copyOf(lives, characters);
+			score = Arrays.copyOf(score, characters);
+			dyingStep = Arrays.copyOf(dyingStep, characters);
+			timeOfDeath = Arrays.copyOf(timeOfDeath, characters);
+		}
+		if (power == null || power.length < powerUps) {
+			power = new int[powerUps];
+			powerX = new double[powerUps];
+			powerY = new double[powerUps];
+			powerActive = new boolean[powerUps];
+		}
+		this.characters = characters;
+		this.powerUps = powerUps;
+	}
+
+	/**
+	 * Record the current state of a game.
+	 *
+	 * @param sequence
+	 *            The sequence number of this snapshot.
+	 * @param players
+	 *            The characters in the game.
+	 * @param powerupList
+	 *            The powerups in the game.
+	 * @param timer
+	 *            The game timer.
+	 * @param serverTick
+	 *            The server's tick number, to work out which client inputs
+	 *            this snapshot includes.
+	 */
+	public void capture(int sequence, List<Character> players, List<Powerup> powerupList, int timer, int serverTick) {
+		this.sequence = sequence;
+		this.timer = timer;
+		int n = players.size();
+		int p = powerupList.size();
+		resize(n, p);
+		for (int i = 0; i < n; i++) {
+			Character c = players.get(i);
+			x[i] = c.getX();
+			y[i] = c.getY();
+			dx[i] = c.getDx();
+			dy[i] = c.getDy();
+			inputTick[i] = c.getAcknowledgedTick(serverTick);
+			int f = 0;
+			if (c.isFalling())
+				f |= FALLING;
+			if (c.isDead())
+				f |= DEAD;
+			if (c.isDashing())
+				f |= DASHING;
+			if (c.isBlocking())
+				f |= BLOCKING;
+			if (c.hasPowerup())
+				f |= HAS_POWERUP;
+			if (c.hasBomb())
+				f |= HAS_BOMB;
+			if (c.isVisible())
+				f |= VISIBLE;
+			if (c.isExploding())
+				f |= EXPLODING;
+			flags[i] = f;
+			stamina[i] = c.getStamina();
+			lastPowerUp[i] = c.getLastPowerup() == null ? 0 : c.getLastPowerup().ordinal() + 1;
+			kills[i] = c.getKills();
+			deaths[i] = c.getDeaths();
+			suicides[i] = c.getSuicides();
+			lives[i] = c.getLives();
+			score[i] = c.getScore();
+			dyingStep[i] = c.getDyingStep();
+			timeOfDeath[i] = c.getTimeOfDeath();
+		}
+		for (int i = 0; i < p; i++) {
+			Powerup pu = powerupList.get(i);
+			power[i] = pu.getPower().ordinal();
+			powerX[i] = pu.getX();
+			powerY[i] = pu.getY();
+			powerActive[i] = pu.isActive();
+		}
+	}
+
+	/**
+	 * Copy this snapshot onto the characters in a game.
+	 *
+	 * @param players
+	 *            The characters in the game, in the same order as on the
+	 *            server.
+	 */
+	public void applyTo(List<Character> players) {
+		applyTo(players, true);
+	}
+
+	/**
+	 * Copy this snapshot onto the characters in a game, optionally leaving
+	 * their positions and velocities alone.
+	 *
+	 * @param players
+	 *            The characters in the game, in the same order as on the
+	 *            server.
+	 * @param positions
+	 *            False if the positions are being handled separately (by
+	 *            prediction and interpolation).
+	 */
+	public void applyTo(List<Character> players, boolean positions) {
+		int n = Math.min(characters, players.size());
+		for (int i = 0; i < n; i++) {
+			Character c = players.get(i);
+			if (positions) {
+				c.setX(x[i]);
+				c.setY(y[i]);
+				c.setDx(dx[i]);
+				c.setDy(dy[i]);
+			}
+			int f = flags[i];
+			c.setBlocking((f & BLOCKING) != 0);
+			c.setFalling((f & FALLING) != 0);
+			c.setDead((f & DEAD) != 0);
+			c.setDashing((f & DASHING) != 0);
+			c.setStamina(stamina[i]);
+			c.hasPowerup((f & HAS_POWERUP) != 0);
+			c.setLastPowerup(lastPowerUp[i] == 0 ? null : Power.values()[lastPowerUp[i] - 1]);
+			c.setKills(kills[i]);
+			c.setDeaths(deaths[i]);
+			c.setSuicides(suicides[i]);
+			c.setLives(lives[i]);
+			c.setScore(score[i]);
+			c.hasBomb((f & HAS_BOMB) != 0);
+			c.setDyingStep(dyingStep[i]);
+			c.setVisible((f & VISIBLE) != 0);
+			c.setExploding((f & EXPLODING) != 0);
+			c.setTimeOfDeath(timeOfDeath[i]);
+		}
+	}
+
+	/**
+	 * @return The powerups in this snapshot.
+	 */
+	public ArrayList<Powerup> getPowerups() {
+		ArrayList<Powerup> list = new ArrayList<Powerup>(powerUps);
+		for (int i = 0; i < powerUps; i++) {
+			list.add(new Powerup(Power.values()[power[i]], powerX[i], powerY[i], powerActive[i]));
+		}
+		return list;
+	}
+
+	/**
+	 * @return The sequence number of this snapshot.
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return The game timer.
+	 */
+	public int getTimer() {
+		return timer;
+	}
+
+	/**
+	 * @return The number of characters in this snapshot.
+	 */
+	public int getCharacterCount() {
+		return characters;
+	}
+
+	/**
+	 * @param i
+	 *            The index of the character.
+	 * @return The x coordinate of a character.
+	 */
+	public double getX(int i) {
+		return x[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of the character.
+	 * @return The y coordinate of a character.
+	 */
+	public double getY(int i) {
+		return y[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of the character.
+	 * @return The x velocity of a character.
+	 */
+	public double getDx(int i) {
+		return dx[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of the character.
+	 * @return The y velocity of a character.
+	 */
+	public double getDy(int i) {
+		return dy[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of the character.
+	 * @return The client tick which the character's state matches, or -1 if
+	 *         the server hasn't had any input for it.
+	 */
+	public int getInputTick(int i) {
+		return inputTick[i];
+	}
+}
@@ -0,0 +1,254 @@
+package networking;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Writes a {@link Snapshot} as a delta against an older one, so that only the
+ * fields which have changed since the baseline are sent. Each character gets
+ * a bit mask of its changed fields followed by just those fields, so a
+ * character which hasn't moved or changed costs a single byte.
+ *
+ * If there is no baseline, every field is sent.
+ */
+public class SnapshotCodec {
+
+	// header bits
+	private static final int TIMER = 1, CHARACTER_COUNT = 2, POWERUPS = 4;
+
+	// character field bits
+	// (the ones which change most often come first, so their mask fits in one byte)
+	private static final int X = 1, Y = 1 << 1, DX = 1 << 2, DY = 1 << 3, INPUT_TICK = 1 << 4, FLAGS = 1 << 5,
+			STAMINA = 1 << 6, LAST_POWERUP = 1 << 7, KILLS = 1 << 8, DEATHS = 1 << 9, SUICIDES = 1 << 10,
+			LIVES = 1 << 11, SCORE = 1 << 12, DYING_STEP = 1 << 13, TIME_OF_DEATH = 1 << 14;
+	private static final int ALL_FIELDS = (1 << 15) - 1;
+
+	private SnapshotCodec() {
+	}
+
+	/**
+	 * Write a snapshot as a delta against a baseline.
+	 *
+	 * @param baseline
+	 *            The snapshot the client already has, or null to send
+	 *            everything.
+	 * @param current
+	 *            The snapshot to send.
+	 * @param out
+	 *            Where to write the delta.
+	 */
+	public static void encode(Snapshot baseline, Snapshot current, Output out) {
+		int header = 0;
+		if (baseline == null || baseline.timer != current.timer)
+			header |= TIMER;
+		if (baseline == null || baseline.characters != current.characters)
+			header |= CHARACTER_COUNT;
+		if (baseline == null || powerUpsChanged(baseline, current))
+			header |= POWERUPS;
+		out.writeInt(header, true);
+
+		if ((header & TIMER) != 0)
+			out.writeInt(current.timer, false);
+		if ((header & CHARACTER_COUNT) != 0)
+			out.writeInt(current.characters, true);
+		if ((header & POWERUPS) != 0) {
+			out.writeInt(current.powerUps, true);
+			for (int i = 0; i < current.powerUps; i++) {
+				out.writeInt(current.power[i], true);
+				out.writeDouble(current.powerX[i]);
+				out.writeDouble(current.powerY[i]);
+				out.writeBoolean(current.powerActive[i]);
+			}
+		}
+
+		for (int i = 0; i < current.characters; i++) {
+			int mask = baseline == null || i >= baseline.characters ? ALL_FIELDS : changedFields(baseline, current, i);
+			out.writeInt(mask, true);
+			if ((mask & X) != 0)
+				out.writeDouble(current.x[i]);
+			if ((mask & Y) != 0)
+				out.writeDouble(current.y[i]);
+			if ((mask & DX) != 0)
+				out.writeDouble(current.dx[i]);
+			if ((mask & DY) != 0)
+				out.writeDouble(current.dy[i]);
+			if ((mask & INPUT_TICK) != 0)
+				out.writeInt(current.inputTick[i], false);
+			if ((mask & FLAGS) != 0)
+				out.writeInt(current.flags[i], true);
+			if ((mask & STAMINA) != 0)
+				out.writeInt(current.stamina[i], false);
+			if ((mask & LAST_POWERUP) != 0)
+				out.writeInt(current.lastPowerUp[i], true);
+			if ((mask & KILLS) != 0)
+				out.writeInt(current.kills[i], false);
+			if ((mask & DEATHS) != 0)
+				out.writeInt(current.deaths[i], false);
+			if ((mask & SUICIDES) != 0)
+				out.writeInt(current.suicides[i], false);
+			if ((mask & LIVES) != 0)
+				out.writeInt(current.lives[i], false);
+			if ((mask & SCORE) != 0)
+				out.writeInt(current.score[i], false);
+			if ((mask & DYING_STEP) != 0)
+				out.writeInt(current.dyingStep[i], false);
+			if ((mask & TIME_OF_DEATH) != 0)
+				out.writeInt(current.timeOfDeath[i], false);
+		}
+	}
+
+	/**
+	 * Rebuild a snapshot from a delta and the baseline it was written
+	 * against.
+	 *
+	 * @param baseline
+	 *            The snapshot the delta was written against, or null if the
+	 *            delta contains everything.
+	 * @param in
+	 *            The delta.
+	 * @param sequence
+	 *            The sequence number of the new snapshot.
+	 * @param target
+	 *            The snapshot to write the result into.
+	 */
+	public static void decode(Snapshot baseline, Input in, int sequence, Snapshot target) {
+		if (baseline != null) {
+			copy(baseline, target);
+		} else {
+			target.resize(0, 0);
+		}
+		target.sequence = sequence;
+
+		int header = in.readInt(true);
+		if ((header & TIMER) != 0)
+			target.timer = in.readInt(false);
+		if ((header & CHARACTER_COUNT) != 0)
+			target.resize(in.readInt(true), target.powerUps);
+		if ((header & POWERUPS) != 0) {
+			target.resize(target.characters, in.readInt(true));
+			for (int i = 0; i < target.powerUps; i++) {
+				target.power[i] = in.readInt(true);
+				target.powerX[i] = in.readDouble();
+				target.powerY[i] = in.readDouble();
+				target.powerActive[i] = in.readBoolean();
+			}
+		}
+
+		for (int i = 0; i < target.characters; i++) {
+			int mask = in.readInt(true);
+			if ((mask & X) != 0)
+				target.x[i] = in.readDouble();
+			if ((mask & Y) != 0)
+				target.y[i] = in.readDouble();
+			if ((mask & DX) != 0)
+				target.dx[i] = in.readDouble();
+			if ((mask & DY) != 0)
+				target.dy[i] = in.readDouble();
+			if ((mask & INPUT_TICK) != 0)
+				target.inputTick[i] = in.readInt(false);
+			if ((mask & FLAGS) != 0)
+				target.flags[i] = in.readInt(true);
+			if ((mask & STAMINA) != 0)
+				target.stamina[i] = in.readInt(false);
+			if ((mask & LAST_POWERUP) != 0)
+				target.lastPowerUp[i] = in.readInt(true);
+			if ((mask & KILLS) != 0)
+				target.kills[i] = in.readInt(false);
+			if ((mask & DEATHS) != 0)
+				target.deaths[i] = in.readInt(false);
+			if ((mask & SUICIDES) != 0)
+				target.suicides[i] = in.readInt(false);
+			if ((mask & LIVES) != 0)
+				target.lives[i] = in.readInt(false);
+			if ((mask & SCORE) != 0)
+				target.score[i] = in.readInt(false);
+			if ((mask & DYING_STEP) != 0)
+				target.dyingStep[i] = in.readInt(false);
+			if ((mask & TIME_OF_DEATH) != 0)
+				target.timeOfDeath[i] = in.readInt(false);
+		}
+	}
+
+	/**
+	 * Copy one snapshot into another.
+	 *
+	 * @param from
+	 *            The snapshot to copy.
+	 * @param to
+	 *            The snapshot to copy into.
+	 */
+	public static void copy(Snapshot from, Snapshot to) {
+		to.resize(from.characters, from.powerUps);
+		to.sequence = from.sequence;
+		to.timer = from.timer;
+		int n = from.characters;
+		System.arraycopy(from.x, 0, to.x, 0, n);
+		System.arraycopy(from.y, 0, to.y, 0, n);
+		System.arraycopy(from.dx, 0, to.dx, 0, n);
+		System.arraycopy(from.dy, 0, to.dy, 0, n);
+		System.arraycopy(from.inputTick, 0, to.inputTick, 0, n);
+		System.arraycopy(from.flags, 0, to.flags, 0, n);
+		System.arraycopy(from.stamina, 0, to.stamina, 0, n);
+		System.arraycopy(from.lastPowerUp, 0, to.lastPowerUp, 0, n);
+		System.arraycopy(from.kills, 0, to.kills, 0, n);
+		System.arraycopy(from.deaths, 0, to.deaths, 0, n);
+		System.arraycopy(from.suicides, 0, to.suicides, 0, n);
+		System.arraycopy(from.lives, 0, to.lives, 0, n);
+		System.arraycopy(from.score, 0, to.score, 0, n);
+		System.arraycopy(from.dyingStep, 0, to.dyingStep, 0, n);
+		System.arraycopy(from.timeOfDeath, 0, to.timeOfDeath, 0, n);
+		int p = from.powerUps;
+		System.arraycopy(from.power, 0, to.power, 0, p);
+		System.arraycopy(from.powerX, 0, to.powerX, 0, p);
+		System.arraycopy(from.powerY, 0, to.powerY, 0, p);
+		System.arraycopy(from.powerActive, 0, to.powerActive, 0, p);
+	}
+
+	private static int changedFields(Snapshot a, Snapshot b, int i) {
+		int mask = 0;
+		if (a.x[i] != b.x[i])
+			mask |= X;
+		if (a.y[i] != b.y[i])
+			mask |= Y;
+		if (a.dx[i] != b.dx[i])
+			mask |= DX;
+		if (a.dy[i] != b.dy[i])
+			mask |= DY;
+		if (a.inputTick[i] != b.inputTick[i])
+			mask |= INPUT_TICK;
+		if (a.flags[i] != b.flags[i])
+			mask |= FLAGS;
+		if (a.stamina[i] != b.stamina[i])
+			mask |= STAMINA;
+		if (a.lastPowerUp[i] != b.lastPowerUp[i])
+			mask |= LAST_POWERUP;
+		if (a.kills[i] != b.kills[i])
+			mask |= KILLS;
+		if (a.deaths[i] != b.deaths[i])
+			mask |= DEATHS;
+		if (a.suicides[i] != b.suicides[i])
+			mask |= SUICIDES;
+		if (a.lives[i] != b.lives[i])
+			mask |= LIVES;
+		if (a.score[i] != b.score[i])
+			mask |= SCORE;
+		if (a.dyingStep[i] != b.dyingStep[i])
+			mask |= DYING_STEP;
+		if (a.timeOfDeath[i] != b.timeOfDeath[i])
+			mask |= TIME_OF_DEATH;
+		return mask;
+	}
+
+	static boolean powerUpsChanged(Snapshot a, Snapshot b) {
+		if (a.powerUps != b.powerUps) {
+			return true;
+		}
+		for (int i = 0; i < a.powerUps; i++) {
+			if (a.power[i] != b.power[i] || a.powerX[i] != b.powerX[i] || a.powerY[i] != b.powerY[i]
+					|| a.powerActive[i] != b.powerActive[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,59 @@
+package networking;
+
+/**
+ * A ring buffer of the most recent snapshots, looked up by sequence number.
+ * Both ends of the connection keep one, so that deltas can be written and read
+ * against any snapshot the client has acknowledged recently.
+ */
+public class SnapshotHistory {
+
+	/**
+	 * The number of snapshots kept. At one snapshot every two ticks this is
+	 * just over a second of history.
+	 */
+	public static final int SIZE = 64;
+
+	private final Snapshot[] snapshots = new Snapshot[SIZE];
+	private final boolean[] used = new boolean[SIZE];
+
+	/**
+	 * Create an empty history.
+	 */
+	public SnapshotHistory() {
+		for (int i = 0; i < SIZE; i++) {
+			snapshots[i] = new Snapshot();
+		}
+	}
+
+	/**
+	 * Get the slot to write a new snapshot into, replacing the oldest one.
+	 *
+	 * @param sequence
+	 *            The sequence number of the new snapshot.
+	 * @return The snapshot to fill in.
+	 */
+	public Snapshot slot(int sequence) {
+		int i = index(sequence);
+		used[i] = true;
+		snapshots[i].sequence = sequence;
+		return snapshots[i];
+	}
+
+	/**
+	 * @param sequence
+	 *            The sequence number of the snapshot.
+	 * @return The snapshot with the given sequence number, or null if it
+	 *         isn't in the history (any more).
+	 */
+	public Snapshot get(int sequence) {
+		if (sequence < 0) {
+			return null;
+		}
+		int i = index(sequence);
+		return used[i] && snapshots[i].sequence == sequence ? snapshots[i] : null;
+	}
+
+	private int index(int sequence) {
+		return (sequence & Integer.MAX_VALUE) % SIZE;
+	}
+}
@@ -0,0 +1,15 @@
+package networking;
+
+/**
+ * Something which can send messages to the other end of a connection. On a
+ * real client this is the Kryonet client; in tests it can be a
+ * {@link LoopbackTransport} with some pretend latency.
+ */
+public interface Transport {
+	
+	/**
+	 * Send a message without waiting for it to be delivered (it may be lost).
+	 * @param message The message to send
+	 */
+	public void sendUDP(Object message);
+}
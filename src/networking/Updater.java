@@ -14,6 +14,7 @@ import javax.swing.JTextField;
 
 import com.esotericsoftware.kryonet.Client;
 
+import resources.Character;
 import resources.Resources;
 
 /**
@@ -29,9 +30,13 @@ public class Updater extends JPanel implements Observer {
 	 */
 	private static final long serialVersionUID = 1L;
 	private ConnectionDataModel  cModel;
-	private Client client;
+	private Transport transport;
 	private Resources resources;
+	private ClientPrediction prediction;
 	private boolean oldUp, oldRight, oldLeft, oldDown, oldDashing, oldBlocking = false;
+	// this client's character's index in the player list, and the session's number
+	private int entity = -1;
+	private int session = -1;
 	
 	/**
 	 * Constructs the updater.
@@ -42,35 +47,78 @@ public class Updater extends JPanel implements Observer {
 	public Updater(ConnectionDataModel cModel, Client client, Resources resources) {
 		super();
 		this.cModel = cModel;
-		this.client = client;
+		this.transport = client::sendUDP;
 		this.resources = resources;
 	}
+	
+	/**
+	 * Constructs the updater, sending through any transport.
+	 * @param cModel The ConnectionDataModel
+	 * @param transport Where to send the controls
+	 * @param resources Resources object
+	 */
+	public Updater(ConnectionDataModel cModel, Transport transport, Resources resources) {
+		super();
+		this.cModel = cModel;
+		this.transport = transport;
+		this.resources = resources;
+	}
+	
+	/**
+	 * Set the prediction for the player's character, so that the controls sent
+	 * can be stamped with the tick they were pressed on.
+	 * @param prediction The client-side prediction
+	 */
+	public void setPrediction(ClientPrediction prediction) {
+		this.prediction = prediction;
+	}
 
 
 	/**
-	 * Updates when the character it is observing controls change. It sends the changes in the controls to
-	 * the server.
+	 * Updates when the character it is observing publishes its changes. If the controls have changed,
+	 * it sends them to the server.
 	 */
 	@Override
 	public void update(Observable o, Object arg) {
+		// Only the controls are sent to the server
+		if(arg instanceof Integer && ((Integer)arg & Character.CONTROLS) == 0) {
+			return;
+		}
 		List<resources.Character> characters = resources.getPlayerList();
-		for(int i=0; i<characters.size(); i++) {
-			if(characters.get(i).getId().equals(cModel.getMyId()) && hasControlsChanged(characters.get(i))) {		
-				CharacterInfo info = new CharacterInfo(cModel.getMyId(), characters.get(i).isUp(), characters.get(i).isRight(), characters.get(i).isLeft(), characters.get(i).isDown(), characters.get(i).isDashing(), characters.get(i).isBlocking());
-				
-				// Send a message to update the server.
-				GameData gameData = new GameData(info);
-				Message message = new Message(Command.GAME, Note.UPDATE, cModel.getMyId(), null, cModel.getSessionId(), null, gameData);
-				try {
-					client.sendUDP(message);
-				} catch (Exception e1) {
-					e1.printStackTrace();
-				}
+		if(entity < 0 || session < 0) {
+			findEntity(characters);
+		}
+		if(entity >= 0 && session >= 0 && entity < characters.size() && hasControlsChanged(characters.get(entity))) {
+			InputPacket input = new InputPacket(session, entity, characters.get(entity), prediction != null ? prediction.getTick() : -1);
+			
+			// Send the controls to the server.
+			try {
+				transport.sendUDP(input);
+			} catch (Exception e1) {
+				e1.printStackTrace();
 			}
 		}
 		repaint();
 	}
 	
+	/**
+	 * Find this client's character in the player list and the number of its session. The
+	 * server knows them by these rather than their IDs.
+	 * @param characters The player list
+	 */
+	private void findEntity(List<resources.Character> characters) {
+		for(int i=0; i<characters.size(); i++) {
+			if(characters.get(i).getId().equals(cModel.getMyId())) {
+				entity = i;
+				break;
+			}
+		}
+		Session current = cModel.getSession(cModel.getSessionId());
+		if(current != null) {
+			session = current.getNumber();
+		}
+	}
+	
 	/**
 	 * Check if the controls pressed have changed since the last update.
 	 * @param c The character
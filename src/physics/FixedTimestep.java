@@ -0,0 +1,226 @@
+package physics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A headless fixed-timestep loop. Runs a step function at a constant rate on
+ * whichever thread calls {@link #run()}, using an accumulator so that the
+ * simulation advances by the same amount of time every step regardless of how
+ * late the thread wakes up.
+ *
+ * If the thread falls behind (e.g. after a GC pause) it will run up to
+ * maxCatchUp steps back to back, and anything beyond that is dropped rather
+ * than letting the backlog grow forever.
+ */
+public class FixedTimestep implements Runnable {
+
+	private final Runnable step;
+	private final long stepNanos;
+	private final int maxCatchUp;
+	private final LongSupplier clock;
+	private final LongConsumer sleeper;
+
+	private volatile boolean running = false;
+	private volatile boolean paused = false;
+	private volatile boolean resync = false;
+
+	// measurements of the step function (written by the loop thread only)
+	private volatile long stepCount = 0;
+	private volatile long lastStepNanos = 0;
+	private volatile long averageStepNanos = 0;
+	private volatile long maxStepNanos = 0;
+	private volatile long overruns = 0;
+	private volatile long droppedSteps = 0;
+
+	/**
+	 * Create a new fixed timestep loop.
+	 *
+	 * @param step
+	 *            The function to run once per step.
+	 * @param stepMillis
+	 *            The length of one step in milliseconds.
+	 * @param maxCatchUp
+	 *            The maximum number of steps to run back to back when behind.
+	 */
+	public FixedTimestep(Runnable step, long stepMillis, int maxCatchUp) {
+		this(step, stepMillis, maxCatchUp, System::nanoTime, LockSupport::parkNanos);
+	}
+
+	/**
+	 * Create a new fixed timestep loop which reads the time from the given
+	 * clock and waits using the given sleeper, so tests can run the loop
+	 * against a fake clock.
+	 *
+	 * @param step
+	 *            The function to run once per step.
+	 * @param stepMillis
+	 *            The length of one step in milliseconds.
+	 * @param maxCatchUp
+	 *            The maximum number of steps to run back to back when behind.
+	 * @param clock
+	 *            Returns the current time in nanoseconds.
+	 * @param sleeper
+	 *            Waits for (at most) the given number of nanoseconds.
+	 */
+	FixedTimestep(Runnable step, long stepMillis, int maxCatchUp, LongSupplier clock, LongConsumer sleeper) {
+		this.step = step;
+		this.stepNanos = TimeUnit.MILLISECONDS.toNanos(stepMillis);
+		this.maxCatchUp = maxCatchUp;
+		this.clock = clock;
+		this.sleeper = sleeper;
+	}
+
+	/**
+	 * Runs the loop on the current thread until {@link #stop()} is called or
+	 * the thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		running = true;
+		long previous = clock.getAsLong();
+		long accumulator = 0;
+
+		while (running && !Thread.currentThread().isInterrupted()) {
+			long now = clock.getAsLong();
+			if (paused || resync) {
+				// don't let paused time turn into a burst of catch-up steps
+				resync = false;
+				previous = now;
+				accumulator = 0;
+				if (paused) {
+					sleeper.accept(stepNanos);
+					continue;
+				}
+			}
+			accumulator += now - previous;
+			previous = now;
+
+			int steps = 0;
+			while (accumulator >= stepNanos && steps < maxCatchUp && running && !paused) {
+				runStep();
+				accumulator -= stepNanos;
+				steps++;
+			}
+			if (accumulator >= stepNanos) {
+				// too far behind, give up on the missed steps
+				droppedSteps += accumulator / stepNanos;
+				accumulator %= stepNanos;
+			}
+
+			long wait = stepNanos - accumulator - (clock.getAsLong() - previous);
+			if (wait > 0) {
+				sleeper.accept(wait);
+			}
+		}
+		running = false;
+	}
+
+	/**
+	 * Runs the step function once and records how long it took.
+	 */
+	private void runStep() {
+		long start = clock.getAsLong();
+		step.run();
+		long taken = clock.getAsLong() - start;
+
+		lastStepNanos = taken;
+		// exponential moving average over roughly the last 100 steps
+		averageStepNanos = averageStepNanos == 0 ? taken : averageStepNanos + (taken - averageStepNanos) / 100;
+		if (taken > maxStepNanos) {
+			maxStepNanos = taken;
+		}
+		if (taken > stepNanos) {
+			overruns++;
+		}
+		stepCount++;
+	}
+
+	/**
+	 * Stop running steps until {@link #resume()} is called.
+	 */
+	public void pause() {
+		paused = true;
+	}
+
+	/**
+	 * Carry on running steps after a {@link #pause()}.
+	 */
+	public void resume() {
+		resync = true;
+		paused = false;
+	}
+
+	/**
+	 * Stop the loop. {@link #run()} will return after the current step.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * @return Is the loop currently running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return Is the loop currently paused?
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return The length of one step in nanoseconds (the tick budget).
+	 */
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * @return The number of steps run so far.
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * @return How long the last step took, in nanoseconds.
+	 */
+	public long getLastStepNanos() {
+		return lastStepNanos;
+	}
+
+	/**
+	 * @return The moving average of how long a step takes, in nanoseconds.
+	 */
+	public long getAverageStepNanos() {
+		return averageStepNanos;
+	}
+
+	/**
+	 * @return The longest step so far, in nanoseconds.
+	 */
+	public long getMaxStepNanos() {
+		return maxStepNanos;
+	}
+
+	/**
+	 * @return The number of steps which took longer than the step length.
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return The number of steps skipped because the loop fell too far
+	 *         behind.
+	 */
+	public long getDroppedSteps() {
+		return droppedSteps;
+	}
+}
@@ -1,25 +1,21 @@
 package physics;
 
-import java.awt.Point;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.Date;
 
-import javax.swing.Timer;
-
 import ai.AITemplate;
-import ai.FightingAI;
-import ai.HotPotatoAI;
+import metrics.FlightEvents;
+import resources.BodyStore;
 import resources.Character;
 import resources.Collidable;
 import resources.Collidable_Circle;
 import resources.Map;
-import resources.Map.Tile;
 import resources.NetworkMove;
 import resources.Powerup;
 import resources.Puck;
 import resources.Resources;
 import resources.Resources.Mode;
+import resources.TileGrid;
 
 /**
  * The physics engine for the game.
@@ -27,14 +23,25 @@ import resources.Resources.Mode;
  * @author Luke and Alex
  *
  */
-public class Physics extends Thread implements ActionListener {
+public class Physics extends Thread {
 	// dashing reduces stamina, speed multiplied by stamina.
-	private Timer timer;
-	private final int DELAY = 10;
+	public static final int DELAY = 10;
+	public static final int TICKS_PER_SECOND = 1000 / DELAY;
+	// the most ticks to run back to back when the physics thread falls behind
+	private final int MAX_CATCH_UP = 5;
+	private final FixedTimestep loop;
 	private Resources resources;
 	
 	private boolean client = false;
-	private int bombPassTimer = 0;
+	// running a copy of the game, so no sounds
+	private boolean headless = false;
+
+	// broadphase, rebuilt every tick
+	private Map gridMap;
+	private SpatialGrid characterGrid;
+	private SpatialGrid powerupGrid;
+	// narrowphase results, reused for every pair
+	private final CND scratch = new CND();
 	
 	/**
 	 * Create the physics engine.
@@ -48,83 +55,168 @@ public class Physics extends Thread implements ActionListener {
 	public Physics(Resources resources, boolean client) {
 		this.resources = resources;
 		this.client = client;
+		this.loop = new FixedTimestep(this::tick, DELAY, MAX_CATCH_UP);
+		setName("Physics");
+		setDaemon(true);
+	}
+
+	/**
+	 * Create a physics engine for running a copy of the game on ahead (see
+	 * {@link resources.WorldState}). It is never started: the copy is moved on
+	 * with {@link #simulate(int)}. Nobody respawns, no AIs think and no sounds are
+	 * played, so the same copy always plays out the same way.
+	 * 
+	 * @param resources
+	 *            The copy of the game.
+	 * @return The physics engine for the copy.
+	 */
+	public static Physics headless(Resources resources) {
+		Physics physics = new Physics(resources, true);
+		physics.headless = true;
+		return physics;
 	}
 
 	/**
-	 * Starts the physics loop.
+	 * Starts the physics loop. Ticks are run on this thread at a fixed rate
+	 * until the simulation is halted.
 	 */
 	@Override
 	public void run() {
-
-		for (Character c : resources.getPlayerList()) {
-			if (c.isAI()) {
-				c.getAI().start();
-			}
-		}
-
-		timer = new Timer(DELAY, this);
-		timer.start();
+		loop.run();
 	}
 
 	/**
 	 * Pauses the simulation.
 	 */
 	public void pause() {
-		timer.stop();
+		loop.pause();
 	}
 
 	/**
 	 * Unpauses the simulation.
 	 */
 	public void unpause() {
-		timer.start();
+		loop.resume();
 	}
 
 	/**
-	 * Does one 'tick' worth of simulation. 
+	 * Stops the simulation for good, letting the physics thread finish.
 	 */
-	@Override
-	public void actionPerformed(ActionEvent arg0) {
+	public void halt() {
+		loop.stop();
+	}
+
+	/**
+	 * @return The fixed timestep loop driving this engine, for its tick
+	 *         measurements.
+	 */
+	public FixedTimestep getLoop() {
+		return loop;
+	}
+
+	/**
+	 * Does one 'tick' worth of simulation.
+	 */
+	public void tick() {
 		if (resources.isFinished()) {
-			pause();
+			halt();
+			return;
+		}
+		step();
+		resources.publishChanges();
+	}
+
+	/**
+	 * Moves everything on by one tick, without telling anyone what changed.
+	 * Used when something else finishes the tick off (e.g. a server game
+	 * which still has to run its game mode).
+	 * 
+	 * Each tick is recorded as a ballin.PhysicsTick event (see
+	 * {@link FlightEvents}) when the flight recorder is on, apart from the
+	 * ticks of headless copies.
+	 */
+	public void step() {
+		if (headless) {
+			advance();
+			return;
+		}
+		Object event = FlightEvents.beginPhysicsTick();
+		advance();
+		if (event != null) {
+			FlightEvents.endPhysicsTick(event, resources.getSessionId(), resources.getGlobalTimer(),
+					resources.getPlayerList().size(), resources.getPowerupList().size());
 		}
+	}
+
+	/**
+	 * Moves everything on by one tick.
+	 */
+	private void advance() {
+		// writes handed over by other threads, before anything looks at the
+		// bodies
+		resources.runTickTasks();
 		resources.incrementGlobalTimer();
 
 		// if hockey, move puck.
 		if (resources.mode == Mode.Hockey)
 			update(resources.getPuck());
 
-		for (Character c : resources.getPlayerList()) {
-			// if (c.getPlayerNumber() == 1) {
-			// System.out.println("hp: " + c.getHealth());
-			// }
+		ArrayList<Character> players = resources.getPlayerList();
+		ArrayList<Powerup> powerups = resources.getPowerupList();
+		int playerCount = players.size();
+		// from here on player i is in slot i of the body store, so the loops
+		// below can go straight to its arrays
+		BodyStore bodies = resources.getBodyStore();
+		bodies.sync(players);
+		double[] xs = bodies.getXs();
+		double[] ys = bodies.getYs();
+		int[] radii = bodies.getRadii();
+		if (!client) {
+			thinkAIs(players, playerCount);
+		}
+		buildBroadphase(bodies, playerCount, powerups);
+
+		for (int i = 0; i < playerCount; i++) {
+			Character c = players.get(i);
 			update(c);
-			
-			for (Character d : resources.getPlayerList()) {
-				// check collisions
-				if (c != d && !c.isDead() && !d.isDead()) {
-					CND cnd = detectCollision(c, d);
-					if (cnd.collided) {
-						// If playing hot potato, if bomb hasn't passed on yet, pass bomb if you have it
-						if(resources.mode == Mode.HotPotato){
-								if (c.hasBomb() && bombPassTimer == 0) {
-									c.hasBomb(false);
-									d.hasBomb(true);
-									bombPassTimer = 100;
-								}
+			characterGrid.put(i, xs[i], ys[i], radii[i]);
+
+			if (!bodies.isSet(i, BodyStore.DEAD)) {
+				// check collisions with anyone nearby
+				int candidates = characterGrid.query(xs[i], ys[i], radii[i]);
+				int[] nearby = characterGrid.getResults();
+				for (int k = 0; k < candidates; k++) {
+					int j = nearby[k];
+					if (i != j && !bodies.isSet(j, BodyStore.DEAD)) {
+						CND cnd = detectCollision(xs, ys, radii, i, j);
+						if (cnd.collided) {
+							Character d = players.get(j);
+							// If playing hot potato, if bomb hasn't passed on yet, pass bomb if you have it
+							if(resources.mode == Mode.HotPotato){
+									if (c.hasBomb() && resources.getBombPassTimer() == 0) {
+										c.hasBomb(false);
+										d.hasBomb(true);
+										resources.setBombPassTimer(100);
+									}
+							}
+							collide(c, d, cnd);
 						}
-						collide(c, d, cnd);
 					}
 				}
 			}
-			if(bombPassTimer > 0) bombPassTimer--;
-			// Check collisions with powerups
-			for (Powerup p : resources.getPowerupList()) {
+			if(resources.getBombPassTimer() > 0) resources.setBombPassTimer(resources.getBombPassTimer() - 1);
+			// Check collisions with nearby powerups
+			int candidates = powerupGrid.query(xs[i], ys[i], radii[i]);
+			int[] nearby = powerupGrid.getResults();
+			for (int k = 0; k < candidates; k++) {
+				Powerup p = powerups.get(nearby[k]);
 				CND cnd = detectCollision(c, p);
 				if (cnd.collided && p.isActive()) {
 					// Grant power to character, remove powerup
 					c.applyPowerup(p, resources.getGlobalTimer());
 					resources.removePowerup(p);
+					powerupGrid.remove(nearby[k]);
+					characterGrid.put(i, xs[i], ys[i], radii[i]);
 				}
 			}
 			if (resources.mode == Mode.Hockey) {
@@ -134,8 +226,76 @@ public class Physics extends Thread implements ActionListener {
 					collide(c, p, cnd);
 				}
 			}
+		}
+	}
+
+	/**
+	 * Moves everything on by a number of ticks, straight away and without
+	 * telling anyone what changed. Used to run a copy of the game on ahead.
+	 * 
+	 * @param ticks
+	 *            The number of ticks to simulate.
+	 */
+	public void simulate(int ticks) {
+		for (int i = 0; i < ticks; i++) {
+			step();
+		}
+	}
 
-			
+	/**
+	 * Lets the AI players press their keys for this tick, with only so many
+	 * of them thinking about what to do each tick.
+	 * 
+	 * @param players
+	 *            The characters in the game.
+	 * @param playerCount
+	 *            The number of characters being simulated this tick.
+	 */
+	private void thinkAIs(ArrayList<Character> players, int playerCount) {
+		int thoughts = 0;
+		for (int i = 0; i < playerCount; i++) {
+			AITemplate ai = players.get(i).getAI();
+			if (players.get(i).isAI() && ai != null && ai.tick(thoughts < AITemplate.THINKS_PER_TICK)) {
+				thoughts++;
+			}
+		}
+	}
+
+	/**
+	 * Fills the broadphase grids with this tick's characters and active
+	 * powerups, so that only bodies near each other reach detectCollision.
+	 * 
+	 * @param bodies
+	 *            The characters' physics state, in player order.
+	 * @param playerCount
+	 *            The number of characters being simulated this tick.
+	 * @param powerups
+	 *            The powerups in the game.
+	 */
+	private void buildBroadphase(BodyStore bodies, int playerCount, ArrayList<Powerup> powerups) {
+		Map map = resources.getMap();
+		if (map != gridMap) {
+			gridMap = map;
+			characterGrid = new SpatialGrid(map.getWidth(), map.getHeight(), map.getTileSize());
+			powerupGrid = new SpatialGrid(map.getWidth(), map.getHeight(), map.getTileSize());
+		}
+
+		characterGrid.clear(playerCount);
+		double[] xs = bodies.getXs();
+		double[] ys = bodies.getYs();
+		int[] radii = bodies.getRadii();
+		for (int i = 0; i < playerCount; i++) {
+			characterGrid.put(i, xs[i], ys[i], radii[i]);
+		}
+
+		// powerups are only ever deactivated, so skip the ones already taken
+		int powerupCount = powerups.size();
+		powerupGrid.clear(powerupCount);
+		for (int i = 0; i < powerupCount; i++) {
+			Powerup p = powerups.get(i);
+			if (p.isActive()) {
+				powerupGrid.put(i, p.getX(), p.getY(), p.getRadius());
+			}
 		}
 	}
 
@@ -155,25 +315,12 @@ public class Physics extends Thread implements ActionListener {
 					resources.getMap().spawn(c);
 //					System.out.println("Respawn");
 				}
-				if (c.isAI()) {
-
-					AITemplate ai;
-					if (resources.mode == Mode.HotPotato) {
-						ai = new HotPotatoAI(resources, c);
-					} else {
-						ai = new FightingAI(resources, c);
-					}
-
-					ai.start();
-				}
 			}
 			c.incDyingStep();
 		}
 
-		// find terrain type:
-		Tile t = resources.getMap().tileAt(c.getX(), c.getY());
 		// check for falling.
-		if (Map.tileCheck(t)) {
+		if (resources.getMap().getTileGrid().kills(c.getX(), c.getY())) {
 			c.setFalling(true);
 		}
 		// Powerup timer, remove powerup after 5 secs
@@ -199,45 +346,13 @@ public class Physics extends Thread implements ActionListener {
 			if (special(c)) {
 				return;
 			}
-			// calculate speed
-			if (c.isLeft() && c.getDx() > -c.getMaxDx()) {
-				c.setDx(c.getDx() - c.getAcc());
-			}
-			if (c.isRight() && c.getDx() < c.getMaxDx()) {
-				c.setDx(c.getDx() + c.getAcc());
-			}
-			if (c.isUp() && c.getDy() > -c.getMaxDy()) {
-				c.setDy(c.getDy() - c.getAcc());
-			}
-			if (c.isDown() && c.getDy() < c.getMaxDy()) {
-				c.setDy(c.getDy() + c.getAcc());
-			}
-			// apply friction
-			double f = resources.getMap().getFriction();
-			if (!c.isLeft() && !c.isRight()) {
-				if (c.getDx() < -f) {
-					c.setDx(c.getDx() + f);
-				} else if (c.getDx() > f) {
-					c.setDx(c.getDx() - f);
-				} else {
-					c.setDx(0);
-				}
-			}
-			if (!c.isUp() && !c.isDown()) {
-				if (c.getDy() < -f) {
-					c.setDy(c.getDy() + f);
-				} else if (c.getDy() > f) {
-					c.setDy(c.getDy() - f);
-				} else {
-					c.setDy(0);
-				}
-			}
+			accelerate(c, c.isUp(), c.isDown(), c.isLeft(), c.isRight());
 		} else { // falling
 			if (dead(c) && !c.isDead()) {
 				c.setDead(true);
 				c.setTimeOfDeath(resources.getGlobalTimer());
 				// XXX lovely sound effect
-				if (!Resources.silent) {
+				if (!Resources.silent && !headless) {
 //					System.out.println("gain: " +resources.getSFXGain());
 					c.getRandDeathSound().play(resources.getSFXGain());
 				}
@@ -268,6 +383,83 @@ public class Physics extends Thread implements ActionListener {
 		move(c);
 	}
 
+	/**
+	 * Speeds a character up in the directions it is being controlled in, and
+	 * slows it down with friction in the others.
+	 * 
+	 * @param c
+	 *            The character to accelerate.
+	 * @param up
+	 *            Is up being pressed?
+	 * @param down
+	 *            Is down being pressed?
+	 * @param left
+	 *            Is left being pressed?
+	 * @param right
+	 *            Is right being pressed?
+	 */
+	protected void accelerate(Character c, boolean up, boolean down, boolean left, boolean right) {
+		// calculate speed
+		if (left && c.getDx() > -c.getMaxDx()) {
+			c.setDx(c.getDx() - c.getAcc());
+		}
+		if (right && c.getDx() < c.getMaxDx()) {
+			c.setDx(c.getDx() + c.getAcc());
+		}
+		if (up && c.getDy() > -c.getMaxDy()) {
+			c.setDy(c.getDy() - c.getAcc());
+		}
+		if (down && c.getDy() < c.getMaxDy()) {
+			c.setDy(c.getDy() + c.getAcc());
+		}
+		// apply friction
+		double f = resources.getMap().getFriction();
+		if (!left && !right) {
+			if (c.getDx() < -f) {
+				c.setDx(c.getDx() + f);
+			} else if (c.getDx() > f) {
+				c.setDx(c.getDx() - f);
+			} else {
+				c.setDx(0);
+			}
+		}
+		if (!up && !down) {
+			if (c.getDy() < -f) {
+				c.setDy(c.getDy() + f);
+			} else if (c.getDy() > f) {
+				c.setDy(c.getDy() - f);
+			} else {
+				c.setDy(0);
+			}
+		}
+	}
+
+	/**
+	 * Moves a single character on by one tick, as the client's guess at what
+	 * the server will do with its inputs. Only the character's own movement
+	 * is predicted: collisions, dashing and falling are left for the server's
+	 * snapshots to correct.
+	 * 
+	 * @param c
+	 *            The character to move.
+	 * @param up
+	 *            Is up being pressed?
+	 * @param down
+	 *            Is down being pressed?
+	 * @param left
+	 *            Is left being pressed?
+	 * @param right
+	 *            Is right being pressed?
+	 */
+	public void predict(Character c, boolean up, boolean down, boolean left, boolean right) {
+		if (c.isDead() || c.isFalling()) {
+			return;
+		}
+		calculateWallCollisions(c);
+		accelerate(c, up, down, left, right);
+		move(c);
+	}
+
 	/**
 	 * Calculate speed and location of collidable circles.
 	 * 
@@ -275,10 +467,8 @@ public class Physics extends Thread implements ActionListener {
 	 *            The character to update.
 	 */
 	protected void update(Collidable_Circle c) {
-		// find terrain type:
-		Tile t = resources.getMap().tileAt(c.getX(), c.getY());
 		// check for falling.
-		if (Map.tileCheck(t)) {
+		if (resources.getMap().getTileGrid().kills(c.getX(), c.getY())) {
 			c.setFalling(true);
 			if (!c.isDead() && dead(c)) {
 				// if (c.getType() == CollidableType.Puck) {...}
@@ -318,23 +508,20 @@ public class Physics extends Thread implements ActionListener {
 		}
 		// dead if completely off the map.
 		boolean dead = true;
-		Tile t2 = resources.getMap().tileAt(c.getX() + c.getRadius(), c.getY());
-		if (!Map.tileCheck(t2)) { // right edge
+		TileGrid grid = resources.getMap().getTileGrid();
+		if (!grid.kills(c.getX() + c.getRadius(), c.getY())) { // right edge
 			dead = false;
 			c.setDx(0 - Math.abs(c.getDx()));
 		}
-		t2 = resources.getMap().tileAt(c.getX() - c.getRadius(), c.getY());
-		if (!Map.tileCheck(t2)) { // left edge
+		if (!grid.kills(c.getX() - c.getRadius(), c.getY())) { // left edge
 			dead = false;
 			c.setDx(Math.abs(c.getDx()));
 		}
-		t2 = resources.getMap().tileAt(c.getX(), c.getY() + c.getRadius());
-		if (!Map.tileCheck(t2)) { // bottom edge
+		if (!grid.kills(c.getX(), c.getY() + c.getRadius())) { // bottom edge
 			dead = false;
 			c.setDy(0 - Math.abs(c.getDy()));
 		}
-		t2 = resources.getMap().tileAt(c.getX(), c.getY() - c.getRadius());
-		if (!Map.tileCheck(t2)) { // top edge
+		if (!grid.kills(c.getX(), c.getY() - c.getRadius())) { // top edge
 			dead = false;
 			c.setDy(Math.abs(c.getDy()));
 		}
@@ -350,12 +537,8 @@ public class Physics extends Thread implements ActionListener {
 	protected void calculateWallCollisions(Collidable_Circle c) {
 		// Checks walls, if collided then collides.
 		
-		// get centre of current tile. For position correction.
-		Point p = resources.getMap().tileCoords(c.getX(), c.getY());
-		p = resources.getMap().tileCoordsToMapCoords(p.x, p.y);
-		
-		Tile t1 = resources.getMap().tileAt(c.getX() + c.getRadius(), c.getY());
-		if (t1 == Tile.WALL) { // right edge
+		TileGrid grid = resources.getMap().getTileGrid();
+		if (grid.isWall(c.getX() + c.getRadius(), c.getY())) { // right edge
 //			if(p.x < c.getX()) {
 //				c.setX((p.x + c.getX())/2);
 //			}
@@ -363,20 +546,17 @@ public class Physics extends Thread implements ActionListener {
 				c.setDx(0.5);
 			c.setDx(0 - Math.abs(c.getDx()));
 		}
-		t1 = resources.getMap().tileAt(c.getX() - c.getRadius(), c.getY());
-		if (t1 == Tile.WALL) { // left edge
+		if (grid.isWall(c.getX() - c.getRadius(), c.getY())) { // left edge
 			if (c.getDx() < 0.5)
 				c.setDx(0.5);
 			c.setDx(Math.abs(c.getDx()));
 		}
-		t1 = resources.getMap().tileAt(c.getX(), c.getY() + c.getRadius());
-		if (t1 == Tile.WALL) { // bottom edge
+		if (grid.isWall(c.getX(), c.getY() + c.getRadius())) { // bottom edge
 			if (c.getDy() < 0.5)
 				c.setDy(0.5);
 			c.setDy(0 - Math.abs(c.getDy()));
 		}
-		t1 = resources.getMap().tileAt(c.getX(), c.getY() - c.getRadius());
-		if (t1 == Tile.WALL) { // top edge
+		if (grid.isWall(c.getX(), c.getY() - c.getRadius())) { // top edge
 			if (c.getDy() < 0.5)
 				c.setDy(0.5);
 			c.setDy(Math.abs(c.getDy()));
@@ -514,17 +694,22 @@ public class Physics extends Thread implements ActionListener {
 	 * @param d
 	 *            The second collidable object.
 	 * @return The CND object holding collision information of this collision.
+	 *         This is overwritten by the next call, so use it straight away.
 	 */
 	protected CND detectCollision(Collidable_Circle c, Collidable_Circle d) {
-		CND cnd = new CND();
+		// reuse the same CND every time so that the narrowphase doesn't allocate
+		CND cnd = scratch;
+		cnd.collided = false;
+		cnd.collisionDepth = 0;
+		cnd.collisionNormal.x = 0;
+		cnd.collisionNormal.y = 0;
 		int r = c.getRadius() + d.getRadius();
 		r *= r; // reduce need for Math.sqrt()
 		double dx = c.getX() - d.getX(); // difference in x
 		double dy = c.getY() - d.getY(); // difference in y
-		double dx2 = Math.pow(dx, 2);
-		double dy2 = Math.pow(dy, 2);
-		if ((dx2 + dy2) <= r) {
-			double distance = Math.sqrt(dx2 + dy2);
+		double distance2 = dx * dx + dy * dy;
+		if (distance2 <= r) {
+			double distance = Math.sqrt(distance2);
 			if (distance != 0) { // avoid divide by zero
 				cnd.collided = true;
 				cnd.collisionDepth = r - distance;
@@ -536,6 +721,48 @@ public class Physics extends Thread implements ActionListener {
 		return cnd;
 	}
 
+	/**
+	 * Detects whether two characters in the body store have collided. The
+	 * same as {@link #detectCollision(Collidable_Circle, Collidable_Circle)},
+	 * but reading the store's arrays instead of going through the
+	 * characters.
+	 * 
+	 * @param xs
+	 *            The x coordinates of the bodies.
+	 * @param ys
+	 *            The y coordinates of the bodies.
+	 * @param radii
+	 *            The radii of the bodies.
+	 * @param i
+	 *            The first body's slot.
+	 * @param j
+	 *            The second body's slot.
+	 * @return The CND object holding collision information of this collision.
+	 *         This is overwritten by the next call, so use it straight away.
+	 */
+	private CND detectCollision(double[] xs, double[] ys, int[] radii, int i, int j) {
+		CND cnd = scratch;
+		cnd.collided = false;
+		cnd.collisionDepth = 0;
+		cnd.collisionNormal.x = 0;
+		cnd.collisionNormal.y = 0;
+		int r = radii[i] + radii[j];
+		r *= r;
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double distance2 = dx * dx + dy * dy;
+		if (distance2 <= r) {
+			double distance = Math.sqrt(distance2);
+			if (distance != 0) {
+				cnd.collided = true;
+				cnd.collisionDepth = r - distance;
+				cnd.collisionNormal.x = dx / distance;
+				cnd.collisionNormal.y = dy / distance;
+			}
+		}
+		return cnd;
+	}
+
 	/**
 	 * Make a character dash and continue dashing during the full length of the
 	 * dash.
@@ -1,16 +1,35 @@
 package physics;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
-import java.awt.event.ActionEvent;
 import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import metrics.FlightEvents;
 import physics.Physics.CND;
+import resources.BodyStore;
 import resources.Character;
 import resources.Character.Class;
 import resources.Character.Heading;
@@ -19,13 +38,14 @@ import resources.Map;
 import resources.Map.Tile;
 import resources.Resources;
 import resources.Resources.Mode;
+import resources.TickListener;
+import resources.WorldState;
 
 public class PhysicsTests {
 	private Physics physics;
 	private Resources r;
 	private Map map;
 	private boolean verbose = false;
-	private static final ActionEvent ev = new ActionEvent(new Object(), 0, "");
 	
 	@Before
 	public void setUp() {
@@ -50,8 +70,8 @@ public class PhysicsTests {
 	}
 
 	@Test
-	public void testActionPerformed() {
-		//Test physics.actionPerformed().
+	public void testTick() {
+		//Test physics.tick().
 		//Test single character movement:
 		// starts character in the middle of the map, then moves them in each direction for twenty steps.
 		Character c1 = new Character(1, 500, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
@@ -142,14 +162,14 @@ public class PhysicsTests {
 				if( c1.isUp()    ) dy = Math.max(-maxdy, dy - acc);
 				if( c1.isDown()  ) dy = Math.min( maxdy, dy + acc);
 				
-				physics.actionPerformed(ev);
+				physics.tick();
 				if(verbose) System.out.println(h + " step " + step + ": dx " + dx + ", dy " + dy + ", coords: (" + x1 + "," + y1 + ")");
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c1.getX(), x1 + dx) == 0);
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c1.getY(), y1 + dy) == 0);
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c2.getX(), x2 + dx) == 0);
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c2.getY(), y2 + dy) == 0);
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c3.getX(), x3 + dx) == 0);
-				assertTrue("Error somewhere in actionPerformed.",Double.compare(c3.getY(), y3 + dy) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c1.getX(), x1 + dx) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c1.getY(), y1 + dy) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c2.getX(), x2 + dx) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c2.getY(), y2 + dy) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c3.getX(), x3 + dx) == 0);
+				assertTrue("Error somewhere in tick.",Double.compare(c3.getY(), y3 + dy) == 0);
 			}
 		}
 		
@@ -254,7 +274,7 @@ public class PhysicsTests {
 	@Test
 	public void testCalculateWallCollisions() {
 		Character c = new Character(10, 55, 12, 25, Heading.NW, Class.WARRIOR, 0, "Test");
-		r.getMap().getTiles()[0][0] = Tile.WALL; //top-left (NW) corner tile.
+		r.getMap().setTile(0, 0, Tile.WALL); //top-left (NW) corner tile.
 		//No collision
 		double dx = c.getDx(), dy = c.getDy();
 //		double x = c.getX(), y = c.getY();
@@ -552,4 +572,423 @@ public class PhysicsTests {
 		assertTrue(c.getBlockTimer() == 0);
 		assertTrue(c.getDx() < initialSpeed);
 	}
+
+	@Test
+	public void testFixedTimestep() {
+		// a 10ms loop left running for half a second ticks once every 10ms
+		final long ms = TimeUnit.MILLISECONDS.toNanos(1);
+		final long[] now = new long[1];
+		final List<Long> ticks = new ArrayList<>();
+		final FixedTimestep[] loop = new FixedTimestep[1];
+		loop[0] = new FixedTimestep(() -> ticks.add(now[0]), 10, 5, () -> now[0], nanos -> {
+			now[0] += nanos;
+			if (now[0] > 500 * ms) {
+				loop[0].stop();
+			}
+		});
+		loop[0].run();
+		assertFalse(loop[0].isRunning());
+		assertEquals(50, ticks.size());
+		for (int i = 0; i < ticks.size(); i++) {
+			assertEquals((i + 1) * 10 * ms, (long) ticks.get(i));
+		}
+		assertEquals(50, loop[0].getStepCount());
+		assertEquals(0, loop[0].getOverruns());
+		assertEquals(0, loop[0].getDroppedSteps());
+
+		// one 200ms tick is caught up on five steps at a time and the rest of
+		// the missed steps are dropped
+		now[0] = 0;
+		final int[] slowTicks = new int[1];
+		final FixedTimestep[] slow = new FixedTimestep[1];
+		slow[0] = new FixedTimestep(() -> {
+			if (slowTicks[0]++ == 0) {
+				now[0] += 200 * ms;
+			}
+		}, 10, 5, () -> now[0], nanos -> {
+			now[0] += nanos;
+			if (now[0] > 300 * ms) {
+				slow[0].stop();
+			}
+		});
+		slow[0].run();
+		// the slow step, 5 to catch up, then one every 10ms from 220ms to 300ms
+		assertEquals(1 + 5 + 9, slowTicks[0]);
+		assertEquals(slowTicks[0], slow[0].getStepCount());
+		assertEquals(1, slow[0].getOverruns());
+		assertEquals(200 * ms, slow[0].getMaxStepNanos());
+		// 20 more steps fell due during the slow one, 5 were run and the
+		// rest dropped
+		assertEquals(20 - 5, slow[0].getDroppedSteps());
+	}
+
+	@Test
+	public void testTickStopsWhenFinished() {
+		Character c1 = new Character(1, 500, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		r.addPlayerToList(c1);
+		c1.setControls(true, false, false, false, false, false);
+		r.setFinished(true);
+		int timer = r.getGlobalTimer();
+		physics.tick();
+		assertTrue(r.getGlobalTimer() == timer);
+		assertFalse(physics.getLoop().isRunning());
+	}
+
+	@Test
+	public void testSpatialGrid() {
+		// every pair of touching bodies should be found, in index order
+		Random rand = new Random(7);
+		int n = 200;
+		double[] xs = new double[n], ys = new double[n];
+		int[] radii = new int[n];
+		SpatialGrid grid = new SpatialGrid(1000, 1000, 25);
+		grid.clear(n);
+		for (int i = 0; i < n; i++) {
+			// some bodies start off the edge of the map
+			xs[i] = rand.nextDouble() * 1100 - 50;
+			ys[i] = rand.nextDouble() * 1100 - 50;
+			radii[i] = 10 + rand.nextInt(30);
+			grid.put(i, xs[i], ys[i], radii[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			int count = grid.query(xs[i], ys[i], radii[i]);
+			int[] results = grid.getResults();
+			for (int k = 1; k < count; k++) {
+				assertTrue(results[k - 1] < results[k]);
+			}
+			for (int j = 0; j < n; j++) {
+				double dx = xs[i] - xs[j], dy = ys[i] - ys[j];
+				int r = radii[i] + radii[j];
+				if (dx * dx + dy * dy <= r * r) {
+					assertTrue(Arrays.binarySearch(results, 0, count, j) >= 0);
+				}
+			}
+		}
+		// removed bodies aren't returned any more
+		grid.remove(0);
+		int count = grid.query(xs[0], ys[0], radii[0]);
+		assertTrue(Arrays.binarySearch(grid.getResults(), 0, count, 0) < 0);
+	}
+
+	@Test
+	public void testBroadphaseCollisions() {
+		// two touching characters in a crowded map still bounce off each other
+		for (int i = 0; i < 30; i++) {
+			r.addPlayerToList(new Character(1, 100 + (i % 6) * 150, 100 + (i / 6) * 150, 25, Heading.STILL, Class.WARRIOR, 0, "CPU"));
+		}
+		Character c1 = new Character(1, 500, 920, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		Character c2 = new Character(1, 540, 920, 25, Heading.STILL, Class.WARRIOR, 0, "Player 2");
+		c1.setDx(2);
+		c2.setDx(-2);
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+		physics.tick();
+		assertTrue(c1.getDx() < 0);
+		assertTrue(c2.getDx() > 0);
+		assertTrue(c1.getLastCollidedWith() == c2);
+	}
+
+	@Test
+	public void testDetectCollisionDoesNotAllocate() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Character c1 = new Character(10, 26, 50, 25, Heading.E, Class.HORSE, 0, "C1");
+		Character c2 = new Character(10, 75, 50, 25, Heading.W, Class.WARRIOR, 1, "C2");
+		int collisions = 0;
+		// warm up so that the JIT has finished with detectCollision
+		for (int i = 0; i < 20000; i++) {
+			if (physics.detectCollision(c1, c2).collided)
+				collisions++;
+		}
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 100000; i++) {
+			if (physics.detectCollision(c1, c2).collided)
+				collisions++;
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		assertTrue(collisions == 120000);
+		// allocating anything per call would come to at least 1.6MB. Allow a
+		// little for the measurement itself, and for the JVM linking the loop's
+		// freshly compiled code the first time it runs (a couple of KB, once)
+		assertTrue("detectCollision allocated " + allocated + " bytes", allocated < 16 * 1024);
+	}
+
+	@Test
+	public void testPublishOncePerTick() {
+		Character c1 = new Character(10, 100, 100, 25, Heading.E, Class.HORSE, 0, "C1");
+		Character c2 = new Character(10, 400, 400, 25, Heading.W, Class.WARRIOR, 1, "C2");
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+		final int[] notified = new int[2];
+		c1.addObserver(new Observer() {
+			@Override
+			public void update(Observable o, Object arg) {
+				notified[0]++;
+				notified[1] |= (Integer) arg;
+			}
+		});
+		final int[] ticks = new int[1];
+		r.addTickListener(new TickListener() {
+			@Override
+			public void tickEnded(Resources resources) {
+				ticks[0]++;
+			}
+		});
+
+		// setters on their own only mark what changed
+		c1.setRight(true);
+		c1.setX(101);
+		assertEquals(0, notified[0]);
+		assertEquals(Character.CONTROLS | Character.POSITION, c1.getChanges());
+
+		for (int i = 0; i < 10; i++) {
+			physics.tick();
+		}
+		assertEquals("Observer not told once per tick", 10, notified[0]);
+		assertEquals(10, ticks[0]);
+		assertTrue((notified[1] & Character.POSITION) != 0);
+		assertTrue((notified[1] & Character.CONTROLS) != 0);
+		assertEquals(0, c1.getChanges());
+
+		// nothing changed, so nothing to publish
+		c1.publish();
+		assertEquals(10, notified[0]);
+	}
+
+	/**
+	 * Setters on different threads must not lose each other's change bits.
+	 */
+	@Test
+	public void testChangesFromSeveralThreads() throws Exception {
+		final Character c = new Character(Class.WIZARD, 0, "C");
+		final CyclicBarrier barrier = new CyclicBarrier(3);
+		final int rounds = 2000;
+		Thread positions = new Thread(() -> {
+			try {
+				for (int i = 0; i < rounds; i++) {
+					barrier.await();
+					c.setX(i);
+					barrier.await();
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread controls = new Thread(() -> {
+			try {
+				for (int i = 0; i < rounds; i++) {
+					barrier.await();
+					c.setRight(i % 2 == 0);
+					barrier.await();
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		positions.start();
+		controls.start();
+		for (int i = 0; i < rounds; i++) {
+			barrier.await();
+			barrier.await();
+			assertEquals("Lost a change in round " + i, Character.POSITION | Character.CONTROLS, c.getChanges());
+			c.publish();
+			assertEquals(0, c.getChanges());
+		}
+		positions.join();
+		controls.join();
+	}
+
+	@Test
+	public void testWorldStateSimulate() {
+		Character c1 = new Character(1, 300, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		Character c2 = new Character(1, 420, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 2");
+		c1.setRight(true);
+		c2.setLeft(true);
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+
+		WorldState state = new WorldState();
+		state.copyFrom(r);
+		Character copy1 = state.copyOf(c1);
+		Character copy2 = state.copyOf(c2);
+		assertTrue(copy1 != c1);
+		assertEquals(c1.getX(), copy1.getX(), 0);
+
+		// the copy runs on ahead without touching the real game
+		Physics headless = Physics.headless(state.getResources());
+		headless.simulate(60);
+		assertEquals(300, c1.getX(), 0);
+		assertEquals(0, r.getGlobalTimer());
+		assertTrue(copy1.getLastCollidedWith() == copy2);
+
+		// and ends up where the real game does
+		for (int i = 0; i < 60; i++) {
+			physics.tick();
+		}
+		assertEquals(c1.getX(), copy1.getX(), 0);
+		assertEquals(c2.getDx(), copy2.getDx(), 0);
+		assertTrue(c1.getLastCollidedWith() == c2);
+
+		// copying again reuses the same copies
+		state.copyFrom(r);
+		assertTrue(state.copyOf(c1) == copy1);
+		assertTrue(copy1.getLastCollidedWith() == copy2);
+		assertEquals(r.getGlobalTimer(), state.getResources().getGlobalTimer());
+	}
+
+	@Test
+	public void testWorldStateKeepsBombPassTimer() {
+		r.mode = Mode.HotPotato;
+		Character c1 = new Character(1, 300, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		Character c2 = new Character(1, 340, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 2");
+		c1.hasBomb(true);
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+		// the bomb has only just been passed on, so it can't be passed again yet
+		r.setBombPassTimer(50);
+
+		WorldState state = new WorldState();
+		state.copyFrom(r);
+		assertEquals(50, state.getResources().getBombPassTimer());
+		Physics.headless(state.getResources()).simulate(5);
+		for (int i = 0; i < 5; i++) {
+			physics.tick();
+		}
+		assertTrue(c1.hasBomb() && !c2.hasBomb());
+		assertTrue(state.copyOf(c1).hasBomb() && !state.copyOf(c2).hasBomb());
+
+		// once it runs out the bomb is passed on, in the copy as in the game
+		r.setBombPassTimer(0);
+		state.copyFrom(r);
+		Physics.headless(state.getResources()).simulate(1);
+		assertTrue(!state.copyOf(c1).hasBomb() && state.copyOf(c2).hasBomb());
+	}
+
+	@Test
+	public void testBodyStore() {
+		Character c1 = new Character(1, 100, 200, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		Character c2 = new Character(2, 300, 400, 20, Heading.STILL, Class.WARRIOR, 0, "Player 2");
+		c2.setDead(true);
+		c2.setStamina(42);
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+
+		// the characters are views of the store once it has them
+		BodyStore bodies = r.getBodyStore();
+		bodies.sync(r.getPlayerList());
+		assertEquals(2, bodies.size());
+		assertEquals(300, bodies.getXs()[1], 0);
+		assertEquals(20, bodies.getRadii()[1]);
+		assertTrue(bodies.isSet(1, BodyStore.DEAD));
+		assertFalse(bodies.isSet(0, BodyStore.DEAD));
+		c1.setX(150);
+		assertEquals(150, bodies.getXs()[0], 0);
+
+		// swapping them round moves them between slots without losing anything
+		r.getPlayerList().set(0, c2);
+		r.getPlayerList().set(1, c1);
+		bodies.sync(r.getPlayerList());
+		assertEquals(150, bodies.getXs()[1], 0);
+		assertEquals(42, c2.getStamina());
+		assertEquals(0.5, c2.getInvMass(), 0);
+		assertTrue(c2.isDead());
+		assertTrue(bodies.isSet(0, BodyStore.DEAD));
+
+		// and anyone who leaves keeps their state
+		r.getPlayerList().remove(0);
+		bodies.sync(r.getPlayerList());
+		assertEquals(1, bodies.size());
+		assertEquals(300, c2.getX(), 0);
+		assertTrue(c2.isDead());
+		c2.setX(310);
+		assertEquals(150, bodies.getXs()[0], 0);
+
+		// lots of bodies make the store grow
+		for (int i = 0; i < 150; i++) {
+			r.addPlayerToList(new Character(1, i * 6, 50, 2, Heading.STILL, Class.WARRIOR, 0, "CPU"));
+		}
+		physics.tick();
+		assertEquals(151, bodies.size());
+		assertEquals(150 * 6 - 6, bodies.getXs()[150], 0);
+		assertEquals(150, c1.getX(), 0);
+	}
+
+	@Test
+	public void testBodyStoreKeepsHandedOverWrites() throws InterruptedException {
+		final Character c1 = new Character(1, 100, 200, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		Character c2 = new Character(1, 300, 200, 25, Heading.STILL, Class.WARRIOR, 0, "Player 2");
+		r.addPlayerToList(c1);
+		r.addPlayerToList(c2);
+		BodyStore bodies = r.getBodyStore();
+		final int writes = 200000;
+
+		// another thread hands writes over to the tick while the character is
+		// moved between slots and in and out of the store
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= writes; i++) {
+				final int x = i;
+				r.runOnTick(() -> {
+					c1.setX(x);
+					c1.setDashing(x % 2 == 0);
+				});
+			}
+		});
+		writer.start();
+		List<Character> players = r.getPlayerList();
+		while (writer.isAlive()) {
+			r.runTickTasks();
+			bodies.sync(players);
+			players.set(0, c2);
+			players.set(1, c1);
+			r.runTickTasks();
+			bodies.sync(players);
+			players.remove(1);
+			r.runTickTasks();
+			bodies.sync(players);
+			players.add(0, c1);
+		}
+		writer.join();
+		r.runTickTasks();
+		bodies.sync(players);
+		assertEquals(writes, c1.getX(), 0);
+		assertTrue(c1.isDashing());
+		assertEquals(300, c2.getX(), 0);
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws Exception {
+		// Java 8 before 8u262 has no flight recorder
+		assumeTrue(FlightEvents.AVAILABLE);
+		Character c1 = new Character(1, 300, 500, 25, Heading.STILL, Class.WARRIOR, 0, "Player 1");
+		r.addPlayerToList(c1);
+		r.setSessionId("session");
+		// headless copies don't record their ticks
+		Physics copy = Physics.headless(r);
+
+		Path file = Files.createTempFile("ballin", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("ballin.PhysicsTick").withThreshold(Duration.ZERO);
+			recording.start();
+			for (int i = 0; i < 10; i++) {
+				physics.step();
+			}
+			copy.simulate(10);
+			recording.stop();
+			recording.dump(file);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		Files.delete(file);
+
+		assertEquals(10, events.size());
+		for (RecordedEvent event : events) {
+			assertEquals("ballin.PhysicsTick", event.getEventType().getName());
+			assertEquals("session", event.getString("sessionId"));
+			assertEquals(1, event.getInt("characters"));
+		}
+	}
 }
@@ -0,0 +1,191 @@
+package physics;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid used as the collision broadphase. Bodies are identified by
+ * their index in whatever list the caller is iterating over, and are bucketed
+ * by the cell their centre is in. Each cell is an intrusive linked list held in
+ * int arrays, so rebuilding and updating the grid every tick doesn't allocate
+ * anything once the arrays are big enough.
+ *
+ * Positions outside of the grid are clamped into the edge cells, so bodies
+ * falling off the map are still found.
+ */
+public class SpatialGrid {
+
+	private static final int EMPTY = -1;
+
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+
+	// first body in each cell
+	private final int[] head;
+	// next body in the same cell as each body
+	private int[] next = new int[16];
+	// previous body in the same cell as each body, for O(1) removal
+	private int[] prev = new int[16];
+	// the cell each body is in, or EMPTY if it isn't in the grid
+	private int[] cellOf = new int[16];
+	private int size = 0;
+	private int maxRadius = 0;
+
+	// scratch space for query results
+	private int[] results = new int[16];
+
+	/**
+	 * Create a new grid covering an area.
+	 *
+	 * @param width
+	 *            The width of the area in pixels.
+	 * @param height
+	 *            The height of the area in pixels.
+	 * @param cellSize
+	 *            The width and height of one cell in pixels.
+	 */
+	public SpatialGrid(double width, double height, double cellSize) {
+		this.cellSize = cellSize;
+		this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		this.head = new int[columns * rows];
+		Arrays.fill(head, EMPTY);
+		Arrays.fill(cellOf, EMPTY);
+	}
+
+	/**
+	 * Remove every body from the grid and get ready to hold a number of them.
+	 *
+	 * @param size
+	 *            The number of bodies which will be added.
+	 */
+	public void clear(int size) {
+		for (int i = 0; i < this.size; i++) {
+			if (cellOf[i] != EMPTY) {
+				head[cellOf[i]] = EMPTY;
+				cellOf[i] = EMPTY;
+			}
+		}
+		if (size > next.length) {
+			int capacity = Math.max(size, next.length * 2);
+			next = new int[capacity];
+			prev = new int[capacity];
+			cellOf = new int[capacity];
+			results = new int[capacity];
+			Arrays.fill(cellOf, EMPTY);
+		}
+		this.size = size;
+		this.maxRadius = 0;
+	}
+
+	/**
+	 * Put a body into the grid, or move it if it's already there.
+	 *
+	 * @param body
+	 *            The index of the body.
+	 * @param x
+	 *            The x coordinate of the body's centre.
+	 * @param y
+	 *            The y coordinate of the body's centre.
+	 * @param radius
+	 *            The radius of the body.
+	 */
+	public void put(int body, double x, double y, int radius) {
+		if (radius > maxRadius) {
+			maxRadius = radius;
+		}
+		int cell = cellIndex(column(x), row(y));
+		if (cellOf[body] == cell) {
+			return;
+		}
+		remove(body);
+		cellOf[body] = cell;
+		prev[body] = EMPTY;
+		next[body] = head[cell];
+		if (head[cell] != EMPTY) {
+			prev[head[cell]] = body;
+		}
+		head[cell] = body;
+	}
+
+	/**
+	 * Take a body out of the grid.
+	 *
+	 * @param body
+	 *            The index of the body.
+	 */
+	public void remove(int body) {
+		int cell = cellOf[body];
+		if (cell == EMPTY) {
+			return;
+		}
+		if (prev[body] != EMPTY) {
+			next[prev[body]] = next[body];
+		} else {
+			head[cell] = next[body];
+		}
+		if (next[body] != EMPTY) {
+			prev[next[body]] = prev[body];
+		}
+		cellOf[body] = EMPTY;
+	}
+
+	/**
+	 * Find every body which could be touching a circle. The results are
+	 * written into a shared array in ascending order of index, so they can be
+	 * processed in the same order as the list they came from. The array is
+	 * overwritten by the next query.
+	 *
+	 * @param x
+	 *            The x coordinate of the circle's centre.
+	 * @param y
+	 *            The y coordinate of the circle's centre.
+	 * @param radius
+	 *            The radius of the circle.
+	 * @return The number of candidates found, see {@link #getResults()}.
+	 */
+	public int query(double x, double y, int radius) {
+		int span = (int) Math.ceil((radius + maxRadius) / cellSize);
+		int column = column(x);
+		int row = row(y);
+		int minColumn = Math.max(0, column - span), maxColumn = Math.min(columns - 1, column + span);
+		int minRow = Math.max(0, row - span), maxRow = Math.min(rows - 1, row + span);
+
+		int count = 0;
+		for (int r = minRow; r <= maxRow; r++) {
+			for (int c = minColumn; c <= maxColumn; c++) {
+				for (int body = head[cellIndex(c, r)]; body != EMPTY; body = next[body]) {
+					// insertion sort, there are only ever a handful of candidates
+					int i = count++;
+					while (i > 0 && results[i - 1] > body) {
+						results[i] = results[i - 1];
+						i--;
+					}
+					results[i] = body;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The results of the last query.
+	 */
+	public int[] getResults() {
+		return results;
+	}
+
+	private int column(double x) {
+		int column = (int) (x / cellSize);
+		return column < 0 ? 0 : (column >= columns ? columns - 1 : column);
+	}
+
+	private int row(double y) {
+		int row = (int) (y / cellSize);
+		return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+	}
+
+	private int cellIndex(int column, int row) {
+		return row * columns + column;
+	}
+}
@@ -0,0 +1,248 @@
+package resources;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state the physics engine works on, for a set of characters, kept as
+ * one array per field instead of in each character. Loops over every body
+ * (like building the broadphase or checking who's touching) then read
+ * through memory in order, rather than hopping between objects.
+ *
+ * A {@link Character} in a store is a view of one slot: its getters and
+ * setters read and write the arrays. Which store and slot is kept in one
+ * {@link Body}, so they're always seen together. A character starts off
+ * detached, keeping its state in fields of its own, and moves into the game's
+ * store when {@link #sync(List)} is called with the player list, which the
+ * physics engine does every tick. Slot i then holds player i, so the physics
+ * engine can use the player's index to go straight to the arrays.
+ *
+ * There are no locks. A store belongs to the thread running its game's ticks:
+ * only that thread moves bodies in and out, and only that thread writes to
+ * bodies in the store. Anything else (network input, key presses) hands its
+ * writes to the tick with {@link Resources#runOnTick(Runnable)}.
+ *
+ * The flags are kept as bitsets, one bit per body, so two bodies' flags can
+ * share a word. That's another reason for only one thread writing.
+ */
+public class BodyStore {
+	/**
+	 * Flags, for {@link #isSet(int, int)}.
+	 */
+	public static final int FALLING = 0, DEAD = 1, DASHING = 2, BLOCKING = 3;
+	private static final int FLAGS = 4;
+
+	double[] x, y, dx, dy, mass, invMass;
+	int[] radius, stamina;
+	// one bitset per flag
+	long[][] flags;
+	// the character using each slot
+	private Character[] bodies;
+	private int size = 0;
+
+	/**
+	 * Create an empty store.
+	 */
+	public BodyStore() {
+		this(16);
+	}
+
+	/**
+	 * Create an empty store with room for a number of bodies before it has
+	 * to grow.
+	 *
+	 * @param capacity
+	 *            The number of bodies to make room for.
+	 */
+	BodyStore(int capacity) {
+		x = new double[capacity];
+		y = new double[capacity];
+		dx = new double[capacity];
+		dy = new double[capacity];
+		mass = new double[capacity];
+		invMass = new double[capacity];
+		radius = new int[capacity];
+		stamina = new int[capacity];
+		flags = new long[FLAGS][(capacity + 63) >> 6];
+		bodies = new Character[capacity];
+	}
+
+	/**
+	 * Make slot i hold character i for every character in a list, moving
+	 * characters in (or between slots) if they've changed since last time.
+	 * Characters that have left the list are detached again.
+	 *
+	 * @param characters
+	 *            The characters, in order.
+	 */
+	public void sync(List<Character> characters) {
+		int count = characters.size();
+		for (int i = 0; i < count; i++) {
+			Character c = characters.get(i);
+			Body body = c.body;
+			if (body == null || body.store != this || body.slot != i) {
+				moveIn(c, i);
+			}
+		}
+		for (int i = count; i < size; i++) {
+			evict(i);
+		}
+		size = count;
+	}
+
+	/**
+	 * @return The number of bodies in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The x coordinates of the bodies. Only good until the store next
+	 *         grows, so don't keep hold of it.
+	 */
+	public double[] getXs() {
+		return x;
+	}
+
+	/**
+	 * @return The y coordinates of the bodies. Only good until the store next
+	 *         grows, so don't keep hold of it.
+	 */
+	public double[] getYs() {
+		return y;
+	}
+
+	/**
+	 * @return The radii of the bodies. Only good until the store next grows,
+	 *         so don't keep hold of it.
+	 */
+	public int[] getRadii() {
+		return radius;
+	}
+
+	/**
+	 * @param slot
+	 *            A body's slot.
+	 * @param flag
+	 *            FALLING, DEAD, DASHING or BLOCKING.
+	 * @return Whether the flag is set for that body.
+	 */
+	public boolean isSet(int slot, int flag) {
+		return (flags[flag][slot >> 6] & (1L << slot)) != 0;
+	}
+
+	void set(int slot, int flag, boolean value) {
+		if (value) {
+			flags[flag][slot >> 6] |= 1L << slot;
+		} else {
+			flags[flag][slot >> 6] &= ~(1L << slot);
+		}
+	}
+
+	/**
+	 * Move a character into a slot, detaching whoever was there first.
+	 */
+	private void moveIn(Character c, int slot) {
+		ensureCapacity(slot + 1);
+		evict(slot);
+		Body from = c.body;
+		if (from == null) {
+			copyIn(slot, c);
+		} else {
+			BodyStore store = from.store;
+			int i = from.slot;
+			x[slot] = store.x[i];
+			y[slot] = store.y[i];
+			dx[slot] = store.dx[i];
+			dy[slot] = store.dy[i];
+			mass[slot] = store.mass[i];
+			invMass[slot] = store.invMass[i];
+			radius[slot] = store.radius[i];
+			stamina[slot] = store.stamina[i];
+			for (int flag = 0; flag < FLAGS; flag++) {
+				set(slot, flag, store.isSet(i, flag));
+			}
+		}
+		bodies[slot] = c;
+		c.body = new Body(slot);
+	}
+
+	/**
+	 * Copy a character's own fields into a slot.
+	 */
+	void copyIn(int slot, Character c) {
+		x[slot] = c.x;
+		y[slot] = c.y;
+		dx[slot] = c.dx;
+		dy[slot] = c.dy;
+		mass[slot] = c.mass;
+		invMass[slot] = c.invMass;
+		radius[slot] = c.radius;
+		stamina[slot] = c.stamina;
+		set(slot, FALLING, c.falling);
+		set(slot, DEAD, c.dead);
+		set(slot, DASHING, c.dashing);
+		set(slot, BLOCKING, c.blocking);
+	}
+
+	/**
+	 * Detach the character in a slot, if it's still using the slot, copying
+	 * its state back into its own fields.
+	 */
+	private void evict(int slot) {
+		Character c = bodies[slot];
+		bodies[slot] = null;
+		Body body = c == null ? null : c.body;
+		if (body != null && body.store == this && body.slot == slot) {
+			c.x = x[slot];
+			c.y = y[slot];
+			c.dx = dx[slot];
+			c.dy = dy[slot];
+			c.mass = mass[slot];
+			c.invMass = invMass[slot];
+			c.radius = radius[slot];
+			c.stamina = stamina[slot];
+			c.falling = isSet(slot, FALLING);
+			c.dead = isSet(slot, DEAD);
+			c.dashing = isSet(slot, DASHING);
+			c.blocking = isSet(slot, BLOCKING);
+			// the fields are written before this, so anyone who sees the
+			// body gone also sees them
+			c.body = null;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (x.length >= capacity) {
+			return;
+		}
+		int grown = Math.max(capacity, x.length * 2);
+		x = Arrays.copyOf(x, grown);
+		y = Arrays.copyOf(y, grown);
+		dx = Arrays.copyOf(dx, grown);
+		dy = Arrays.copyOf(dy, grown);
+		mass = Arrays.copyOf(mass, grown);
+		invMass = Arrays.copyOf(invMass, grown);
+		radius = Arrays.copyOf(radius, grown);
+		stamina = Arrays.copyOf(stamina, grown);
+		for (int flag = 0; flag < FLAGS; flag++) {
+			flags[flag] = Arrays.copyOf(flags[flag], (grown + 63) >> 6);
+		}
+		bodies = Arrays.copyOf(bodies, grown);
+	}
+
+	/**
+	 * Where a character's body is: a slot in a store. It never changes, so a
+	 * character moves to another store or slot by swapping its whole Body,
+	 * and nobody sees a store with another store's slot.
+	 */
+	final class Body {
+		final BodyStore store = BodyStore.this;
+		final int slot;
+
+		Body(int slot) {
+			this.slot = slot;
+		}
+	}
+}
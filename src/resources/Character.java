@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.Observable;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ai.AITemplate;
 import audio.AudioFile;
@@ -34,6 +35,12 @@ public class Character extends Observable implements Collidable_Circle {
 	private static final double spike_rest_mult = 4.0;
 	private static final Random r = new Random();
 
+	/**
+	 * Bits passed to observers by {@link #publish()}, saying which groups of
+	 * fields have been set since the last publish.
+	 */
+	public static final int POSITION = 1, VELOCITY = 2, CONTROLS = 4, PROPERTIES = 8, STATE = 16;
+
 	public enum Heading {
 		N, E, S, W, NE, NW, SE, SW, STILL
 	};
@@ -86,23 +93,29 @@ public class Character extends Observable implements Collidable_Circle {
 	// Collided flag added to help with collision calculations (depreciated)
 	// moveFlags moves ...
 	private boolean up = false, right = false, left = false, down = false;
-	// state flags
-	private boolean falling = false, dead = false, dashing = false, blocking = false;
 	private int lives = 4;
 
 	// these are for the physics engine. Restitution is 'bounciness'.
-	private double mass = 0.0, inv_mass = 0.0, dx = 0.0, dy = 0.0, maxdx = 0.0, maxdy = 0.0, acc = 0.0,
-			restitution = 0.0;
-
-	// these are for the physics engine and the graphics engine.
+	private double maxdx = 0.0, maxdy = 0.0, acc = 0.0, restitution = 0.0;
+
+	// the position, velocity, radius, mass, stamina and state flags
+	// (falling, dead, dashing, blocking) live in a slot of a store once the
+	// physics engine has seen this character, and in the fields below until
+	// then. The store and slot are swapped together when the body moves, and
+	// only the thread running the game's ticks moves it or writes to it once
+	// it's in a store (see BodyStore).
 	// Characters are circles.
 	// x and y are the coordinates of the centre of the circle, relative to the
 	// top-left of the arena.
 	// radius is the radius of the circle, in arbitrary units.
+	double x, y, dx, dy, mass, invMass;
+	int radius, stamina;
+	boolean falling, dead, dashing, blocking;
+	// null while the fields above are in use
+	volatile BodyStore.Body body;
+
 	// direction is the direction that the character's facing
 	// (this is entirely for graphics)
-	private double x = 0.0, y = 0.0;
-	private int radius = 0;
 	private Heading direction = Heading.STILL;
 	private Class classType = Class.WIZARD;
 
@@ -129,8 +142,6 @@ public class Character extends Observable implements Collidable_Circle {
 	private int dashTimer, blockTimer = 0;
 	// Stamina recharges until this maximum value
 	private int maxStamina = 150;
-	// 0 is empty
-	private int stamina = maxStamina;
 	// Stamina used when dashing/blocking
 	private int dashStamina = 90;
 	private int blockStamina = 75;
@@ -161,12 +172,93 @@ public class Character extends Observable implements Collidable_Circle {
 
 	private int dashCooldown = 0;
 
+	// fields set since the last publish, using the bits above. Setters run on
+	// the physics thread, the network listener and the key handler, so the
+	// mask is updated atomically rather than with a plain |=
+	private final AtomicInteger changes = new AtomicInteger();
+
+	// the client's tick number for the last input it sent, and the server
+	// tick when it arrived (only used on the server)
+	private int inputTick = -1, inputReceived = 0;
+
 	private String name;
 
 	private AudioFile playerOutSound;
 	private AudioFile[] deathSounds;
 	private Random rand = new Random();
 
+	/**
+	 * Tell the observers which fields have been set since the last publish.
+	 * Setters only record what they changed, so this is called once per tick
+	 * (or once per key press on a client) rather than once per setter.
+	 */
+	public void publish() {
+		int published = changes.getAndSet(0);
+		if (published == 0) {
+			return;
+		}
+		if (countObservers() > 0) {
+			setChanged();
+			// the mask is always small enough for the Integer cache
+			notifyObservers(Integer.valueOf(published));
+		}
+	}
+
+	/**
+	 * @return The fields set since the last publish, using the bits
+	 *         POSITION, VELOCITY, CONTROLS, PROPERTIES and STATE.
+	 */
+	public int getChanges() {
+		return changes.get();
+	}
+
+	/**
+	 * Record that the given fields have been set since the last publish.
+	 * 
+	 * @param bits
+	 *            The fields which were set
+	 */
+	private void changed(int bits) {
+		int current;
+		do {
+			current = changes.get();
+		} while ((current & bits) != bits && !changes.compareAndSet(current, current | bits));
+	}
+
+	/**
+	 * Record the last input received from the client controlling this
+	 * character.
+	 * 
+	 * @param clientTick
+	 *            The client's tick number when the input was made.
+	 * @param serverTick
+	 *            The server's tick number when the input arrived.
+	 */
+	public void setLastInput(int clientTick, int serverTick) {
+		this.inputTick = clientTick;
+		this.inputReceived = serverTick;
+	}
+
+	/**
+	 * @return The client's tick number for the last input received, or -1 if
+	 *         there hasn't been one.
+	 */
+	public int getLastInputTick() {
+		return inputTick;
+	}
+
+	/**
+	 * Work out which of the client's ticks the character's current state
+	 * matches, so the client can replay its inputs since then.
+	 * 
+	 * @param serverTick
+	 *            The server's current tick number.
+	 * @return The matching client tick, or -1 if no input has been received.
+	 */
+	public int getAcknowledgedTick(int serverTick) {
+		return inputTick < 0 ? -1 : inputTick + serverTick - inputReceived;
+	}
+
 	/**
 	 * @return The current request id.
 	 */
@@ -196,7 +288,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            the class
 	 */
 	public Character(Class c) {
-		this(default_mass, 0, 0, SheetDetails.getRadiusFromSprite(c), Heading.STILL, c, 0, "Player");
+		this(default_mass, 0, 0, default_radius, Heading.STILL, c, 0, "Player");
 	}
 
 	/**
@@ -208,11 +300,11 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            the player number
 	 */
 	public Character(Class c, int playerNo) {
-		this(default_mass, 0, 0, SheetDetails.getRadiusFromSprite(c), Heading.STILL, c, playerNo, "Player");
+		this(default_mass, 0, 0, default_radius, Heading.STILL, c, playerNo, "Player");
 	}
 
 	public Character(Class c, int playerNo, String name) {
-		this(default_mass, 0, 0, SheetDetails.getRadiusFromSprite(c), Heading.STILL, c, playerNo, name);
+		this(default_mass, 0, 0, default_radius, Heading.STILL, c, playerNo, name);
 	}
 
 	public Character(double mass, double x, double y, int radius, Heading direction, Class classType, int playerNo,
@@ -231,9 +323,9 @@ public class Character extends Observable implements Collidable_Circle {
 
 		this.mass = mass;
 		if (mass == 0)
-			this.inv_mass = 0; // a mass of 0 makes an object infinitely massive
+			this.invMass = 0; // a mass of 0 makes an object infinitely massive
 		else
-			this.inv_mass = 1.0 / mass;
+			this.invMass = 1.0 / mass;
 
 		this.x = x;
 		this.y = y;
@@ -242,17 +334,35 @@ public class Character extends Observable implements Collidable_Circle {
 		this.acc = acceleration;
 		this.restitution = restitution; // bounciness
 		this.radius = radius;
+		this.stamina = maxStamina;
 		this.direction = direction;
 		this.classType = classType;
 		this.playerNo = playerNo;
 
+		this.moving = false;
+
+		rollingFrame = 0;
+		directionFrame = 0;
+		this.name = name;
+	}
+
+	/**
+	 * Slice this character's sprites out of the sprite sheets, if that
+	 * hasn't been done yet. The sprites are only made when something first
+	 * asks for one, so characters that are never drawn (like the ones on the
+	 * server) never load any images.
+	 */
+	private void loadSprites() {
+		if (rollingSprites != null) {
+			return;
+		}
+
 		// imported from graphics.
 		this.characterSheet = SheetDetails.getSpriteSheetFromCharacter(this);
 		this.dashSheet = SheetDetails.getMiscSpritesFromType(SheetDetails.Misc.DASH);
-		this.moving = false;
 
 		// sprite ArrayLists
-		rollingSprites = new ArrayList<BufferedImage>();
+		ArrayList<BufferedImage> rolling = new ArrayList<BufferedImage>();
 		dashSprites = new ArrayList<BufferedImage>();
 		arrow = Sprite.getSprite(SheetDetails.getArrowFromPlayer(playerNo), 0, 0, 50, 50);
 		arrowMe = Sprite.getSprite(SheetDetails.getArrowFromPlayer(playerNo), 0, 1, 50, 50);
@@ -261,7 +371,7 @@ public class Character extends Observable implements Collidable_Circle {
 		for (int i = 0; i < SheetDetails.CHARACTERS_COLS; i++) {
 			BufferedImage sprite = Sprite.getSprite(characterSheet, i, 0, SheetDetails.CHARACTERS_SIZEX,
 					SheetDetails.CHARACTERS_SIZEX);
-			rollingSprites.add(sprite);
+			rolling.add(sprite);
 		}
 
 		for (int i = 0; i < SheetDetails.MISC_COLS; i++) {
@@ -269,21 +379,95 @@ public class Character extends Observable implements Collidable_Circle {
 			dashSprites.add(sprite);
 		}
 
-		this.currentFrame = rollingSprites.get(0);
+		if (currentFrame == null) {
+			this.currentFrame = rolling.get(0);
+		}
+		rollingSprites = rolling;
+	}
 
-		rollingFrame = 0;
-		directionFrame = 0;
-		falling = false;
-		dead = false;
-		this.name = name;
+	/**
+	 * @return True if this character's sprites have been made.
+	 */
+	boolean hasSprites() {
+		return rollingSprites != null;
+	}
 
-		if (!Resources.silent) {
-			deathSounds = new AudioFile[3];
-			deathSounds[0] = UIRes.deathSound1;
-			deathSounds[1] = UIRes.deathSound2;
-			deathSounds[2] = UIRes.deathSound3;
+	/**
+	 * Headless copy of a character, with none of the sprites or sounds. It can
+	 * be simulated but never drawn, so it is only used by {@link WorldState}.
+	 *
+	 * @param c
+	 *            The character to copy.
+	 */
+	Character(Character c) {
+		copyState(c, null);
+	}
 
-			playerOutSound = UIRes.playerOut;
+	/**
+	 * Copy everything the physics engine uses from another character, leaving
+	 * out the sprites, sounds, AI and observers.
+	 *
+	 * @param c
+	 *            The character to copy.
+	 * @param lastCollidedWith
+	 *            This character's copy of whoever c last collided with.
+	 */
+	void copyState(Character c, Character lastCollidedWith) {
+		this.up = c.up;
+		this.down = c.down;
+		this.left = c.left;
+		this.right = c.right;
+		this.falling = c.isFalling();
+		this.dead = c.isDead();
+		this.dashing = c.isDashing();
+		this.blocking = c.isBlocking();
+		this.lives = c.lives;
+
+		this.mass = c.getMass();
+		this.invMass = c.getInvMass();
+		this.dx = c.getDx();
+		this.dy = c.getDy();
+		this.maxdx = c.maxdx;
+		this.maxdy = c.maxdy;
+		this.acc = c.acc;
+		this.restitution = c.restitution;
+		this.x = c.getX();
+		this.y = c.getY();
+		this.radius = c.getRadius();
+		this.direction = c.direction;
+		this.classType = c.classType;
+
+		this.dyingStep = c.dyingStep;
+		this.id = c.id;
+		this.playerNo = c.playerNo;
+		this.name = c.name;
+		this.teamNumber = c.teamNumber;
+
+		this.dashTimer = c.dashTimer;
+		this.blockTimer = c.blockTimer;
+		this.maxStamina = c.maxStamina;
+		this.stamina = c.getStamina();
+		this.dashStamina = c.dashStamina;
+		this.blockStamina = c.blockStamina;
+		this.dashCooldown = c.dashCooldown;
+
+		this.score = c.score;
+		this.lastCollidedWith = lastCollidedWith;
+		this.lastCollidedTime = c.lastCollidedTime;
+		this.lastPowerup = c.lastPowerup;
+		this.lastPowerupTime = c.lastPowerupTime;
+		this.hasPowerup = c.hasPowerup;
+		this.hasBomb = c.hasBomb;
+		this.exploding = c.exploding;
+		this.timeOfDeath = c.timeOfDeath;
+		this.kills = c.kills;
+		this.deaths = c.deaths;
+		this.suicides = c.suicides;
+		this.changes.set(0);
+
+		BodyStore.Body b = body;
+		if (b != null) {
+			b.store.copyIn(b.slot, this);
 		}
 	}
 
@@ -297,6 +481,17 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public AudioFile getRandDeathSound() {
 
+		// the sounds are only fetched when first needed, so that characters
+		// which are never heard don't open any audio
+		if (deathSounds == null) {
+			deathSounds = new AudioFile[3];
+			deathSounds[0] = UIRes.deathSound1;
+			deathSounds[1] = UIRes.deathSound2;
+			deathSounds[2] = UIRes.deathSound3;
+
+			playerOutSound = UIRes.playerOut;
+		}
+
 		// XXX I am making the assumption that lives are decremented before this
 		// is called
 		// If they have lives left
@@ -330,6 +525,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The current rolling frame.
 	 */
 	public BufferedImage getNextFrame(int oldX, int oldY, int newX, int newY, boolean fullscreen) {
+		loadSprites();
 
 		int delX = newX - oldX;
 		int delY = newY - oldY;
@@ -407,6 +603,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The dash sprite.
 	 */
 	public BufferedImage getDashSprite(boolean fullscreen, Heading direction) {
+		loadSprites();
 
 		int frame = 0;
 
@@ -623,8 +820,7 @@ public class Character extends Observable implements Collidable_Circle {
 			setMoving(false);
 		}
 
-		setChanged();
-		notifyObservers();
+		changed(CONTROLS);
 	}
 
 	/**
@@ -707,7 +903,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return the x coordinate
 	 */
 	public double getX() {
-		return this.x;
+		BodyStore.Body b = body;
+		return b == null ? x : b.store.x[b.slot];
 	}
 
 	/**
@@ -716,7 +913,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return the y coordinate
 	 */
 	public double getY() {
-		return this.y;
+		BodyStore.Body b = body;
+		return b == null ? y : b.store.y[b.slot];
 	}
 
 	/**
@@ -743,6 +941,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setLives(int lives) {
 		this.lives = lives;
+		changed(STATE);
 	}
 
 	/**
@@ -762,9 +961,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 
 	public void setX(double x) {
-		this.x = x;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.x = x;
+		} else {
+			b.store.x[b.slot] = x;
+		}
+		changed(POSITION);
 	}
 
 	/**
@@ -775,9 +978,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 
 	public void setY(double y) {
-		this.y = y;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.y = y;
+		} else {
+			b.store.y[b.slot] = y;
+		}
+		changed(POSITION);
 	}
 
 	/**
@@ -788,7 +995,12 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 
 	public void setXWithoutNotifying(double x) {
-		this.x = x;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.x = x;
+		} else {
+			b.store.x[b.slot] = x;
+		}
 	}
 
 	/**
@@ -799,7 +1011,12 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 
 	public void setYWithoutNotifying(double y) {
-		this.y = y;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.y = y;
+		} else {
+			b.store.y[b.slot] = y;
+		}
 	}
 
 	/**
@@ -861,7 +1078,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The character's mass.
 	 */
 	public double getMass() {
-		return this.mass;
+		BodyStore.Body b = body;
+		return b == null ? mass : b.store.mass[b.slot];
 	}
 
 	/**
@@ -870,7 +1088,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The inverse mass of the character.
 	 */
 	public double getInvMass() {
-		return this.inv_mass;
+		BodyStore.Body b = body;
+		return b == null ? invMass : b.store.invMass[b.slot];
 	}
 
 	/**
@@ -879,7 +1098,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The current x velocity.
 	 */
 	public double getDx() {
-		return this.dx;
+		BodyStore.Body b = body;
+		return b == null ? dx : b.store.dx[b.slot];
 	}
 
 	/**
@@ -888,7 +1108,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The current y velocity.
 	 */
 	public double getDy() {
-		return this.dy;
+		BodyStore.Body b = body;
+		return b == null ? dy : b.store.dy[b.slot];
 	}
 
 	/**
@@ -933,7 +1154,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The character's radius.
 	 */
 	public int getRadius() {
-		return this.radius;
+		BodyStore.Body b = body;
+		return b == null ? radius : b.store.radius[b.slot];
 	}
 
 	/**
@@ -942,7 +1164,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return True if the character is falling.
 	 */
 	public boolean isFalling() {
-		return falling;
+		BodyStore.Body b = body;
+		return b == null ? falling : b.store.isSet(b.slot, BodyStore.FALLING);
 	}
 
 	/**
@@ -951,7 +1174,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return True if the character is dead.
 	 */
 	public boolean isDead() {
-		return dead;
+		BodyStore.Body b = body;
+		return b == null ? dead : b.store.isSet(b.slot, BodyStore.DEAD);
 	}
 
 	/**
@@ -961,8 +1185,14 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            The new mass.
 	 */
 	public void setMass(double mass) {
-		this.mass = mass;
-		this.inv_mass = 1 / mass;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.mass = mass;
+			this.invMass = 1 / mass;
+		} else {
+			b.store.mass[b.slot] = mass;
+			b.store.invMass[b.slot] = 1 / mass;
+		}
 	}
 
 	/**
@@ -972,9 +1202,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            The new x velocity.
 	 */
 	public void setDx(double dx) {
-		this.dx = dx;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.dx = dx;
+		} else {
+			b.store.dx[b.slot] = dx;
+		}
+		changed(VELOCITY);
 	}
 
 	/**
@@ -984,9 +1218,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            The new y velocity.
 	 */
 	public void setDy(double dy) {
-		this.dy = dy;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.dy = dy;
+		} else {
+			b.store.dy[b.slot] = dy;
+		}
+		changed(VELOCITY);
 	}
 
 	/**
@@ -997,8 +1235,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setMaxDx(double maxDx) {
 		this.maxdx = maxDx;
-		setChanged();
-		notifyObservers();
+		changed(PROPERTIES);
 	}
 
 	/**
@@ -1009,8 +1246,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setMaxDy(double maxDy) {
 		this.maxdy = maxDy;
-		setChanged();
-		notifyObservers();
+		changed(PROPERTIES);
 	}
 
 	/**
@@ -1021,8 +1257,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setAcc(double acceleration) {
 		this.acc = acceleration;
-		setChanged();
-		notifyObservers();
+		changed(PROPERTIES);
 	}
 
 	/**
@@ -1033,8 +1268,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setRestitution(double restitution) {
 		this.restitution = restitution;
-		setChanged();
-		notifyObservers();
+		changed(PROPERTIES);
 	}
 
 	/**
@@ -1044,9 +1278,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            The new radius.
 	 */
 	public void setRadius(int radius) {
-		this.radius = radius;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.radius = radius;
+		} else {
+			b.store.radius[b.slot] = radius;
+		}
+		changed(PROPERTIES);
 	}
 
 	// setters/getters for control flags
@@ -1066,10 +1304,15 @@ public class Character extends Observable implements Collidable_Circle {
 		this.down = down;
 		this.left = left;
 		this.right = right;
-		this.blocking = blocking;
-		this.dashing = dashing;
-		setChanged();
-		notifyObservers();
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.blocking = blocking;
+			this.dashing = dashing;
+		} else {
+			b.store.set(b.slot, BodyStore.BLOCKING, blocking);
+			b.store.set(b.slot, BodyStore.DASHING, dashing);
+		}
+		changed(CONTROLS);
 	}
 
 	/**
@@ -1098,7 +1341,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            Is the character falling?
 	 */
 	public void setFalling(boolean falling) {
-		this.falling = falling;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.falling = falling;
+		} else {
+			b.store.set(b.slot, BodyStore.FALLING, falling);
+		}
+		changed(STATE);
 	}
 
 	/**
@@ -1108,7 +1357,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            Is the character dead?
 	 */
 	public void setDead(boolean dead) {
-		this.dead = dead;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.dead = dead;
+		} else {
+			b.store.set(b.slot, BodyStore.DEAD, dead);
+		}
+		changed(STATE);
 	}
 
 	/**
@@ -1118,7 +1373,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            Is the character dashing?
 	 */
 	public void setDashing(boolean dashing) {
-		this.dashing = dashing;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.dashing = dashing;
+		} else {
+			b.store.set(b.slot, BodyStore.DASHING, dashing);
+		}
+		changed(STATE);
 	}
 
 	/**
@@ -1127,7 +1388,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return Is the character dashing?
 	 */
 	public boolean isDashing() {
-		return this.dashing;
+		BodyStore.Body b = body;
+		return b == null ? dashing : b.store.isSet(b.slot, BodyStore.DASHING);
 	}
 
 	/**
@@ -1180,7 +1442,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            Is the character blocking?
 	 */
 	public void setBlocking(boolean blocking) {
-		this.blocking = blocking;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.blocking = blocking;
+		} else {
+			b.store.set(b.slot, BodyStore.BLOCKING, blocking);
+		}
+		changed(STATE);
 	}
 
 	/**
@@ -1189,7 +1457,8 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return Is the character blocking?
 	 */
 	public boolean isBlocking() {
-		return this.blocking;
+		BodyStore.Body b = body;
+		return b == null ? blocking : b.store.isSet(b.slot, BodyStore.BLOCKING);
 	}
 
 	/**
@@ -1219,10 +1488,11 @@ public class Character extends Observable implements Collidable_Circle {
 	/**
 	 * Returns the current stamina for this character.
 	 * 
-	 * @return The current stamina.
+	 * @return The current stamina (0 is empty).
 	 */
 	public int getStamina() {
-		return stamina;
+		BodyStore.Body b = body;
+		return b == null ? stamina : b.store.stamina[b.slot];
 	}
 
 	/**
@@ -1232,7 +1502,13 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            The new stamina value.
 	 */
 	public void setStamina(int stamina) {
-		this.stamina = stamina;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.stamina = stamina;
+		} else {
+			b.store.stamina[b.slot] = stamina;
+		}
+		changed(STATE);
 	}
 
 	/**
@@ -1240,8 +1516,15 @@ public class Character extends Observable implements Collidable_Circle {
 	 * stamina. Used to recharge stamina.
 	 */
 	public void incrementStamina() {
-		if (this.stamina < this.maxStamina) {
-			this.stamina += 1;
+		BodyStore.Body b = body;
+		if (b == null) {
+			if (this.stamina < this.maxStamina) {
+				this.stamina += 1;
+			}
+		} else {
+			if (b.store.stamina[b.slot] < this.maxStamina) {
+				b.store.stamina[b.slot] += 1;
+			}
 		}
 	}
 
@@ -1249,7 +1532,12 @@ public class Character extends Observable implements Collidable_Circle {
 	 * Resets the stamina to maximum value.
 	 */
 	public void resetStamina() {
-		this.stamina = maxStamina;
+		BodyStore.Body b = body;
+		if (b == null) {
+			this.stamina = maxStamina;
+		} else {
+			b.store.stamina[b.slot] = maxStamina;
+		}
 	}
 
 	/**
@@ -1317,6 +1605,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setDyingStep(int step) {
 		this.dyingStep = step;
+		changed(STATE);
 	}
 
 	/**
@@ -1353,6 +1642,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setVisible(boolean visible) {
 		this.visible = visible;
+		changed(STATE);
 	}
 
 	/**
@@ -1441,7 +1731,7 @@ public class Character extends Observable implements Collidable_Circle {
 			// setAcc(acc * 2);
 			break;
 		case Mass:
-			setMass(mass * blue_mass_mult);
+			setMass(getMass() * blue_mass_mult);
 			setMaxDx(maxdx / 2);
 			setMaxDy(maxdy / 2);
 			setAcc(acc / 2);
@@ -1450,7 +1740,7 @@ public class Character extends Observable implements Collidable_Circle {
 			setRestitution(restitution * spike_rest_mult);
 			setMaxDx(maxdx / 10);
 			setMaxDy(maxdy / 10);
-			setMass(mass * 10);
+			setMass(getMass() * 10);
 			break;
 		}
 		hasPowerup = true;
@@ -1467,7 +1757,7 @@ public class Character extends Observable implements Collidable_Circle {
 			// setAcc(acc / 2);
 			break;
 		case Mass:
-			setMass(mass / blue_mass_mult);
+			setMass(getMass() / blue_mass_mult);
 			setMaxDx(maxdx * 2);
 			setMaxDy(maxdy * 2);
 			setAcc(acc * 2);
@@ -1476,7 +1766,7 @@ public class Character extends Observable implements Collidable_Circle {
 			setRestitution(restitution / spike_rest_mult);
 			setMaxDx(maxdx * 10);
 			setMaxDy(maxdy * 10);
-			setMass(mass / 10);
+			setMass(getMass() / 10);
 			break;
 		}
 		hasPowerup = false;
@@ -1495,6 +1785,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setLastPowerup(Power power) {
 		lastPowerup = power;
+		changed(STATE);
 	}
 
 	/**
@@ -1510,6 +1801,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void hasPowerup(boolean b) {
 		hasPowerup = b;
+		changed(STATE);
 	}
 
 	/**
@@ -1566,6 +1858,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 *            the multiplier
 	 */
 	public void makeSizeSprites(double multiplier) {
+		loadSprites();
 
 		bigRollingSprites = new ArrayList<BufferedImage>();
 		bigDashSprites = new ArrayList<BufferedImage>();
@@ -1601,6 +1894,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return the arrow sprite
 	 */
 	public BufferedImage getArrow(boolean fullscreen, boolean isPlayer) {
+		loadSprites();
 		if (fullscreen) {
 			if (isPlayer) {
 				return bigArrowMe;
@@ -1622,6 +1916,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return the spikes sprite
 	 */
 	public BufferedImage getSpikes(boolean fullscreen) {
+		loadSprites();
 		if (fullscreen) {
 			return bigSpikes;
 		}
@@ -1642,6 +1937,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void hasBomb(boolean hasBomb) {
 		this.hasBomb = hasBomb;
+		changed(STATE);
 	}
 
 	/**
@@ -1650,8 +1946,14 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setExploding(boolean exploding) {
 		this.exploding = exploding;
+		changed(STATE);
 		if (exploding) {
-			dead = true;
+			BodyStore.Body b = body;
+			if (b == null) {
+				this.dead = true;
+			} else {
+				b.store.set(b.slot, BodyStore.DEAD, true);
+			}
 			hasBomb = false;
 		}
 	}
@@ -1676,6 +1978,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setTimeOfDeath(int timeOfDeath) {
 		this.timeOfDeath = timeOfDeath;
+		changed(STATE);
 	}
 
 	/**
@@ -1683,7 +1986,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * dashing status.
 	 */
 	public void requestDashing() {
-		setDashing((stamina >= dashStamina));
+		setDashing((getStamina() >= dashStamina));
 	}
 
 	/**
@@ -1721,6 +2024,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The current frame of the rolling animation for this character
 	 */
 	public BufferedImage getCurrentFrame() {
+		loadSprites();
 		return this.currentFrame;
 	}
 
@@ -1728,6 +2032,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 * @return The first frame of the rolling animation for this character
 	 */
 	public BufferedImage getFirstFrame() {
+		loadSprites();
 		return this.rollingSprites.get(0);
 	}
 
@@ -1808,6 +2113,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setScore(int score) {
 		this.score = score;
+		changed(STATE);
 	}
 
 	/**
@@ -1816,6 +2122,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setKills(int kills) {
 		this.kills = kills;
+		changed(STATE);
 	}
 
 	/**
@@ -1824,6 +2131,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setDeaths(int deaths) {
 		this.deaths = deaths;
+		changed(STATE);
 	}
 
 	/**
@@ -1832,6 +2140,7 @@ public class Character extends Observable implements Collidable_Circle {
 	 */
 	public void setSuicides(int suicides) {
 		this.suicides = suicides;
+		changed(STATE);
 	}
 
 	/**
@@ -194,4 +194,25 @@ public class CharacterTests {
 		c.revertPowerup();
 		assertTrue(c.getMaxDx() == 2.75);
 	}
+
+	/**
+	 * Test that sprites are only made when they're first asked for
+	 */
+	@Test
+	public void testSpritesAreLoadedLazily() {
+		Character server = new Character(Character.Class.ARCHER, 2, "Server");
+		server.setX(100);
+		server.setY(100);
+		server.setRight(true);
+		server.setDashing(true);
+		server.publish();
+		assertFalse(server.hasSprites());
+		assertTrue(server.getRadius() == 25);
+
+		assertNotNull(server.getFirstFrame());
+		assertTrue(server.hasSprites());
+		assertTrue(server.getCurrentFrame() == server.getFirstFrame());
+		assertNotNull(server.getArrow(false, true));
+		assertNotNull(new Powerup(Power.Speed).getSprite());
+	}
 }
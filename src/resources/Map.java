@@ -54,6 +54,9 @@ public class Map {
 	};
 
 	private Tile[][] tiles;
+	// the tiles as flags, for the physics and the AI. Made again the next
+	// time it's needed whenever a tile is changed
+	private volatile TileGrid grid;
 	private World world;
 	private BufferedImage tileSet;
 
@@ -106,8 +109,6 @@ public class Map {
 		setFriction();
 
 		tiles = new Tile[height][width];
-		tileSet = SheetDetails.getTileSetFromWorld(world);
-
 		for (int i = 0; i < height; i++) {
 
 			for (int j = 0; j < width; j++) {
@@ -155,10 +156,9 @@ public class Map {
 		}
 
 		this.tiles = tiles;
+		this.grid = new TileGrid(tiles);
 		this.world = worldType;
 		setFriction();
-
-		tileSet = SheetDetails.getTileSetFromWorld(world);
 	}
 
 	/**
@@ -227,7 +227,9 @@ public class Map {
 	}
 
 	/**
-	 * Get the array of tiles of this map
+	 * Get the array of tiles of this map. Change them with
+	 * {@link #setTile(int, int, Tile)}, so that the tile grid is kept up to
+	 * date.
 	 * 
 	 * @return the array of tiles
 	 */
@@ -236,6 +238,39 @@ public class Map {
 		return this.tiles;
 	}
 
+	/**
+	 * Change a tile of this map. The tile grid is made again the next time
+	 * it's needed.
+	 * 
+	 * @param column
+	 *            the first index into the array of tiles
+	 * @param row
+	 *            the second index into the array of tiles
+	 * @param tile
+	 *            the new tile
+	 */
+
+	public void setTile(int column, int row, Tile tile) {
+		tiles[column][row] = tile;
+		grid = null;
+	}
+
+	/**
+	 * Get the tiles of this map as flags, for checking what's at a point
+	 * quickly
+	 * 
+	 * @return the tile grid
+	 */
+
+	public TileGrid getTileGrid() {
+		TileGrid g = grid;
+		if (g == null) {
+			g = new TileGrid(tiles);
+			grid = g;
+		}
+		return g;
+	}
+
 	/**
 	 * Get the tile size of this map
 	 * 
@@ -341,6 +376,12 @@ public class Map {
 			b = 3;
 		}
 
+		// the tile set is only loaded when the map is first drawn, so maps on
+		// the server never load it
+		if (tileSet == null) {
+			tileSet = SheetDetails.getTileSetFromWorld(world);
+		}
+
 		return Sprite.getSprite(tileSet, a, b, SheetDetails.TILES_SIZEX, SheetDetails.TILES_SIZEY);
 
 	}
@@ -365,7 +406,8 @@ public class Map {
 	public void setWorldType(World world) {
 		this.world = world;
 		setFriction();
-		tileSet = SheetDetails.getTileSetFromWorld(world);
+		// loaded again for the new world when it's next drawn
+		tileSet = null;
 	}
 
 	/**
@@ -1,8 +1,16 @@
 package resources;
 
-import java.util.Collection;
-import java.util.TreeSet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import metrics.FlightEvents;
 import resources.Map.Tile;
 
 /**
@@ -12,11 +20,28 @@ import resources.Map.Tile;
  * 
  * Used for pathfinding and Map.randPointOnMap
  * 
+ * The masks only depend on the map, so they are worked out once per map and
+ * kept for the next game on it
+ * 
+ * Setting up the masks is recorded as a ballin.MapCosts event (see
+ * {@link FlightEvents}) when the flight recorder is on
+ * 
  * @author Oliver Gratton
  *
  */
 public class MapCosts
 {
+	/**
+	 * Whether to keep proximity masks in files next to the map CSVs, so they
+	 * don't need working out again the next time the game is started
+	 */
+	public static boolean saveToDisk = false;
+
+	private static final int FILE_VERSION = 1;
+
+	// masks already worked out, by map
+	private static final ConcurrentHashMap<String, Masks> cache = new ConcurrentHashMap<String, Masks>();
+
 	private Resources resources;
 
 	Tile[][] tileMap;
@@ -24,25 +49,44 @@ public class MapCosts
 	double[][] costMask;
 
 	int width, height;
-	int biggestDimension;
+
+	// whether the proximity mask was read from a file rather than worked out
+	private boolean loaded = false;
 
 	/**
 	 * Everything is performed in the constructor,
 	 * hence there is no need to store the MapCosts object
 	 * Just call this constructor and everything will be done
 	 * 
+	 * The masks are shared between every game on the same map, so they must
+	 * not be changed
+	 * 
 	 * @param resources game resources that must have had its map set
 	 */
 	public MapCosts(Resources resources)
 	{
 		this.resources = resources;
+		Object event = FlightEvents.beginMapCosts();
 		
 		tileMap = resources.getMap().getTiles();
 		width = tileMap.length;
 		height = tileMap[0].length;
-		biggestDimension = height < width ? width : height;
 
-		genMapCostsMask();
+		String key = cacheKey();
+		Masks masks = cache.get(key);
+		boolean cached = masks != null;
+		if (masks == null)
+		{
+			genMapCostsMask(key);
+			masks = new Masks(proxMask, costMask);
+			Masks existing = cache.putIfAbsent(key, masks);
+			if (existing != null)
+			{
+				masks = existing;
+			}
+		}
+		proxMask = masks.prox;
+		costMask = masks.cost;
 
 //		printProxMask();
 //		System.out.println();
@@ -50,6 +94,20 @@ public class MapCosts
 		
 		resources.getMap().setProxMask(proxMask);
 		resources.getMap().setCostMask(costMask);
+
+		if (event != null)
+		{
+			FlightEvents.endMapCosts(event, resources.getSessionId(), resources.getMap().getName(), width * height,
+					cached, loaded);
+		}
+	}
+
+	/**
+	 * Forget all the masks worked out so far
+	 */
+	public static void clearCache()
+	{
+		cache.clear();
 	}
 
 	/**
@@ -90,12 +148,23 @@ public class MapCosts
 	 * An abyss tile obviously has the highest cost and the cost decreases
 	 * exponentially as we move farther from the edge
 	 * 
+	 * @param key the cache key for this map, used to check a saved mask is still right
 	 */
-	private void genMapCostsMask()
+	private void genMapCostsMask(String key)
 	{
 
-		// first see how close all the tiles are to the edge		
-		genProxMask();
+		// first see how close all the tiles are to the edge
+		File file = saveToDisk ? maskFile() : null;
+		proxMask = file == null ? null : readProxMask(file, key);
+		loaded = proxMask != null;
+		if (proxMask == null)
+		{
+			genProxMask();
+			if (file != null)
+			{
+				writeProxMask(file, key);
+			}
+		}
 
 		// then convert those proximities to costs
 		evaluateProxMask();
@@ -103,91 +172,161 @@ public class MapCosts
 	}
 
 	/**
-	 * Fill the proximity mask array by calculating how far away
-	 * the nearest abyss tile is
+	 * Fill the proximity mask array with how many tiles away the nearest
+	 * abyss tile is, counting diagonal steps as one
+	 * 
+	 * This is a breadth first search starting from every bad tile at once,
+	 * so each tile is only visited once
 	 */
 	private void genProxMask()
 	{
 		proxMask = new int[width][height];
-//		Arrays.fill(proxMask, Integer.MAX_VALUE); // all unexplored to begin with
+		boolean[][] visited = new boolean[width][height];
+
+		// queue of tile indices (i * height + j)
+		int[] queue = new int[width * height];
+		int head = 0;
+		int tail = 0;
 
 		for (int i = 0; i < width; i++)
 		{
 			for (int j = 0; j < height; j++)
 			{
-				if (proxMask[i][j] == 0)
+				if (resources.getBadTiles().contains(tileMap[i][j]))
 				{
-					findProx(i, j);
+					visited[i][j] = true;
+					queue[tail++] = i * height + j;
 				}
 			}
 		}
+
+		while (head < tail)
+		{
+			int i = queue[head] / height;
+			int j = queue[head] % height;
+			head++;
+
+			for (int n = -1; n <= 1; n++)
+			{
+				for (int m = -1; m <= 1; m++)
+				{
+					int x = i + n;
+					int y = j + m;
+					// check it's a legal coordinate we haven't reached yet
+					if (x >= 0 && x < width && y >= 0 && y < height && !visited[x][y])
+					{
+						visited[x][y] = true;
+						proxMask[x][y] = proxMask[i][j] + 1;
+						queue[tail++] = x * height + y;
+					}
+				}
+			}
+		}
+
+		// if there are no bad tiles at all, everything is left at 0
 	}
 
 	/**
-	 * Search from given point to the closest abyss tile
-	 * 
-	 * @param i
-	 * @param j
-	 * @return how far away it is from a bad tile
+	 * @return a key which is different for every map and set of bad tiles
 	 */
-	private int findProx(int i, int j)
+	private String cacheKey()
 	{
-		// If we're on a bad tile to start with...
-		if (resources.getBadTiles().contains(tileMap[i][j]))
+		// enums hash differently every run, so use their ordinals so that saved masks still match
+		int tiles = 1;
+		for (int i = 0; i < width; i++)
 		{
-			proxMask[i][j] = 0;
-			return 0;
+			for (int j = 0; j < height; j++)
+			{
+				tiles = 31 * tiles + tileMap[i][j].ordinal();
+			}
 		}
-		for (int level = 1; level < biggestDimension; level++)
+		int bad = 0;
+		for (Tile tile : resources.getBadTiles())
 		{
-			
-			TreeSet<Tile> neighbours = new TreeSet<Tile>();
+			bad |= 1 << tile.ordinal();
+		}
+
+		Map map = resources.getMap();
+		return map.getName() + "/" + map.getWorldType() + "/" + width + "x" + height + "/" + tiles + "/" + bad;
+	}
 
-			// for every surrounding tile <level> tiles away
-			for (int n = -level; n <= level; n++)
+	/**
+	 * @return the file the proximity mask for this map is saved in, or null
+	 *         if the map didn't come from a file
+	 */
+	private File maskFile()
+	{
+		String name = resources.getMap().getName();
+		if (name == null || !new File(FilePaths.maps + name + ".csv").exists())
+		{
+			return null;
+		}
+		return new File(FilePaths.maps + name + ".prox");
+	}
+
+	/**
+	 * Read a saved proximity mask
+	 * 
+	 * @param file the file it was saved in
+	 * @param key the cache key of the map it should be for
+	 * @return the mask, or null if there isn't one for this map
+	 */
+	private int[][] readProxMask(File file, String key)
+	{
+		if (!file.exists())
+		{
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != FILE_VERSION || !in.readUTF().equals(key) || in.readInt() != width
+					|| in.readInt() != height)
 			{
-				// check it's a legal coordinate
-				if ((i + n) < width && (i + n) >= 0)
-				{
-					for (int m = -level; m <= level ; m++)
-					{
-						// check it's a legal coordinate 
-						if (j + m < height && (j + m) >= 0)
-						{
-							// don't evaluate ourselves
-							if (!(n == 0 && m == 0))
-							{
-								neighbours.add(tileMap[i + n][j + m]);
-							}
-						}
-					}
-				}
+				// saved for a different version of the map
+				return null;
 			}
-			
-			if (containsAny(neighbours, resources.getBadTiles()))
+			int[][] mask = new int[width][height];
+			for (int i = 0; i < width; i++)
 			{
-				proxMask[i][j] = level;
-				return level;
+				for (int j = 0; j < height; j++)
+				{
+					mask[i][j] = in.readInt();
+				}
 			}
+			return mask;
+		}
+		catch (IOException e)
+		{
+			return null;
 		}
-		
-		return Integer.MAX_VALUE; // if we never found a bad tile then this tile should be cheap to walk on
 	}
-	
+
 	/**
-	 * @return true if A contains any of the elements of B
+	 * Save the proximity mask for the next time the map is used
+	 * 
+	 * @param file the file to save it in
+	 * @param key the cache key of the map
 	 */
-	private <E> boolean containsAny(Collection<E> A, Collection<E> B)
+	private void writeProxMask(File file, String key)
 	{
-		for (Object object : B)
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
 		{
-			if(A.contains(object))
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(key);
+			out.writeInt(width);
+			out.writeInt(height);
+			for (int i = 0; i < width; i++)
 			{
-				return true;
+				for (int j = 0; j < height; j++)
+				{
+					out.writeInt(proxMask[i][j]);
+				}
 			}
 		}
-		
-		return false;
+		catch (IOException e)
+		{
+			System.out.println("Couldn't save " + file.getName() + ": " + e.getMessage());
+		}
 	}
 
 	/**
@@ -218,4 +357,19 @@ public class MapCosts
 	{
 		return 100 * Math.pow(Math.E, -x); // XXX (arbitrary choice!) 100 * Math.pow(Math.E, -x) + 1
 	}
+
+	/**
+	 * The masks for one map
+	 */
+	private static class Masks
+	{
+		final int[][] prox;
+		final double[][] cost;
+
+		Masks(int[][] prox, double[][] cost)
+		{
+			this.prox = prox;
+			this.cost = cost;
+		}
+	}
 }
@@ -3,10 +3,13 @@ package resources;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -120,4 +123,124 @@ public class MapHelperJUnit
 		assertEquals(asteroidModes, mmd.getCompatibleModes());
 	}
 	
+	/**
+	 * Test the proximity mask matches the distance to the nearest bad tile
+	 * worked out the slow way, on every kind of map
+	 */
+	@Test
+	public void testProxMaskDistances()
+	{
+		String[] maps = { "map1", "asteroid", "ballin", "pit", "plus", "jacketpotato" };
+		for (String name : maps)
+		{
+			Resources resources = new Resources();
+			resources.setMap(new Map(1200, 650, World.CAKE, name));
+			new MapCosts(resources);
+			
+			Tile[][] tiles = resources.getMap().getTiles();
+			int[][] proxmask = resources.getMap().getProxMask();
+			for (int i = 0; i < tiles.length; i++)
+			{
+				for (int j = 0; j < tiles[0].length; j++)
+				{
+					int nearest = Integer.MAX_VALUE;
+					for (int x = 0; x < tiles.length; x++)
+					{
+						for (int y = 0; y < tiles[0].length; y++)
+						{
+							if (resources.getBadTiles().contains(tiles[x][y]))
+							{
+								nearest = Math.min(nearest, Math.max(Math.abs(x - i), Math.abs(y - j)));
+							}
+						}
+					}
+					assertEquals(name + " " + i + "," + j, nearest, proxmask[i][j]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test masks are only worked out once per map, and can be saved and read back
+	 */
+	@Test
+	public void testMapCostsCache()
+	{
+		MapCosts.clearCache();
+		Resources first = new Resources();
+		first.setMap(new Map(1200, 650, World.CAKE, "map1"));
+		new MapCosts(first);
+		Resources second = new Resources();
+		second.setMap(new Map(1200, 650, World.CAKE, "map1"));
+		new MapCosts(second);
+		assertTrue(first.getMap().getProxMask() == second.getMap().getProxMask());
+		assertTrue(first.getMap().getCostMask() == second.getMap().getCostMask());
+		
+		// a different map gets its own masks
+		Resources other = new Resources();
+		other.setMap(new Map(1200, 650, World.CAKE, "asteroid"));
+		new MapCosts(other);
+		assertTrue(first.getMap().getProxMask() != other.getMap().getProxMask());
+		
+		File file = new File(FilePaths.maps + "map1.prox");
+		file.delete();
+		MapCosts.saveToDisk = true;
+		try
+		{
+			MapCosts.clearCache();
+			new MapCosts(first);
+			assertTrue(file.exists());
+			
+			// read it back in instead of working it out
+			MapCosts.clearCache();
+			Resources loaded = new Resources();
+			loaded.setMap(new Map(1200, 650, World.CAKE, "map1"));
+			new MapCosts(loaded);
+			assertTrue(Arrays.deepEquals(second.getMap().getProxMask(), loaded.getMap().getProxMask()));
+			assertTrue(Arrays.deepEquals(second.getMap().getCostMask(), loaded.getMap().getCostMask()));
+		}
+		finally
+		{
+			MapCosts.saveToDisk = false;
+			MapCosts.clearCache();
+			file.delete();
+		}
+	}
+	
+
+	/**
+	 * Test the tile grid agrees with the tiles, on and off the map
+	 */
+	@Test
+	public void testTileGrid()
+	{
+		Resources resources = new Resources();
+		for (String name : new String[] { "map1", "asteroid" })
+		{
+			Map map = new Map(1200, 650, World.CAKE, name);
+			TileGrid grid = map.getTileGrid();
+			Random random = new Random(7);
+			for (int n = 0; n < 20000; n++)
+			{
+				double x = random.nextDouble() * 1400 - 100;
+				double y = random.nextDouble() * 850 - 100;
+				Tile tile = map.tileAt(x, y);
+				int flags = grid.flagsAt(x, y);
+				assertEquals(Map.tileCheck(tile), grid.kills(x, y));
+				assertEquals(tile == Tile.WALL, grid.isWall(x, y));
+				assertEquals(tile == null, (flags & TileGrid.OFF) != 0);
+				assertEquals(tile != null && !resources.getBadTiles().contains(tile), (flags & TileGrid.WALKABLE) != 0);
+				assertEquals(tile == null ? -1 : map.tileCoords(x, y).x * grid.getColumns() + map.tileCoords(x, y).y, grid.indexAt(x, y));
+			}
+			// tile edges exactly
+			for (int x = -50; x <= 1250; x += 25)
+			{
+				assertEquals(map.tileAt(x, 300) == null, (grid.flagsAt(x, 300) & TileGrid.OFF) != 0);
+			}
+
+			// changing the tiles makes a new grid
+			map.setTile(5, 5, Tile.WALL);
+			assertTrue(map.getTileGrid().isWall(5 * 25 + 1, 5 * 25 + 1));
+		}
+	}
 }
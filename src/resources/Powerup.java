@@ -36,7 +36,6 @@ public class Powerup extends Observable implements Collidable_Circle {
 		Random rand = new Random();
 		int p = rand.nextInt(Power.values().length);
 		power = Power.values()[p];
-		sprite = SheetDetails.getPowerUpSpriteFromType(power);
 	}
 	
 	/**
@@ -44,7 +43,6 @@ public class Powerup extends Observable implements Collidable_Circle {
 	 */
 	public Powerup(Power power) {
 		this.power = power;
-		sprite = SheetDetails.getPowerUpSpriteFromType(power);
 	}
 	
 	/**
@@ -52,12 +50,31 @@ public class Powerup extends Observable implements Collidable_Circle {
 	 */
 	public Powerup(Power p, double x, double y, boolean active) {
 		power = p;
-		sprite = SheetDetails.getPowerUpSpriteFromType(power);
 		this.x = x;
 		this.y = y;
 		this.active = active;
 	}
 
+	/**
+	 * Headless copy of a powerup, with no sprite. Only used by
+	 * {@link WorldState}.
+	 */
+	Powerup(Powerup p) {
+		copyState(p);
+	}
+
+	/**
+	 * Copy the power, position and whether the powerup is still active from
+	 * another powerup.
+	 */
+	void copyState(Powerup p) {
+		power = p.power;
+		radius = p.radius;
+		x = p.x;
+		y = p.y;
+		active = p.active;
+	}
+
 	@Override
 	public double getInvMass() {
 		return 0;
@@ -173,9 +190,13 @@ public class Powerup extends Observable implements Collidable_Circle {
 	}
 
 	/**
-	 * @return The sprite of this powerup.
+	 * @return The sprite of this powerup. It's only loaded the first time
+	 *         it's asked for, so powerups on the server never load one.
 	 */
 	public BufferedImage getSprite() {
+		if (sprite == null && power != null) {
+			sprite = SheetDetails.getPowerUpSpriteFromType(power);
+		}
 		return sprite;
 	}
 
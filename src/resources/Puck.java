@@ -12,7 +12,7 @@ public class Puck extends Observable implements Collidable_Circle {
 	double restitution = 10;
 	boolean falling,dead = false;
 	private CollidableType type = CollidableType.Puck;
-	private BufferedImage sprite = SheetDetails.getMiscSpritesFromType(SheetDetails.Misc.PUCK);
+	private BufferedImage sprite = null;
 	private Character lastCollidedWith = null;
 	private int lastCollidedTime = -1;
 	private boolean visible;
@@ -27,6 +27,23 @@ public class Puck extends Observable implements Collidable_Circle {
 		this.y = y;
 	}
 	
+	/**
+	 * Copy the state the physics uses from another puck.
+	 */
+	void copyState(Puck p, Character lastCollidedWith) {
+		x = p.x;
+		y = p.y;
+		dx = p.dx;
+		dy = p.dy;
+		inv_mass = p.inv_mass;
+		restitution = p.restitution;
+		falling = p.falling;
+		dead = p.dead;
+		this.lastCollidedWith = lastCollidedWith;
+		lastCollidedTime = p.lastCollidedTime;
+		dyingStep = p.dyingStep;
+	}
+
 	@Override
 	public double getInvMass() {
 		return inv_mass;
@@ -133,6 +150,10 @@ public class Puck extends Observable implements Collidable_Circle {
 	}
 	
 	public BufferedImage getSprite() {
+		// only loaded when it's first drawn
+		if (sprite == null) {
+			sprite = SheetDetails.getMiscSpritesFromType(SheetDetails.Misc.PUCK);
+		}
 		return sprite;
 	}
 
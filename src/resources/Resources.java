@@ -6,8 +6,14 @@ import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import ai.Lookahead;
+import ai.pathfinding.FlowFields;
 import ai.pathfinding.Line;
+import ai.pathfinding.PathPlanner;
 import gamemodes.GameModeFFA;
 import gamemodes.Team;
 import resources.Map.Tile;
@@ -53,8 +59,14 @@ public class Resources {
 
 	// characters
 	private ArrayList<Character> playerList = new ArrayList<Character>();
+	// the characters' physics state, kept in the same order as the list
+	private final BodyStore bodyStore = new BodyStore();
 	// powerups in play
 	private ArrayList<Powerup> powerupList = new ArrayList<Powerup>();
+	// told when each tick has finished
+	private final List<TickListener> tickListeners = new CopyOnWriteArrayList<TickListener>();
+	// writes handed over to the thread running the ticks
+	private final Queue<Runnable> tickTasks = new ConcurrentLinkedQueue<Runnable>();
 
 	// puck used in hockey game mode, using character class to make things easy
 	private Puck puck;
@@ -66,13 +78,24 @@ public class Resources {
 	// map
 	private Map map;
 
+	// plans paths for every AI in the game
+	private PathPlanner pathPlanner;
+	// hot potato distance maps for every AI in the game
+	private FlowFields flowFields;
+	// tries out dashing and blocking for every AI in the game
+	private Lookahead lookahead;
+
 	// client ID
 	private String id;
+	// ID of the session the game is being played in, for the flight recorder
+	private String sessionId = "";
 
 	private ArrayList<Tile> bad_tiles; // tiles to path-find around
 
 	// Counter of how many ticks have happened
 	private int globalTimer = 0;
+	// Ticks until the bomb can be passed on again (hot potato)
+	private int bombPassTimer = 0;
 
 	// destination list for pathfinding
 	private LinkedList<Point> destList = new LinkedList<Point>();
@@ -119,6 +142,7 @@ public class Resources {
 	public void refresh() {
 		powerupList = new ArrayList<Powerup>();
 		globalTimer = 0;
+		bombPassTimer = 0;
 		setFinished(false);
 		setCountdown(3);
 
@@ -137,6 +161,73 @@ public class Resources {
 		playerList.add(character);
 	}
 
+	/**
+	 * Add something to be told at the end of every tick.
+	 * 
+	 * @param listener
+	 *            The listener to add.
+	 */
+	public void addTickListener(TickListener listener) {
+		tickListeners.add(listener);
+	}
+
+	/**
+	 * Stop telling something about the end of every tick.
+	 * 
+	 * @param listener
+	 *            The listener to remove.
+	 */
+	public void removeTickListener(TickListener listener) {
+		tickListeners.remove(listener);
+	}
+
+	/**
+	 * Finish a tick: every character tells its observers what changed during
+	 * the tick, and then the tick listeners are told the tick is over.
+	 */
+	public void publishChanges() {
+		for (int i = 0; i < playerList.size(); i++) {
+			playerList.get(i).publish();
+		}
+		for (int i = 0; i < tickListeners.size(); i++) {
+			tickListeners.get(i).tickEnded(this);
+		}
+	}
+
+	/**
+	 * Get the store of the players' physics state. The physics engine keeps
+	 * it in step with the player list, so player i is in slot i.
+	 * 
+	 * @return The body store.
+	 */
+	public BodyStore getBodyStore() {
+		return bodyStore;
+	}
+
+	/**
+	 * Hand something over to the thread running the game's ticks, to be run
+	 * at the start of the next tick. Anything that isn't that thread (network
+	 * input, key presses) writes to the characters' bodies this way, so
+	 * nothing else writes to the body store (see {@link BodyStore}).
+	 * 
+	 * @param task
+	 *            The task to run.
+	 */
+	public void runOnTick(Runnable task) {
+		tickTasks.add(task);
+	}
+
+	/**
+	 * Run the tasks handed over with {@link #runOnTick(Runnable)}. Called by
+	 * the thread running the ticks, at the start of each tick.
+	 */
+	public void runTickTasks() {
+		Runnable task;
+		while ((task = tickTasks.poll()) != null) {
+			task.run();
+		}
+	}
+
 	/**
 	 * Set a player list
 	 * 
@@ -481,6 +572,55 @@ public class Resources {
 		this.map = map;
 	}
 
+	/**
+	 * Get the path planner shared by all the AIs in the game, making it if the
+	 * map has changed since it was last asked for. The map costs must have
+	 * been worked out first.
+	 * 
+	 * @return The path planner.
+	 */
+	public synchronized PathPlanner getPathPlanner() {
+		if (pathPlanner == null || !pathPlanner.isFor(map)) {
+			if (pathPlanner != null) {
+				removeTickListener(pathPlanner);
+			}
+			pathPlanner = new PathPlanner(this);
+			addTickListener(pathPlanner);
+		}
+		return pathPlanner;
+	}
+
+	/**
+	 * Get the hot potato flow fields shared by all the AIs in the game, making
+	 * them if the map has changed since they were last asked for. The map
+	 * costs must have been worked out first.
+	 * 
+	 * @return The flow fields.
+	 */
+	public synchronized FlowFields getFlowFields() {
+		if (flowFields == null || !flowFields.isFor(map)) {
+			if (flowFields != null) {
+				removeTickListener(flowFields);
+			}
+			flowFields = new FlowFields(this);
+			addTickListener(flowFields);
+		}
+		return flowFields;
+	}
+
+	/**
+	 * Get the lookahead shared by all the AIs in the game, so that they share
+	 * one budget of rollouts.
+	 * 
+	 * @return The lookahead.
+	 */
+	public synchronized Lookahead getLookahead() {
+		if (lookahead == null) {
+			lookahead = new Lookahead(this, Lookahead.ROLLOUTS_PER_SECOND);
+		}
+		return lookahead;
+	}
+
 	/**
 	 * @return An ArrayList of bad tiles.
 	 */
@@ -510,6 +650,35 @@ public class Resources {
 		globalTimer++;
 	}
 
+	/**
+	 * Set the global timer, for copies of the game (see {@link WorldState}).
+	 *
+	 * @param globalTimer
+	 *            The new time.
+	 */
+	void setGlobalTimer(int globalTimer) {
+		this.globalTimer = globalTimer;
+	}
+
+	/**
+	 * @return The number of ticks until the bomb can be passed on again, in
+	 *         hot potato.
+	 */
+	public int getBombPassTimer() {
+		return bombPassTimer;
+	}
+
+	/**
+	 * Set the number of ticks until the bomb can be passed on again, in hot
+	 * potato.
+	 *
+	 * @param bombPassTimer
+	 *            The number of ticks.
+	 */
+	public void setBombPassTimer(int bombPassTimer) {
+		this.bombPassTimer = bombPassTimer;
+	}
+
 	/**
 	 * DEBUG: set the list of waypoints for drawing by GameView
 	 * 
@@ -663,6 +832,22 @@ public class Resources {
 		this.id = id;
 	}
 
+	/**
+	 * @return The ID of the session the game is being played in, or an empty
+	 *         string if it isn't a networked game.
+	 */
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @param sessionId
+	 *            The ID of the session the game is being played in.
+	 */
+	public void setSessionId(String sessionId) {
+		this.sessionId = sessionId;
+	}
+
 	/**
 	 * @return The character being controlled by this computer.
 	 */
@@ -0,0 +1,15 @@
+package resources;
+
+/**
+ * Something which wants to hear about the end of every physics tick, once all
+ * the characters have published their changes.
+ */
+public interface TickListener {
+	/**
+	 * Called at the end of a tick.
+	 * 
+	 * @param resources
+	 *            The resources of the game which has just ticked.
+	 */
+	public void tickEnded(Resources resources);
+}
@@ -0,0 +1,177 @@
+package resources;
+
+import graphics.sprites.SheetDetails;
+import resources.Map.Tile;
+
+/**
+ * The tiles of a map boiled down to a few flags each, in one flat byte
+ * array, for the physics engine and the AI to check every tick. Finding the
+ * tile at a point is integer maths and one array read, and checking whether
+ * it's a wall, the abyss or an edge is a bit test, instead of comparing
+ * enums or searching lists of tiles.
+ *
+ * Tiles are indexed the same way as {@link Map#tileAt(int, int)}, and the
+ * array is laid out the same way as the pathfinding arrays (i * columns +
+ * j).
+ */
+public class TileGrid {
+	/**
+	 * Can be walked on (not the abyss or a wall, the same as the tiles in
+	 * {@link Resources#getBadTiles()}).
+	 */
+	public static final int WALKABLE = 1;
+	/**
+	 * Anyone on it falls (see {@link Map#tileCheck(Tile)}).
+	 */
+	public static final int KILLS = 2;
+	/**
+	 * A wall.
+	 */
+	public static final int WALL = 4;
+	/**
+	 * A walkable tile at the edge of the arena.
+	 */
+	public static final int EDGE = 8;
+	/**
+	 * Not on the map at all.
+	 */
+	public static final int OFF = 16;
+
+	private static final int OFF_MAP = OFF | KILLS;
+	private static final int[] FLAGS = new int[Tile.values().length];
+
+	static {
+		for (Tile tile : Tile.values()) {
+			int flags = 0;
+			switch (tile) {
+			case ABYSS:
+			case EDGE_ABYSS:
+				flags = KILLS;
+				break;
+			case WALL:
+				flags = WALL;
+				break;
+			case FLAT:
+				flags = WALKABLE;
+				break;
+			default:
+				flags = WALKABLE | EDGE;
+			}
+			FLAGS[tile.ordinal()] = flags;
+		}
+	}
+
+	private final byte[] flags;
+	private final int rows, columns;
+
+	/**
+	 * Make the grid for some tiles.
+	 *
+	 * @param tiles
+	 *            The tiles, as read by {@link MapReader}.
+	 */
+	public TileGrid(Tile[][] tiles) {
+		rows = tiles == null ? 0 : tiles.length;
+		columns = rows == 0 ? 0 : tiles[0].length;
+		flags = new byte[rows * columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				flags[i * columns + j] = (byte) flagsOf(tiles[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * @param tile
+	 *            A tile, or null for off the map.
+	 * @return The flags for that sort of tile.
+	 */
+	public static int flagsOf(Tile tile) {
+		return tile == null ? OFF_MAP : FLAGS[tile.ordinal()];
+	}
+
+	/**
+	 * Get the flags of the tile at a point.
+	 *
+	 * @param x
+	 *            The x coordinate.
+	 * @param y
+	 *            The y coordinate.
+	 * @return The flags of the tile there, or OFF | KILLS if it's off the
+	 *         map.
+	 */
+	public int flagsAt(double x, double y) {
+		// the same as dividing and then truncating, as (int) rounds towards
+		// zero either way
+		return flagsAt((int) y / SheetDetails.TILES_SIZEY, (int) x / SheetDetails.TILES_SIZEX);
+	}
+
+	/**
+	 * Get the flags of a tile.
+	 *
+	 * @param i
+	 *            The first index, as in {@link Map#tileAt(int, int)}.
+	 * @param j
+	 *            The second index.
+	 * @return The tile's flags, or OFF | KILLS if it's off the map.
+	 */
+	public int flagsAt(int i, int j) {
+		if (i >= 0 && j >= 0 && i < rows && j < columns) {
+			return flags[i * columns + j];
+		}
+		return OFF_MAP;
+	}
+
+	/**
+	 * Get the index of the tile at a point.
+	 *
+	 * @param x
+	 *            The x coordinate.
+	 * @param y
+	 *            The y coordinate.
+	 * @return i * columns + j for the tile there, or -1 if it's off the map.
+	 */
+	public int indexAt(double x, double y) {
+		int i = (int) y / SheetDetails.TILES_SIZEY;
+		int j = (int) x / SheetDetails.TILES_SIZEX;
+		if (i >= 0 && j >= 0 && i < rows && j < columns) {
+			return i * columns + j;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return True if anyone at the point falls.
+	 */
+	public boolean kills(double x, double y) {
+		return (flagsAt(x, y) & KILLS) != 0;
+	}
+
+	/**
+	 * @return True if the point is in a wall.
+	 */
+	public boolean isWall(double x, double y) {
+		return (flagsAt(x, y) & WALL) != 0;
+	}
+
+	/**
+	 * @return True if the tile can be walked on.
+	 */
+	public boolean isWalkable(int i, int j) {
+		return (flagsAt(i, j) & WALKABLE) != 0;
+	}
+
+	/**
+	 * @return The size of the first index.
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return The size of the second index.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+}
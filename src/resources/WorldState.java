@@ -0,0 +1,126 @@
+package resources;
+
+import java.util.ArrayList;
+
+/**
+ * A copy of everything the physics engine needs from a game (the players,
+ * powerups, puck, map and timer) with none of the sprites, sounds or AIs,
+ * so that the game can be run on ahead without touching the real thing.
+ *
+ * The copies are kept and written over each time {@link #copyFrom(Resources)}
+ * is called, so once there's a copy for every player and powerup, taking a
+ * snapshot doesn't allocate anything. The map is shared, as nothing changes
+ * it during a game.
+ */
+public class WorldState {
+	private final Resources world = new Resources();
+	private final ArrayList<Character> players = new ArrayList<Character>();
+	private final ArrayList<Powerup> powerups = new ArrayList<Powerup>();
+	// copies made so far, reused by later snapshots
+	private final ArrayList<Character> playerPool = new ArrayList<Character>();
+	private final ArrayList<Powerup> powerupPool = new ArrayList<Powerup>();
+	private Puck puck;
+
+	// the characters copied, in the same order as their copies
+	private final ArrayList<Character> originals = new ArrayList<Character>();
+
+	/**
+	 * Create an empty snapshot. Nothing is copied until
+	 * {@link #copyFrom(Resources)} is called.
+	 */
+	public WorldState() {
+		world.setPlayerList(players);
+		world.setPowerUpList(powerups);
+	}
+
+	/**
+	 * Make this snapshot a copy of a game as it is now, writing over whatever
+	 * was copied before.
+	 *
+	 * @param source
+	 *            The game to copy.
+	 */
+	public void copyFrom(Resources source) {
+		ArrayList<Character> sourcePlayers = source.getPlayerList();
+		world.mode = source.mode;
+		world.setMap(source.getMap());
+		world.setGlobalTimer(source.getGlobalTimer());
+		world.setBombPassTimer(source.getBombPassTimer());
+		world.setFinished(false);
+
+		int playerCount = sourcePlayers.size();
+		players.clear();
+		originals.clear();
+		for (int i = 0; i < playerCount; i++) {
+			Character c = sourcePlayers.get(i);
+			originals.add(c);
+			if (i < playerPool.size()) {
+				players.add(playerPool.get(i));
+			} else {
+				Character copy = new Character(c);
+				playerPool.add(copy);
+				players.add(copy);
+			}
+		}
+		// copied once everyone has a copy, so that who they last hit can be
+		// pointed at the right copy
+		for (int i = 0; i < playerCount; i++) {
+			Character c = originals.get(i);
+			players.get(i).copyState(c, copyOf(c.getLastCollidedWith()));
+		}
+
+		ArrayList<Powerup> sourcePowerups = source.getPowerupList();
+		int powerupCount = sourcePowerups.size();
+		powerups.clear();
+		for (int i = 0; i < powerupCount; i++) {
+			Powerup p = sourcePowerups.get(i);
+			if (i < powerupPool.size()) {
+				Powerup copy = powerupPool.get(i);
+				copy.copyState(p);
+				powerups.add(copy);
+			} else {
+				Powerup copy = new Powerup(p);
+				powerupPool.add(copy);
+				powerups.add(copy);
+			}
+		}
+
+		Puck sourcePuck = source.getPuck();
+		if (sourcePuck == null) {
+			world.setPuck(null);
+		} else {
+			if (puck == null) {
+				puck = new Puck(0, 0);
+			}
+			puck.copyState(sourcePuck, copyOf(sourcePuck.getLastCollidedWith()));
+			world.setPuck(puck);
+		}
+	}
+
+	/**
+	 * @return The copy of the game, to be run by a headless physics engine.
+	 */
+	public Resources getResources() {
+		return world;
+	}
+
+	/**
+	 * Find the copy of a character from the game that was copied.
+	 *
+	 * @param original
+	 *            A character in the game.
+	 * @return Its copy, or null if it wasn't in the game.
+	 */
+	public Character copyOf(Character original) {
+		if (original == null) {
+			return null;
+		}
+		// there are only ever a handful of players
+		for (int i = 0; i < originals.size(); i++) {
+			if (originals.get(i) == original) {
+				return players.get(i);
+			}
+		}
+		return null;
+	}
+}
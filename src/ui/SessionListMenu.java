@@ -30,6 +30,7 @@ import graphics.sprites.Sprite;
 import networking.ClientInformation;
 import networking.Command;
 import networking.ConnectionDataModel;
+import networking.LobbyUpdate;
 import networking.Message;
 import networking.Note;
 import networking.Session;
@@ -56,6 +57,8 @@ public class SessionListMenu extends JPanel implements Observer {
 	private ConnectionDataModel cModel;
 	private InLobbyMenu lobby;
 	private MapMetaData mmd = new MapMetaData();
+	// the ID of the session shown on each panel, in the same order as the panels
+	private ArrayList<String> panelIds = new ArrayList<String>();
 
 	/**
 	 * Constructor of the Session List Menu panel.
@@ -142,8 +145,9 @@ public class SessionListMenu extends JPanel implements Observer {
 			
 			else{
 				
+				Session selected = cModel.getSession(panelIds.get(index));
 				Message joinMessage = new Message(Command.SESSION, Note.JOIN, cModel.getMyId(), "",
-						cModel.getAllSessions().get(index).getId(), cModel.getAllSessions().get(index).getId());
+						selected.getId(), selected.getId());
 
 				try {
 					cModel.getConnection().sendTCP(joinMessage);
@@ -153,7 +157,7 @@ public class SessionListMenu extends JPanel implements Observer {
 					JOptionPane.showMessageDialog(frame, "Please select a lobby from the list before clicking on the join button.");
 				}
 
-				lobby.setSession(cModel.getAllSessions().get(index));
+				lobby.setSession(selected);
 				UIRes.switchPanel(lobby);
 			}
 		});
@@ -262,11 +266,44 @@ public class SessionListMenu extends JPanel implements Observer {
 	void updateSessionsPanel(Client client) {
 		UIRes.sessionsPanels.removeAll();
 		UIRes.sessionPanelsList.removeAll(UIRes.sessionPanelsList);
+		panelIds.clear();
 		UIRes.sessionsPanels.setLayout(new BoxLayout(UIRes.sessionsPanels, BoxLayout.Y_AXIS));
-		for (int i = 0; i < cModel.getAllSessions().size(); i++) {
-			JPanel session = getSessionPanel(cModel.getAllSessions().get(i), cModel.getAllSessions().get(i).isGameInProgress());
+		for (Session s : cModel.getAllSessions()) {
+			JPanel session = getSessionPanel(s, s.isGameInProgress());
 			UIRes.sessionPanelsList.add(session);
 			UIRes.sessionsPanels.add(session);
+			panelIds.add(s.getId());
+		}
+		UIRes.sessionsPanels.revalidate();
+		UIRes.sessionsPanels.repaint();
+	}
+
+	/**
+	 * Updates only the panels of the sessions which a lobby update has created, changed or removed.
+	 * 
+	 * @param update
+	 * 		the delta from the server
+	 */
+	void updateSessionsPanel(LobbyUpdate update) {
+		for (String id : update.getRemoved()) {
+			int index = panelIds.indexOf(id);
+			if (index >= 0) {
+				UIRes.sessionsPanels.remove(UIRes.sessionPanelsList.remove(index));
+				panelIds.remove(index);
+			}
+		}
+		for (Session s : update.getSessions()) {
+			JPanel session = getSessionPanel(s, s.isGameInProgress());
+			int index = panelIds.indexOf(s.getId());
+			if (index >= 0) {
+				UIRes.sessionsPanels.remove(UIRes.sessionPanelsList.get(index));
+				UIRes.sessionsPanels.add(session, index);
+				UIRes.sessionPanelsList.set(index, session);
+			} else {
+				UIRes.sessionsPanels.add(session);
+				UIRes.sessionPanelsList.add(session);
+				panelIds.add(s.getId());
+			}
 		}
 		UIRes.sessionsPanels.revalidate();
 		UIRes.sessionsPanels.repaint();
@@ -410,7 +447,10 @@ public class SessionListMenu extends JPanel implements Observer {
 	 */
 	@Override
 	public void update(Observable arg0, Object arg1) {
-		updateSessionsPanel(client);
+		if (arg1 instanceof LobbyUpdate && !((LobbyUpdate) arg1).isFull())
+			updateSessionsPanel((LobbyUpdate) arg1);
+		else
+			updateSessionsPanel(client);
 		repaint();
 	}
 